@@ -0,0 +1,29 @@
+import java.time.LocalDateTime
+import java.time.format.DateTimeFormatter
+
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    jmh(project(":"))
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    // one file per run, so results can be compared over time
+    val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results-$timestamp.json"))
+    // keeps the configuration, progress and image cache written by the benchmarks away from the user's own
+    jvmArgsAppend.add("-Duser.home=" + layout.buildDirectory.dir("jmh-home").get().asFile.absolutePath)
+}
@@ -0,0 +1,60 @@
+package com.flashcardapp.benchmarks;
+
+import com.flashcardapp.util.ConfigHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving configuration options: the cost to the caller, which only changes the options and leaves writing
+ * them to the background, and the cost of writing the configuration file after each change.
+ * <p>
+ * The configuration is written to the user home directory, which the build points at a folder of its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigHandlerBenchmark {
+    private static final int OPTIONS = 50; // options besides the one being saved, as a used configuration has
+
+    private ConfigHandler config;
+    private int value;
+
+    @Setup
+    public void setUp() {
+        config = ConfigHandler.getInstance();
+        for (int i = 0; i < OPTIONS; i++) {
+            config.saveOption("benchmarkOption" + i, "value " + i);
+        }
+        config.flush();
+    }
+
+    @TearDown
+    public void tearDown() {
+        config.flush();
+    }
+
+    @Benchmark
+    public void saveOption() {
+        config.saveOption("benchmarkValue", value++);
+    }
+
+    @Benchmark
+    public void saveOptionAndFlush() {
+        config.saveOption("benchmarkValue", value++);
+        config.flush();
+    }
+}
@@ -0,0 +1,114 @@
+package com.flashcardapp.benchmarks;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.DeckHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures loading and saving JSON decks of different sizes, with different shares of cards carrying images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeckHandlerBenchmark {
+    private static final int DISTINCT_IMAGES = 8;
+    private static final int IMAGE_SIZE = 32; // pixels along each side
+
+    @Param({"100", "10000"})
+    public int cards;
+
+    @Param({"0", "10", "100"})
+    public int imagePercent; // share of the cards with a question and an answer image
+
+    private final DeckHandler handler = new DeckHandler();
+    private Path directory;
+    private String loadPath;
+    private String savePath;
+    private Deck deck;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("flashcardapp-benchmark");
+        Random random = new Random(1);
+        String[] images = new String[DISTINCT_IMAGES];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = writeNoiseImage(directory.resolve("image" + i + ".png"), random);
+        }
+
+        deck = new Deck("Benchmark");
+        for (int i = 0; i < cards; i++) {
+            boolean withImages = i * 100L / cards < imagePercent;
+            String questionImage = withImages ? images[i % images.length] : null;
+            String answerImage = withImages ? images[(i + 1) % images.length] : null;
+            deck.addFlashcard(new Flashcard("Question " + i, "Answer " + i, "Hint " + i, questionImage, answerImage));
+        }
+        loadPath = directory.resolve("load.json").toString();
+        savePath = directory.resolve("save.json").toString();
+        handler.saveDeck(deck, loadPath);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    /**
+     * Reads the deck and closes it again, so the decks loaded during a run do not keep their images held.
+     */
+    @Benchmark
+    public void loadDeck(Blackhole blackhole) {
+        try (Deck loaded = handler.loadDeck(loadPath)) {
+            blackhole.consume(loaded);
+        }
+    }
+
+    /**
+     * Writes the whole deck, as saving to a new file does. Images are read once and cached on the cards, as they are
+     * when a deck is saved repeatedly in the application.
+     */
+    @Benchmark
+    public Deck saveDeck() throws IOException {
+        deck.markUnsaved();
+        handler.saveDeck(deck, savePath);
+        return deck;
+    }
+
+    private static String writeNoiseImage(Path file, Random random) throws IOException {
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < IMAGE_SIZE; y++) {
+            for (int x = 0; x < IMAGE_SIZE; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ImageIO.write(image, "png", file.toFile());
+        return file.toUri().toString();
+    }
+}
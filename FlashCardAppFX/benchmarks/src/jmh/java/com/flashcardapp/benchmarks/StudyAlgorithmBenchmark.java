@@ -0,0 +1,153 @@
+package com.flashcardapp.benchmarks;
+
+import com.flashcardapp.logic.BasicRotationalAlgorithm;
+import com.flashcardapp.logic.IAlgorithm;
+import com.flashcardapp.logic.SpacedRepetitionAlgorithm;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.LongIntHashMap;
+import com.flashcardapp.util.ReviewProgressStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the study algorithms: answering the current card and moving on, as the study screen does for every
+ * response, and reordering a spaced repetition session by mastery level.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StudyAlgorithmBenchmark {
+    private static final int ANSWERS = 1 << 16; // a power of two, so the next answer is found by masking
+    private static final int MAX_LEVEL = 8;
+
+    /**
+     * A session in progress that never completes.
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        @Param({"basic", "spaced"})
+        public String algorithm;
+
+        @Param({"1000", "100000"})
+        public int cards;
+
+        IAlgorithm session;
+        boolean[] answers; // decided up front, so no random numbers are drawn while measuring
+        int next;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(1);
+            session = "spaced".equals(algorithm)
+                    ? new SpacedRepetitionAlgorithm(Integer.MAX_VALUE, new MemoryProgressStore(random))
+                    : new BasicRotationalAlgorithm(Integer.MAX_VALUE);
+            session.initialize(createFlashcards(cards));
+            answers = new boolean[ANSWERS];
+            for (int i = 0; i < answers.length; i++) {
+                answers[i] = random.nextInt(4) > 0;
+            }
+        }
+    }
+
+    /**
+     * A spaced repetition session whose cards have mixed mastery levels.
+     */
+    @State(Scope.Thread)
+    public static class SpacedSession {
+        @Param({"1000", "100000"})
+        public int cards;
+
+        SpacedRepetitionAlgorithm session;
+
+        @Setup
+        public void setUp() {
+            session = new SpacedRepetitionAlgorithm(Integer.MAX_VALUE, new MemoryProgressStore(new Random(1)));
+            session.initialize(createFlashcards(cards));
+        }
+    }
+
+    @Benchmark
+    public Flashcard recordResponseAndMoveToNext(Session state) {
+        IAlgorithm session = state.session;
+        Flashcard card = session.getCurrentFlashcard();
+        if (!session.hasAnsweredThisCycle(card)) {
+            session.recordResponse(card, state.answers[state.next++ & (ANSWERS - 1)]);
+        }
+        session.moveToNext();
+        return card;
+    }
+
+    /**
+     * Reorders every card of the session, since none has been answered in the cycle it starts.
+     */
+    @Benchmark
+    public Flashcard resetAnsweredStates(SpacedSession state) {
+        state.session.resetAnsweredStates();
+        return state.session.getCurrentFlashcard();
+    }
+
+    private static List<Flashcard> createFlashcards(int count) {
+        List<Flashcard> flashcards = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            flashcards.add(new Flashcard(i, "Question " + i, "Answer " + i, null, null, null));
+        }
+        return flashcards;
+    }
+
+    /**
+     * Keeps mastery levels in memory, starting every card at a random level.
+     */
+    private static final class MemoryProgressStore implements ReviewProgressStore {
+        private final LongIntHashMap levels = new LongIntHashMap();
+        private final Random random;
+
+        MemoryProgressStore(Random random) {
+            this.random = random;
+        }
+
+        @Override
+        public int getMastery(long cardId, int defaultLevel) {
+            if (!levels.containsKey(cardId)) {
+                levels.put(cardId, random.nextInt(MAX_LEVEL));
+            }
+            return levels.get(cardId, defaultLevel);
+        }
+
+        @Override
+        public void recordMastery(long cardId, int masteryLevel) {
+            levels.put(cardId, masteryLevel);
+        }
+
+        @Override
+        public int countCardsAtLeast(int level) {
+            int[] count = new int[1];
+            levels.forEach((cardId, masteryLevel) -> {
+                if (masteryLevel >= level) {
+                    count[0]++;
+                }
+            });
+            return count[0];
+        }
+
+        @Override
+        public long lastModified() {
+            return 0;
+        }
+    }
+}
@@ -24,14 +24,27 @@ dependencies {
     
     implementation("commons-codec:commons-codec:1.15")
 
-    implementation("org.json:json:20240303")
+    implementation("org.xerial:sqlite-jdbc:3.45.1.0")
 }
+// the study session simulator is a development tool, kept out of the application
+sourceSets {
+    create("simulation") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["simulationImplementation"].extendsFrom(configurations.implementation.get())
+configurations["simulationRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
 tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
 }
 
 tasks.test {
     useJUnitPlatform()
+    // keeps the image cache and configuration written by tests out of the real home directory
+    systemProperty("user.home", layout.buildDirectory.dir("test-home").get().asFile.path)
 }
 
 application {
@@ -39,3 +52,10 @@ application {
     mainClass.set("com.flashcardapp.FlashcardApp")
 }
 
+tasks.register<JavaExec>("simulate") {
+    group = "application"
+    description = "Runs study sessions headlessly with a simulated learner. Pass options with --args, such as --args=\"--cards 1000000\"."
+    classpath = sourceSets["simulation"].runtimeClasspath
+    mainClass.set("com.flashcardapp.simulation.StudySimulator")
+    maxHeapSize = "2g"
+}
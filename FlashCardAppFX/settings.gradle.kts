@@ -1,2 +1,3 @@
 rootProject.name = "FlashCardAppFX"
 
+include("benchmarks")
@@ -2,10 +2,23 @@ package com.flashcardapp;
 
 import com.flashcardapp.logic.IAlgorithm;
 import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckDiff;
 import com.flashcardapp.util.ConfigHandler;
-import com.flashcardapp.util.DeckHandler;
+import com.flashcardapp.util.ConfigSnapshot;
+import com.flashcardapp.util.DeckCatalog;
 import com.flashcardapp.util.DeckInfo;
+import com.flashcardapp.util.DeckLoadTask;
+import com.flashcardapp.util.DeckWatcher;
+import com.flashcardapp.util.DeckWriter;
+import com.flashcardapp.util.IDeckHandler;
+import com.flashcardapp.util.ImageCache;
+import com.flashcardapp.util.ImagePipeline;
+import com.flashcardapp.util.StartupTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -13,6 +26,9 @@ import javafx.stage.Stage;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main application class for the Flashcard study helper.
@@ -20,20 +36,24 @@ import java.io.IOException;
  */
 public class FlashcardApp extends Application {
 
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
     private static FlashcardApp instance;
 
     private Stage primaryStage;
     private Scene currentScene;
     private Deck currentDeck;
     private IAlgorithm studyAlgorithm;
-    private DeckHandler deckHandler;
     private String currentStyle = "style.css"; // Default style
+    private final DeckWatcher deckWatcher = new DeckWatcher(diff -> Platform.runLater(() -> applyExternalChanges(diff)));
+    private final DeckWriter deckWriter = new DeckWriter(deckWatcher::deckSaved);
+    private final ReadOnlyObjectWrapper<DeckDiff> externalDeckChange = new ReadOnlyObjectWrapper<>(); // the last changes made to the deck file outside the app
+    private final ReadOnlyObjectWrapper<DeckLoadTask> deckLoadTask = new ReadOnlyObjectWrapper<>(); // the deck being loaded in the background, if any
 
     /**
      * Constructs the FlashcardApp and initializes the singleton instance.
      */
     public FlashcardApp() {
-        deckHandler = new DeckHandler();
         instance = this;
     }
 
@@ -44,11 +64,17 @@ public class FlashcardApp extends Application {
         return instance;
     }
 
+    /**
+     * Shows the main scene as soon as it is loaded. The configuration and the last deck are loaded in the
+     * background afterwards, and the main scene follows the deck as it comes in.
+     */
     @Override
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
+        StartupTimer.getInstance().mark("application start");
         try {
             loadInitialScene();
+            markFirstFrame();
             primaryStage.show();
         } catch (Exception e) {
             e.printStackTrace();
@@ -56,11 +82,27 @@ public class FlashcardApp extends Application {
         loadConfigOptions();
     }
 
+    /**
+     * Waits for any deck saves that are still being written, compacting the current deck's file after them, and
+     * writes pending configuration changes before the application exits.
+     */
+    @Override
+    public void stop() {
+        closeDeck(currentDeck);
+        if (!deckWriter.shutdown(SHUTDOWN_TIMEOUT_MILLIS)) {
+            System.err.println("Timed out waiting for deck saves to finish");
+        }
+        ConfigHandler.getInstance().flush();
+        deckWatcher.stop();
+    }
+
     /**
      * Loads the initial scene and sets up the primary stage with necessary configurations.
      */
     private void loadInitialScene() throws IOException {
+        StartupTimer.Phase fxmlLoad = StartupTimer.getInstance().begin("FXML load");
         Parent root = FXMLLoader.load(getClass().getResource("/com/flashcardapp/gui/MainScene.fxml"));
+        fxmlLoad.end();
         primaryStage.getIcons().add(new javafx.scene.image.Image(getClass().getResourceAsStream("/com/flashcardapp/gui/logo.png")));
         currentScene = new Scene(root, 900, 800);
         primaryStage.setScene(currentScene);
@@ -71,26 +113,65 @@ public class FlashcardApp extends Application {
     }
 
     /**
-     * Loads configuration options and applies them to the application state.
+     * Logs the time to the first frame once the initial scene has been laid out for the first time.
+     */
+    private void markFirstFrame() {
+        Scene scene = currentScene;
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            scene.removePostLayoutPulseListener(listener[0]);
+            StartupTimer.getInstance().mark("first frame");
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+    }
+
+    /**
+     * Reads the configuration in the background and applies it once it has been read.
      */
     private void loadConfigOptions() {
-        try {
-            String themeValue = ConfigHandler.getInstance().getOption("theme", String.class);
-            setTheme(themeValue);
-        } catch (IllegalArgumentException e) {
+        StartupTimer.Phase configParse = StartupTimer.getInstance().begin("config parse");
+        CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ConfigHandler.getInstance().getSnapshot();
+                    } finally {
+                        configParse.end(); // not once the result reaches the busy application thread
+                    }
+                })
+                .whenComplete((config, error) -> Platform.runLater(() -> {
+                    if (error != null) {
+                        System.err.println("Error loading configuration: " + error.getMessage());
+                        return;
+                    }
+                    applyConfigOptions(config);
+                }));
+    }
+
+    /**
+     * Applies configuration options to the application state and starts loading the last deck, unless a deck has
+     * been opened in the meantime.
+     */
+    private void applyConfigOptions(ConfigSnapshot config) {
+        Optional<String> theme = config.find("theme", String.class);
+        if (theme.isPresent()) {
+            setTheme(theme.get());
+        } else {
             ConfigHandler.getInstance().saveOption("theme", "light");
         }
 
+        if (currentDeck != null || getDeckLoadTask() != null) {
+            return; // the user opened a deck before the configuration was read
+        }
         try {
-            DeckInfo deckInfo = ConfigHandler.getInstance().getOption("lastDeck", DeckInfo.class);
-            if (deckInfo != null) {
-                currentDeck = deckHandler.loadDeck(deckInfo.getPath());
-            }
-        } catch (IllegalArgumentException ignored) {
+            config.find("lastDeck", DeckInfo.class).ifPresent(deckInfo -> {
+                StartupTimer.Phase deckLoad = StartupTimer.getInstance().begin("deck load");
+                DeckLoadTask task = startDeckLoad(deckInfo.getPath(), false);
+                task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> deckLoad.end());
+                task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, event -> deckLoad.end());
+                task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, event -> deckLoad.end());
+            });
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring unreadable last deck option: " + e.getMessage());
         }
-        
-        // reload the main scene
-        setFXMLScene("MainScene");
     }
 
     /**
@@ -113,19 +194,185 @@ public class FlashcardApp extends Application {
     }
 
     /**
-     * Saves the currently loaded deck to a specified path.
+     * Saves a deck to a specified path in the background.
+     * Repeated saves to the same path while a save is waiting are combined into a single write. Call this on the
+     * JavaFX application thread: the deck's flashcards are copied before this returns, so they can be edited while
+     * the copy is written.
+     * @return A future completed on the JavaFX application thread once the deck has been written or has failed to.
+     */
+    public CompletableFuture<Void> saveDeck(Deck currentDeck, String absolutePath) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        deckWriter.submit(currentDeck, absolutePath).whenComplete((ignored, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                System.err.println("Error saving deck: " + error.getMessage());
+                result.completeExceptionally(error);
+                return;
+            }
+            if (!IDeckHandler.forPath(absolutePath).storesDeck()) {
+                result.complete(null); // an exported spreadsheet does not become the deck's file
+                return;
+            }
+            ConfigHandler.getInstance().saveOption("lastDeck", new DeckInfo(currentDeck.getName(), absolutePath, currentDeck.getFlashcards().size()));
+            DeckCatalog.getInstance().add(absolutePath);
+            if (this.currentDeck == currentDeck) {
+                deckWatcher.watch(absolutePath);
+            }
+            result.complete(null);
+        }));
+        return result;
+    }
+
+    /**
+     * Loads a deck from a specified path in the background and updates the application state.
+     * The flashcards become the current deck as they are parsed, so studying can start before loading has finished.
+     * @return The task loading the deck.
      */
-    public void saveDeck(Deck currentDeck, String absolutePath) {
-        deckHandler.saveDeck(currentDeck, absolutePath);
-        ConfigHandler.getInstance().saveOption("lastDeck", new DeckInfo(currentDeck.getName(), absolutePath, currentDeck.getFlashcards().size()));
+    public DeckLoadTask loadDeck(String path) {
+        return startDeckLoad(path, true);
     }
 
     /**
-     * Loads a deck from a specified path and updates the application state.
+     * Starts loading a deck in the background, cancelling any load still in progress.
+     * Until loading finishes, the current deck is a placeholder that the parsed flashcards are added to. If loading
+     * fails or is cancelled, the previous deck becomes current again.
+     * @param path The path of the deck file.
+     * @param rememberDeck Whether to store the deck as the last deck once it has loaded.
+     * @return The task loading the deck.
      */
-    public void loadDeck(String path) {
-        currentDeck = deckHandler.loadDeck(path);
-        ConfigHandler.getInstance().saveOption("lastDeck", new DeckInfo(currentDeck.getName(), path, currentDeck.getFlashcards().size()));
+    private DeckLoadTask startDeckLoad(String path, boolean rememberDeck) {
+        cancelDeckLoad();
+        Deck previousDeck = currentDeck;
+        Deck loadingDeck = new Deck(new File(path).getName(), new ArrayList<>());
+        currentDeck = loadingDeck;
+        studyAlgorithm = null; // a session on the previous deck cannot continue with this one
+
+        DeckLoadTask task = new DeckLoadTask(path, flashcards -> {
+            loadingDeck.getFlashcards().addAll(flashcards); // the placeholder is not saved, so these are not tracked
+            if (studyAlgorithm != null && currentDeck == loadingDeck) {
+                studyAlgorithm.appendFlashcards(flashcards);
+            }
+        });
+        task.setOnSucceeded(event -> {
+            Deck deck = task.getValue();
+            String deckPath = deck.getSavedPath() != null ? deck.getSavedPath() : path; // a spreadsheet is imported into another file
+            deckLoadTask.set(null);
+            if (currentDeck != loadingDeck) { // another deck was opened meanwhile
+                deck.close();
+                if (previousDeck != currentDeck) {
+                    closeDeck(previousDeck);
+                }
+                return;
+            }
+            currentDeck = deck;
+            deckWatcher.watch(deckPath);
+            if (previousDeck != null && deckPath.equals(previousDeck.getSavedPath())) {
+                previousDeck.close(); // the file is compacted once the reloaded deck is closed
+            } else {
+                closeDeck(previousDeck);
+            }
+            ImagePipeline.getInstance().prefetch(deck);
+            DeckCatalog.getInstance().add(deckPath, deck.getFlashcardCount());
+            if (rememberDeck) {
+                ConfigHandler.getInstance().saveOption("lastDeck", new DeckInfo(deck.getName(), deckPath, deck.getFlashcards().size()));
+            }
+        });
+        task.setOnFailed(event -> {
+            System.err.println("Error loading deck: " + task.getException().getMessage());
+            abandonDeckLoad(task, loadingDeck, previousDeck);
+        });
+        task.setOnCancelled(event -> abandonDeckLoad(task, loadingDeck, previousDeck));
+
+        deckLoadTask.set(task);
+        Thread thread = new Thread(task, "deck-loader");
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Closes a deck the application is done with. Its file is compacted first, once its pending saves have been
+     * written, so that the file holds the whole deck on its own.
+     */
+    private void closeDeck(Deck deck) {
+        if (deck == null) {
+            return;
+        }
+        if (deck.getSavedPath() == null) {
+            deck.close();
+            return;
+        }
+        deckWriter.compact(deck, deck.getSavedPath()).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Error compacting deck: " + error.getMessage());
+            }
+            deck.close();
+        });
+    }
+
+    /**
+     * Applies changes made to the current deck's file outside the application to the current deck, and to the study
+     * session for flashcards that were added or deleted.
+     */
+    private void applyExternalChanges(DeckDiff diff) {
+        if (currentDeck == null || getDeckLoadTask() != null || currentDeck.getSavedPath() == null
+                || !deckWatcher.isWatching(currentDeck.getSavedPath())) {
+            return; // the changes belong to a deck that is no longer open
+        }
+        DeckDiff applied = currentDeck.applyStoredChanges(diff);
+        if (applied.isEmpty()) {
+            return; // such as the application's own save
+        }
+        if (studyAlgorithm != null && applied.getRemovedIds().length > 0) {
+            studyAlgorithm.removeFlashcards(applied.getRemovedIds());
+        }
+        if (studyAlgorithm != null && !applied.getAdded().isEmpty()) {
+            studyAlgorithm.appendFlashcards(applied.getAdded());
+        }
+        externalDeckChange.set(applied);
+    }
+
+    /**
+     * Returns the property holding the last changes made to the current deck's file outside the application, for
+     * screens showing the deck to update themselves.
+     */
+    public ReadOnlyObjectProperty<DeckDiff> externalDeckChangeProperty() {
+        return externalDeckChange.getReadOnlyProperty();
+    }
+
+    /**
+     * Puts the previous deck back after a deck failed to load or loading was cancelled.
+     */
+    private void abandonDeckLoad(DeckLoadTask task, Deck loadingDeck, Deck previousDeck) {
+        if (deckLoadTask.get() == task) {
+            deckLoadTask.set(null);
+        }
+        if (currentDeck == loadingDeck) {
+            currentDeck = previousDeck;
+            studyAlgorithm = null;
+        }
+    }
+
+    /**
+     * Returns the task loading a deck in the background, or null if no deck is being loaded.
+     */
+    public DeckLoadTask getDeckLoadTask() {
+        return deckLoadTask.get();
+    }
+
+    /**
+     * Returns the property holding the task loading a deck in the background, for following loads as they start.
+     */
+    public ReadOnlyObjectProperty<DeckLoadTask> deckLoadTaskProperty() {
+        return deckLoadTask.getReadOnlyProperty();
+    }
+
+    /**
+     * Cancels loading the deck that is being loaded in the background, if any.
+     */
+    public void cancelDeckLoad() {
+        if (deckLoadTask.get() != null) {
+            deckLoadTask.get().cancel();
+        }
     }
 
     /**
@@ -158,10 +405,21 @@ public class FlashcardApp extends Application {
         return currentDeck;
     }
     
+    /**
+     * Returns the file the current deck belongs to: the file it is being loaded from, or the file it was last loaded
+     * from or saved to. Returns null if there is no current deck or it has never been stored.
+     */
+    public String getCurrentDeckPath() {
+        if (deckLoadTask.get() != null) {
+            return deckLoadTask.get().getPath();
+        }
+        return currentDeck != null ? currentDeck.getSavedPath() : null;
+    }
+
     /**
      * Returns the directory where application data is stored.
      */
-    public File getDataDirectory() {
+    public static File getDataDirectory() {
         return new File(System.getProperty("user.home") + "/.flashcardapp");
     }
     
@@ -183,25 +441,39 @@ public class FlashcardApp extends Application {
      * Resets the application data and reloads the initial scene.
      */
     public void resetData() {
+        cancelDeckLoad();
+        closeDeck(currentDeck);
         currentDeck = null;
         studyAlgorithm = null;
-        ConfigHandler.getInstance().saveOption("lastDeck", null);
+        ConfigHandler.getInstance().removeOption("lastDeck");
+        deckWatcher.stop();
+        ImagePipeline.getInstance().cancelPrefetch();
+        ImageCache.getInstance().clear();
         setFXMLScene("MainScene");
     }
 
     /**
      * Saves the current deck, if available, to the last known path.
+     * @return A future completed on the JavaFX application thread once the deck has been written or has failed to.
      */
-    public void saveCurrentDeck() {
-        if (currentDeck != null) {
-            saveDeck(currentDeck, ConfigHandler.getInstance().getOption("lastDeck", DeckInfo.class).getPath());
+    public CompletableFuture<Void> saveCurrentDeck() {
+        if (currentDeck == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        Optional<DeckInfo> deckInfo = ConfigHandler.getInstance().findOption("lastDeck", DeckInfo.class);
+        if (deckInfo.isEmpty()) { // the deck has never been saved or loaded
+            return CompletableFuture.failedFuture(new IOException("The deck has no file yet, export it first"));
+        }
+        return saveDeck(currentDeck, deckInfo.get().getPath());
     }
 
     /**
      * Sets the current deck to the specified deck.
      */
     public void setCurrentDeck(Deck deck) {
+        if (currentDeck != deck) {
+            closeDeck(currentDeck);
+        }
         currentDeck = deck;
     }
 
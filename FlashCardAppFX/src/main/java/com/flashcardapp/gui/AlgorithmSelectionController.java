@@ -3,14 +3,20 @@ package com.flashcardapp.gui;
 import com.flashcardapp.FlashcardApp;
 import com.flashcardapp.logic.BasicRotationalAlgorithm;
 import com.flashcardapp.logic.IAlgorithm;
+import com.flashcardapp.logic.ScheduledReviewAlgorithm;
+import com.flashcardapp.logic.SessionCheckpoint;
 import com.flashcardapp.logic.SpacedRepetitionAlgorithm;
+import com.flashcardapp.util.ReviewProgressStore;
+import com.flashcardapp.util.ReviewScheduleStore;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextField;
+import javafx.scene.text.Text;
 
 /**
- * Controller for selecting the study algorithm and setting the cycle count for Spaced Repetition.
+ * Controller for selecting the study algorithm and setting its cycle count, or for Scheduled Review, the number of
+ * new cards per day.
  */
 public class AlgorithmSelectionController {
 
@@ -20,13 +26,28 @@ public class AlgorithmSelectionController {
     @FXML
     private TextField cycleCountField;
 
+    @FXML
+    private Text resumeText;
+
     /**
-     * Initializes the combo box with algorithm choices and sets the default selected algorithm.
+     * Initializes the combo box with algorithm choices and sets the default selected algorithm. If the current deck
+     * has an unfinished session, its algorithm and cycle count are selected so that starting resumes it.
      */
     public void initialize() {
-        algorithmComboBox.getItems().addAll("Basic Rotation", "Spaced Repetition");
+        algorithmComboBox.getItems().addAll("Basic Rotation", "Spaced Repetition", "Scheduled Review");
+        algorithmComboBox.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) ->
+                cycleCountField.setPromptText("Scheduled Review".equals(newValue) ? "Enter number of new cards per day" : "Enter number of cycles"));
         algorithmComboBox.getSelectionModel().selectFirst();
 
+        String deckPath = FlashcardApp.getInstance().getCurrentDeckPath();
+        if (deckPath != null) {
+            SessionCheckpoint.forDeck(deckPath).createAlgorithm(null).ifPresent(algorithm -> {
+                algorithmComboBox.getSelectionModel().select(algorithmName(algorithm));
+                cycleCountField.setText(String.valueOf(algorithm.getMaxCycles()));
+                resumeText.setVisible(true);
+                resumeText.setManaged(true);
+            });
+        }
     }
 
     /**
@@ -53,11 +74,34 @@ public class AlgorithmSelectionController {
     /**
      * Creates and returns the appropriate algorithm instance based on the selection.
      * @param selectedAlgorithm The name of the selected algorithm.
-     * @param cycles The number of cycles (used only for Spaced Repetition).
+     * @param cycles The number of cycles, or for Scheduled Review, the number of new cards per day.
      * @return The corresponding algorithm instance.
      */
     private IAlgorithm createAlgorithm(String selectedAlgorithm, int cycles) {
-        return "Spaced Repetition".equals(selectedAlgorithm) ? new SpacedRepetitionAlgorithm(cycles) : new BasicRotationalAlgorithm(cycles);
+        // progress is kept per deck file, so a deck that has never been stored starts fresh every session
+        String deckPath = FlashcardApp.getInstance().getCurrentDeckPath();
+        if ("Spaced Repetition".equals(selectedAlgorithm)) {
+            return new SpacedRepetitionAlgorithm(cycles, deckPath != null ? ReviewProgressStore.forDeck(deckPath) : null);
+        }
+        if ("Scheduled Review".equals(selectedAlgorithm)) {
+            return deckPath != null
+                    ? new ScheduledReviewAlgorithm(cycles, ReviewScheduleStore.forDeck(deckPath), ReviewProgressStore.forDeck(deckPath))
+                    : new ScheduledReviewAlgorithm(cycles);
+        }
+        return new BasicRotationalAlgorithm(cycles);
+    }
+
+    /**
+     * Returns the name an algorithm is listed by in the combo box.
+     */
+    private static String algorithmName(IAlgorithm algorithm) {
+        if (algorithm instanceof SpacedRepetitionAlgorithm) {
+            return "Spaced Repetition";
+        }
+        if (algorithm instanceof ScheduledReviewAlgorithm) {
+            return "Scheduled Review";
+        }
+        return "Basic Rotation";
     }
 
     /**
@@ -1,10 +1,14 @@
 package com.flashcardapp.gui;
 
 import com.flashcardapp.FlashcardApp;
+import com.flashcardapp.model.DeckDiff;
 import com.flashcardapp.model.Flashcard;
 import javafx.animation.PauseTransition;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -29,7 +33,7 @@ public class DeckCreationSceneController {
     @FXML
     private VBox flashcardsListVBox;
     @FXML
-    private Label errorMessageLabel;
+    private Label messageLabel;
     @FXML
     private Button addFlashcardButton;
     @FXML
@@ -45,14 +49,63 @@ public class DeckCreationSceneController {
     private Flashcard currentlyEditing = null;
     private String temporaryQuestionImage;
     private String temporaryAnswerImage;
+    private final ChangeListener<DeckDiff> externalChangeListener = (observable, oldDiff, diff) -> {
+        if (diff != null) {
+            applyExternalChanges(diff);
+        }
+    };
 
     /**
-     * Initializes controller and loads existing flashcards into the UI.
+     * Initializes controller and loads existing flashcards into the UI, and follows changes made to the deck file
+     * outside the application.
      */
     @FXML
     public void initialize() {
         FlashcardApp.getInstance().getCurrentDeck().getFlashcards().forEach(this::updateFlashcardsListUI);
         bindUIElements();
+        FlashcardApp.getInstance().externalDeckChangeProperty().addListener(new WeakChangeListener<>(externalChangeListener));
+    }
+
+    /**
+     * Updates only the boxes of the flashcards that were added, removed or changed in the deck file.
+     * @param diff The changes applied to the current deck.
+     */
+    private void applyExternalChanges(DeckDiff diff) {
+        Set<Long> removedIds = new HashSet<>();
+        for (long id : diff.getRemovedIds()) {
+            removedIds.add(id);
+        }
+        Set<Flashcard> updated = Collections.newSetFromMap(new IdentityHashMap<>());
+        updated.addAll(diff.getUpdated());
+
+        Iterator<Node> boxes = flashcardsListVBox.getChildren().iterator();
+        while (boxes.hasNext()) {
+            Node node = boxes.next();
+            Flashcard flashcard = uiToFlashcardMap.get(node);
+            if (flashcard == null) {
+                continue;
+            }
+            if (removedIds.contains(flashcard.getId())) {
+                boxes.remove();
+                uiToFlashcardMap.remove(node);
+                if (flashcard == currentlyEditing) {
+                    resetInputFields();
+                }
+            } else if (updated.contains(flashcard)) {
+                VBox flashcardBox = (VBox) node;
+                flashcardBox.getChildren().clear();
+                setupImagesAndText(flashcard, flashcardBox);
+            }
+        }
+
+        for (int i = 0; i < diff.getAdded().size(); i++) {
+            Flashcard flashcard = diff.getAdded().get(i);
+            VBox flashcardBox = createFlashcardBox(flashcard);
+            setupInteractionHandlers(flashcardBox, flashcard);
+            flashcardsListVBox.getChildren().add(Math.min(diff.getAddedIndex(i), flashcardsListVBox.getChildren().size()), flashcardBox);
+            uiToFlashcardMap.put(flashcardBox, flashcard);
+        }
+        showInfoMessage("Deck file changed: " + diff);
     }
 
     /**
@@ -196,11 +249,12 @@ public class DeckCreationSceneController {
 
     /**
      * Creates an ImageView for displaying a flashcard image.
+     * The thumbnail is decoded at its display size in the background so the list does not wait on large images.
      * @param imageUrl The URL of the image to display.
      * @return Configured ImageView.
      */
     private ImageView createImageView(String imageUrl) {
-        ImageView imageView = new ImageView(new Image(imageUrl));
+        ImageView imageView = new ImageView(new Image(imageUrl, 100, 0, true, true, true));
         imageView.setFitWidth(100);
         imageView.setPreserveRatio(true);
         return imageView;
@@ -224,10 +278,23 @@ public class DeckCreationSceneController {
      * @param message The error message to display.
      */
     private void showErrorMessage(String message) {
-        errorMessageLabel.setText(message);
-        errorMessageLabel.setVisible(true);
+        showMessage(message, "error-message");
+    }
+
+    /**
+     * Displays a message in the UI that informs the user without reporting a problem.
+     * @param message The message to display.
+     */
+    private void showInfoMessage(String message) {
+        showMessage(message, "info-message");
+    }
+
+    private void showMessage(String message, String styleClass) {
+        messageLabel.getStyleClass().setAll("label", styleClass);
+        messageLabel.setText(message);
+        messageLabel.setVisible(true);
         PauseTransition pause = new PauseTransition(Duration.seconds(3));
-        pause.setOnFinished(event -> errorMessageLabel.setVisible(false));
+        pause.setOnFinished(event -> messageLabel.setVisible(false));
         pause.play();
     }
 
@@ -316,7 +383,13 @@ public class DeckCreationSceneController {
      */
     @FXML
     private void handleSaveDeck(ActionEvent event) {
-        FlashcardApp.getInstance().saveCurrentDeck();
+        FlashcardApp.getInstance().saveCurrentDeck().whenComplete((ignored, error) -> {
+            if (error == null) {
+                showInfoMessage("Deck saved.");
+            } else {
+                showErrorMessage("Could not save the deck: " + error.getMessage());
+            }
+        });
     }
     
     /**
@@ -0,0 +1,132 @@
+package com.flashcardapp.gui;
+
+import com.flashcardapp.FlashcardApp;
+import com.flashcardapp.util.DeckCatalog;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.FileChooser;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Controller for the deck library, listing the decks that have been opened or saved with their progress.
+ */
+public class LibrarySceneController {
+
+    @FXML
+    private TableView<DeckCatalog.Entry> deckTable;
+    @FXML
+    private TableColumn<DeckCatalog.Entry, String> nameColumn;
+    @FXML
+    private TableColumn<DeckCatalog.Entry, String> cardsColumn;
+    @FXML
+    private TableColumn<DeckCatalog.Entry, String> masteryColumn;
+    @FXML
+    private Button openButton;
+    @FXML
+    private Button removeButton;
+
+    /**
+     * Shows the catalog as it was last stored right away and refreshes it in the background.
+     */
+    @FXML
+    public void initialize() {
+        nameColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().isMissing()
+                ? cell.getValue().getName() + " (missing)"
+                : cell.getValue().getName()));
+        cardsColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(String.valueOf(cell.getValue().getFlashcardCount())));
+        masteryColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(describeMastery(cell.getValue())));
+
+        openButton.disableProperty().bind(deckTable.getSelectionModel().selectedItemProperty().isNull());
+        removeButton.disableProperty().bind(deckTable.getSelectionModel().selectedItemProperty().isNull());
+
+        DeckCatalog catalog = DeckCatalog.getInstance();
+        deckTable.getItems().setAll(catalog.getEntries());
+        catalog.refresh().thenAccept(this::showEntries);
+    }
+
+    /**
+     * Describes how far a deck has been studied.
+     */
+    private static String describeMastery(DeckCatalog.Entry entry) {
+        int cards = entry.getFlashcardCount();
+        return Math.min(entry.getMasteredCards(), cards) + " mastered, " + Math.min(entry.getReviewedCards(), cards) + " reviewed";
+    }
+
+    /**
+     * Replaces the listed decks, keeping the selected deck selected. May be called from any thread.
+     */
+    private void showEntries(List<DeckCatalog.Entry> entries) {
+        Platform.runLater(() -> {
+            DeckCatalog.Entry selected = deckTable.getSelectionModel().getSelectedItem();
+            deckTable.getItems().setAll(entries);
+            if (selected != null) {
+                entries.stream()
+                        .filter(entry -> entry.getPath().equals(selected.getPath()))
+                        .findFirst()
+                        .ifPresent(entry -> deckTable.getSelectionModel().select(entry));
+            }
+        });
+    }
+
+    /**
+     * Handles opening the selected deck and returns to the main scene, where its loading progress is shown.
+     */
+    @FXML
+    public void handleOpen(ActionEvent actionEvent) {
+        DeckCatalog.Entry entry = deckTable.getSelectionModel().getSelectedItem();
+        if (entry == null) {
+            return;
+        }
+        FlashcardApp.getInstance().loadDeck(entry.getPath());
+        FlashcardApp.getInstance().setFXMLScene("MainScene");
+    }
+
+    /**
+     * Handles adding deck files to the library without opening them.
+     */
+    @FXML
+    public void handleAddDecks(ActionEvent actionEvent) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Add Decks to Library");
+        fileChooser.getExtensionFilters().addAll(MainSceneController.JSON_FILTER, MainSceneController.ZIP_FILTER,
+                MainSceneController.BINARY_FILTER, MainSceneController.DATABASE_FILTER, MainSceneController.SPREADSHEET_FILTER);
+        List<File> files = fileChooser.showOpenMultipleDialog(FlashcardApp.getInstance().getPrimaryStage());
+        if (files == null) {
+            return;
+        }
+        DeckCatalog catalog = DeckCatalog.getInstance();
+        for (File file : files) {
+            catalog.add(file.getAbsolutePath());
+        }
+        // the catalog handles requests in order, so the entries are up to date once this has run
+        catalog.refresh().thenAccept(this::showEntries);
+    }
+
+    /**
+     * Handles removing the selected deck from the library. The deck file is kept.
+     */
+    @FXML
+    public void handleRemove(ActionEvent actionEvent) {
+        DeckCatalog.Entry entry = deckTable.getSelectionModel().getSelectedItem();
+        if (entry == null) {
+            return;
+        }
+        deckTable.getItems().remove(entry);
+        DeckCatalog.getInstance().remove(entry.getPath());
+    }
+
+    /**
+     * Handles navigation back to the main scene.
+     */
+    @FXML
+    public void handleBack(ActionEvent actionEvent) {
+        FlashcardApp.getInstance().setFXMLScene("MainScene");
+    }
+}
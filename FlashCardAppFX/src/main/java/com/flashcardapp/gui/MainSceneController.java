@@ -2,13 +2,24 @@ package com.flashcardapp.gui;
 
 import com.flashcardapp.FlashcardApp;
 import com.flashcardapp.model.Deck;
+import com.flashcardapp.util.BinaryDeckHandler;
+import com.flashcardapp.util.DatabaseDeckHandler;
+import com.flashcardapp.util.DeckLoadTask;
+import com.flashcardapp.util.DelimitedTextDeckHandler;
+import com.flashcardapp.util.ZipDeckHandler;
 import com.flashcardapp.util.ConfigHandler;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
+import javafx.concurrent.Worker;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Text;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -21,15 +32,105 @@ import java.io.IOException;
  */
 public class MainSceneController {
 
+    static final FileChooser.ExtensionFilter JSON_FILTER = new FileChooser.ExtensionFilter("JSON Files", "*.json");
+    static final FileChooser.ExtensionFilter BINARY_FILTER = new FileChooser.ExtensionFilter("Binary Deck Files", "*" + BinaryDeckHandler.EXTENSION);
+    static final FileChooser.ExtensionFilter ZIP_FILTER = new FileChooser.ExtensionFilter("Deck Archives", "*" + ZipDeckHandler.EXTENSION);
+    static final FileChooser.ExtensionFilter DATABASE_FILTER = new FileChooser.ExtensionFilter("Deck Databases", "*" + DatabaseDeckHandler.EXTENSION);
+    static final FileChooser.ExtensionFilter SPREADSHEET_FILTER = new FileChooser.ExtensionFilter("Spreadsheets",
+            "*" + DelimitedTextDeckHandler.CSV_EXTENSION, "*" + DelimitedTextDeckHandler.TSV_EXTENSION);
+
     @FXML
     private Button startStudyingButton;
+    @FXML
+    private Button createDeckButton;
+    @FXML
+    private Button exportDeckButton;
+    @FXML
+    private Text statusText;
+    @FXML
+    private HBox loadProgressBox;
+    @FXML
+    private ProgressBar loadProgressBar;
+
+    private DeckLoadTask shownLoadTask; // the load whose progress is shown
+    // kept here so the application only holds the listener weakly and the scene can be discarded
+    private final ChangeListener<DeckLoadTask> deckLoadListener = (observable, oldTask, loadTask) -> {
+        if (loadTask != null) {
+            showLoadProgress(loadTask);
+        }
+    };
 
     /**
-     * Initializes the controller by setting the study button's enabled state based on the presence of a current deck.
+     * Initializes the controller by setting the study button's enabled state based on the presence of a current deck,
+     * and shows the progress of a deck that is still loading or starts loading later, such as the last deck at startup.
      */
     @FXML
     public void initialize() {
-        startStudyingButton.setDisable(FlashcardApp.getInstance().getCurrentDeck() == null);
+        updateStudyButton();
+        DeckLoadTask loadTask = FlashcardApp.getInstance().getDeckLoadTask();
+        if (loadTask != null) {
+            showLoadProgress(loadTask);
+        }
+        FlashcardApp.getInstance().deckLoadTaskProperty().addListener(new WeakChangeListener<>(deckLoadListener));
+    }
+
+    /**
+     * Enables the study button once the current deck has at least one flashcard.
+     */
+    private void updateStudyButton() {
+        Deck deck = FlashcardApp.getInstance().getCurrentDeck();
+        startStudyingButton.setDisable(deck == null || deck.getFlashcardCount() == 0);
+    }
+
+    /**
+     * Follows a deck being loaded in the background. Editing and exporting are disabled until it has loaded, while
+     * studying becomes possible as soon as the first flashcards are in.
+     * @param loadTask The task loading the deck.
+     */
+    private void showLoadProgress(DeckLoadTask loadTask) {
+        if (shownLoadTask == loadTask) {
+            return;
+        }
+        shownLoadTask = loadTask;
+        loadProgressBox.visibleProperty().bind(loadTask.runningProperty());
+        loadProgressBox.managedProperty().bind(loadTask.runningProperty());
+        loadProgressBar.progressProperty().bind(loadTask.progressProperty());
+        createDeckButton.disableProperty().bind(loadTask.runningProperty());
+        exportDeckButton.disableProperty().bind(loadTask.runningProperty());
+
+        statusText.setText(loadTask.getMessage());
+        loadTask.messageProperty().addListener((observable, oldMessage, message) -> {
+            if (shownLoadTask == loadTask && loadTask.isRunning()) {
+                statusText.setText(message);
+            }
+        });
+        loadTask.loadedCardsProperty().addListener((observable, oldCount, count) -> updateStudyButton());
+        loadTask.stateProperty().addListener((observable, oldState, state) -> {
+            if (shownLoadTask != loadTask) {
+                return; // replaced by a newer load
+            }
+            if (state == Worker.State.SUCCEEDED) {
+                Deck deck = loadTask.getValue();
+                String deckPath = deck.getSavedPath();
+                statusText.setText((deckPath != null && !deckPath.equals(loadTask.getPath())
+                        ? "Imported " + deck.getName() + " into " + new File(deckPath).getName()
+                        : "Loaded " + deck.getName()) + " (" + deck.getFlashcardCount() + " cards)");
+            } else if (state == Worker.State.CANCELLED) {
+                statusText.setText("Loading cancelled");
+            } else if (state == Worker.State.FAILED) {
+                statusText.setText("Could not load the deck: " + loadTask.getException().getMessage());
+            }
+            updateStudyButton();
+        });
+    }
+
+    /**
+     * Handles cancelling the deck being loaded.
+     * @param actionEvent The event triggered by clicking the "Cancel" button.
+     */
+    @FXML
+    public void handleCancelLoad(ActionEvent actionEvent) {
+        FlashcardApp.getInstance().cancelDeckLoad();
     }
 
     /**
@@ -65,16 +166,25 @@ public class MainSceneController {
         FlashcardApp.getInstance().setFXMLScene("SettingsScene");
     }
 
+    /**
+     * Handles the action to switch to the deck library.
+     * @param actionEvent The event triggered by clicking the "Library" button.
+     */
+    @FXML
+    public void handleLibrary(ActionEvent actionEvent) {
+        FlashcardApp.getInstance().setFXMLScene("LibraryScene");
+    }
+
     /**
      * Handles importing a deck from a file.
      * @param actionEvent The event triggered by clicking the "Import Deck" button.
      */
     @FXML
     public void handleImportDeck(ActionEvent actionEvent) {
-        File file = chooseFile("Import Study Deck", "JSON Files", "*.json");
+        File file = chooseFile("Import Study Deck", JSON_FILTER, ZIP_FILTER, BINARY_FILTER, DATABASE_FILTER, SPREADSHEET_FILTER);
         if (file != null) {
-            FlashcardApp.getInstance().loadDeck(file.getAbsolutePath());
-            startStudyingButton.setDisable(false);
+            showLoadProgress(FlashcardApp.getInstance().loadDeck(file.getAbsolutePath()));
+            updateStudyButton();
         }
     }
 
@@ -84,9 +194,13 @@ public class MainSceneController {
      */
     @FXML
     public void handleExportDeck(ActionEvent actionEvent) {
-        File file = chooseFileToSave("Export Study Deck", "JSON Files", "*.json");
+        File file = chooseFileToSave("Export Study Deck", JSON_FILTER, ZIP_FILTER, BINARY_FILTER, DATABASE_FILTER, SPREADSHEET_FILTER);
         if (file != null) {
-            FlashcardApp.getInstance().saveDeck(FlashcardApp.getInstance().getCurrentDeck(), file.getAbsolutePath());
+            statusText.setText("Exporting deck...");
+            FlashcardApp.getInstance().saveDeck(FlashcardApp.getInstance().getCurrentDeck(), file.getAbsolutePath())
+                    .whenComplete((ignored, error) -> statusText.setText(error == null
+                            ? "Deck exported to " + file.getName()
+                            : "Could not export the deck: " + error.getMessage()));
         }
     }
 
@@ -116,16 +230,14 @@ public class MainSceneController {
     /**
      * Opens a file chooser to select a file for importing.
      * @param title The title of the file chooser window.
-     * @param extensionDescription The description of the allowed file types.
-     * @param extensionPattern The file extension pattern.
+     * @param extensionFilters The allowed file types, the first being selected by default.
      * @return The selected file, or null if no file is selected.
      */
-    private File chooseFile(String title, String extensionDescription, String extensionPattern) {
+    private File chooseFile(String title, FileChooser.ExtensionFilter... extensionFilters) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
         
-        FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter(extensionDescription, extensionPattern);
-        fileChooser.getExtensionFilters().add(extFilter);
+        fileChooser.getExtensionFilters().addAll(extensionFilters);
         
         return fileChooser.showOpenDialog(FlashcardApp.getInstance().getPrimaryStage());
     }
@@ -133,16 +245,14 @@ public class MainSceneController {
     /**
      * Opens a file chooser to select a file for saving.
      * @param title The title of the file chooser window.
-     * @param extensionDescription The description of the allowed file types.
-     * @param extensionPattern The file extension pattern.
+     * @param extensionFilters The allowed file types, the first being selected by default.
      * @return The file selected for saving, or null if no file is selected.
      */
-    private File chooseFileToSave(String title, String extensionDescription, String extensionPattern) {
+    private File chooseFileToSave(String title, FileChooser.ExtensionFilter... extensionFilters) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle(title);
         
-        FileChooser.ExtensionFilter extFilter = new FileChooser.ExtensionFilter(extensionDescription, extensionPattern);
-        fileChooser.getExtensionFilters().add(extFilter);
+        fileChooser.getExtensionFilters().addAll(extensionFilters);
         
         return fileChooser.showSaveDialog(FlashcardApp.getInstance().getPrimaryStage());
     }
@@ -22,8 +22,7 @@ public class SettingsSceneController {
     @FXML
     public void initialize() {
         themeChoiceBox.getItems().addAll("light", "dark");
-        String currentTheme = ConfigHandler.getInstance().getOption("theme", String.class);
-        themeChoiceBox.setValue(currentTheme);
+        themeChoiceBox.setValue(ConfigHandler.getInstance().findOption("theme", String.class).orElse("light"));
     }
 
     /**
@@ -2,9 +2,13 @@ package com.flashcardapp.gui;
 
 import com.flashcardapp.FlashcardApp;
 import com.flashcardapp.logic.IAlgorithm;
+import com.flashcardapp.logic.SessionCheckpoint;
 import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckDiff;
 import com.flashcardapp.model.Flashcard;
 import javafx.beans.binding.Bindings;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
@@ -34,8 +38,14 @@ public class StudySessionSceneController {
 
     private Deck currentDeck;
     private IAlgorithm studyAlgorithm;
+    private SessionCheckpoint checkpoint; // null if the session is not checkpointed
     private boolean wasLastOfCycle = false;
     private int countForCycle = 0;
+    private final ChangeListener<DeckDiff> externalChangeListener = (observable, oldDiff, diff) -> {
+        if (diff != null) {
+            applyExternalChanges(diff);
+        }
+    };
 
     /**
      * Initializes the controller. This method sets up the initial state of the UI components,
@@ -50,15 +60,48 @@ public class StudySessionSceneController {
         countForCycle = 0;
         showFlashcard();
         countForCycle = 0;
+        FlashcardApp.getInstance().externalDeckChangeProperty().addListener(new WeakChangeListener<>(externalChangeListener));
     }
 
     /**
-     * Loads deck and study algorithm from the application instance.
+     * Follows flashcards added to or deleted from the deck file outside the application, which the application has
+     * already applied to the session. The checkpoint starts over from the changed session, since the responses
+     * recorded so far refer to positions that no longer exist.
+     * @param diff The changes applied to the current deck.
+     */
+    private void applyExternalChanges(DeckDiff diff) {
+        if (diff.getAdded().isEmpty() && diff.getRemovedIds().length == 0) {
+            return;
+        }
+        if (checkpoint != null) {
+            checkpoint.start(studyAlgorithm);
+        }
+        countForCycle = Math.min(countForCycle, Math.max(0, studyAlgorithm.getCycleLength() - 1));
+        showFlashcard();
+    }
+
+    /**
+     * Loads deck and study algorithm from the application instance, and resumes the deck's unfinished session if
+     * it was run with the same algorithm and number of cycles.
      */
     private void loadDeckAndAlgorithm() {
         currentDeck = FlashcardApp.getInstance().getCurrentDeck();
         studyAlgorithm = FlashcardApp.getInstance().getStudyAlgorithm();
         studyAlgorithm.initialize(currentDeck.getFlashcards());
+
+        // a deck that is still loading cannot be matched against a saved session, so that session is kept for later
+        String deckPath = FlashcardApp.getInstance().getCurrentDeckPath();
+        if (deckPath == null || FlashcardApp.getInstance().getDeckLoadTask() != null) {
+            return;
+        }
+        checkpoint = SessionCheckpoint.forDeck(deckPath);
+        boolean saved = checkpoint.exists();
+        if (!saved || !checkpoint.restore(studyAlgorithm)) {
+            if (saved) {
+                studyAlgorithm.initialize(currentDeck.getFlashcards()); // drop whatever part of the session was restored
+            }
+            checkpoint.start(studyAlgorithm);
+        }
     }
 
     /**
@@ -136,7 +179,7 @@ public class StudySessionSceneController {
             wasLastOfCycle = false;
         }
         if (studyAlgorithm.moveToNext()) {
-            if(countForCycle < currentDeck.getFlashcardCount() - 1)
+            if(countForCycle < studyAlgorithm.getCycleLength() - 1)
                 countForCycle++;
             else
                 countForCycle = 0;
@@ -154,7 +197,7 @@ public class StudySessionSceneController {
             if(countForCycle > 0)
                 countForCycle--;
             else
-                countForCycle = currentDeck.getFlashcardCount() - 1;
+                countForCycle = studyAlgorithm.getCycleLength() - 1;
             showFlashcard();
         }
     }
@@ -201,6 +244,9 @@ public class StudySessionSceneController {
     @FXML
     public void handleRestartSession(ActionEvent actionEvent) {
         studyAlgorithm.resetSession();
+        if (checkpoint != null) {
+            checkpoint.start(studyAlgorithm);
+        }
         showFlashcard();
         updateButtons(false); // Re-enable buttons as the answered indexes are now clear
     }
@@ -211,13 +257,21 @@ public class StudySessionSceneController {
      */
     private void processResponse(boolean isCorrect) {
         Flashcard currentCard = studyAlgorithm.getCurrentFlashcard();
+        int index = studyAlgorithm.getCurrentIndex();
         studyAlgorithm.recordResponse(currentCard, isCorrect);
+        if (checkpoint != null) {
+            if (studyAlgorithm.isSessionComplete()) {
+                checkpoint.discard();
+            } else {
+                checkpoint.recordResponse(studyAlgorithm, index, currentCard, isCorrect);
+            }
+        }
 
         correctButton.setDisable(true);
         incorrectButton.setDisable(true);
 
         updateSessionStats();
-        updateButtons(countForCycle == currentDeck.getFlashcardCount() - 1);
+        updateButtons(countForCycle == studyAlgorithm.getCycleLength() - 1);
     }
 
     /**
@@ -246,7 +300,7 @@ public class StudySessionSceneController {
             questionText.setText(card.getQuestion());
             answerText.setText(card.getAnswer());
             int index = countForCycle;
-            sessionStatsText.setText("Current Card: " + (index+1) + "/" + currentDeck.getFlashcardCount()
+            sessionStatsText.setText("Current Card: " + (index+1) + "/" + studyAlgorithm.getCycleLength()
                     + "\nMastery Level: " + studyAlgorithm.getMasteryLevel(card));
             answerText.setVisible(false); // Ensure the answer is hidden initially
             // reset button text for answer visibility
@@ -258,6 +312,11 @@ public class StudySessionSceneController {
 
             correctButton.setDisable(studyAlgorithm.hasAnsweredThisCycle(card) || studyAlgorithm.isSessionComplete());
             incorrectButton.setDisable(studyAlgorithm.hasAnsweredThisCycle(card) || studyAlgorithm.isSessionComplete());
+        } else if (studyAlgorithm.isSessionComplete()) {
+            // a scheduled session with no cards due today
+            questionText.setText("No cards are due for review");
+            answerText.setText("");
+            updateButtons(false);
         }
     }
 
@@ -314,7 +373,6 @@ public class StudySessionSceneController {
      */
     private void updateSessionStats() {
 
-        int totalCards = currentDeck.getFlashcardCount() * studyAlgorithm.getTotalCycles();
         int totalCorrect = studyAlgorithm.getTotalCorrect();
         int totalIncorrect = studyAlgorithm.getTotalIncorrect();
 
@@ -327,7 +385,7 @@ public class StudySessionSceneController {
         } else {
             sessionStatsText.setText("Total Correct: " + totalCorrect + "\n" +
                     "Total Incorrect: " + totalIncorrect + "\n" +
-                    "Remaining Cards: " + (totalCards - totalCorrect - totalIncorrect));
+                    "Remaining Cards: " + studyAlgorithm.getRemainingResponses());
         }
 
     }
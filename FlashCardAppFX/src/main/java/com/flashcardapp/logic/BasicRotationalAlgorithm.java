@@ -1,16 +1,31 @@
 package com.flashcardapp.logic;
 
 import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.LongIntHashMap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 /**
  * A basic implementation of a flashcard study algorithm that rotates through the flashcards in order.
+ * <p>
+ * The state of each card is kept in arrays indexed by the card's position in the session. A card counts as answered
+ * this cycle when its stamp equals the number of the current cycle, so a new cycle starts without clearing anything,
+ * and recording a response or moving between cards allocates nothing.
  */
 public class BasicRotationalAlgorithm implements IAlgorithm {
-    private List<Flashcard> flashcards;
-    private Set<Flashcard> answeredThisCycle;
-    private Map<Flashcard, int[]> masteryMap;
+    private Flashcard[] flashcards = new Flashcard[0];
+    private int count;
+    // indexed by position in the session
+    private int[] answeredStamps = new int[0]; // the cycle the card was last answered in, plus one
+    private boolean[] answeredCorrectly = new boolean[0]; // the last answer; only meaningful if answered this cycle
+    private int[] correctCounts = new int[0];
+    private int[] attemptCounts = new int[0];
+    private int stamp = 1; // the stamp of cards answered this cycle
+    private int answeredThisCycle;
+    private LongIntHashMap positions; // card id to position; built when a card other than the current one is looked up
     private int currentIndex = -1;
 
     private int totalCorrect;
@@ -24,12 +39,15 @@ public class BasicRotationalAlgorithm implements IAlgorithm {
 
     @Override
     public void initialize(List<Flashcard> flashcards) {
-        this.flashcards = new ArrayList<>(flashcards);
-        answeredThisCycle = new HashSet<>();
-        masteryMap = new HashMap<>();
-        for (Flashcard card : flashcards) {
-            masteryMap.put(card, new int[2]); // [0] for correct counts, [1] for attempts
-        }
+        this.flashcards = flashcards.toArray(new Flashcard[0]);
+        count = this.flashcards.length;
+        answeredStamps = new int[count];
+        answeredCorrectly = new boolean[count];
+        correctCounts = new int[count];
+        attemptCounts = new int[count];
+        stamp = 1;
+        answeredThisCycle = 0;
+        positions = null;
         currentIndex = -1;
         totalCycles = 0;
         
@@ -40,27 +58,94 @@ public class BasicRotationalAlgorithm implements IAlgorithm {
         moveToNext();
     }
 
+    @Override
+    public void appendFlashcards(List<Flashcard> flashcards) {
+        if (count + flashcards.size() > this.flashcards.length) {
+            int capacity = Math.max(count + flashcards.size(), count * 2);
+            this.flashcards = Arrays.copyOf(this.flashcards, capacity);
+            answeredStamps = Arrays.copyOf(answeredStamps, capacity);
+            answeredCorrectly = Arrays.copyOf(answeredCorrectly, capacity);
+            correctCounts = Arrays.copyOf(correctCounts, capacity);
+            attemptCounts = Arrays.copyOf(attemptCounts, capacity);
+        }
+        for (Flashcard flashcard : flashcards) {
+            if (positions != null) {
+                positions.put(flashcard.getId(), count);
+            }
+            this.flashcards[count++] = flashcard;
+        }
+    }
+
+    @Override
+    public void removeFlashcards(long[] cardIds) {
+        LongIntHashMap removed = new LongIntHashMap(cardIds.length);
+        for (long cardId : cardIds) {
+            removed.put(cardId, 1);
+        }
+        int kept = 0;
+        int keptBeforeCurrent = 0;
+        answeredThisCycle = 0;
+        for (int i = 0; i < count; i++) {
+            if (removed.containsKey(flashcards[i].getId())) {
+                continue;
+            }
+            if (i < currentIndex) {
+                keptBeforeCurrent++;
+            }
+            flashcards[kept] = flashcards[i];
+            answeredStamps[kept] = answeredStamps[i];
+            answeredCorrectly[kept] = answeredCorrectly[i];
+            correctCounts[kept] = correctCounts[i];
+            attemptCounts[kept] = attemptCounts[i];
+            if (answeredStamps[kept] == stamp) {
+                answeredThisCycle++;
+            }
+            kept++;
+        }
+        Arrays.fill(flashcards, kept, count, null);
+        count = kept;
+        positions = null;
+        currentIndex = keptBeforeCurrent < count ? keptBeforeCurrent : 0;
+        if (count > 0 && answeredThisCycle == count) {
+            totalCycles++;
+            stamp++;
+            answeredThisCycle = 0;
+        }
+    }
+
     @Override
     public void recordResponse(Flashcard flashcard, boolean isCorrect) {
+        int position = positionOf(flashcard);
         if (isCorrect) {
             totalCorrect++;
-            masteryMap.get(flashcard)[0]++; // Increment correct count
         } else {
             totalIncorrect++;
         }
-        masteryMap.get(flashcard)[1]++; // Increment attempt count
-        answeredThisCycle.add(flashcard);
-        if (answeredThisCycle.size() == flashcards.size()) {
+        if (position < 0) {
+            return;
+        }
+        if (isCorrect) {
+            correctCounts[position]++;
+        }
+        attemptCounts[position]++;
+        answeredCorrectly[position] = isCorrect;
+        if (answeredStamps[position] != stamp) {
+            answeredStamps[position] = stamp;
+            answeredThisCycle++;
+        }
+        if (answeredThisCycle == count) {
             totalCycles++;
-            answeredThisCycle.clear();
+            stamp++;
+            answeredThisCycle = 0;
         }
     }
 
     @Override
     public String getMasteryLevel(Flashcard card) {
-        int[] stats = masteryMap.get(card);
-        if (stats != null && stats[1] > 0) {
-            double masteryPercentage = (double) stats[0] / stats[1] * 100;
+        int position = positionOf(card);
+        int attempts = position >= 0 ? attemptCounts[position] : 0;
+        if (attempts > 0) {
+            double masteryPercentage = (double) correctCounts[position] / attempts * 100;
             return String.format("%.2f%%", masteryPercentage);
         }
         return "Unattempted";
@@ -73,20 +158,20 @@ public class BasicRotationalAlgorithm implements IAlgorithm {
 
     @Override
     public Flashcard getCurrentFlashcard() {
-        if (currentIndex >= 0 && currentIndex < flashcards.size()) {
-            return flashcards.get(currentIndex);
+        if (currentIndex >= 0 && currentIndex < count) {
+            return flashcards[currentIndex];
         }
         return null;
     }
 
     public int getPreviousFlashcardIndex() {
-        int previousIndex = currentIndex - 1 < 0 ? flashcards.size() - 1 : currentIndex - 1;
+        int previousIndex = currentIndex - 1 < 0 ? count - 1 : currentIndex - 1;
         currentIndex = previousIndex;
         return previousIndex;
     }
 
     public int getNextFlashcardIndex() {
-        int nextIndex = (currentIndex + 1) % flashcards.size();
+        int nextIndex = (currentIndex + 1) % count;
         currentIndex = nextIndex;
         return nextIndex;
     }
@@ -106,9 +191,20 @@ public class BasicRotationalAlgorithm implements IAlgorithm {
         return maxCycles > 0 ? maxCycles : totalCycles;
     }
 
+    @Override
+    public int getCycleLength() {
+        return count;
+    }
+
+    @Override
+    public int getRemainingResponses() {
+        return count * getTotalCycles() - totalCorrect - totalIncorrect;
+    }
+
     @Override
     public boolean hasAnsweredThisCycle(Flashcard flashcard) {
-        return answeredThisCycle.contains(flashcard);
+        int position = positionOf(flashcard);
+        return position >= 0 && answeredStamps[position] == stamp;
     }
 
     @Override
@@ -128,17 +224,89 @@ public class BasicRotationalAlgorithm implements IAlgorithm {
         return currentIndex == 0;
     }
 
+    @Override
+    public int getMaxCycles() {
+        return maxCycles;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(currentIndex);
+        out.writeInt(totalCorrect);
+        out.writeInt(totalIncorrect);
+        out.writeInt(totalCycles);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(flashcards[i].getId());
+            out.writeByte(answeredStamps[i] != stamp ? -1 : answeredCorrectly[i] ? 1 : 0); // -1 if not answered this cycle
+            out.writeInt(correctCounts[i]);
+            out.writeInt(attemptCounts[i]);
+        }
+    }
+
+    @Override
+    public void restoreState(DataInput in) throws IOException {
+        currentIndex = in.readInt();
+        totalCorrect = in.readInt();
+        totalIncorrect = in.readInt();
+        totalCycles = in.readInt();
+        Flashcard[] ordered = new Flashcard[count];
+        stamp = 1;
+        answeredThisCycle = 0;
+        positions = null;
+        SessionCheckpoint.CardReader cards = new SessionCheckpoint.CardReader(Arrays.asList(flashcards).subList(0, count), in);
+        for (int i = 0; cards.hasNext(); i++) {
+            ordered[i] = flashcards[cards.nextIndex()];
+            int answered = in.readByte();
+            answeredStamps[i] = answered >= 0 ? stamp : 0;
+            answeredCorrectly[i] = answered > 0;
+            if (answered >= 0) {
+                answeredThisCycle++;
+            }
+            correctCounts[i] = in.readInt();
+            attemptCounts[i] = in.readInt();
+        }
+        flashcards = ordered;
+    }
+
+    @Override
+    public void replayResponse(int index, long cardId, boolean isCorrect) throws IOException {
+        currentIndex = index;
+        recordResponse(SessionCheckpoint.cardAt(Arrays.asList(flashcards).subList(0, count), index, cardId), isCorrect);
+    }
+
     @Override
     public void resetSession() {
-        answeredThisCycle.clear();
+        stamp++;
+        answeredThisCycle = 0;
         currentIndex = -1;
         totalCorrect = 0;
         totalIncorrect = 0;
         totalCycles = 0;
-        for (int[] stats : masteryMap.values()) {
-            stats[0] = 0;
-            stats[1] = 0;
-        }
+        Arrays.fill(correctCounts, 0, count, 0);
+        Arrays.fill(attemptCounts, 0, count, 0);
         moveToNext();
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the position of a card in the session, looking the card up by id unless it is the current one.
+     * @return the position, or -1 if the card is not in the session.
+     */
+    private int positionOf(Flashcard flashcard) {
+        if (currentIndex >= 0 && currentIndex < count && flashcards[currentIndex] == flashcard) {
+            return currentIndex;
+        }
+        if (positions == null) {
+            positions = new LongIntHashMap(count);
+            for (int i = 0; i < count; i++) {
+                positions.put(flashcards[i].getId(), i);
+            }
+        }
+        return positions.get(flashcard.getId(), -1);
+    }
+}
@@ -1,6 +1,10 @@
 package com.flashcardapp.logic;
 
 import com.flashcardapp.model.Flashcard;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -14,6 +18,19 @@ public interface IAlgorithm {
      */
     void initialize(List<Flashcard> flashcards);
 
+    /**
+     * Adds flashcards to a session that is already running, such as cards of a deck that is still loading.
+     * @param flashcards the flashcards to add to the end of the session.
+     */
+    void appendFlashcards(List<Flashcard> flashcards);
+
+    /**
+     * Takes flashcards out of a session that is already running, such as cards deleted from the deck file outside the
+     * application. If the current flashcard is removed, the session moves on to the flashcard that followed it.
+     * @param cardIds the ids of the flashcards to remove; ids of flashcards not in the session are ignored.
+     */
+    void removeFlashcards(long[] cardIds);
+
     /**
      * Records the user's response to a flashcard.
      * @param flashcard the flashcard that was answered.
@@ -57,6 +74,18 @@ public interface IAlgorithm {
      */
     int getTotalCycles();
 
+    /**
+     * Retrieves the number of flashcards the current cycle goes through.
+     * @return the number of flashcards in the current cycle.
+     */
+    int getCycleLength();
+
+    /**
+     * Retrieves the number of responses still needed to complete the session.
+     * @return the number of remaining responses.
+     */
+    int getRemainingResponses();
+
     /**
      * Checks if the current flashcard has been answered in this cycle.
      * @param flashcard the flashcard to check.
@@ -87,4 +116,40 @@ public interface IAlgorithm {
      * @return a string representing the mastery level.
      */
     String getMasteryLevel(Flashcard card);
+
+    /**
+     * Retrieves the maximum number of cycles the session was started with.
+     * @return the maximum number of cycles.
+     */
+    int getMaxCycles();
+
+    /**
+     * Retrieves the position of the current flashcard in the order the session presents them.
+     * @return the index of the current flashcard.
+     */
+    int getCurrentIndex();
+
+    /**
+     * Writes the complete state of the session, so that {@link #restoreState} can continue it later.
+     * @param out the output to write the state to.
+     * @throws IOException if the state cannot be written.
+     */
+    void writeState(DataOutput out) throws IOException;
+
+    /**
+     * Restores a session from the state written by {@link #writeState}. The algorithm must have been initialized
+     * with the same flashcards the state was written for, in any order.
+     * @param in the input to read the state from.
+     * @throws IOException if the state cannot be read or does not match the flashcards.
+     */
+    void restoreState(DataInput in) throws IOException;
+
+    /**
+     * Records a response again while restoring a session, without storing it as review progress a second time.
+     * @param index the position the flashcard had when it was answered.
+     * @param cardId the id of the flashcard that was answered.
+     * @param isCorrect true if the response was correct.
+     * @throws IOException if the flashcard at the position does not have the given id.
+     */
+    void replayResponse(int index, long cardId, boolean isCorrect) throws IOException;
 }
\ No newline at end of file
@@ -0,0 +1,474 @@
+package com.flashcardapp.logic;
+
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.LongIntHashMap;
+import com.flashcardapp.util.ReviewProgressStore;
+import com.flashcardapp.util.ReviewScheduleStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A study algorithm that schedules each card by the day it is due, in the manner of SM-2.
+ * <p>
+ * Every card has an ease and an interval. A card recalled correctly comes back after 1 day, then 6 days, then after
+ * its previous interval times its ease. A card that was missed starts over at 1 day and loses some ease, and is
+ * repeated in the same session until it has been recalled. Only a card's first response of the day changes its
+ * schedule.
+ * <p>
+ * A session holds the cards that are due today, the longest overdue first, followed by a limited number of cards that
+ * have never been reviewed. The due cards are looked up through the day index of the {@link ReviewScheduleStore} and
+ * found in the deck by id, and cards that have never been reviewed are taken from a cursor moving through the deck.
+ * Building a session still takes time linear in the size of the deck: the session keeps its own copy of the deck's
+ * list, since the deck is changed in place before the session is told, and copying a lazily read deck reads every
+ * card. The session goes through its cards in passes; each pass after the first repeats the cards missed in the pass
+ * before, and the session is complete once a pass has no cards.
+ */
+public class ScheduledReviewAlgorithm implements IAlgorithm {
+    private static final int INITIAL_EASE = 2500; // in thousandths
+    private static final int MIN_EASE = 1300;
+    private static final int EASE_PENALTY = 200; // ease lost by missing a card
+    private static final int FIRST_INTERVAL = 1; // days
+    private static final int SECOND_INTERVAL = 6;
+
+    private final int newCardsPerDay;
+    private final ReviewScheduleStore schedule;
+    private final ReviewProgressStore progressStore; // null if progress is not kept between sessions
+    private final Clock clock;
+
+    private int today; // the day the session was built for, counted in days since the epoch
+    private List<Flashcard> pass; // the cards of the current pass, in review order
+    private List<Flashcard> missed; // the cards missed in the current pass, repeated in the next one
+    private final List<Flashcard> deckCards;
+    private final LongIntHashMap positions; // card id to position in the deck, for the cards before indexedCount
+    private int indexedCount;
+    private int nextNewCard; // the position in the deck to look for cards that have never been reviewed from
+    private final LongIntHashMap queued; // cards in the session
+    private final LongIntHashMap answeredThisPass; // 1 if the card was answered correctly this pass, 0 if not
+    private int newCardsQueued;
+    private int currentIndex;
+    private int passesCompleted;
+    private int totalCorrect;
+    private int totalIncorrect;
+
+    /**
+     * Constructs a scheduled review session whose schedule is only kept in memory.
+     * @param newCardsPerDay the number of cards that have never been reviewed to add to a session.
+     */
+    public ScheduledReviewAlgorithm(int newCardsPerDay) {
+        this(newCardsPerDay, new ReviewScheduleStore(), null);
+    }
+
+    /**
+     * Constructs a scheduled review session that continues from, and records to, the stored schedule of a deck.
+     * @param newCardsPerDay the number of cards that have never been reviewed to add to a session.
+     * @param schedule the store holding the deck's review schedule.
+     * @param progressStore the store to record each card's number of successful reviews in a row to as its mastery
+     *                      level, or null to not record it.
+     */
+    public ScheduledReviewAlgorithm(int newCardsPerDay, ReviewScheduleStore schedule, ReviewProgressStore progressStore) {
+        this(newCardsPerDay, schedule, progressStore, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Constructs a scheduled review session that tells the day from a clock, such as for simulating sessions on
+     * later days.
+     * @param newCardsPerDay the number of cards that have never been reviewed to add to a session.
+     * @param schedule the store holding the deck's review schedule.
+     * @param progressStore the store to record mastery levels to, or null to not record them.
+     * @param clock the clock telling the current day.
+     */
+    public ScheduledReviewAlgorithm(int newCardsPerDay, ReviewScheduleStore schedule, ReviewProgressStore progressStore, Clock clock) {
+        this.newCardsPerDay = newCardsPerDay;
+        this.schedule = schedule;
+        this.progressStore = progressStore;
+        this.clock = clock;
+        this.pass = new ArrayList<>();
+        this.missed = new ArrayList<>();
+        this.positions = new LongIntHashMap();
+        this.deckCards = new ArrayList<>();
+        this.queued = new LongIntHashMap();
+        this.answeredThisPass = new LongIntHashMap();
+    }
+
+    /**
+     * {@inheritDoc} The list is copied, which is linear in the size of the deck. The cards due today are then looked
+     * up in the schedule's day index and found in the copy by id, indexing it only as far as the last due card.
+     */
+    @Override
+    public void initialize(List<Flashcard> flashcards) {
+        clear();
+        today = (int) LocalDate.now(clock).toEpochDay();
+        deckCards.addAll(flashcards);
+        for (long cardId : schedule.findDue(today)) {
+            int position = positionOf(cardId);
+            if (position >= 0) { // cards removed from the deck keep their schedule
+                queue(deckCards.get(position));
+            }
+        }
+        queueNewCards();
+    }
+
+    @Override
+    public void appendFlashcards(List<Flashcard> flashcards) {
+        for (Flashcard flashcard : flashcards) {
+            deckCards.add(flashcard);
+            ReviewScheduleStore.Schedule cardSchedule = schedule.get(flashcard.getId());
+            if (cardSchedule != null && cardSchedule.getDueDay() <= today) {
+                queue(flashcard);
+            }
+        }
+        queueNewCards();
+    }
+
+    /**
+     * {@inheritDoc} The schedules of the removed cards are kept, like those of cards removed before the session.
+     */
+    @Override
+    public void removeFlashcards(long[] cardIds) {
+        LongIntHashMap removed = new LongIntHashMap(cardIds.length);
+        for (long cardId : cardIds) {
+            removed.put(cardId, 1);
+            queued.remove(cardId);
+            answeredThisPass.remove(cardId);
+        }
+        int kept = 0;
+        int keptBeforeNewCard = 0;
+        for (int i = 0; i < deckCards.size(); i++) {
+            Flashcard flashcard = deckCards.get(i);
+            if (!removed.containsKey(flashcard.getId())) {
+                deckCards.set(kept++, flashcard);
+                if (i < nextNewCard) {
+                    keptBeforeNewCard++;
+                }
+            }
+        }
+        deckCards.subList(kept, deckCards.size()).clear();
+        nextNewCard = keptBeforeNewCard;
+        positions.clear(); // indexed again as far as needed
+        indexedCount = 0;
+        int keptBeforeCurrent = 0;
+        for (int i = 0; i < currentIndex && i < pass.size(); i++) {
+            if (!removed.containsKey(pass.get(i).getId())) {
+                keptBeforeCurrent++;
+            }
+        }
+        pass.removeIf(flashcard -> removed.containsKey(flashcard.getId()));
+        missed.removeIf(flashcard -> removed.containsKey(flashcard.getId()));
+        currentIndex = keptBeforeCurrent < pass.size() ? keptBeforeCurrent : 0;
+        if (answeredThisPass.size() == pass.size() && (!pass.isEmpty() || !missed.isEmpty())) {
+            startNextPass();
+        }
+    }
+
+    @Override
+    public void recordResponse(Flashcard flashcard, boolean isCorrect) {
+        long id = flashcard.getId();
+        if (answeredThisPass.containsKey(id) || !queued.containsKey(id)) {
+            return; // Ignore additional responses if already answered in this pass
+        }
+        ReviewScheduleStore.Schedule previous = schedule.get(id);
+        if (previous == null || previous.getLastReviewDay() != today) { // repeats of missed cards do not count
+            ReviewScheduleStore.Schedule next = reschedule(previous, isCorrect);
+            schedule.put(id, next);
+            if (progressStore != null) {
+                progressStore.recordMastery(id, next.getRepetitions());
+            }
+        }
+        applyResponse(flashcard, isCorrect);
+    }
+
+    /**
+     * Works out the schedule of a card after a response given today.
+     */
+    private ReviewScheduleStore.Schedule reschedule(ReviewScheduleStore.Schedule previous, boolean isCorrect) {
+        int ease = previous != null ? previous.getEase() : INITIAL_EASE;
+        int repetitions = previous != null ? previous.getRepetitions() : 0;
+        int interval;
+        if (!isCorrect) {
+            ease = Math.max(MIN_EASE, ease - EASE_PENALTY);
+            repetitions = 0;
+            interval = FIRST_INTERVAL;
+        } else {
+            repetitions++;
+            if (repetitions == 1) {
+                interval = FIRST_INTERVAL;
+            } else if (repetitions == 2) {
+                interval = SECOND_INTERVAL;
+            } else {
+                interval = (int) Math.round((double) previous.getInterval() * ease / 1000);
+            }
+        }
+        return new ReviewScheduleStore.Schedule(today + interval, interval, ease, repetitions, today);
+    }
+
+    /**
+     * Updates the session with a response.
+     */
+    private void applyResponse(Flashcard flashcard, boolean isCorrect) {
+        answeredThisPass.put(flashcard.getId(), isCorrect ? 1 : 0);
+        if (isCorrect) {
+            totalCorrect++;
+        } else {
+            totalIncorrect++;
+            missed.add(flashcard);
+        }
+
+        // Start the next pass with the missed cards once every card of this pass has been answered
+        if (answeredThisPass.size() == pass.size()) {
+            startNextPass();
+        }
+    }
+
+    private void startNextPass() {
+        pass = missed;
+        missed = new ArrayList<>();
+        answeredThisPass.clear();
+        currentIndex = 0;
+        passesCompleted++;
+    }
+
+    private void queue(Flashcard flashcard) {
+        if (!queued.containsKey(flashcard.getId())) {
+            queued.put(flashcard.getId(), 1);
+            pass.add(flashcard);
+        }
+    }
+
+    /**
+     * Queues the cards that have never been reviewed from the cursor on, until the session has enough of them.
+     */
+    private void queueNewCards() {
+        while (newCardsQueued < newCardsPerDay && nextNewCard < deckCards.size()) {
+            Flashcard flashcard = deckCards.get(nextNewCard++);
+            if (!schedule.contains(flashcard.getId()) && !queued.containsKey(flashcard.getId())) {
+                queue(flashcard);
+                newCardsQueued++;
+            }
+        }
+    }
+
+    /**
+     * Finds the position of a card in the deck, indexing the cards that have not been indexed yet until it is found.
+     * Each card is indexed at most once per session, so the lookups of a session take linear time in total; a card
+     * that is not in the deck indexes the whole deck.
+     * @return The position, or -1 if the deck does not hold the card.
+     */
+    private int positionOf(long cardId) {
+        int position = positions.get(cardId, -1);
+        while (position < 0 && indexedCount < deckCards.size()) {
+            long indexedId = deckCards.get(indexedCount).getId();
+            positions.put(indexedId, indexedCount);
+            if (indexedId == cardId) {
+                position = indexedCount;
+            }
+            indexedCount++;
+        }
+        return position;
+    }
+
+    @Override
+    public boolean isSessionComplete() {
+        return pass.isEmpty();
+    }
+
+    @Override
+    public boolean isFirstCard() {
+        return answeredThisPass.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc} Returns null once the session is complete, or if no cards were due.
+     */
+    @Override
+    public Flashcard getCurrentFlashcard() {
+        return pass.isEmpty() ? null : pass.get(currentIndex);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (pass.isEmpty()) {
+            return false;
+        }
+        currentIndex = (currentIndex + 1) % pass.size();
+        return true;
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        if (pass.isEmpty()) {
+            return false;
+        }
+        currentIndex = currentIndex == 0 ? pass.size() - 1 : currentIndex - 1;
+        return true;
+    }
+
+    @Override
+    public int getTotalCorrect() {
+        return totalCorrect;
+    }
+
+    @Override
+    public int getTotalIncorrect() {
+        return totalIncorrect;
+    }
+
+    /**
+     * {@inheritDoc} Counts the passes made so far, including the current one.
+     */
+    @Override
+    public int getTotalCycles() {
+        return passesCompleted + 1;
+    }
+
+    @Override
+    public int getCycleLength() {
+        return pass.size();
+    }
+
+    /**
+     * {@inheritDoc} Cards missed from here on add to this number.
+     */
+    @Override
+    public int getRemainingResponses() {
+        return pass.size() - answeredThisPass.size() + missed.size();
+    }
+
+    @Override
+    public boolean hasAnsweredThisCycle(Flashcard flashcard) {
+        return flashcard == null || answeredThisPass.containsKey(flashcard.getId());
+    }
+
+    @Override
+    public String getMasteryLevel(Flashcard card) {
+        ReviewScheduleStore.Schedule cardSchedule = schedule.get(card.getId());
+        if (cardSchedule == null) {
+            return "New";
+        }
+        return String.format("Level %d (interval %d days, ease %.2f)", cardSchedule.getRepetitions(),
+                cardSchedule.getInterval(), cardSchedule.getEase() / 1000.0);
+    }
+
+    /**
+     * {@inheritDoc} For this algorithm, the number of cards never reviewed before that a session takes in.
+     */
+    @Override
+    public int getMaxCycles() {
+        return newCardsPerDay;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    /**
+     * {@inheritDoc} The schedules of the cards are kept by the schedule store; the state holds the session only,
+     * and is only valid on the day it was written.
+     */
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(today);
+        out.writeInt(currentIndex);
+        out.writeInt(passesCompleted);
+        out.writeInt(totalCorrect);
+        out.writeInt(totalIncorrect);
+        out.writeInt(newCardsQueued);
+        writeCards(out, pass);
+        for (Flashcard flashcard : pass) {
+            out.writeByte(answeredThisPass.get(flashcard.getId(), -1)); // -1 if not answered this pass
+        }
+        writeCards(out, missed);
+        out.writeInt(queued.size());
+        queued.<IOException>forEach((cardId, ignored) -> out.writeLong(cardId));
+    }
+
+    @Override
+    public void restoreState(DataInput in) throws IOException {
+        if (in.readInt() != today) {
+            throw new IOException("The session was started on another day");
+        }
+        currentIndex = in.readInt();
+        passesCompleted = in.readInt();
+        totalCorrect = in.readInt();
+        totalIncorrect = in.readInt();
+        newCardsQueued = in.readInt();
+        pass = readCards(in);
+        answeredThisPass.clear();
+        for (Flashcard flashcard : pass) {
+            int answered = in.readByte();
+            if (answered >= 0) {
+                answeredThisPass.put(flashcard.getId(), answered);
+            }
+        }
+        missed = readCards(in);
+        queued.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            queued.put(in.readLong(), 1);
+        }
+        if (currentIndex < 0 || currentIndex >= Math.max(1, pass.size())) {
+            throw new IOException("The session does not match the deck");
+        }
+    }
+
+    private static void writeCards(DataOutput out, List<Flashcard> flashcards) throws IOException {
+        out.writeInt(flashcards.size());
+        for (Flashcard flashcard : flashcards) {
+            out.writeLong(flashcard.getId());
+        }
+    }
+
+    private List<Flashcard> readCards(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > deckCards.size()) {
+            throw new IOException("The session does not match the deck");
+        }
+        List<Flashcard> flashcards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int position = positionOf(in.readLong());
+            if (position < 0) {
+                throw new IOException("The deck has changed since the session was saved");
+            }
+            flashcards.add(deckCards.get(position));
+        }
+        return flashcards;
+    }
+
+    @Override
+    public void replayResponse(int index, long cardId, boolean isCorrect) throws IOException {
+        Flashcard flashcard = SessionCheckpoint.cardAt(pass, index, cardId);
+        currentIndex = index;
+        if (!answeredThisPass.containsKey(cardId)) {
+            applyResponse(flashcard, isCorrect);
+        }
+    }
+
+    /**
+     * {@inheritDoc} The schedule is kept, so the restarted session holds the cards of the deck that are still due.
+     */
+    @Override
+    public void resetSession() {
+        initialize(new ArrayList<>(deckCards));
+    }
+
+    private void clear() {
+        pass = new ArrayList<>();
+        missed = new ArrayList<>();
+        deckCards.clear();
+        positions.clear();
+        indexedCount = 0;
+        nextNewCard = 0;
+        queued.clear();
+        answeredThisPass.clear();
+        newCardsQueued = 0;
+        currentIndex = 0;
+        passesCompleted = 0;
+        totalCorrect = 0;
+        totalIncorrect = 0;
+    }
+}
@@ -0,0 +1,314 @@
+package com.flashcardapp.logic;
+
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.AtomicFiles;
+import com.flashcardapp.util.DeckDataFiles;
+import com.flashcardapp.util.LongIntHashMap;
+import com.flashcardapp.util.ReviewProgressStore;
+import com.flashcardapp.util.ReviewScheduleStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps the state of a study session on disk, so that a session cut short by the application closing can be
+ * continued on the next launch.
+ * <p>
+ * A checkpoint is a snapshot of the complete algorithm state and a log that every response since the snapshot is
+ * appended to as a fixed-size record. Resuming restores the snapshot and replays the log on top of it. Once the log
+ * has grown as large as the snapshot, a new snapshot is written and the log starts over, so recording a response
+ * costs a constant amount on average and resuming never replays more responses than the snapshot holds cards.
+ */
+public class SessionCheckpoint {
+    private static final int MAGIC = 0x46435350; // "FCSP"
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 13; // index, card id, response
+    private static final long MIN_COMPACTION_BYTES = 512L * RECORD_SIZE;
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private long generation; // ties the log to the snapshot it continues
+    private long snapshotSize;
+    private long logSize = -1; // -1 until the log has been started for the current snapshot
+
+    /**
+     * Creates a checkpoint kept in the given files.
+     * @param snapshotFile The file holding the complete session state.
+     * @param logFile The file responses are appended to.
+     */
+    public SessionCheckpoint(Path snapshotFile, Path logFile) {
+        this.snapshotFile = snapshotFile;
+        this.logFile = logFile;
+    }
+
+    /**
+     * Returns the checkpoint of the session on a deck file, kept in the sessions folder of the application data
+     * directory.
+     * @param deckPath The path of the deck file.
+     * @return The checkpoint of the deck's session.
+     */
+    public static SessionCheckpoint forDeck(String deckPath) {
+        return new SessionCheckpoint(DeckDataFiles.forDeck("sessions", deckPath, ".snapshot"),
+                DeckDataFiles.forDeck("sessions", deckPath, ".log"));
+    }
+
+    /**
+     * Checks whether there is a session to resume.
+     * @return true if a snapshot exists.
+     */
+    public boolean exists() {
+        return Files.exists(snapshotFile);
+    }
+
+    /**
+     * Creates an algorithm of the kind and cycle count of the saved session, ready to be initialized and restored.
+     * @param deckPath The path of the deck whose stored progress the algorithm continues, or null to not keep progress.
+     * @return The algorithm, or an empty Optional if there is no session to resume.
+     */
+    public Optional<IAlgorithm> createAlgorithm(String deckPath) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            readHeader(in);
+            String algorithm = in.readUTF();
+            int maxCycles = in.readInt();
+            ReviewProgressStore progressStore = deckPath != null ? ReviewProgressStore.forDeck(deckPath) : null;
+            if (algorithm.equals(SpacedRepetitionAlgorithm.class.getSimpleName())) {
+                return Optional.of(new SpacedRepetitionAlgorithm(maxCycles, progressStore));
+            }
+            if (algorithm.equals(ScheduledReviewAlgorithm.class.getSimpleName())) {
+                return Optional.of(deckPath != null
+                        ? new ScheduledReviewAlgorithm(maxCycles, ReviewScheduleStore.forDeck(deckPath), progressStore)
+                        : new ScheduledReviewAlgorithm(maxCycles));
+            }
+            if (algorithm.equals(BasicRotationalAlgorithm.class.getSimpleName())) {
+                return Optional.of(new BasicRotationalAlgorithm(maxCycles));
+            }
+            System.err.println("Ignoring session checkpoint of unknown algorithm " + algorithm);
+        } catch (NoSuchFileException e) {
+            // nothing to resume
+        } catch (IOException e) {
+            System.err.println("Error reading session checkpoint: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Starts a new checkpoint from the current state of a session, replacing any earlier one.
+     * @param algorithm The algorithm running the session.
+     */
+    public synchronized void start(IAlgorithm algorithm) {
+        try {
+            writeSnapshot(algorithm);
+        } catch (IOException e) {
+            System.err.println("Error saving session checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a response given in the session. The response must already have been recorded by the algorithm.
+     * @param algorithm The algorithm running the session.
+     * @param index The position the flashcard had when it was answered.
+     * @param flashcard The flashcard that was answered.
+     * @param isCorrect true if the response was correct.
+     */
+    public synchronized void recordResponse(IAlgorithm algorithm, int index, Flashcard flashcard, boolean isCorrect) {
+        try {
+            if (logSize < 0 || logSize > Math.max(MIN_COMPACTION_BYTES, snapshotSize)) {
+                writeSnapshot(algorithm); // the snapshot already includes this response
+                return;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putInt(index).putLong(flashcard.getId()).put((byte) (isCorrect ? 1 : 0)).flip();
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(record);
+            }
+            logSize += RECORD_SIZE;
+        } catch (IOException e) {
+            System.err.println("Error saving session checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Continues the saved session in an algorithm.
+     * @param algorithm An algorithm of the kind returned by {@link #createAlgorithm}, initialized with the deck's
+     *                  flashcards. If restoring fails, it must be initialized again before it is used.
+     * @return true if the session was restored, false if there was none or it could not be read.
+     */
+    public synchronized boolean restore(IAlgorithm algorithm) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            long snapshotGeneration = readHeader(in);
+            String name = in.readUTF();
+            int maxCycles = in.readInt();
+            if (!name.equals(algorithm.getClass().getSimpleName()) || maxCycles != algorithm.getMaxCycles()) {
+                return false; // a different kind of session was started
+            }
+            algorithm.restoreState(in);
+            generation = snapshotGeneration;
+            snapshotSize = Files.size(snapshotFile);
+            logSize = replayLog(algorithm);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            System.err.println("Error restoring session checkpoint: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Removes the checkpoint, such as when the session has been completed.
+     */
+    public synchronized void discard() {
+        try {
+            Files.deleteIfExists(snapshotFile);
+            Files.deleteIfExists(logFile);
+            logSize = -1;
+        } catch (IOException e) {
+            System.err.println("Error removing session checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays the responses logged for the current snapshot. A record cut short at the end of the log is ignored.
+     * @return The size of the log up to the last complete record.
+     */
+    private long replayLog(IAlgorithm algorithm) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+            if (in.readLong() != generation) {
+                return -1; // left over from an earlier snapshot
+            }
+            long size = Long.BYTES;
+            byte[] record = new byte[RECORD_SIZE];
+            while (readRecord(in, record)) {
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                algorithm.replayResponse(buffer.getInt(), buffer.getLong(), buffer.get() == 1);
+                size += RECORD_SIZE;
+            }
+            if (size != Files.size(logFile)) {
+                try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(size); // the next record would otherwise be read out of step
+                }
+            }
+            return size;
+        } catch (NoSuchFileException | EOFException e) {
+            return -1; // no responses since the snapshot
+        }
+    }
+
+    private static boolean readRecord(InputStream in, byte[] record) throws IOException {
+        int read = in.readNBytes(record, 0, record.length);
+        return read == record.length;
+    }
+
+    /**
+     * Writes the complete state of the session to a new snapshot and starts an empty log for it.
+     */
+    private void writeSnapshot(IAlgorithm algorithm) throws IOException {
+        Files.createDirectories(snapshotFile.getParent());
+        long newGeneration = ThreadLocalRandom.current().nextLong();
+        AtomicFiles.replace(snapshotFile, file -> {
+            try (OutputStream stream = Files.newOutputStream(file);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(newGeneration);
+                out.writeUTF(algorithm.getClass().getSimpleName());
+                out.writeInt(algorithm.getMaxCycles());
+                algorithm.writeState(out);
+            }
+        });
+        generation = newGeneration;
+        snapshotSize = Files.size(snapshotFile);
+
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(generation).flip();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header);
+        }
+        logSize = Long.BYTES;
+    }
+
+    /**
+     * Reads the start of a snapshot.
+     * @return The generation of the snapshot.
+     */
+    private static long readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a session checkpoint");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported session checkpoint version " + version);
+        }
+        return in.readLong();
+    }
+
+    /**
+     * Returns the flashcard at a position in a session, checking that it is the card a checkpoint expects there.
+     * @throws IOException if the position holds another card.
+     */
+    static Flashcard cardAt(List<Flashcard> flashcards, int index, long cardId) throws IOException {
+        if (index < 0 || index >= flashcards.size() || flashcards.get(index).getId() != cardId) {
+            throw new IOException("The session does not match the deck");
+        }
+        return flashcards.get(index);
+    }
+
+    /**
+     * Reads the flashcards of a session in the order the snapshot lists them. Each flashcard is given as its id
+     * followed by state of the algorithm's own, which the algorithm reads after each call to {@link #nextIndex}.
+     */
+    static final class CardReader {
+        private final DataInput in;
+        private final LongIntHashMap positions; // card id to position in the initialized session
+        private final int count;
+        private int read;
+
+        /**
+         * @param flashcards The flashcards the algorithm was initialized with.
+         * @param in The snapshot, positioned at the number of flashcards.
+         * @throws IOException if the snapshot holds a different number of flashcards.
+         */
+        CardReader(List<Flashcard> flashcards, DataInput in) throws IOException {
+            this.in = in;
+            count = in.readInt();
+            if (count != flashcards.size()) {
+                throw new IOException("The deck has changed since the session was saved");
+            }
+            positions = new LongIntHashMap(count);
+            for (int i = 0; i < flashcards.size(); i++) {
+                positions.put(flashcards.get(i).getId(), i);
+            }
+        }
+
+        boolean hasNext() {
+            return read < count;
+        }
+
+        /**
+         * Reads the next flashcard and returns its position in the list the reader was created with.
+         */
+        int nextIndex() throws IOException {
+            int position = positions.get(in.readLong(), -1);
+            if (position < 0) {
+                throw new IOException("The deck has changed since the session was saved");
+            }
+            read++;
+            return position;
+        }
+    }
+}
@@ -1,19 +1,45 @@
 package com.flashcardapp.logic;
 
 import com.flashcardapp.model.Flashcard;
-import com.flashcardapp.util.ConfigHandler;
-import com.flashcardapp.util.DeckInfo;
+import com.flashcardapp.util.LongIntHashMap;
+import com.flashcardapp.util.ReviewProgressStore;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 /**
  * An implementation of the spaced repetition algorithm for studying flashcards.
+ * <p>
+ * Each cycle presents the cards with the lowest mastery level first, then the ones reviewed least recently, keeping
+ * the order of the previous cycle between equal cards. Instead of sorting all cards when a cycle ends, a card is
+ * queued for the next cycle as soon as it has been answered, since its level cannot change again in the cycle, and
+ * the next cycle takes its cards from the queue one at a time as the session reaches them. Answering and moving on
+ * both cost O(log n).
+ * <p>
+ * Cards are numbered in the order they were added to the session, and their state is kept in arrays indexed by that
+ * number. A card counts as answered this cycle when its stamp equals the number of the current cycle, so a new cycle
+ * starts without clearing anything, and recording a response or moving between cards allocates nothing.
  */
 public class SpacedRepetitionAlgorithm implements IAlgorithm {
-    private List<Flashcard> flashcards;
-    private final Map<Flashcard, Integer> masteryLevels;
-    private final Map<Flashcard, Integer> lastReviewed;
-    private final Set<Flashcard> answeredThisCycle;
+    private Flashcard[] flashcards = new Flashcard[0]; // in the order they were added to the session
+    private int count;
+    // indexed by card number
+    private int[] masteryLevels = new int[0];
+    private int[] lastReviewed = new int[0];
+    private int[] answeredStamps = new int[0]; // the stamp of the cycle the card was last answered in
+    private boolean[] answeredCorrectly = new boolean[0]; // the last answer; only meaningful if answered this cycle
+    private int[] positions = new int[0]; // index in this cycle's review order; only meaningful if reached this cycle
+
+    private int[] order = new int[0]; // the numbers of the cards of this cycle reached so far, in review order
+    private int reached;
+    private final CardQueue upcoming; // the cards of this cycle not reached yet
+    private int appendedFrom; // cards from this number on were added while this cycle still had cards queued; they come last
+    private final CardQueue nextCycle; // the cards answered this cycle, in the order of the next cycle
+    private int stamp = 1; // the stamp of cards answered this cycle
+    private int answeredThisCycle;
+    private LongIntHashMap numbers; // card id to number; built when a card other than the current one is looked up
     private int currentReviewIndex;
     private int totalCyclesCompleted; // Track completed cycles
 
@@ -22,16 +48,28 @@ public class SpacedRepetitionAlgorithm implements IAlgorithm {
     private int totalCorrect;
     private int totalIncorrect;
 
+    private final ReviewProgressStore progressStore; // null if progress is not kept between sessions
+
     /**
      * Constructs a new instance of the spaced repetition algorithm with the specified maximum cycles.
+     * Progress is not kept between sessions.
      * @param maxCycles the maximum number of cycles to complete in the session.
      */
     public SpacedRepetitionAlgorithm(int maxCycles) {
+        this(maxCycles, null);
+    }
+
+    /**
+     * Constructs a new instance of the spaced repetition algorithm that continues from, and records to, the stored
+     * progress of a deck.
+     * @param maxCycles the maximum number of cycles to complete in the session.
+     * @param progressStore the store holding the deck's review progress, or null to not keep progress.
+     */
+    public SpacedRepetitionAlgorithm(int maxCycles, ReviewProgressStore progressStore) {
+        this.progressStore = progressStore;
         this.maxCycles = maxCycles;
-        this.flashcards = new ArrayList<>();
-        this.masteryLevels = new HashMap<>();
-        this.lastReviewed = new HashMap<>();
-        this.answeredThisCycle = new HashSet<>();
+        this.upcoming = new CardQueue();
+        this.nextCycle = new CardQueue();
         this.totalCyclesCompleted = 0;
         this.totalCorrect = 0;
         this.totalIncorrect = 0;
@@ -39,49 +77,148 @@ public class SpacedRepetitionAlgorithm implements IAlgorithm {
     
     @Override
     public void initialize(List<Flashcard> flashcards) {
-        this.flashcards = new ArrayList<>(flashcards);
-        this.flashcards.forEach(flashcard -> {
-            masteryLevels.put(flashcard, 0);
-            lastReviewed.put(flashcard, -1); // Initialize with -1 indicating it has not been reviewed yet
-        });
+        count = 0;
+        reached = 0;
+        appendedFrom = 0;
+        upcoming.clear();
+        nextCycle.clear();
+        numbers = null;
+        stamp++;
+        answeredThisCycle = 0;
+        appendFlashcards(flashcards);
         this.currentReviewIndex = 0;
+        if (progressStore != null) {
+            resetAnsweredStates(); // start with the least mastered cards
+        }
+    }
+
+    @Override
+    public void appendFlashcards(List<Flashcard> flashcards) {
+        ensureCapacity(count + flashcards.size());
+        for (Flashcard flashcard : flashcards) {
+            long id = flashcard.getId();
+            int number = count++;
+            this.flashcards[number] = flashcard;
+            masteryLevels[number] = progressStore != null ? progressStore.getMastery(flashcard, 0) : 0;
+            lastReviewed[number] = -1; // Initialize with -1 indicating it has not been reviewed yet
+            answeredStamps[number] = 0;
+            if (numbers != null) {
+                numbers.put(id, number);
+            }
+            if (upcoming.isEmpty()) {
+                reach(number);
+                appendedFrom = count;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc} The remaining cards are numbered again and keep their state, and the cards answered this cycle
+     * are queued for the next cycle again in their new positions, which keeps their order.
+     */
+    @Override
+    public void removeFlashcards(long[] cardIds) {
+        LongIntHashMap removed = new LongIntHashMap(cardIds.length);
+        for (long cardId : cardIds) {
+            removed.put(cardId, 1);
+        }
+        reachAll();
+        int[] renumbered = new int[count];
+        int kept = 0;
+        for (int number = 0; number < count; number++) {
+            if (removed.containsKey(flashcards[number].getId())) {
+                renumbered[number] = -1;
+                continue;
+            }
+            renumbered[number] = kept;
+            flashcards[kept] = flashcards[number];
+            masteryLevels[kept] = masteryLevels[number];
+            lastReviewed[kept] = lastReviewed[number];
+            answeredStamps[kept] = answeredStamps[number];
+            answeredCorrectly[kept] = answeredCorrectly[number];
+            kept++;
+        }
+        if (kept == count) {
+            return;
+        }
+        Arrays.fill(flashcards, kept, count, null);
+        count = kept;
+        appendedFrom = count;
+        numbers = null;
+
+        // the review order only loses cards, so it can be rebuilt in place
+        int cycleLength = reached;
+        int keptBeforeCurrent = 0;
+        reached = 0;
+        answeredThisCycle = 0;
+        nextCycle.clear();
+        for (int i = 0; i < cycleLength; i++) {
+            int number = renumbered[order[i]];
+            if (number < 0) {
+                continue;
+            }
+            if (i < currentReviewIndex) {
+                keptBeforeCurrent++;
+            }
+            reach(number);
+            if (answeredStamps[number] == stamp) {
+                answeredThisCycle++;
+                nextCycle.add(number, masteryLevels[number], lastReviewed[number], positions[number]);
+            }
+        }
+        currentReviewIndex = keptBeforeCurrent < reached ? keptBeforeCurrent : 0;
+        if (count > 0 && answeredThisCycle == count) {
+            totalCyclesCompleted++;
+            startNextCycle();
+        }
     }
 
     @Override
     public void recordResponse(Flashcard flashcard, boolean isCorrect) {
-        if (answeredThisCycle.contains(flashcard)) {
-            return; // Ignore additional responses if already answered in this cycle
+        int number = numberOf(flashcard);
+        if (number < 0) {
+            return;
+        }
+        int newLevel = applyResponse(number, isCorrect);
+        if (newLevel >= 0 && progressStore != null) {
+            progressStore.recordMastery(flashcard.getId(), newLevel);
         }
-        answeredThisCycle.add(flashcard);
+    }
+
+    /**
+     * Updates the session with a response.
+     * @return the card's new mastery level, or -1 if the card had already been answered this cycle.
+     */
+    private int applyResponse(int number, boolean isCorrect) {
+        if (answeredStamps[number] == stamp) {
+            return -1; // Ignore additional responses if already answered in this cycle
+        }
+        answeredStamps[number] = stamp;
+        answeredCorrectly[number] = isCorrect;
+        answeredThisCycle++;
 
-        int currentLevel = masteryLevels.get(flashcard);
+        int currentLevel = masteryLevels[number];
+        int newLevel;
         if (isCorrect) {
-            masteryLevels.put(flashcard, currentLevel + 1);
+            newLevel = currentLevel + 1;
             totalCorrect++;
         } else {
-            masteryLevels.put(flashcard, Math.max(0, currentLevel - 1)); // Decrease level but not below 0
+            newLevel = Math.max(0, currentLevel - 1); // Decrease level but not below 0
             totalIncorrect++;
         }
-        lastReviewed.put(flashcard, totalCyclesCompleted); // Update last reviewed cycle
+        masteryLevels[number] = newLevel;
+        lastReviewed[number] = totalCyclesCompleted; // Update last reviewed cycle
+        if (!isReached(number)) {
+            reachAll();
+        }
+        nextCycle.add(number, newLevel, totalCyclesCompleted, positions[number]);
 
         // Check if all flashcards have been answered in this cycle
-        if (answeredThisCycle.size() == flashcards.size()) {
+        if (answeredThisCycle == count) {
             totalCyclesCompleted++;
-            resetAnsweredStates();
-        }
-        
-        try{
-            DeckInfo currentDeck = ConfigHandler.getInstance().getOption("lastDeck", DeckInfo.class);
-            HashMap<String, Integer> masteryLevels = new HashMap<>();
-            for (Flashcard card : this.masteryLevels.keySet()) {
-                masteryLevels.put(card.getQuestion(), this.masteryLevels.get(card));
-            }
-            currentDeck.setMasteryLevels(masteryLevels);
-            ConfigHandler.getInstance().saveOption("lastDeck", currentDeck);
-        }catch (IllegalArgumentException e) // thrown if the option has not yet been saved
-        {
-            // Do nothing
+            startNextCycle();
         }
+        return newLevel;
     }
 
     @Override
@@ -91,30 +228,32 @@ public class SpacedRepetitionAlgorithm implements IAlgorithm {
 
     @Override
     public boolean isFirstCard() {
-        return answeredThisCycle.isEmpty();
+        return answeredThisCycle == 0;
     }
 
     @Override
     public Flashcard getCurrentFlashcard() {
-        return flashcards.get(currentReviewIndex);
+        return currentReviewIndex < reached ? flashcards[order[currentReviewIndex]] : null;
     }
 
     @Override
     public boolean moveToNext() {
-        if (answeredThisCycle.size() == flashcards.size()) {
+        if (answeredThisCycle == count) {
             return false; // Do not move to the next flashcard if all have been answered in this cycle
         }
-        currentReviewIndex = (currentReviewIndex + 1) % flashcards.size();
+        currentReviewIndex = (currentReviewIndex + 1) % count;
+        reachThrough(currentReviewIndex);
         return true;
     }
     
     @Override
     public boolean moveToPrevious() {
-        if (answeredThisCycle.size() == flashcards.size()) {
+        if (answeredThisCycle == count) {
             return false; // Do not move to the previous flashcard if all have been answered in this cycle
         }
         if (currentReviewIndex == 0) {
-            currentReviewIndex = flashcards.size() - 1;
+            reachAll();
+            currentReviewIndex = reached - 1;
         } else {
             currentReviewIndex--;
         }
@@ -136,22 +275,103 @@ public class SpacedRepetitionAlgorithm implements IAlgorithm {
         return maxCycles;
     }
 
+    @Override
+    public int getCycleLength() {
+        return count;
+    }
+
+    @Override
+    public int getRemainingResponses() {
+        return count * getTotalCycles() - totalCorrect - totalIncorrect;
+    }
+
     @Override
     public boolean hasAnsweredThisCycle(Flashcard flashcard) {
-        return answeredThisCycle.contains(flashcard);
+        int number = numberOf(flashcard);
+        return number >= 0 && answeredStamps[number] == stamp;
     }
 
     @Override
     public String getMasteryLevel(Flashcard card) {
-        return "Level " + masteryLevels.get(card);
+        int number = numberOf(card);
+        return "Level " + (number >= 0 ? masteryLevels[number] : 0);
+    }
+
+    @Override
+    public int getMaxCycles() {
+        return maxCycles;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return currentReviewIndex;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        reachAll();
+        out.writeInt(currentReviewIndex);
+        out.writeInt(totalCyclesCompleted);
+        out.writeInt(totalCorrect);
+        out.writeInt(totalIncorrect);
+        out.writeInt(reached);
+        for (int i = 0; i < reached; i++) { // in review order
+            int number = order[i];
+            out.writeLong(flashcards[number].getId());
+            out.writeInt(masteryLevels[number]);
+            out.writeInt(lastReviewed[number]);
+            out.writeByte(answeredStamps[number] != stamp ? -1 : answeredCorrectly[number] ? 1 : 0); // -1 if not answered this cycle
+        }
+    }
+
+    @Override
+    public void restoreState(DataInput in) throws IOException {
+        currentReviewIndex = in.readInt();
+        totalCyclesCompleted = in.readInt();
+        totalCorrect = in.readInt();
+        totalIncorrect = in.readInt();
+        reachAll();
+        stamp++;
+        answeredThisCycle = 0;
+        reached = 0;
+        nextCycle.clear();
+        SessionCheckpoint.CardReader cards = new SessionCheckpoint.CardReader(Arrays.asList(flashcards).subList(0, count), in);
+        while (cards.hasNext()) {
+            int number = cards.nextIndex();
+            masteryLevels[number] = in.readInt();
+            lastReviewed[number] = in.readInt();
+            int answered = in.readByte();
+            reach(number);
+            if (answered >= 0) {
+                answeredStamps[number] = stamp;
+                answeredCorrectly[number] = answered > 0;
+                answeredThisCycle++;
+                nextCycle.add(number, masteryLevels[number], lastReviewed[number], positions[number]);
+            }
+        }
+    }
+
+    @Override
+    public void replayResponse(int index, long cardId, boolean isCorrect) throws IOException {
+        reachThrough(Math.min(index, count - 1));
+        if (index < 0 || index >= reached || flashcards[order[index]].getId() != cardId) {
+            throw new IOException("The session does not match the deck");
+        }
+        currentReviewIndex = index;
+        applyResponse(order[index], isCorrect);
     }
 
     @Override
     public void resetSession() {
-        flashcards.clear();
-        masteryLevels.clear();
-        lastReviewed.clear();
-        answeredThisCycle.clear();
+        Arrays.fill(flashcards, 0, count, null);
+        count = 0;
+        reached = 0;
+        appendedFrom = 0;
+        upcoming.clear();
+        nextCycle.clear();
+        numbers = null;
+        stamp++;
+        answeredThisCycle = 0;
         currentReviewIndex = 0;
         totalCyclesCompleted = 0;
         totalCorrect = 0;
@@ -159,16 +379,206 @@ public class SpacedRepetitionAlgorithm implements IAlgorithm {
     }
 
     /**
-     * Resets the answered state for all flashcards and sorts them by mastery level and last reviewed time.
+     * Resets the answered state for all flashcards and orders them by mastery level and last reviewed time.
      */
     public void resetAnsweredStates() {
-        answeredThisCycle.clear(); // Reset answered state for the new cycle
-        flashcards.sort((card1, card2) -> {
-            int levelComparison = Integer.compare(masteryLevels.get(card1), masteryLevels.get(card2));
-            if (levelComparison != 0) return levelComparison;
-            return Integer.compare(lastReviewed.get(card1), lastReviewed.get(card2));
-        });
+        reachAll();
+        for (int i = 0; i < reached; i++) {
+            int number = order[i];
+            if (answeredStamps[number] != stamp) {
+                nextCycle.add(number, masteryLevels[number], lastReviewed[number], i);
+            }
+        }
+        startNextCycle();
+    }
+
+    /**
+     * Starts a cycle with the cards queued for it, once every card has been queued.
+     */
+    private void startNextCycle() {
+        stamp++; // Reset answered state for the new cycle
+        answeredThisCycle = 0;
+        reached = 0;
+        upcoming.takeFrom(nextCycle);
         currentReviewIndex = 0; // Reset the current review index to the first flashcard
+        reachThrough(0);
+    }
+
+    /**
+     * Takes cards from the queue of this cycle until the review order is known up to an index.
+     */
+    private void reachThrough(int index) {
+        while (reached <= index && !upcoming.isEmpty()) {
+            reach(upcoming.poll());
+        }
+        if (upcoming.isEmpty()) {
+            while (appendedFrom < count) {
+                reach(appendedFrom++);
+            }
+        }
     }
 
-}
\ No newline at end of file
+    private void reachAll() {
+        reachThrough(Integer.MAX_VALUE - 1);
+    }
+
+    private void reach(int number) {
+        positions[number] = reached;
+        order[reached++] = number;
+    }
+
+    private boolean isReached(int number) {
+        int position = positions[number];
+        return position < reached && order[position] == number;
+    }
+
+    /**
+     * Returns the number of a card, looking the card up by id unless it is the current one.
+     * @return the number, or -1 if the card is not in the session.
+     */
+    private int numberOf(Flashcard flashcard) {
+        if (currentReviewIndex < reached && flashcards[order[currentReviewIndex]] == flashcard) {
+            return order[currentReviewIndex];
+        }
+        if (numbers == null) {
+            numbers = new LongIntHashMap(count);
+            for (int i = 0; i < count; i++) {
+                numbers.put(flashcards[i].getId(), i);
+            }
+        }
+        return numbers.get(flashcard.getId(), -1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= flashcards.length) {
+            return;
+        }
+        capacity = Math.max(capacity, flashcards.length * 2);
+        flashcards = Arrays.copyOf(flashcards, capacity);
+        masteryLevels = Arrays.copyOf(masteryLevels, capacity);
+        lastReviewed = Arrays.copyOf(lastReviewed, capacity);
+        answeredStamps = Arrays.copyOf(answeredStamps, capacity);
+        answeredCorrectly = Arrays.copyOf(answeredCorrectly, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        order = Arrays.copyOf(order, capacity);
+    }
+
+    /**
+     * A binary min-heap of card numbers ordered by mastery level, then by the cycle they were last reviewed in, then
+     * by their position in the cycle they were queued in. The keys are kept in arrays next to the card numbers,
+     * so comparing them needs no lookups and queuing a card allocates nothing.
+     */
+    private static final class CardQueue {
+        private int[] cards = new int[16];
+        private int[] levels = new int[16];
+        private int[] reviewed = new int[16];
+        private int[] positions = new int[16];
+        private int size;
+
+        void add(int card, int level, int lastReviewed, int position) {
+            if (size == cards.length) {
+                int capacity = size * 2;
+                cards = Arrays.copyOf(cards, capacity);
+                levels = Arrays.copyOf(levels, capacity);
+                reviewed = Arrays.copyOf(reviewed, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+            }
+            set(size, card, level, lastReviewed, position);
+            siftUp(size++);
+        }
+
+        int poll() {
+            int first = cards[0];
+            size--;
+            set(0, cards[size], levels[size], reviewed[size], positions[size]);
+            if (size > 0) {
+                siftDown(0);
+            }
+            return first;
+        }
+
+        /**
+         * Moves all cards of another queue into this one, leaving the other queue empty.
+         */
+        void takeFrom(CardQueue other) {
+            int[] otherCards = other.cards;
+            int[] otherLevels = other.levels;
+            int[] otherReviewed = other.reviewed;
+            int[] otherPositions = other.positions;
+            int otherSize = other.size;
+            other.cards = cards;
+            other.levels = levels;
+            other.reviewed = reviewed;
+            other.positions = positions;
+            other.size = 0;
+            cards = otherCards;
+            levels = otherLevels;
+            reviewed = otherReviewed;
+            positions = otherPositions;
+            size = otherSize;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!less(index, parent)) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                if (left < size && less(left, smallest)) {
+                    smallest = left;
+                }
+                if (left + 1 < size && less(left + 1, smallest)) {
+                    smallest = left + 1;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private boolean less(int a, int b) {
+            if (levels[a] != levels[b]) {
+                return levels[a] < levels[b];
+            }
+            if (reviewed[a] != reviewed[b]) {
+                return reviewed[a] < reviewed[b];
+            }
+            return positions[a] < positions[b];
+        }
+
+        private void swap(int a, int b) {
+            int card = cards[a];
+            int level = levels[a];
+            int lastReviewed = reviewed[a];
+            int position = positions[a];
+            set(a, cards[b], levels[b], reviewed[b], positions[b]);
+            set(b, card, level, lastReviewed, position);
+        }
+
+        private void set(int index, int card, int level, int lastReviewed, int position) {
+            cards[index] = card;
+            levels[index] = level;
+            reviewed[index] = lastReviewed;
+            positions[index] = position;
+        }
+    }
+}
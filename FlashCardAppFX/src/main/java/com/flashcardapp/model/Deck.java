@@ -1,16 +1,40 @@
 package com.flashcardapp.model;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a deck of flashcards in the FlashcardApp.
+ * Once a deck has been loaded from or saved to a file, the changes made to it are tracked so that the next save
+ * only has to write what changed. Changes made directly to the list returned by {@link #getFlashcards()} are not
+ * tracked.
+ * <p>
+ * A deck read from a file may keep the file open until its images have been shown; close the deck once the
+ * application is done with it.
  */
-public class Deck {
+public class Deck implements AutoCloseable {
 
     private String name;
     private List<Flashcard> flashcards;
 
+    private String savedPath;
+    private boolean trackingChanges;
+    private final List<DeckChange> changes = new ArrayList<>();
+    private final Set<Flashcard> changedFlashcards = Collections.newSetFromMap(new IdentityHashMap<>());
+    private String changesBasePath; // the path of the stored copy the tracked changes apply to
+
+    private Deck source; // the deck this is a copy of, taken to be saved
+    private int failedSaves; // copies of this deck that could not be saved
+    private int failedSavesAtCopy;
+    private boolean changesOnly; // a copy holding only the changes, see isChangesOnly
+
     /**
      * Constructs a new deck with the given name.
      * @param name The name of the deck.
@@ -20,12 +44,40 @@ public class Deck {
         this.flashcards = new ArrayList<>();
     }
 
+    /**
+     * Constructs a new deck with the given name, backed by the given list of flashcards.
+     * @param name The name of the deck.
+     * @param flashcards The list holding the flashcards, such as a {@link LazyFlashcardList}.
+     */
+    public Deck(String name, List<Flashcard> flashcards) {
+        this.name = name;
+        this.flashcards = flashcards;
+        if (flashcards instanceof LazyFlashcardList) {
+            ((LazyFlashcardList) flashcards).owner = this;
+        } else {
+            flashcards.forEach(flashcard -> flashcard.owner = this);
+        }
+    }
+
     /**
      * Adds a flashcard to the deck.
      * @param flashcard The flashcard to add.
      */
-    public void addFlashcard(Flashcard flashcard) {
+    public synchronized void addFlashcard(Flashcard flashcard) {
         flashcards.add(flashcard);
+        flashcard.owner = this;
+        recordChange(DeckChange.add(flashcard));
+    }
+
+    /**
+     * Replaces the flashcard at the specified index.
+     * @param index The index of the flashcard to replace.
+     * @param flashcard The flashcard to put in its place.
+     */
+    public synchronized void setFlashcard(int index, Flashcard flashcard) {
+        changedFlashcards.remove(flashcards.set(index, flashcard));
+        flashcard.owner = this;
+        flashcardChanged(flashcard);
     }
 
     /**
@@ -35,6 +87,14 @@ public class Deck {
         return flashcards;
     }
 
+    /**
+     * Returns a copy of the list of flashcards, taken while no other thread is changing the deck.
+     * Use this to read the deck from a background thread.
+     */
+    public synchronized List<Flashcard> snapshotFlashcards() {
+        return new ArrayList<>(flashcards);
+    }
+
     /**
      * Returns the flashcard at the specified index.
      * @param index The index of the flashcard to retrieve.
@@ -54,23 +114,31 @@ public class Deck {
      * Removes the flashcard at the specified index.
      * @param index The index of the flashcard to remove.
      */
-    public void removeFlashcard(int index) {
-        flashcards.remove(index);
+    public synchronized void removeFlashcard(int index) {
+        Flashcard removed = flashcards.remove(index);
+        changedFlashcards.remove(removed);
+        recordChange(DeckChange.remove(index, removed.getId()));
     }
 
     /**
      * Removes the specified flashcard from the deck.
      * @param flashcard The flashcard to remove.
      */
-    public void removeFlashcard(Flashcard flashcard) {
-        flashcards.remove(flashcard);
+    public synchronized void removeFlashcard(Flashcard flashcard) {
+        int index = flashcards.indexOf(flashcard);
+        if (index >= 0) {
+            removeFlashcard(index);
+        }
     }
 
     /**
      * Clears all flashcards from the deck.
      */
-    public void clearDeck() {
+    public synchronized void clearDeck() {
         flashcards.clear();
+        changes.clear();
+        changedFlashcards.clear();
+        recordChange(DeckChange.clear());
     }
 
     /**
@@ -79,4 +147,356 @@ public class Deck {
     public String getName() {
         return name;
     }
+
+    /**
+     * Sets the name of the deck.
+     * @param name The new name of the deck.
+     */
+    public synchronized void setName(String name) {
+        this.name = name;
+        recordChange(DeckChange.rename(name));
+    }
+
+    /**
+     * Returns the path the deck was last loaded from or saved to, or null if it has not been stored yet.
+     */
+    public synchronized String getSavedPath() {
+        return savedPath;
+    }
+
+    /**
+     * Checks whether every change since the deck was stored at its saved path has been tracked, so that saving
+     * the tracked changes brings the stored copy up to date.
+     * @return true if the changes since the last load or save are known.
+     */
+    public boolean isTrackingChanges() {
+        if (source != null && source.failedSaves() != failedSavesAtCopy) {
+            return false; // an earlier copy failed, so the stored copy lacks the changes this copy builds on
+        }
+        synchronized (this) {
+            return trackingChanges;
+        }
+    }
+
+    /**
+     * Checks whether the deck has changes that have not been saved.
+     * @return true if the deck has changed since it was last loaded or saved, or if it has never been stored.
+     */
+    public synchronized boolean hasUnsavedChanges() {
+        return !trackingChanges || !changes.isEmpty() || !changedFlashcards.isEmpty();
+    }
+
+    /**
+     * Marks the deck as being in sync with the file at the given path and starts tracking changes from here on.
+     * @param path The path the deck was loaded from or saved to.
+     */
+    public void markSaved(String path) {
+        if (source != null) {
+            source.copySaved(path);
+        }
+        synchronized (this) {
+            savedPath = path;
+            changesBasePath = path;
+            trackingChanges = true;
+            changes.clear();
+            changedFlashcards.clear();
+        }
+    }
+
+    /**
+     * Stops trusting the tracked changes, for example after they failed to be written, so the next save has to
+     * write the whole deck.
+     */
+    public void markUnsaved() {
+        if (source != null) {
+            source.copyFailed();
+        }
+        synchronized (this) {
+            trackingChanges = false;
+            changes.clear();
+            changedFlashcards.clear();
+        }
+    }
+
+    /**
+     * Returns the changes made since the deck was last saved and starts a new set of changes.
+     * Structural changes come first, in the order they were made, followed by an update for every flashcard whose
+     * content changed, at its current index.
+     * @return The changes to apply to the stored copy of the deck, in order.
+     */
+    public synchronized List<DeckChange> takeChanges() {
+        List<DeckChange> taken = getChanges();
+        changes.clear();
+        changedFlashcards.clear();
+        return taken;
+    }
+
+    /**
+     * Returns the changes made since the deck was last saved, in the order {@link #takeChanges()} gives them, without
+     * starting a new set of changes.
+     * @return The changes to apply to the stored copy of the deck, in order.
+     */
+    public synchronized List<DeckChange> getChanges() {
+        List<DeckChange> changes = new ArrayList<>(this.changes);
+        Set<Flashcard> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+        remaining.addAll(changedFlashcards);
+        for (int i = 0; i < flashcards.size() && !remaining.isEmpty(); i++) {
+            Flashcard flashcard = flashcards.get(i);
+            if (remaining.remove(flashcard)) {
+                changes.add(DeckChange.update(i, flashcard));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Copies the deck to be saved to the given path on another thread, so the deck can go on being edited while the
+     * copy is written. This deck tracks the changes made from here on as changes to the copy, and once a deck handler
+     * marks the copy as saved or unsaved, this deck is marked the same way.
+     * <p>
+     * If the changes since the deck was stored at the path are known and the handler can save just those, only the
+     * flashcards named in the changes are copied, see {@link #isChangesOnly()}. Otherwise every flashcard is copied
+     * and the copy writes the whole deck. A copy taken while an earlier copy was still being written, which then
+     * failed, writes the whole deck as well.
+     * @param path The path the copy will be saved to.
+     * @param pending A copy of this deck that is still waiting to be written and that the new copy replaces, or null.
+     *                Its flashcards and changes are carried over where possible, which leaves it empty; close it
+     *                afterwards either way.
+     * @param handlerSavesChanges Whether the deck handler for the path can save only the changes.
+     * @return The copy to pass to a deck handler.
+     */
+    public synchronized Deck copyForSave(String path, Deck pending, boolean handlerSavesChanges) {
+        Deck copy = new Deck(name);
+        copy.source = this;
+        boolean carryOver = pending != null && pending.source == this && trackingChanges; // else changes were dropped
+        if (carryOver) {
+            // the pending copy is not being written, so nothing else touches it
+            copy.savedPath = pending.savedPath;
+            copy.trackingChanges = pending.trackingChanges;
+            copy.failedSavesAtCopy = pending.failedSavesAtCopy;
+            copy.changesOnly = pending.changesOnly;
+            copy.flashcards = pending.flashcards;
+            copy.changes.addAll(pending.changes);
+            pending.flashcards = new ArrayList<>();
+            pending.changes.clear();
+        } else if (handlerSavesChanges && trackingChanges && changesBasePath != null && samePath(changesBasePath, path)) {
+            copy.savedPath = changesBasePath;
+            copy.trackingChanges = true;
+            copy.failedSavesAtCopy = failedSaves;
+            copy.changesOnly = true;
+        } else {
+            List<Flashcard> copiedFlashcards = new ArrayList<>(flashcards.size());
+            for (Flashcard flashcard : flashcards) {
+                copiedFlashcards.add(copyFlashcard(flashcard));
+            }
+            copy.flashcards = copiedFlashcards;
+            copy.failedSavesAtCopy = failedSaves; // not tracking changes, so the whole deck is written
+            changes.clear();
+            changedFlashcards.clear();
+        }
+
+        for (DeckChange change : takeChanges()) {
+            DeckChange copied = change;
+            if (change.getType() == DeckChange.Type.ADD) {
+                copied = DeckChange.add(copyFlashcard(change.getFlashcard()));
+            } else if (change.getType() == DeckChange.Type.UPDATE) {
+                copied = DeckChange.update(change.getIndex(), copyFlashcard(change.getFlashcard()));
+            }
+            if (copy.changesOnly) {
+                copy.changes.add(copied);
+            } else {
+                copy.applyToCopy(copied); // only a carried over copy of the whole deck gets here
+            }
+        }
+
+        changesBasePath = path;
+        trackingChanges = true;
+        return copy;
+    }
+
+    /**
+     * Copies the deck to be exported on another thread. Unlike {@link #copyForSave}, the copy is not linked to this
+     * deck, so exporting it changes neither the file this deck is saved to nor the changes it has yet to save there.
+     * @return A copy of every flashcard, to pass to a deck handler.
+     */
+    public synchronized Deck copyForExport() {
+        List<Flashcard> copiedFlashcards = new ArrayList<>(flashcards.size());
+        for (Flashcard flashcard : flashcards) {
+            copiedFlashcards.add(copyFlashcard(flashcard));
+        }
+        return new Deck(name, copiedFlashcards);
+    }
+
+    /**
+     * Checks whether this is a copy taken by {@link #copyForSave} that holds only the changes since the deck was
+     * stored at its saved path. Such a copy has no flashcards of its own apart from those named in its changes, so a
+     * deck handler can only save it by applying {@link #takeChanges()} to the stored deck.
+     * @return true if the copy holds only the changes.
+     */
+    public boolean isChangesOnly() {
+        return changesOnly;
+    }
+
+    /**
+     * Applies changes that were made to the stored copy of the deck outside the application, matching flashcards by
+     * id. Removed flashcards are dropped, updated flashcards take the stored content while staying the same objects,
+     * and added flashcards are inserted at their stored position. Changes the deck already has are skipped.
+     * <p>
+     * The applied changes are not tracked, since the stored copy already has them. If the deck had unsaved
+     * structural changes, or its order no longer matches the stored copy, tracking stops and the next save writes
+     * the whole deck.
+     * @param diff The changes made to the stored copy.
+     * @return The changes that were applied, with updated flashcards given as the deck's own flashcards.
+     */
+    public synchronized DeckDiff applyStoredChanges(DeckDiff diff) {
+        boolean keepTracking = trackingChanges && changes.isEmpty(); // pending changes refer to the old positions
+        trackingChanges = false;
+
+        Set<Long> removedIds = new HashSet<>();
+        for (long id : diff.getRemovedIds()) {
+            removedIds.add(id);
+        }
+        List<Long> removed = new ArrayList<>();
+        for (int i = flashcards.size() - 1; i >= 0 && removed.size() < removedIds.size(); i--) {
+            if (removedIds.contains(flashcards.get(i).getId())) {
+                Flashcard flashcard = flashcards.remove(i);
+                changedFlashcards.remove(flashcard);
+                removed.add(flashcard.getId());
+            }
+        }
+
+        Map<Long, Flashcard> flashcardsById = new HashMap<>();
+        flashcards.forEach(flashcard -> flashcardsById.put(flashcard.getId(), flashcard));
+        List<Flashcard> updated = new ArrayList<>();
+        for (Flashcard stored : diff.getUpdated()) {
+            Flashcard flashcard = flashcardsById.get(stored.getId());
+            if (flashcard != null) {
+                flashcard.copyContentFrom(stored);
+                stored.releaseImages();
+                updated.add(flashcard);
+            }
+        }
+        List<Flashcard> added = new ArrayList<>();
+        List<Integer> addedIndexes = new ArrayList<>();
+        for (int i = 0; i < diff.getAdded().size(); i++) {
+            Flashcard flashcard = diff.getAdded().get(i);
+            if (flashcardsById.putIfAbsent(flashcard.getId(), flashcard) == null) {
+                int index = Math.min(diff.getAddedIndex(i), flashcards.size());
+                flashcards.add(index, flashcard);
+                flashcard.owner = this;
+                added.add(flashcard);
+                addedIndexes.add(index);
+            }
+        }
+        String newName = diff.getName() != null && !diff.getName().equals(name) ? diff.getName() : null;
+        if (newName != null) {
+            name = newName;
+        }
+
+        trackingChanges = keepTracking && hasOrder(diff.storedOrder());
+        if (!trackingChanges) {
+            changes.clear();
+            changedFlashcards.clear();
+        }
+        return new DeckDiff(newName, added, addedIndexes.stream().mapToInt(Integer::intValue).toArray(),
+                removed.stream().mapToLong(Long::longValue).toArray(), updated, diff.storedOrder());
+    }
+
+    /**
+     * Closes the deck once the application is done with it, letting go of the files its flashcards read their images
+     * from. Images that have not been shown by then are no longer available.
+     */
+    @Override
+    public void close() {
+        List<Flashcard> cards;
+        synchronized (this) {
+            cards = flashcards instanceof LazyFlashcardList ? ((LazyFlashcardList) flashcards).loadedFlashcards() : new ArrayList<>(flashcards);
+            for (DeckChange change : changes) {
+                if (change.getFlashcard() != null) {
+                    cards.add(change.getFlashcard()); // a copy holding only the changes
+                }
+            }
+        }
+        cards.forEach(Flashcard::releaseImages);
+        if (flashcards instanceof LazyFlashcardList) {
+            ((LazyFlashcardList) flashcards).close();
+        }
+    }
+
+    /**
+     * Brings the flashcards of a copy that is carried over to a newer copy up to date with a change made since.
+     */
+    private void applyToCopy(DeckChange change) {
+        switch (change.getType()) {
+            case ADD:
+                flashcards.add(change.getFlashcard());
+                break;
+            case REMOVE:
+                flashcards.remove(change.getIndex()).releaseImages();
+                break;
+            case UPDATE:
+                flashcards.set(change.getIndex(), change.getFlashcard()).releaseImages();
+                break;
+            case CLEAR:
+                flashcards.forEach(Flashcard::releaseImages);
+                flashcards.clear();
+                break;
+            case RENAME:
+                name = change.getName();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static boolean samePath(String first, String second) {
+        return Paths.get(first).toAbsolutePath().normalize().equals(Paths.get(second).toAbsolutePath().normalize());
+    }
+
+    private static Flashcard copyFlashcard(Flashcard flashcard) {
+        Flashcard copy = new Flashcard(flashcard.getId(), null, null, null, null, null);
+        copy.copyContentFrom(flashcard);
+        return copy;
+    }
+
+    private synchronized void copySaved(String path) {
+        savedPath = path;
+    }
+
+    private synchronized void copyFailed() {
+        failedSaves++;
+        markUnsaved();
+    }
+
+    private synchronized int failedSaves() {
+        return failedSaves;
+    }
+
+    private boolean hasOrder(long[] ids) {
+        if (ids.length != flashcards.size()) {
+            return false;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (flashcards.get(i).getId() != ids[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that the content of a flashcard in this deck changed.
+     * @param flashcard The flashcard that changed.
+     */
+    synchronized void flashcardChanged(Flashcard flashcard) {
+        if (trackingChanges) {
+            changedFlashcards.add(flashcard);
+        }
+    }
+
+    private void recordChange(DeckChange change) {
+        if (trackingChanges) {
+            changes.add(change);
+        }
+    }
 }
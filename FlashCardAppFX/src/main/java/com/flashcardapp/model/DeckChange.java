@@ -0,0 +1,93 @@
+package com.flashcardapp.model;
+
+/**
+ * A single change made to a deck since it was last saved, in the order the changes were made.
+ * Changes refer to flashcards by their position in the deck at the time the change was made.
+ */
+public final class DeckChange {
+
+    /**
+     * The kinds of change that can be made to a deck.
+     */
+    public enum Type {
+        /** A flashcard was appended to the deck. */
+        ADD,
+        /** The flashcard at an index was removed. */
+        REMOVE,
+        /** The content of the flashcard at an index changed. */
+        UPDATE,
+        /** All flashcards were removed. */
+        CLEAR,
+        /** The deck was renamed. */
+        RENAME
+    }
+
+    private final Type type;
+    private final int index;
+    private final Flashcard flashcard;
+    private final String name;
+    private final long cardId; // of a removed flashcard
+
+    private DeckChange(Type type, int index, Flashcard flashcard, String name, long cardId) {
+        this.type = type;
+        this.index = index;
+        this.flashcard = flashcard;
+        this.name = name;
+        this.cardId = cardId;
+    }
+
+    static DeckChange add(Flashcard flashcard) {
+        return new DeckChange(Type.ADD, -1, flashcard, null, 0);
+    }
+
+    static DeckChange remove(int index, long cardId) {
+        return new DeckChange(Type.REMOVE, index, null, null, cardId);
+    }
+
+    static DeckChange update(int index, Flashcard flashcard) {
+        return new DeckChange(Type.UPDATE, index, flashcard, null, 0);
+    }
+
+    static DeckChange clear() {
+        return new DeckChange(Type.CLEAR, -1, null, null, 0);
+    }
+
+    static DeckChange rename(String name) {
+        return new DeckChange(Type.RENAME, -1, null, name, 0);
+    }
+
+    /**
+     * Returns the kind of change.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the index of the removed or updated flashcard, or -1 for other changes.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the id of the removed flashcard, or 0 for other changes.
+     */
+    public long getCardId() {
+        return cardId;
+    }
+
+    /**
+     * Returns the added or updated flashcard, or null for other changes.
+     */
+    public Flashcard getFlashcard() {
+        return flashcard;
+    }
+
+    /**
+     * Returns the new name of a renamed deck, or null for other changes.
+     */
+    public String getName() {
+        return name;
+    }
+}
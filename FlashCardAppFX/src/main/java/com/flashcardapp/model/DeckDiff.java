@@ -0,0 +1,89 @@
+package com.flashcardapp.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes between two versions of a stored deck, with flashcards matched by id. Used to bring an open deck up
+ * to date with its file after the file was changed outside the application.
+ */
+public final class DeckDiff {
+    private final String name;
+    private final List<Flashcard> added;
+    private final int[] addedIndexes;
+    private final long[] removedIds;
+    private final List<Flashcard> updated;
+    private final long[] storedOrder;
+
+    /**
+     * @param name The new name of the deck, or null if it was not renamed.
+     * @param added The flashcards that were added, in stored order.
+     * @param addedIndexes The stored position of each added flashcard.
+     * @param removedIds The ids of the flashcards that were removed.
+     * @param updated The new versions of the flashcards whose content changed.
+     * @param storedOrder The ids of all flashcards of the new version, in stored order.
+     */
+    public DeckDiff(String name, List<Flashcard> added, int[] addedIndexes, long[] removedIds, List<Flashcard> updated, long[] storedOrder) {
+        this.name = name;
+        this.added = Collections.unmodifiableList(added);
+        this.addedIndexes = addedIndexes;
+        this.removedIds = removedIds;
+        this.updated = Collections.unmodifiableList(updated);
+        this.storedOrder = storedOrder;
+    }
+
+    /**
+     * Returns the new name of the deck, or null if it was not renamed.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the flashcards that were added, in stored order.
+     */
+    public List<Flashcard> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the stored position of the added flashcard at the given index of {@link #getAdded()}.
+     */
+    public int getAddedIndex(int i) {
+        return addedIndexes[i];
+    }
+
+    /**
+     * Returns the ids of the flashcards that were removed.
+     */
+    public long[] getRemovedIds() {
+        return removedIds.clone();
+    }
+
+    /**
+     * Returns the new versions of the flashcards whose content changed.
+     */
+    public List<Flashcard> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns the ids of all flashcards of the new version, in stored order.
+     */
+    long[] storedOrder() {
+        return storedOrder;
+    }
+
+    /**
+     * Checks whether the versions are the same.
+     * @return true if nothing was added, removed, updated or renamed.
+     */
+    public boolean isEmpty() {
+        return name == null && added.isEmpty() && removedIds.length == 0 && updated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return added.size() + " added, " + removedIds.length + " removed, " + updated.size() + " updated";
+    }
+}
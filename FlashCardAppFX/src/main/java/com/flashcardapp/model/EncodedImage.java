@@ -0,0 +1,45 @@
+package com.flashcardapp.model;
+
+/**
+ * The stored form of a flashcard image: its original bytes together with their SHA-256 hash and image format.
+ * Deck writers keep one on each flashcard, so an image that has not changed since the last save is written again
+ * without being downloaded, decoded or re-encoded.
+ */
+public final class EncodedImage {
+    private final String hash;
+    private final String format;
+    private final byte[] data;
+
+    /**
+     * Constructs an encoded image. The byte array is kept as is and must not be modified afterwards.
+     * @param hash The hex encoded SHA-256 hash of the image bytes.
+     * @param format The image format, as a file extension such as "png" or "jpg".
+     * @param data The original image bytes.
+     */
+    public EncodedImage(String hash, String format, byte[] data) {
+        this.hash = hash;
+        this.format = format;
+        this.data = data;
+    }
+
+    /*
+     * Returns the hex encoded SHA-256 hash of the image bytes.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /*
+     * Returns the image format, as a file extension such as "png" or "jpg".
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /*
+     * Returns the original image bytes. The returned array is shared and must not be modified.
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
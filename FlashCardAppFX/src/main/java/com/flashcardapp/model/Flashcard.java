@@ -1,14 +1,26 @@
 package com.flashcardapp.model;
 
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * Represents a flashcard in the FlashcardApp.
  */
 public class Flashcard {
+    private final long id; // Identifies the flashcard across edits and sessions
     private String question;
     private String answer;
     private String hint = "";
     private String questionImage; // Path or URL for the question image
     private String answerImage;   // Path or URL for the answer image
+    private ImageReference questionImageReference; // Unresolved question image, if any
+    private ImageReference answerImageReference;   // Unresolved answer image, if any
+    // Stored forms of the images, kept while the images are unchanged; held softly so they give way when memory is low
+    private SoftReference<EncodedImage> questionImageEncoding;
+    private SoftReference<EncodedImage> answerImageEncoding;
+    Deck owner; // The deck tracking changes to this flashcard, if any
 
     /**
      * Constructs a new flashcard with the given question and answer.
@@ -16,6 +28,7 @@ public class Flashcard {
      * @param answer The answer to the question.
      */
     public Flashcard(String question, String answer) {
+        this.id = newId();
         this.question = question;
         this.answer = answer;
     }
@@ -27,6 +40,7 @@ public class Flashcard {
      * @param hint A hint to help the user remember the answer.
      */
     public Flashcard(String question, String answer, String hint) {
+        this.id = newId();
         this.question = question;
         this.answer = answer;
         this.hint = hint;
@@ -41,6 +55,7 @@ public class Flashcard {
      * @param answerImage The path or URL for the answer image.
      */
     public Flashcard(String question, String answer, String hint, String questionImage, String answerImage) {
+        this.id = newId();
         this.question = question;
         this.answer = answer;
         this.hint = hint;
@@ -48,19 +63,100 @@ public class Flashcard {
         this.answerImage = answerImage;
     }
 
+    /**
+     * Constructs a stored flashcard whose images are resolved the first time they are requested.
+     * @param id The identifier the flashcard was stored with.
+     * @param question The question on the flashcard.
+     * @param answer The answer to the question.
+     * @param hint A hint to help the user remember the answer.
+     * @param questionImage The reference to the question image, or null if there is none.
+     * @param answerImage The reference to the answer image, or null if there is none.
+     */
+    public Flashcard(long id, String question, String answer, String hint, ImageReference questionImage, ImageReference answerImage) {
+        this.id = id;
+        this.question = question;
+        this.answer = answer;
+        this.hint = hint;
+        this.questionImageReference = questionImage;
+        this.answerImageReference = answerImage;
+    }
+
+    /**
+     * Creates a random identifier for a new flashcard.
+     * @return A non-zero identifier.
+     */
+    public static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * Derives the identifier of a flashcard that was stored before flashcards had identifiers, so the flashcard
+     * keeps the same identifier every time the unchanged file is read.
+     * @param question The question on the flashcard.
+     * @param position The position of the flashcard in its file.
+     * @return A non-zero identifier.
+     */
+    public static long legacyId(String question, int position) {
+        long hash = 0xcbf29ce484222325L; // 64-bit FNV-1a
+        for (byte b : question.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash = (hash ^ position) * 0x100000001b3L;
+        return hash == 0 ? 1 : hash;
+    }
+
     /*
-     * Returns the question image path or URL.
+     * Returns the identifier of the flashcard, which stays the same when its content is edited.
      */
-    public String getQuestionImage() {
+    public long getId() {
+        return id;
+    }
+
+    /*
+     * Returns the question image path or URL, resolving the image first if it has not been loaded yet.
+     */
+    public synchronized String getQuestionImage() {
+        if (questionImageReference != null) {
+            questionImage = questionImageReference.resolve();
+            questionImageReference = null;
+        }
         return questionImage;
     }
 
     /*
-     * Returns the answer image path or URL.
+     * Returns the answer image path or URL, resolving the image first if it has not been loaded yet.
      */
-    public String getAnswerImage() {
+    public synchronized String getAnswerImage() {
+        if (answerImageReference != null) {
+            answerImage = answerImageReference.resolve();
+            answerImageReference = null;
+        }
         return answerImage;
     }
+
+    /**
+     * Identifies the question image without resolving it, so that a changed image can be noticed without reading it.
+     * @return The identity of an unresolved image (see {@link ImageReference#identity()}), or the path or URL of a
+     * resolved one.
+     */
+    public synchronized String getQuestionImageSource() {
+        String identity = questionImageReference != null ? questionImageReference.identity() : null;
+        return identity != null ? identity : getQuestionImage();
+    }
+
+    /**
+     * Identifies the answer image without resolving it, so that a changed image can be noticed without reading it.
+     * @return The identity of an unresolved image (see {@link ImageReference#identity()}), or the path or URL of a
+     * resolved one.
+     */
+    public synchronized String getAnswerImageSource() {
+        String identity = answerImageReference != null ? answerImageReference.identity() : null;
+        return identity != null ? identity : getAnswerImage();
+    }
     
     /*
      * Returns the question on the flashcard.
@@ -89,6 +185,7 @@ public class Flashcard {
      */
     public void setQuestion(String question) {
         this.question = question;
+        changed();
     }
 
     /*
@@ -97,6 +194,7 @@ public class Flashcard {
      */
     public void setAnswer(String answer) {
         this.answer = answer;
+        changed();
     }
 
     /*
@@ -105,21 +203,121 @@ public class Flashcard {
      */
     public void setHint(String hint) {
         this.hint = hint;
+        changed();
     }
 
     /*
      * Sets the question image path or URL.
      * @param questionImage The path or URL for the question image.
      */
-    public void setAnswerImage(String answerImage) {
+    public synchronized void setAnswerImage(String answerImage) {
         this.answerImage = answerImage;
+        this.answerImageReference = null;
+        this.answerImageEncoding = null;
+        changed();
     }
 
     /*
      * Sets the answer image path or URL.
      * @param answerImage The path or URL for the answer image.
      */
-    public void setQuestionImage(String questionImage) {
+    public synchronized void setQuestionImage(String questionImage) {
         this.questionImage = questionImage;
+        this.questionImageReference = null;
+        this.questionImageEncoding = null;
+        changed();
+    }
+
+    /**
+     * Returns the stored form of the question image, reading it from the unresolved image if possible.
+     * @return The encoded question image, or null if it has not been encoded since the image last changed.
+     */
+    public synchronized EncodedImage getEncodedQuestionImage() {
+        EncodedImage encoded = questionImageEncoding == null ? null : questionImageEncoding.get();
+        if (encoded == null && questionImageReference != null) {
+            encoded = questionImageReference.encode();
+            questionImageEncoding = encoded == null ? null : new SoftReference<>(encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * Returns the stored form of the answer image, reading it from the unresolved image if possible.
+     * @return The encoded answer image, or null if it has not been encoded since the image last changed.
+     */
+    public synchronized EncodedImage getEncodedAnswerImage() {
+        EncodedImage encoded = answerImageEncoding == null ? null : answerImageEncoding.get();
+        if (encoded == null && answerImageReference != null) {
+            encoded = answerImageReference.encode();
+            answerImageEncoding = encoded == null ? null : new SoftReference<>(encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * Remembers the stored form of the question image, unless the image has been changed since it was read.
+     * @param questionImage The path or URL the image was read from.
+     * @param encoded The encoded image.
+     */
+    public synchronized void setEncodedQuestionImage(String questionImage, EncodedImage encoded) {
+        if (questionImageReference == null && Objects.equals(this.questionImage, questionImage)) {
+            questionImageEncoding = new SoftReference<>(encoded);
+        }
+    }
+
+    /**
+     * Remembers the stored form of the answer image, unless the image has been changed since it was read.
+     * @param answerImage The path or URL the image was read from.
+     * @param encoded The encoded image.
+     */
+    public synchronized void setEncodedAnswerImage(String answerImage, EncodedImage encoded) {
+        if (answerImageReference == null && Objects.equals(this.answerImage, answerImage)) {
+            answerImageEncoding = new SoftReference<>(encoded);
+        }
+    }
+
+    /**
+     * Takes over the content of another flashcard, including its images, while keeping this flashcard's id.
+     * @param other The flashcard to copy the content of.
+     */
+    public void copyContentFrom(Flashcard other) {
+        synchronized (other) {
+            synchronized (this) {
+                question = other.question;
+                answer = other.answer;
+                hint = other.hint;
+                questionImage = other.questionImage;
+                answerImage = other.answerImage;
+                questionImageReference = other.questionImageReference == null ? null : other.questionImageReference.share();
+                answerImageReference = other.answerImageReference == null ? null : other.answerImageReference.share();
+                questionImageEncoding = other.questionImageEncoding;
+                answerImageEncoding = other.answerImageEncoding;
+            }
+        }
+        changed();
+    }
+
+    /**
+     * Lets go of the images that have not been resolved, once the deck holding the flashcard has been closed.
+     */
+    synchronized void releaseImages() {
+        if (questionImageReference != null) {
+            questionImageReference.release();
+            questionImageReference = null;
+        }
+        if (answerImageReference != null) {
+            answerImageReference.release();
+            answerImageReference = null;
+        }
+    }
+
+    /**
+     * Lets the owning deck know that this flashcard has unsaved changes.
+     */
+    private void changed() {
+        Deck deck = owner;
+        if (deck != null) {
+            deck.flashcardChanged(this);
+        }
     }
 }
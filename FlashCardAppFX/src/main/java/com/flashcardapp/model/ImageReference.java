@@ -0,0 +1,47 @@
+package com.flashcardapp.model;
+
+/**
+ * A reference to flashcard image data that has not been materialized yet.
+ * Implementations remember where the image payload lives and only decode it once the image is needed.
+ */
+public interface ImageReference {
+
+    /**
+     * Resolves the referenced image data into a URL that can be displayed.
+     * @return The URL of the image, or null if the image could not be resolved.
+     */
+    String resolve();
+
+    /**
+     * Reads the referenced image in its stored form without resolving it, so it can be written to another deck file
+     * as it is.
+     * @return The encoded image, or null if the reference cannot provide the image bytes directly.
+     */
+    default EncodedImage encode() {
+        return null;
+    }
+
+    /**
+     * Identifies the image without resolving it, so that a changed image can be noticed without reading the image:
+     * the hash the image is cached under if the deck stores the image, or its location if the deck links to it.
+     * @return The identity of the image, or null if it cannot be told without resolving the image.
+     */
+    default String identity() {
+        return null;
+    }
+
+    /**
+     * Returns a reference to the same image for another flashcard to take over, so that each flashcard can release
+     * its own reference.
+     * @return The reference for the other flashcard.
+     */
+    default ImageReference share() {
+        return this;
+    }
+
+    /**
+     * Gives up the reference without resolving it, letting go of anything it keeps open to read the image later.
+     */
+    default void release() {
+    }
+}
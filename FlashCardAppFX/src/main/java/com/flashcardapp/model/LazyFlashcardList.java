@@ -0,0 +1,147 @@
+package com.flashcardapp.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list of flashcards backed by a store that can read any card by index, such as a memory-mapped deck file.
+ * Cards are only created the first time they are requested and are kept afterwards, so edits to them stick.
+ * Cards can be appended without reading the stored cards; any other structural change reads every card once
+ * and continues as a regular in-memory list. The backing store is closed once every card has been read, or when the
+ * deck holding the list is closed.
+ */
+public abstract class LazyFlashcardList extends AbstractList<Flashcard> implements RandomAccess {
+    private final Flashcard[] loaded;
+    private final List<Flashcard> appended = new ArrayList<>();
+    private List<Flashcard> materialized;
+    private int loadedCount;
+    private boolean storeClosed;
+    Deck owner;
+
+    /**
+     * Creates a list over a store holding the given number of cards.
+     * @param storedCount The number of cards in the backing store.
+     */
+    protected LazyFlashcardList(int storedCount) {
+        this.loaded = new Flashcard[storedCount];
+    }
+
+    /**
+     * Reads a card from the backing store.
+     * @param index The index of the card in the backing store.
+     * @return The card at that index.
+     */
+    protected abstract Flashcard load(int index);
+
+    /**
+     * Lets go of the backing store once no more cards will be read from it.
+     */
+    protected void closeStore() {
+    }
+
+    @Override
+    public synchronized Flashcard get(int index) {
+        if (materialized != null) {
+            return materialized.get(index);
+        }
+        Objects.checkIndex(index, size());
+        if (index >= loaded.length) {
+            return appended.get(index - loaded.length);
+        }
+        Flashcard card = loaded[index];
+        if (card == null) {
+            card = load(index);
+            card.owner = owner;
+            loaded[index] = card;
+            if (++loadedCount == loaded.length) {
+                close();
+            }
+        }
+        return card;
+    }
+
+    @Override
+    public synchronized int size() {
+        return materialized != null ? materialized.size() : loaded.length + appended.size();
+    }
+
+    @Override
+    public synchronized boolean add(Flashcard flashcard) {
+        modCount++;
+        if (materialized != null) {
+            return materialized.add(flashcard);
+        }
+        return appended.add(flashcard);
+    }
+
+    @Override
+    public synchronized void add(int index, Flashcard flashcard) {
+        modCount++;
+        materialize().add(index, flashcard);
+    }
+
+    @Override
+    public synchronized Flashcard set(int index, Flashcard flashcard) {
+        return materialize().set(index, flashcard);
+    }
+
+    @Override
+    public synchronized Flashcard remove(int index) {
+        modCount++;
+        return materialize().remove(index);
+    }
+
+    @Override
+    public synchronized void clear() {
+        modCount++;
+        materialized = new ArrayList<>();
+        close();
+    }
+
+    /**
+     * Returns the cards that have been created so far, without reading any other card from the backing store.
+     */
+    synchronized List<Flashcard> loadedFlashcards() {
+        if (materialized != null) {
+            return new ArrayList<>(materialized);
+        }
+        List<Flashcard> cards = new ArrayList<>();
+        for (Flashcard card : loaded) {
+            if (card != null) {
+                cards.add(card);
+            }
+        }
+        cards.addAll(appended);
+        return cards;
+    }
+
+    /**
+     * Reads every remaining card so the list can be changed freely.
+     * @return The in-memory list that now backs this list.
+     */
+    private List<Flashcard> materialize() {
+        if (materialized == null) {
+            List<Flashcard> cards = new ArrayList<>(size());
+            for (int i = 0; i < loaded.length; i++) {
+                cards.add(get(i));
+            }
+            cards.addAll(appended);
+            materialized = cards;
+            close();
+        }
+        return materialized;
+    }
+
+    /**
+     * Closes the backing store, after which cards that have not been read are read without their images.
+     */
+    synchronized void close() {
+        if (!storeClosed) {
+            storeClosed = true;
+            closeStore();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.flashcardapp.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces files so that readers, and the file after a crash, only ever see the complete old or the complete new
+ * contents.
+ */
+public final class AtomicFiles {
+
+    /**
+     * Writes the new contents of a file to the path it is given.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        /**
+         * @param file The temporary file to write the new contents to.
+         * @throws IOException if the contents cannot be written.
+         */
+        void write(Path file) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Replaces a file by writing a temporary file next to it, forcing it to disk and renaming it over the target.
+     * If anything fails, the target is left untouched and the temporary file is removed.
+     * @param target The file to replace.
+     * @param writer Writes the new contents to the temporary file.
+     * @throws IOException if the new contents cannot be written or moved into place.
+     */
+    public static void replace(Path target, ContentWriter writer) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath();
+        Path directory = absoluteTarget.getParent();
+        Path tempFile = Files.createTempFile(directory, absoluteTarget.getFileName().toString(), ".tmp");
+        try {
+            writer.write(tempFile);
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(tempFile, absoluteTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(directory);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Forces the rename itself to disk. Not every platform allows opening a directory, in which case the rename is
+     * left to the file system.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.EncodedImage;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.model.ImageReference;
+import com.flashcardapp.model.LazyFlashcardList;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Handles loading and saving decks in a compact, indexed binary format.
+ * <p>
+ * The file starts with a fixed header, followed by a table with one fixed-width entry per card, a section of
+ * length-prefixed UTF-8 strings and a section of images. Loading a deck only maps the file into memory; a card is
+ * decoded from the mapping the first time it is requested, and its images only when they are displayed.
+ * JSON remains the interchange format and is handled by {@link DeckHandler}.
+ */
+public class BinaryDeckHandler implements IDeckHandler {
+
+    /** File extension used for binary decks. */
+    public static final String EXTENSION = ".fcb";
+
+    private static final int MAGIC = 0x46434B42; // "FCKB"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int ENTRY_SIZE = 36; // card id, question, answer and hint string refs, question and answer image refs
+    private static final int V1_ENTRY_SIZE = 28; // version 1 entries have no card id
+    private static final int NO_VALUE = -1;
+    private static final byte IMAGE_EMBEDDED = 0;
+    private static final byte IMAGE_LINK = 1;
+    private static final int HASH_SIZE = 32;
+
+    /**
+     * Opens a binary deck by mapping it into memory. No card is read until it is requested. The file stays open
+     * until every card has been read or the deck is closed, and after that for as long as images of the cards that
+     * were read have not been resolved.
+     * @param path The path to the binary deck file.
+     * @return The deck backed by the mapped file.
+     * @throws IOException if the file cannot be read or is not a binary deck.
+     */
+    @Override
+    public Deck loadDeck(String path) throws IOException {
+        try (SharedChannel file = SharedChannel.open(Paths.get(path))) {
+            FileChannel channel = file.channel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary deck file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported binary deck version " + version);
+            }
+            int entrySize = version == 1 ? V1_ENTRY_SIZE : ENTRY_SIZE;
+            int cardCount = header.getInt();
+            int nameRef = header.getInt();
+            long stringsOffset = header.getLong();
+            long stringsLength = header.getLong();
+            long imagesOffset = header.getLong();
+
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) cardCount * entrySize);
+            MappedByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset, stringsLength);
+            MappedCardList cards = new MappedCardList(cardCount, entrySize, table, strings, file, imagesOffset);
+            Deck deck = new Deck(readString(strings, nameRef), cards);
+            deck.markSaved(path);
+            return deck;
+        }
+    }
+
+    /**
+     * Reads the name and number of flashcards from the header, without mapping the file.
+     * @param path The path to the binary deck file.
+     * @return The deck information.
+     * @throws IOException if the file cannot be read or is not a binary deck.
+     */
+    @Override
+    public DeckInfo readInfo(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary deck file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported binary deck version " + version);
+            }
+            int cardCount = header.getInt();
+            long nameOffset = header.getLong(16) + header.getInt(12);
+            int nameLength = readFully(channel, nameOffset, 4).getInt();
+            String name = StandardCharsets.UTF_8.decode(readFully(channel, nameOffset + 4, nameLength)).toString();
+            return new DeckInfo(name, path, cardCount);
+        }
+    }
+
+    /**
+     * Saves a deck in the binary format. The file is replaced atomically, so a deck that is still mapped from the
+     * target keeps reading the previous contents.
+     * @param deck The deck to save.
+     * @param filePath The path to save the deck file.
+     * @throws IOException if the deck cannot be written.
+     */
+    @Override
+    public void saveDeck(Deck deck, String filePath) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path imagesFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".images");
+        try {
+            AtomicFiles.replace(target, file -> writeDeck(deck, file, imagesFile));
+        } finally {
+            Files.deleteIfExists(imagesFile);
+        }
+        deck.markSaved(filePath);
+    }
+
+    /**
+     * Writes the header, card table and both sections. Images are staged in a separate file and appended after the
+     * string section, and the table is filled in once all offsets are known.
+     */
+    private void writeDeck(Deck deck, Path file, Path imagesFile) throws IOException {
+        List<Flashcard> cards = deck.snapshotFlashcards();
+        int cardCount = cards.size();
+        long stringsOffset = HEADER_SIZE + (long) cardCount * ENTRY_SIZE;
+        ByteBuffer table = ByteBuffer.allocate(cardCount * ENTRY_SIZE);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(stringsOffset);
+            SectionWriter strings = new SectionWriter(Channels.newOutputStream(channel));
+            int nameRef = strings.writeString(deck.getName());
+
+            try (SectionWriter images = new SectionWriter(Files.newOutputStream(imagesFile))) {
+                // images are read on the pipeline workers, then written in card order
+                Iterator<Flashcard> order = cards.iterator();
+                ImagePipeline.getInstance().run(cards, card -> new EncodedImage[] {
+                        ImageEncoder.encodeOrNull(card, ImageEncoder.Side.QUESTION),
+                        ImageEncoder.encodeOrNull(card, ImageEncoder.Side.ANSWER)
+                }, cardImages -> {
+                    Flashcard card = order.next();
+                    table.putLong(card.getId());
+                    table.putInt(strings.writeString(card.getQuestion()));
+                    table.putInt(strings.writeString(card.getAnswer()));
+                    table.putInt(strings.writeString(card.getHint()));
+                    table.putLong(images.writeImage(cardImages[0], card, ImageEncoder.Side.QUESTION));
+                    table.putLong(images.writeImage(cardImages[1], card, ImageEncoder.Side.ANSWER));
+                });
+            }
+            strings.flush();
+
+            long stringsLength = strings.position();
+            if (stringsLength > Integer.MAX_VALUE) {
+                throw new IOException("Deck text is too large for the binary format");
+            }
+            long imagesOffset = stringsOffset + stringsLength;
+            try (FileChannel imagesChannel = FileChannel.open(imagesFile, StandardOpenOption.READ)) {
+                long imagesLength = imagesChannel.size();
+                long transferred = 0;
+                while (transferred < imagesLength) {
+                    transferred += channel.transferFrom(imagesChannel, imagesOffset + transferred, imagesLength - transferred);
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(cardCount).putInt(nameRef);
+            header.putLong(stringsOffset).putLong(stringsLength).putLong(imagesOffset).putLong(channel.size() - imagesOffset);
+            header.flip();
+            channel.write(header, 0);
+            table.flip();
+            channel.write(table, HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Reads a region of a file into a new buffer.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of binary deck file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the string section.
+     * @param strings The mapped string section.
+     * @param ref The offset of the string within the section, or -1 for no value.
+     * @return The string, or null if there is no value.
+     */
+    private static String readString(ByteBuffer strings, int ref) {
+        if (ref == NO_VALUE) {
+            return null;
+        }
+        int length = strings.getInt(ref);
+        byte[] bytes = new byte[length];
+        strings.get(ref + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cards read on demand from the mapped card table and string section. The list holds the file open for the
+     * images of the cards it has not read yet, until every card has been read, the deck is closed or the list has
+     * been garbage collected.
+     */
+    private static final class MappedCardList extends LazyFlashcardList {
+        private final int entrySize;
+        private final ByteBuffer table;
+        private final ByteBuffer strings;
+        private final SharedChannel file;
+        private final Cleaner.Cleanable hold;
+        private final long imagesOffset;
+
+        MappedCardList(int cardCount, int entrySize, ByteBuffer table, ByteBuffer strings, SharedChannel file, long imagesOffset) {
+            super(cardCount);
+            this.entrySize = entrySize;
+            this.table = table;
+            this.strings = strings;
+            this.file = file;
+            this.hold = file.hold(this);
+            this.imagesOffset = imagesOffset;
+        }
+
+        @Override
+        protected Flashcard load(int index) {
+            int entry = index * entrySize;
+            long id = 0;
+            if (entrySize == ENTRY_SIZE) {
+                id = table.getLong(entry);
+                entry += 8;
+            }
+            String question = readString(strings, table.getInt(entry));
+            return new Flashcard(
+                    id != 0 ? id : Flashcard.legacyId(question, index),
+                    question,
+                    readString(strings, table.getInt(entry + 4)),
+                    readString(strings, table.getInt(entry + 8)),
+                    imageReference(table.getLong(entry + 12)),
+                    imageReference(table.getLong(entry + 20))
+            );
+        }
+
+        @Override
+        protected void closeStore() {
+            hold.clean();
+        }
+
+        private ImageReference imageReference(long ref) {
+            return ref == NO_VALUE ? null : new MappedImageReference(file, imagesOffset + ref);
+        }
+    }
+
+    /**
+     * A reference to an image in the image section, read only when the image is resolved.
+     * Embedded images are served from the {@link ImageCache} using the hash stored alongside them, so an image that
+     * is already cached is never read.
+     */
+    private static final class MappedImageReference extends FileImageReference {
+
+        MappedImageReference(SharedChannel file, long position) {
+            super(file, position);
+        }
+
+        /**
+         * Reads an embedded image as it is stored, so it can be written to another deck file unchanged.
+         */
+        @Override
+        EncodedImage readEncoded(SharedChannel file, long position) throws IOException {
+            ByteBuffer header = readFully(file.channel(), position, 5);
+            if (header.get() == IMAGE_LINK) {
+                return null;
+            }
+            int length = header.getInt();
+            String hash = Hex.encodeHexString(readFully(file.channel(), position + 5, HASH_SIZE));
+            byte[] imageBytes = readFully(file.channel(), position + 5 + HASH_SIZE, length).array();
+            return new EncodedImage(hash, ImageSources.extensionOf(imageBytes), imageBytes);
+        }
+
+        /**
+         * Reads the stored hash of an embedded image, or the location of a linked one.
+         */
+        @Override
+        String readIdentity(SharedChannel file, long position) throws IOException {
+            ByteBuffer header = readFully(file.channel(), position, 5);
+            if (header.get() == IMAGE_LINK) {
+                return StandardCharsets.UTF_8.decode(readFully(file.channel(), position + 5, header.getInt())).toString();
+            }
+            return Hex.encodeHexString(readFully(file.channel(), position + 5, HASH_SIZE));
+        }
+
+        @Override
+        String read(SharedChannel file, long position) throws IOException {
+            ByteBuffer header = readFully(file.channel(), position, 5);
+            byte kind = header.get();
+            int length = header.getInt();
+            if (kind == IMAGE_LINK) {
+                return StandardCharsets.UTF_8.decode(readFully(file.channel(), position + 5, length)).toString();
+            }
+
+            String key = Hex.encodeHexString(readFully(file.channel(), position + 5, HASH_SIZE));
+            ImageCache cache = ImageCache.getInstance();
+            String cached = cache.lookup(key);
+            if (cached != null) {
+                return cached;
+            }
+            return cache.store(key, readFully(file.channel(), position + 5 + HASH_SIZE, length).array());
+        }
+
+        @Override
+        FileImageReference copy(SharedChannel file, long position) {
+            return new MappedImageReference(file, position);
+        }
+    }
+
+    /**
+     * Writes entries to a section while tracking the offset of each entry within it.
+     */
+    private static final class SectionWriter extends DataOutputStream {
+        private long position;
+
+        SectionWriter(OutputStream out) {
+            super(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        long position() {
+            return position;
+        }
+
+        /**
+         * Writes a length-prefixed UTF-8 string.
+         * @return The offset of the string within the section, or -1 if the string is null.
+         */
+        int writeString(String value) throws IOException {
+            if (value == null) {
+                return NO_VALUE;
+            }
+            long ref = position;
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            write(bytes);
+            position += 4 + bytes.length;
+            return (int) ref;
+        }
+
+        /**
+         * Writes an image, embedding its original bytes when they could be read and linking to it otherwise.
+         * @param image The image in its stored form, or null if it could not be read.
+         * @return The offset of the image within the section, or -1 if there is no image.
+         */
+        long writeImage(EncodedImage image, Flashcard card, ImageEncoder.Side side) throws IOException {
+            long ref = position;
+            if (image != null) {
+                byte[] imageBytes = image.getData();
+                writeByte(IMAGE_EMBEDDED);
+                writeInt(imageBytes.length);
+                write(hashBytes(image.getHash()));
+                write(imageBytes);
+                position += 5 + HASH_SIZE + imageBytes.length;
+                return ref;
+            }
+
+            String imagePath = ImageEncoder.pathOf(card, side);
+            if (imagePath == null || imagePath.isEmpty()) {
+                return NO_VALUE;
+            }
+            byte[] link = imagePath.getBytes(StandardCharsets.UTF_8);
+            writeByte(IMAGE_LINK);
+            writeInt(link.length);
+            write(link);
+            position += 5 + link.length;
+            return ref;
+        }
+
+        /**
+         * Turns an image hash back into the bytes it was written out from, the inverse of how it is read.
+         */
+        private static byte[] hashBytes(String hash) throws IOException {
+            try {
+                return Hex.decodeHex(hash);
+            } catch (DecoderException e) {
+                throw new IOException("Invalid image hash " + hash, e);
+            }
+        }
+    }
+}
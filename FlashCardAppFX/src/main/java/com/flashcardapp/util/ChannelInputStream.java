@@ -0,0 +1,42 @@
+package com.flashcardapp.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An input stream over a region of a file channel that uses positional reads, so several streams can read the
+ * same channel independently and the channel's own position is never moved.
+ */
+final class ChannelInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+
+    /**
+     * @param channel The channel to read from.
+     * @param position The file position to start reading at.
+     */
+    ChannelInputStream(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+}
@@ -7,25 +7,53 @@ import com.flashcardapp.model.Flashcard;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles the configuration of the FlashcardApp.
+ * <p>
+ * Options are saved write-behind: saveOption only updates memory, and a background thread writes the file a short
+ * delay after the first unsaved change, so all options saved within that window cost a single write. The delay is
+ * read from the "configSaveDelayMs" option; a delay of 0 writes the file on every save. Pending changes are flushed
+ * when the application stops.
+ * <p>
+ * Options are read through a {@link ConfigSnapshot}, which converts each option to its type once. The snapshot is
+ * replaced whenever an option is saved or the configuration is reloaded.
  */
 public class ConfigHandler {
+    private static final long DEFAULT_SAVE_DELAY_MILLIS = 1000;
+
     private static ConfigHandler instance;
     private Map<String, Object> configMap;
+    private ConfigSnapshot snapshot; // the options as of the last change, created on first read
     private final ObjectMapper mapper;
     private static final String CONFIG_PATH = System.getProperty("user.home") + File.separator + "flashcardapp" + File.separator + "config.json";
 
+    private final ScheduledExecutorService writer;
+    private final Object writeLock = new Object(); // keeps snapshots written in the order they were taken
+    private long saveDelayMillis;
+    private boolean dirty; // whether the map has changes that have not been written yet
+    private boolean flushScheduled;
+
     /**
      * Private constructor for initializing the ObjectMapper and loading the existing configuration.
      */
     private ConfigHandler() {
         mapper = createMapper();
         loadConfig();
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "config-flush"));
     }
 
     /**
@@ -60,25 +88,31 @@ public class ConfigHandler {
     /**
      * Loads the configuration from a predefined JSON file path.
      */
-    private void loadConfig() {
+    private synchronized void loadConfig() {
         try {
             File configFile = new File(CONFIG_PATH);
-            if (configFile.exists()) {
+            if (configFile.length() > 0) {
                 configMap = mapper.readValue(configFile, new TypeReference<Map<String, Object>>() {});
             } else {
                 configMap = new HashMap<>();
-                // create the directory if it doesn't exist
+                // create the directory if it doesn't exist, the file is written on the first save
                 configFile.getParentFile().mkdirs();
-                configFile.createNewFile();
             }
         } catch (IOException e) {
             configMap = new HashMap<>();
             e.printStackTrace();
         }
+        dirty = false;
+        snapshot = null;
+        saveDelayMillis = DEFAULT_SAVE_DELAY_MILLIS;
+        Object delay = configMap.get("configSaveDelayMs");
+        if (delay instanceof Number) {
+            saveDelayMillis = Math.max(0, ((Number) delay).longValue());
+        }
     }
 
     /**
-     * Saves a configuration option.
+     * Saves a configuration option. The option is available right away and written to the file shortly after.
      * @param key The key under which the option will be saved.
      * @param value The value of the option to save.
      */
@@ -86,8 +120,35 @@ public class ConfigHandler {
         if (key == null || value == null) {
             throw new IllegalArgumentException("Key or value cannot be null");
         }
-        configMap.put(key, value);
-        saveConfig();
+        changeOptions(() -> configMap.put(key, value));
+    }
+
+    /**
+     * Removes a configuration option, if it has been set. The change is written to the file shortly after.
+     * @param key The key of the option to remove.
+     */
+    public void removeOption(String key) {
+        changeOptions(() -> configMap.remove(key));
+    }
+
+    /**
+     * Applies a change to the options, replaces the snapshot and schedules the write.
+     */
+    private void changeOptions(Runnable change) {
+        boolean writeNow;
+        synchronized (this) {
+            change.run();
+            snapshot = null;
+            writeNow = saveDelayMillis == 0;
+            dirty = true;
+            if (!flushScheduled && !writeNow) {
+                flushScheduled = true;
+                writer.schedule(this::flush, saveDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (writeNow) {
+            flush();
+        }
     }
 
     /**
@@ -98,28 +159,70 @@ public class ConfigHandler {
      * @throws IllegalArgumentException if the key is not found or cannot be cast to the expected type.
      */
     public <T> T getOption(String key, Class<T> type) {
-        Object data = configMap.get(key);
-        if (data == null) {
-            throw new IllegalArgumentException("Option " + key + " not found in config.");
+        return findOption(key, type).orElseThrow(() -> new IllegalArgumentException("Option " + key + " not found in config."));
+    }
+
+    /**
+     * Looks up a configuration option in the current snapshot.
+     * @param key The key of the configuration option to look up.
+     * @param type The expected type of the configuration option.
+     * @return The value of the configuration option, or an empty Optional if it has not been set.
+     * @throws IllegalArgumentException if the option cannot be cast to the expected type.
+     */
+    public <T> Optional<T> findOption(String key, Class<T> type) {
+        return getSnapshot().find(key, type);
+    }
+
+    /**
+     * Returns the current configuration snapshot. The snapshot does not change; options saved after it was taken
+     * are only visible in later snapshots.
+     * @return The snapshot of the current options.
+     */
+    public synchronized ConfigSnapshot getSnapshot() {
+        if (snapshot == null) {
+            snapshot = new ConfigSnapshot(configMap, mapper);
         }
-        return mapper.convertValue(data, type);
+        return snapshot;
     }
 
     /**
-     * Saves the current configuration map to the predefined JSON file path.
+     * Writes any options saved since the last write to the configuration file. The file is replaced atomically,
+     * so it is never left half written.
      */
-    private void saveConfig() {
-        try {
-            mapper.writeValue(Paths.get(CONFIG_PATH).toFile(), configMap);
-        } catch (IOException e) {
-            e.printStackTrace();
+    public void flush() {
+        synchronized (writeLock) {
+            byte[] content;
+            synchronized (this) {
+                flushScheduled = false;
+                if (!dirty) {
+                    return;
+                }
+                try {
+                    content = mapper.writeValueAsBytes(configMap);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                dirty = false;
+            }
+            try {
+                AtomicFiles.replace(Paths.get(CONFIG_PATH), file -> Files.write(file, content));
+            } catch (IOException e) {
+                markDirty(); // written again by the next save or flush
+                e.printStackTrace();
+            }
         }
     }
 
+    private synchronized void markDirty() {
+        dirty = true;
+    }
+
     /**
-     * Manually reloads the configuration from the file.
+     * Manually reloads the configuration from the file, after writing any pending changes to it.
      */
     public void reloadConfiguration() {
+        flush();
         loadConfig();
     }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable view of the configuration at one point in time.
+ * <p>
+ * Options are converted to the requested type the first time they are read and the typed value is kept, so reading
+ * an option again costs a map lookup. Typed values are shared between callers and must not be modified; to change
+ * an option, save a new value through {@link ConfigHandler}, which replaces the snapshot.
+ */
+public final class ConfigSnapshot {
+    private final Map<String, Object> options;
+    private final ObjectMapper mapper;
+    private final Map<TypedKey, Object> typedValues = new ConcurrentHashMap<>();
+
+    /**
+     * @param options The raw option values. The map is copied.
+     * @param mapper The mapper converting raw values to typed ones.
+     */
+    ConfigSnapshot(Map<String, Object> options, ObjectMapper mapper) {
+        this.options = Collections.unmodifiableMap(new HashMap<>(options));
+        this.mapper = mapper;
+    }
+
+    /**
+     * Looks up an option.
+     * @param key The key of the option.
+     * @param type The type to read the option as.
+     * @return The value of the option, or an empty Optional if it has not been set.
+     * @throws IllegalArgumentException if the option cannot be read as the given type.
+     */
+    public <T> Optional<T> find(String key, Class<T> type) {
+        Object raw = options.get(key);
+        if (raw == null) {
+            return Optional.empty();
+        }
+        Object value = typedValues.computeIfAbsent(new TypedKey(key, type), typedKey -> mapper.convertValue(raw, type));
+        return Optional.of(type.cast(value));
+    }
+
+    /**
+     * Checks whether an option has been set.
+     * @param key The key of the option.
+     * @return true if the option has a value.
+     */
+    public boolean contains(String key) {
+        return options.containsKey(key);
+    }
+
+    /**
+     * An option key together with the type it is read as.
+     */
+    private static final class TypedKey {
+        final String key;
+        final Class<?> type;
+
+        TypedKey(String key, Class<?> type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TypedKey)) {
+                return false;
+            }
+            TypedKey other = (TypedKey) o;
+            return key.equals(other.key) && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, type);
+        }
+    }
+}
@@ -0,0 +1,856 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckChange;
+import com.flashcardapp.model.EncodedImage;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.model.ImageReference;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handles loading and saving decks in an embedded SQLite database, one database file per deck.
+ * <p>
+ * Cards, images and review history live in indexed tables. Saving a deck that was loaded from or last saved to the
+ * same database only applies the changes made since, so editing one card updates one row; images are stored once
+ * per distinct image, keyed by their hash. Cards are kept in order by a position that may have gaps, so removing a
+ * card does not renumber the cards after it. The review progress of the deck is kept in the same file, see
+ * {@link ProgressStore}. The database runs in-process and needs no server.
+ */
+public class DatabaseDeckHandler implements IDeckHandler {
+
+    /** File extension used for database decks. */
+    public static final String EXTENSION = ".fcdb";
+
+    private static final int SCHEMA_VERSION = 1;
+    private static final String[] SCHEMA = {
+            "CREATE TABLE deck (id INTEGER PRIMARY KEY CHECK (id = 0), name TEXT NOT NULL)",
+            "CREATE TABLE card (id INTEGER PRIMARY KEY, position INTEGER NOT NULL, question TEXT NOT NULL, "
+                    + "answer TEXT NOT NULL, hint TEXT, question_image TEXT, answer_image TEXT, "
+                    + "question_link TEXT, answer_link TEXT)",
+            "CREATE INDEX card_position ON card (position)",
+            "CREATE INDEX card_question_image ON card (question_image)",
+            "CREATE INDEX card_answer_image ON card (answer_image)",
+            "CREATE TABLE media (hash TEXT PRIMARY KEY, format TEXT NOT NULL, data BLOB NOT NULL)",
+            "CREATE TABLE review (card_id INTEGER NOT NULL, reviewed_at INTEGER NOT NULL, mastery INTEGER NOT NULL)",
+            "CREATE INDEX review_card ON review (card_id, reviewed_at)",
+            "CREATE TABLE mastery (card_id INTEGER PRIMARY KEY, level INTEGER NOT NULL)",
+            "CREATE INDEX mastery_level ON mastery (level, card_id)"
+    };
+    private static final String CARD_COLUMNS = "id, question, answer, hint, question_image, answer_image, question_link, answer_link";
+    private static final String UPDATE_CARD = "UPDATE card SET id = ?, question = ?, answer = ?, hint = ?, question_image = ?, "
+            + "answer_image = ?, question_link = ?, answer_link = ? ";
+    private static final int BATCH_SIZE = 200; // flashcards per batch reported to a load listener
+
+    @Override
+    public Deck loadDeck(String path) throws IOException {
+        return loadDeck(path, null);
+    }
+
+    /**
+     * Loads a deck from a database. The cards are read in one indexed query; their images are only read when they
+     * are displayed.
+     * @param path The path to the database file.
+     * @param listener The listener to report the flashcards to, or null.
+     * @return The loaded deck.
+     * @throws IOException if the file does not exist or is not a database deck.
+     * @throws InterruptedIOException if the listener cancelled loading.
+     */
+    @Override
+    public Deck loadDeck(String path, DeckLoadListener listener) throws IOException {
+        if (!Files.exists(Paths.get(path))) {
+            throw new NoSuchFileException(path); // connecting would create an empty database
+        }
+        try (Connection connection = connect(path);
+             MediaSource media = new MediaSource(path)) {
+            checkSchema(connection, false);
+            String name;
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT name FROM deck")) {
+                if (!result.next()) {
+                    throw new IOException("Database deck is missing a name");
+                }
+                name = result.getString(1);
+            }
+
+            List<Flashcard> flashcards = new ArrayList<>();
+            int reported = 0;
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT " + CARD_COLUMNS + " FROM card ORDER BY position")) {
+                while (result.next()) {
+                    if (listener != null && listener.isCancelled()) {
+                        throw new InterruptedIOException("Deck loading was cancelled");
+                    }
+                    flashcards.add(readFlashcard(result, media));
+                    if (listener != null && flashcards.size() - reported == BATCH_SIZE) {
+                        listener.cardsLoaded(new ArrayList<>(flashcards.subList(reported, flashcards.size())), -1, -1);
+                        reported = flashcards.size();
+                    }
+                }
+            }
+            if (listener != null && flashcards.size() > reported) {
+                listener.cardsLoaded(new ArrayList<>(flashcards.subList(reported, flashcards.size())), -1, -1);
+            }
+
+            Deck deck = new Deck(name, flashcards);
+            deck.markSaved(path);
+            return deck;
+        } catch (SQLException e) {
+            throw new IOException("Error reading database deck: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Saves a deck to a database. If the deck was loaded from or last saved to this database, only its changes are
+     * written; otherwise the cards in the database are replaced. Either way the save is a single transaction, and
+     * the review history in the database is kept.
+     * @param deck The deck to save.
+     * @param filePath The path to the database file.
+     * @throws IOException if the deck cannot be written. The next save will then write the whole deck.
+     */
+    @Override
+    public void saveDeck(Deck deck, String filePath) throws IOException {
+        boolean applyChanges = deck.isTrackingChanges() && deck.getSavedPath() != null
+                && DeckHandler.samePath(deck.getSavedPath(), filePath) && Files.exists(Paths.get(filePath));
+        if (!applyChanges && deck.isChangesOnly()) {
+            deck.markUnsaved();
+            throw new IOException("The database has changed since the deck was loaded; save again to write the whole deck");
+        }
+        try (Connection connection = connect(filePath)) {
+            checkSchema(connection, true);
+            connection.setAutoCommit(false);
+            try {
+                if (applyChanges) {
+                    writeChanges(connection, deck.takeChanges());
+                } else {
+                    writeDeck(connection, deck);
+                }
+                connection.commit();
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            deck.markUnsaved();
+            throw new IOException("Error writing database deck: " + e.getMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            deck.markUnsaved();
+            throw e;
+        }
+        if (!applyChanges) {
+            deck.markSaved(filePath);
+        }
+    }
+
+    /**
+     * {@inheritDoc} The changes are written in a single transaction.
+     */
+    @Override
+    public boolean savesChanges() {
+        return true;
+    }
+
+    /**
+     * Reads the name of a database deck and counts its cards through the index on their position.
+     * @param path The path to the database file.
+     * @return The deck information.
+     * @throws IOException if the file does not exist or is not a database deck.
+     */
+    @Override
+    public DeckInfo readInfo(String path) throws IOException {
+        if (!Files.exists(Paths.get(path))) {
+            throw new NoSuchFileException(path);
+        }
+        try (Connection connection = connect(path);
+             Statement statement = connection.createStatement()) {
+            checkSchema(connection, false);
+            try (ResultSet result = statement.executeQuery("SELECT (SELECT name FROM deck), (SELECT COUNT(*) FROM card)")) {
+                result.next();
+                return new DeckInfo(result.getString(1), path, result.getInt(2));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error reading database deck: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replaces the name and all cards of the stored deck. Images are read on the pipeline workers while the cards
+     * before them are inserted.
+     */
+    private void writeDeck(Connection connection, Deck deck) throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM card");
+        }
+        writeName(connection, deck.getName());
+        List<Flashcard> cards = deck.snapshotFlashcards();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO card (position, " + CARD_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement insertMedia = prepareInsertMedia(connection)) {
+            Iterator<Flashcard> order = cards.iterator();
+            int[] position = {0};
+            ImagePipeline.getInstance().run(cards, card -> new EncodedImage[] {
+                    ImageEncoder.encodeOrNull(card, ImageEncoder.Side.QUESTION),
+                    ImageEncoder.encodeOrNull(card, ImageEncoder.Side.ANSWER)
+            }, cardImages -> {
+                try {
+                    insert.setInt(1, position[0]++);
+                    bindCard(insert, 2, order.next(), cardImages, insertMedia);
+                    insert.executeUpdate();
+                } catch (SQLException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            });
+        }
+        deleteUnusedMedia(connection);
+    }
+
+    /**
+     * Applies the changes made to a deck since it was last saved to this database. Cards are found by id through the
+     * primary key, and added cards go after the last position, so no other card is renumbered.
+     */
+    private void writeChanges(Connection connection, List<DeckChange> changes) throws SQLException {
+        boolean cardsDropped = false;
+        try (PreparedStatement insertMedia = prepareInsertMedia(connection)) {
+            for (DeckChange change : changes) {
+                switch (change.getType()) {
+                    case ADD:
+                        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO card (position, " + CARD_COLUMNS
+                                + ") VALUES ((SELECT COALESCE(MAX(position) + 1, 0) FROM card), ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                            bindCard(insert, 1, change.getFlashcard(), encodeImages(change.getFlashcard()), insertMedia);
+                            insert.executeUpdate();
+                        }
+                        break;
+                    case REMOVE:
+                        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM card WHERE id = ?")) {
+                            delete.setLong(1, change.getCardId());
+                            delete.executeUpdate();
+                        }
+                        cardsDropped = true;
+                        break;
+                    case UPDATE:
+                        updateCard(connection, change, insertMedia);
+                        cardsDropped = true;
+                        break;
+                    case CLEAR:
+                        try (Statement statement = connection.createStatement()) {
+                            statement.executeUpdate("DELETE FROM card");
+                        }
+                        cardsDropped = true;
+                        break;
+                    case RENAME:
+                        writeName(connection, change.getName());
+                        break;
+                }
+            }
+        }
+        if (cardsDropped) {
+            deleteUnusedMedia(connection);
+        }
+    }
+
+    /**
+     * Writes an updated card over the stored card with the same id, or over the card stored at the change's index if
+     * the card replaced another one.
+     */
+    private static void updateCard(Connection connection, DeckChange change, PreparedStatement insertMedia) throws SQLException {
+        Flashcard card = change.getFlashcard();
+        EncodedImage[] images = encodeImages(card);
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_CARD + "WHERE id = ?")) {
+            bindCard(update, 1, card, images, insertMedia);
+            update.setLong(9, card.getId());
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement replace = connection.prepareStatement(UPDATE_CARD
+                + "WHERE position = (SELECT position FROM card ORDER BY position LIMIT 1 OFFSET ?)")) {
+            bindCard(replace, 1, card, images, insertMedia);
+            replace.setInt(9, change.getIndex());
+            replace.executeUpdate();
+        }
+    }
+
+    private static EncodedImage[] encodeImages(Flashcard card) {
+        return new EncodedImage[] {
+                ImageEncoder.encodeOrNull(card, ImageEncoder.Side.QUESTION),
+                ImageEncoder.encodeOrNull(card, ImageEncoder.Side.ANSWER)
+        };
+    }
+
+    /**
+     * Binds the card columns, in the order of {@link #CARD_COLUMNS}, storing the images that could be read.
+     * Images that could not be read are stored as links to their path or URL.
+     */
+    private static void bindCard(PreparedStatement statement, int firstColumn, Flashcard card, EncodedImage[] images,
+                                 PreparedStatement insertMedia) throws SQLException {
+        statement.setLong(firstColumn, card.getId());
+        statement.setString(firstColumn + 1, card.getQuestion());
+        statement.setString(firstColumn + 2, card.getAnswer());
+        statement.setString(firstColumn + 3, card.getHint());
+        bindImage(statement, firstColumn + 4, firstColumn + 6, images[0], ImageEncoder.pathOf(card, ImageEncoder.Side.QUESTION), insertMedia);
+        bindImage(statement, firstColumn + 5, firstColumn + 7, images[1], ImageEncoder.pathOf(card, ImageEncoder.Side.ANSWER), insertMedia);
+    }
+
+    private static void bindImage(PreparedStatement statement, int hashColumn, int linkColumn, EncodedImage image,
+                                  String imagePath, PreparedStatement insertMedia) throws SQLException {
+        if (image != null) {
+            insertMedia.setString(1, image.getHash());
+            insertMedia.setString(2, image.getFormat());
+            insertMedia.setBytes(3, image.getData());
+            insertMedia.executeUpdate();
+            statement.setString(hashColumn, image.getHash());
+            statement.setNull(linkColumn, Types.VARCHAR);
+        } else {
+            statement.setNull(hashColumn, Types.VARCHAR);
+            statement.setString(linkColumn, imagePath == null || imagePath.isEmpty() ? null : imagePath);
+        }
+    }
+
+    private static PreparedStatement prepareInsertMedia(Connection connection) throws SQLException {
+        return connection.prepareStatement("INSERT OR IGNORE INTO media (hash, format, data) VALUES (?, ?, ?)");
+    }
+
+    private static void writeName(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO deck (id, name) VALUES (0, ?)")) {
+            statement.setString(1, name);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the images no card refers to anymore.
+     */
+    private static void deleteUnusedMedia(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM media WHERE NOT EXISTS (SELECT 1 FROM card WHERE question_image = media.hash) "
+                    + "AND NOT EXISTS (SELECT 1 FROM card WHERE answer_image = media.hash)");
+        }
+    }
+
+    private static Flashcard readFlashcard(ResultSet result, MediaSource media) throws SQLException {
+        return new Flashcard(
+                result.getLong(1),
+                result.getString(2),
+                result.getString(3),
+                result.getString(4),
+                imageReference(media, result.getString(5), result.getString(7)),
+                imageReference(media, result.getString(6), result.getString(8))
+        );
+    }
+
+    private static ImageReference imageReference(MediaSource media, String hash, String link) {
+        if (hash != null) {
+            return new MediaReference(media, hash);
+        }
+        return link == null ? null : () -> link;
+    }
+
+    /**
+     * Opens a connection to a database deck, creating the file if it does not exist.
+     */
+    private static Connection connect(String path) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout = 5000");
+            statement.execute("PRAGMA journal_mode = WAL"); // images are read on other connections while a save runs
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Checks that a database holds a deck of the supported version.
+     * @param create Whether to create the tables in a database that is still empty.
+     * @throws IOException if the database is not a deck, or a deck of another version.
+     */
+    private static void checkSchema(Connection connection, boolean create) throws IOException, SQLException {
+        int version;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+            version = result.next() ? result.getInt(1) : 0;
+        }
+        if (version == SCHEMA_VERSION) {
+            return;
+        }
+        if (version != 0) {
+            throw new IOException("Unsupported database deck version " + version);
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+            if (!create || result.next() && result.getInt(1) > 0) {
+                throw new IOException("Not a database deck file");
+            }
+        }
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String table : SCHEMA) {
+                statement.execute(table);
+            }
+            statement.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Writes the cards of a new deck into a database in batches as they arrive, such as while another file is being
+     * imported, so the cards never have to be held in memory all at once. The cards already in the database are
+     * replaced, and nothing is visible to readers until {@link #commit} has been called.
+     */
+    static final class CardImport implements Closeable {
+        private final Connection connection;
+        private final PreparedStatement insert;
+        private final PreparedStatement insertMedia;
+        private int position;
+        private boolean committed;
+
+        /**
+         * @param path The path to the database file, which is created if it does not exist.
+         * @param name The name of the deck.
+         * @throws IOException if the file is not a database deck or cannot be written.
+         */
+        CardImport(String path, String name) throws IOException {
+            try {
+                connection = connect(path);
+                try {
+                    checkSchema(connection, true);
+                    connection.setAutoCommit(false);
+                    try (Statement statement = connection.createStatement()) {
+                        statement.executeUpdate("DELETE FROM card");
+                    }
+                    writeName(connection, name);
+                    insert = connection.prepareStatement("INSERT INTO card (position, " + CARD_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                    insertMedia = prepareInsertMedia(connection);
+                } catch (IOException | SQLException | RuntimeException e) {
+                    connection.close();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                throw new IOException("Error writing database deck: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Inserts the next cards of the deck as one batch.
+         * @param flashcards The cards, in deck order.
+         * @throws IOException if the cards cannot be written.
+         */
+        void add(List<Flashcard> flashcards) throws IOException {
+            try {
+                for (Flashcard card : flashcards) {
+                    insert.setInt(1, position++);
+                    bindCard(insert, 2, card, encodeImages(card), insertMedia);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            } catch (SQLException e) {
+                throw new IOException("Error writing database deck: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Makes the imported deck visible, dropping images of the replaced cards.
+         * @throws IOException if the transaction cannot be committed.
+         */
+        void commit() throws IOException {
+            try {
+                deleteUnusedMedia(connection);
+                connection.commit();
+                committed = true;
+            } catch (SQLException e) {
+                throw new IOException("Error writing database deck: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Closes the database, discarding the imported cards unless they were committed.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                System.err.println("Error discarding database import: " + e.getMessage());
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    System.err.println("Error closing database deck: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * The media table of a loaded deck, read over a single connection shared by the deck's media references.
+     * <p>
+     * The loader holds the source until it has read every card, and every reference takes a hold of its own that it
+     * gives back once its image has been resolved or released, or once the reference has been garbage collected. The
+     * connection is opened when the first image is read and closed once nobody holds the source anymore.
+     */
+    private static final class MediaSource implements Closeable {
+        private static final Cleaner CLEANER = Cleaner.create();
+
+        private final String path;
+        private int holds = 1;
+        private Connection connection; // opened on first read
+        private PreparedStatement query;
+
+        MediaSource(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Takes a hold for a reference, given back when the returned cleanable is cleaned or the reference has been
+         * garbage collected.
+         */
+        Cleaner.Cleanable hold(Object holder) {
+            synchronized (this) {
+                holds++;
+            }
+            return CLEANER.register(holder, this::release);
+        }
+
+        /**
+         * Reads an image from the media table.
+         * @return The image, or null if the table does not hold it.
+         */
+        synchronized EncodedImage read(String hash) throws SQLException {
+            if (query == null) {
+                Connection opened = connect(path);
+                try {
+                    query = opened.prepareStatement("SELECT format, data FROM media WHERE hash = ?");
+                } catch (SQLException e) {
+                    opened.close();
+                    throw e;
+                }
+                connection = opened;
+            }
+            query.setString(1, hash);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? new EncodedImage(hash, result.getString(1), result.getBytes(2)) : null;
+            }
+        }
+
+        /**
+         * Gives back the loader's hold.
+         */
+        @Override
+        public void close() {
+            release();
+        }
+
+        private synchronized void release() {
+            if (--holds == 0 && connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    System.err.println("Error closing database deck: " + e.getMessage());
+                }
+                connection = null;
+                query = null;
+            }
+        }
+    }
+
+    /**
+     * A reference to an image in the media table, read only when the image is resolved.
+     * Images are served from the {@link ImageCache} by their hash, so an image that is already cached is never read.
+     */
+    private static final class MediaReference implements ImageReference {
+        private final MediaSource source;
+        private final String hash;
+        private final Cleaner.Cleanable hold;
+        private boolean released;
+
+        MediaReference(MediaSource source, String hash) {
+            this.source = source;
+            this.hash = hash;
+            this.hold = source.hold(this);
+        }
+
+        @Override
+        public String identity() {
+            return hash;
+        }
+
+        @Override
+        public synchronized EncodedImage encode() {
+            if (released) {
+                return null;
+            }
+            try {
+                return source.read(hash);
+            } catch (SQLException e) {
+                System.err.println("Error reading image data: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Resolves the image from the cache, reading it from the database if it is not cached, and then gives back
+         * the hold on the database.
+         */
+        @Override
+        public synchronized String resolve() {
+            try {
+                ImageCache cache = ImageCache.getInstance();
+                String cached = cache.lookup(hash);
+                if (cached != null) {
+                    return cached;
+                }
+                EncodedImage image = encode();
+                if (image == null) {
+                    return null;
+                }
+                return cache.store(hash, image.getData());
+            } catch (IOException e) {
+                System.err.println("Error reading image data: " + e.getMessage());
+                return null;
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public synchronized ImageReference share() {
+            return released ? this : new MediaReference(source, hash);
+        }
+
+        @Override
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                hold.clean();
+            }
+        }
+    }
+
+    /**
+     * Keeps the review progress of a database deck in the deck itself: every answer is added to the review
+     * history, and the latest mastery level of each card is kept in a table indexed by level.
+     * <p>
+     * Answers are written on a background thread, so recording one never waits for the database. Answers recorded
+     * while a write is running are written together in the next transaction, and any left are written before the
+     * application exits.
+     */
+    static final class ProgressStore implements ReviewProgressStore {
+        private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+        private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(ProgressStore::awaitWrites, "progress-flush"));
+        }
+
+        private final String path;
+        private final Object writeLock = new Object(); // keeps answers written in the order they were recorded
+        private LongIntHashMap masteryLevels; // loaded on first use
+        private List<long[]> pending = new ArrayList<>(); // card id, mastery level and time of answers not written yet
+        private List<long[]> writing = List.of(); // answers being written
+        private boolean flushScheduled;
+
+        ProgressStore(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public synchronized int getMastery(long cardId, int defaultLevel) {
+            if (masteryLevels == null) {
+                masteryLevels = new LongIntHashMap();
+                if (Files.exists(Paths.get(path))) {
+                    try (Connection connection = connect(path);
+                         Statement statement = connection.createStatement()) {
+                        checkSchema(connection, false);
+                        try (ResultSet result = statement.executeQuery("SELECT card_id, level FROM mastery")) {
+                            while (result.next()) {
+                                masteryLevels.put(result.getLong(1), result.getInt(2));
+                            }
+                        }
+                    } catch (IOException | SQLException e) {
+                        System.err.println("Error reading review progress: " + e.getMessage());
+                    }
+                }
+                // the database may not hold these yet
+                for (long[] answer : writing) {
+                    masteryLevels.put(answer[0], (int) answer[1]);
+                }
+                for (long[] answer : pending) {
+                    masteryLevels.put(answer[0], (int) answer[1]);
+                }
+            }
+            return masteryLevels.get(cardId, defaultLevel);
+        }
+
+        /**
+         * {@inheritDoc} Answers that have not been written yet are written first.
+         */
+        @Override
+        public int countCardsAtLeast(int level) {
+            flush();
+            if (!Files.exists(Paths.get(path))) {
+                return 0;
+            }
+            try (Connection connection = connect(path);
+                 PreparedStatement query = connection.prepareStatement("SELECT COUNT(*) FROM mastery WHERE level >= ?")) {
+                checkSchema(connection, false);
+                query.setInt(1, level);
+                try (ResultSet result = query.executeQuery()) {
+                    return result.next() ? result.getInt(1) : 0;
+                }
+            } catch (IOException | SQLException e) {
+                System.err.println("Error reading review progress: " + e.getMessage());
+                return 0;
+            }
+        }
+
+        /**
+         * Finds the cards at a mastery level through the index on the level. Answers that have not been written yet
+         * are written first.
+         * @param level The mastery level.
+         * @return The ids of the cards at exactly that level, in ascending order.
+         */
+        long[] findCardsAtLevel(int level) {
+            flush();
+            if (!Files.exists(Paths.get(path))) {
+                return new long[0];
+            }
+            try (Connection connection = connect(path);
+                 PreparedStatement query = connection.prepareStatement("SELECT card_id FROM mastery WHERE level = ? ORDER BY card_id")) {
+                checkSchema(connection, false);
+                query.setInt(1, level);
+                List<Long> ids = new ArrayList<>();
+                try (ResultSet result = query.executeQuery()) {
+                    while (result.next()) {
+                        ids.add(result.getLong(1));
+                    }
+                }
+                return ids.stream().mapToLong(Long::longValue).toArray();
+            } catch (IOException | SQLException e) {
+                System.err.println("Error reading review progress: " + e.getMessage());
+                return new long[0];
+            }
+        }
+
+        /**
+         * Returns the time the deck database last changed, since the progress is stored in it.
+         */
+        @Override
+        public long lastModified() {
+            return new File(path).lastModified();
+        }
+
+        /**
+         * {@inheritDoc} The answer is written shortly after on the progress writer thread.
+         */
+        @Override
+        public synchronized void recordMastery(long cardId, int masteryLevel) {
+            if (masteryLevels != null) {
+                masteryLevels.put(cardId, masteryLevel);
+            }
+            pending.add(new long[] {cardId, masteryLevel, System.currentTimeMillis()});
+            if (!flushScheduled) {
+                flushScheduled = true;
+                WRITER.execute(this::flush);
+            }
+        }
+
+        /**
+         * Writes the answers recorded so far in one transaction.
+         */
+        private void flush() {
+            synchronized (writeLock) {
+                synchronized (this) {
+                    flushScheduled = false;
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    writing = pending;
+                    pending = new ArrayList<>();
+                }
+                try {
+                    write(writing);
+                } finally {
+                    synchronized (this) {
+                        writing = List.of();
+                    }
+                }
+            }
+        }
+
+        private void write(List<long[]> answers) {
+            if (!Files.exists(Paths.get(path))) {
+                return; // the deck has not been saved as a database yet
+            }
+            try (Connection connection = connect(path)) {
+                checkSchema(connection, false);
+                connection.setAutoCommit(false);
+                try (PreparedStatement review = connection.prepareStatement("INSERT INTO review (card_id, reviewed_at, mastery) VALUES (?, ?, ?)");
+                     PreparedStatement mastery = connection.prepareStatement("INSERT INTO mastery (card_id, level) VALUES (?, ?) "
+                             + "ON CONFLICT (card_id) DO UPDATE SET level = excluded.level")) {
+                    for (long[] answer : answers) {
+                        review.setLong(1, answer[0]);
+                        review.setLong(2, answer[2]);
+                        review.setInt(3, (int) answer[1]);
+                        review.addBatch();
+                        mastery.setLong(1, answer[0]);
+                        mastery.setInt(2, (int) answer[1]);
+                        mastery.addBatch();
+                    }
+                    review.executeBatch();
+                    mastery.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (IOException | SQLException e) {
+                System.err.println("Error saving review progress: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Waits for the answers of every store to be written, as the application exits.
+         */
+        private static void awaitWrites() {
+            try {
+                WRITER.submit(() -> { }).get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                System.err.println("Error saving review progress: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.flashcardapp.FlashcardApp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the library of known decks: their names, card counts and how far they have been studied.
+ * <p>
+ * The catalog is stored in the application data directory, so the library can be listed without opening a single
+ * deck. Refreshing compares each deck's modification time and size with the ones recorded; only decks that changed
+ * have their header read again, and only decks whose review progress changed have their mastery counted again. All
+ * file access happens on a background thread.
+ */
+public class DeckCatalog {
+
+    /**
+     * The mastery level from which a card counts as mastered.
+     */
+    public static final int MASTERED_LEVEL = 3;
+
+    private static DeckCatalog instance;
+
+    private final File catalogFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Entry> entries = new LinkedHashMap<>(); // keyed by normalized absolute path
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deck-catalog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private DeckCatalog(File catalogFile) {
+        this.catalogFile = catalogFile;
+        load();
+    }
+
+    /**
+     * Provides the singleton instance of DeckCatalog, stored in the application data directory.
+     * @return The singleton instance of DeckCatalog.
+     */
+    public static synchronized DeckCatalog getInstance() {
+        if (instance == null) {
+            instance = new DeckCatalog(new File(FlashcardApp.getDataDirectory(), "catalog.json"));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the decks in the catalog as they were last refreshed, in the order they were added.
+     * @return A copy of the catalog entries.
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Brings every entry up to date with its deck file and review progress in the background.
+     * @return A future completed with the refreshed entries.
+     */
+    public CompletableFuture<List<Entry>> refresh() {
+        return CompletableFuture.supplyAsync(() -> {
+            boolean changed = false;
+            for (Entry entry : getEntries()) {
+                Entry refreshed = refreshEntry(entry);
+                if (refreshed != entry) {
+                    synchronized (this) {
+                        entries.replace(refreshed.getPath(), refreshed);
+                    }
+                    changed = true;
+                }
+            }
+            if (changed) {
+                save();
+            }
+            return getEntries();
+        }, worker);
+    }
+
+    /**
+     * Adds a deck to the catalog, or refreshes its entry if it is already there.
+     * @param path The path of the deck file.
+     * @return A future completed with the entry of the deck.
+     */
+    public CompletableFuture<Entry> add(String path) {
+        return add(path, -1);
+    }
+
+    /**
+     * Adds a deck that has just been loaded to the catalog, or refreshes its entry, taking the number of flashcards
+     * from the loaded deck. Deck files may state a number of flashcards that no longer matches, such as after an edit
+     * made by hand, which is corrected this way.
+     * @param path The path of the deck file.
+     * @param flashcardCount The number of flashcards of the loaded deck, or -1 to take the number from the file.
+     * @return A future completed with the entry of the deck.
+     */
+    public CompletableFuture<Entry> add(String path, int flashcardCount) {
+        String key = normalize(path);
+        return CompletableFuture.supplyAsync(() -> {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(key);
+            }
+            Entry refreshed = refreshEntry(entry != null ? entry : new Entry(key));
+            if (flashcardCount >= 0 && !refreshed.isMissing() && refreshed.getFlashcardCount() != flashcardCount) {
+                refreshed = refreshed.withDeck(refreshed.getName(), flashcardCount, refreshed.getFileModified(), refreshed.getFileSize());
+            }
+            if (refreshed != entry) {
+                synchronized (this) {
+                    entries.put(key, refreshed);
+                }
+                save();
+            }
+            return refreshed;
+        }, worker);
+    }
+
+    /**
+     * Removes a deck from the catalog. The deck file itself is left alone.
+     * @param path The path of the deck file.
+     * @return A future completed once the catalog has been updated.
+     */
+    public CompletableFuture<Void> remove(String path) {
+        String key = normalize(path);
+        return CompletableFuture.runAsync(() -> {
+            boolean removed;
+            synchronized (this) {
+                removed = entries.remove(key) != null;
+            }
+            if (removed) {
+                save();
+            }
+        }, worker);
+    }
+
+    /**
+     * Compares an entry with its deck file and review progress.
+     * @return The entry itself if nothing changed, otherwise an updated copy.
+     */
+    private Entry refreshEntry(Entry entry) {
+        String path = entry.getPath();
+        IDeckHandler handler = IDeckHandler.forPath(path);
+        long fileModified = handler.lastModified(path);
+        if (fileModified == 0) {
+            return entry.isMissing() ? entry : entry.withMissing();
+        }
+        long fileSize = new File(path).length();
+
+        Entry result = entry;
+        if (entry.isMissing() || entry.getFileModified() != fileModified || entry.getFileSize() != fileSize) {
+            try {
+                DeckInfo info = handler.readInfo(path);
+                result = result.withDeck(info.getName(), info.getFlashcardCount(), fileModified, fileSize);
+            } catch (IOException e) {
+                System.err.println("Error reading deck " + path + ": " + e.getMessage());
+                return entry;
+            }
+        }
+
+        ReviewProgressStore progress = ReviewProgressStore.forDeck(path);
+        long progressModified = progress.lastModified();
+        if (progressModified != entry.getProgressModified()) {
+            result = result.withProgress(progress.countCardsAtLeast(0), progress.countCardsAtLeast(MASTERED_LEVEL), progressModified);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the catalog file, starting with an empty catalog if there is none.
+     */
+    private synchronized void load() {
+        if (catalogFile.length() == 0) {
+            return;
+        }
+        try {
+            List<Entry> stored = mapper.readValue(catalogFile, new TypeReference<List<Entry>>() {});
+            for (Entry entry : stored) {
+                entries.put(entry.getPath(), entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading deck catalog: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the catalog file.
+     */
+    private void save() {
+        List<Entry> snapshot = getEntries();
+        try {
+            catalogFile.getParentFile().mkdirs();
+            AtomicFiles.replace(catalogFile.toPath(), file -> mapper.writeValue(file.toFile(), snapshot));
+        } catch (IOException e) {
+            System.err.println("Error saving deck catalog: " + e.getMessage());
+        }
+    }
+
+    private static String normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * A deck in the catalog, as it was when last refreshed.
+     */
+    public static class Entry {
+
+        @JsonDeserialize
+        private String path;
+
+        @JsonDeserialize
+        private String name;
+
+        @JsonDeserialize
+        private int flashcardCount;
+
+        @JsonDeserialize
+        private long fileModified;
+
+        @JsonDeserialize
+        private long fileSize;
+
+        @JsonDeserialize
+        private int reviewedCards;
+
+        @JsonDeserialize
+        private int masteredCards;
+
+        @JsonDeserialize
+        private long progressModified;
+
+        @JsonDeserialize
+        private boolean missing;
+
+        /**
+         * Default constructor for creating an empty entry.
+         */
+        public Entry() {
+        }
+
+        private Entry(String path) {
+            this.path = path;
+            this.name = new File(path).getName();
+            this.missing = true; // until the deck has been read
+        }
+
+        private Entry copy() {
+            Entry copy = new Entry();
+            copy.path = path;
+            copy.name = name;
+            copy.flashcardCount = flashcardCount;
+            copy.fileModified = fileModified;
+            copy.fileSize = fileSize;
+            copy.reviewedCards = reviewedCards;
+            copy.masteredCards = masteredCards;
+            copy.progressModified = progressModified;
+            copy.missing = missing;
+            return copy;
+        }
+
+        private Entry withDeck(String name, int flashcardCount, long fileModified, long fileSize) {
+            Entry copy = copy();
+            copy.name = name;
+            copy.flashcardCount = flashcardCount;
+            copy.fileModified = fileModified;
+            copy.fileSize = fileSize;
+            copy.missing = false;
+            return copy;
+        }
+
+        private Entry withProgress(int reviewedCards, int masteredCards, long progressModified) {
+            Entry copy = copy();
+            copy.reviewedCards = reviewedCards;
+            copy.masteredCards = masteredCards;
+            copy.progressModified = progressModified;
+            return copy;
+        }
+
+        private Entry withMissing() {
+            Entry copy = copy();
+            copy.missing = true;
+            return copy;
+        }
+
+        /**
+         * Returns the normalized absolute path of the deck file.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the name of the deck, or the file name if the deck has never been read.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of flashcards in the deck.
+         */
+        public int getFlashcardCount() {
+            return flashcardCount;
+        }
+
+        /**
+         * Returns the modification time of the deck when it was last read.
+         */
+        public long getFileModified() {
+            return fileModified;
+        }
+
+        /**
+         * Returns the size of the deck file when it was last read.
+         */
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        /**
+         * Returns the number of cards that have been reviewed. Cards removed from the deck after being reviewed are
+         * still counted.
+         */
+        public int getReviewedCards() {
+            return reviewedCards;
+        }
+
+        /**
+         * Returns the number of cards at or above {@link #MASTERED_LEVEL}.
+         */
+        public int getMasteredCards() {
+            return masteredCards;
+        }
+
+        /**
+         * Returns the modification time of the review progress when it was last counted.
+         */
+        public long getProgressModified() {
+            return progressModified;
+        }
+
+        /**
+         * Returns whether the deck file could not be found when the entry was last refreshed.
+         */
+        public boolean isMissing() {
+            return missing;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + flashcardCount + " flashcards)";
+        }
+    }
+}
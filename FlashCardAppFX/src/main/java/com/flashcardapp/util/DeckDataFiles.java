@@ -0,0 +1,30 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.FlashcardApp;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Locates the files the application keeps about a deck file in its data directory, such as the review progress of
+ * the deck. The files are named after a hash of the deck's absolute path, so every deck file gets its own.
+ */
+public final class DeckDataFiles {
+
+    private DeckDataFiles() {
+    }
+
+    /**
+     * Returns a file kept about a deck file.
+     * @param folder The folder of the data directory holding files of this kind.
+     * @param deckPath The path of the deck file.
+     * @param extension The extension of the file, such as ".log".
+     * @return The path of the file, which may not exist yet.
+     */
+    public static Path forDeck(String folder, String deckPath, String extension) {
+        String key = DigestUtils.sha256Hex(Paths.get(deckPath).toAbsolutePath().normalize().toString());
+        return new File(new File(FlashcardApp.getDataDirectory(), folder), key + extension).toPath();
+    }
+}
@@ -1,75 +1,220 @@
 package com.flashcardapp.util;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckChange;
+import com.flashcardapp.model.EncodedImage;
 import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.model.ImageReference;
 import org.apache.commons.codec.binary.Base64;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.URI;
-import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Handles loading and saving of deck objects to and from files.
+ * <p>
+ * Saving a deck that was loaded from, or last saved to, the same file only appends the changes made since then to
+ * a {@link DeckJournal} next to the file. Once the journal grows large relative to the deck file, the next save
+ * writes the whole deck again and drops the journal. The journal is also folded into the deck file when the
+ * application is done with the deck, see {@link #compact(Deck, String)}, so that the deck file on its own is up to
+ * date whenever the application is not using it.
  */
 public class DeckHandler implements IDeckHandler {
 
+    /** File extension used for JSON decks, the application's own format. */
+    public static final String EXTENSION = ".json";
+
+    private static final double COMPACTION_RATIO = 0.5; // journal size, relative to the deck file, that triggers a full write
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private static final Set<String> PASS_THROUGH_FORMATS = Set.of("png", "jpg"); // stored without re-encoding
+
     /**
-     * Loads a deck from a specified file path.
+     * Loads a deck from a specified file path, applying any changes recorded in its journal.
+     * The file is streamed token by token, so only a single flashcard is held in memory while it is being parsed.
      * @param path The path to the file containing the deck data.
      * @return A Deck object loaded from the file, or null if an error occurs.
      */
     @Override
     public Deck loadDeck(String path) {
         try {
-            String content = new String(Files.readAllBytes(Paths.get(path)));
-            JSONObject deckJson = new JSONObject(content);
-            Deck deck = new Deck(deckJson.getString("name"));
-            JSONArray cardsJson = deckJson.getJSONArray("flashcards");
-
-            for (int i = 0; i < cardsJson.length(); i++) {
-                JSONObject cardJson = cardsJson.getJSONObject(i);
-                Flashcard card = new Flashcard(
-                        cardJson.getString("question"),
-                        cardJson.getString("answer"),
-                        cardJson.optString("hint", ""),
-                        loadImageFromData(cardJson.optString("questionImage")),
-                        loadImageFromData(cardJson.optString("answerImage"))
-                );
-                deck.addFlashcard(card);
+            return loadDeck(path, null);
+        } catch (IOException e) {
+            System.err.println("Error loading deck: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads a deck from a specified file path, reporting the flashcards to a listener as they are parsed.
+     * If the deck has a journal, the flashcards are only known once the journal has been applied, so no batches
+     * are reported for it.
+     * @param path The path to the file containing the deck data.
+     * @param listener The listener to report the flashcards to, or null.
+     * @return A Deck object loaded from the file, or null if an error occurs.
+     * @throws InterruptedIOException if the listener cancelled loading.
+     */
+    @Override
+    public Deck loadDeck(String path, DeckLoadListener listener) throws InterruptedIOException {
+        try (SharedChannel file = SharedChannel.open(Paths.get(path))) {
+            DeckJournal journal = DeckJournal.forDeck(path);
+            boolean hasJournal = journal.exists();
+            JsonDeckReader reader = createReader(file);
+            Deck deck;
+            try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(new ChannelInputStream(file.channel(), 0))) {
+                deck = reader.read(parser, hasJournal ? cancellationOnly(listener) : listener, file.channel().size());
             }
 
+            boolean journalApplied = true;
+            if (hasJournal) {
+                journalApplied = replayJournal(deck, journal, reader.getRevision());
+            }
+            deck.markSaved(path);
+            if (!journalApplied) {
+                deck.markUnsaved(); // the next save rewrites the deck file and drops the unusable journal
+            }
             return deck;
+        } catch (InterruptedIOException e) {
+            throw e;
         } catch (IOException e) {
             System.err.println("Error loading deck: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Reads the name and number of flashcards from the start of the deck file, then follows the renames and the
+     * flashcards added and removed in its journal.
+     * @param path The path to the JSON file.
+     * @return The deck information.
+     * @throws IOException if the deck file cannot be read.
+     */
+    @Override
+    public DeckInfo readInfo(String path) throws IOException {
+        DeckInfo info;
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(new File(path))) {
+            info = JsonDeckReader.readInfo(parser, path);
+        }
+        DeckJournal journal = DeckJournal.forDeck(path);
+        if (journal.exists()) {
+            long revision;
+            try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(new File(path))) {
+                revision = JsonDeckReader.readRevision(parser);
+            }
+            info = journal.replayInfo(info, revision);
+        }
+        return info;
+    }
+
+    /**
+     * Returns the time the deck file or its journal last changed.
+     */
+    @Override
+    public long lastModified(String path) {
+        return Math.max(new File(path).lastModified(), DeckJournal.forDeck(path).lastModified());
+    }
+
+    /**
+     * Wraps a listener so that it can still cancel loading but is not told about any flashcards.
+     */
+    private static DeckLoadListener cancellationOnly(DeckLoadListener listener) {
+        if (listener == null) {
+            return null;
+        }
+        return new DeckLoadListener() {
+            @Override
+            public void cardsLoaded(List<Flashcard> flashcards, long bytesRead, long totalBytes) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return listener.isCancelled();
+            }
+        };
+    }
+
+    /**
+     * Applies the journal of a deck file to the deck read from it.
+     * @return true if the whole journal applied cleanly.
+     */
+    private boolean replayJournal(Deck deck, DeckJournal journal, long revision) {
+        try (SharedChannel file = journal.open()) {
+            return journal.replay(deck, revision, file.channel(), createReader(file));
+        } catch (IOException e) {
+            System.err.println("Error reading deck journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Creates a reader whose flashcards refer to their images in a file instead of decoding them. Each image holds
+     * the file open until it has been resolved.
+     */
+    private static JsonDeckReader createReader(SharedChannel file) {
+        return new JsonDeckReader(parser -> readImageReference(parser, file));
+    }
+
+    /**
+     * Creates a writer that stores images as Base64 encoded data.
+     */
+    static JsonDeckWriter<String> createWriter() {
+        return new JsonDeckWriter<>(new JsonDeckWriter.ImageValueWriter<>() {
+            @Override
+            public String prepare(EncodedImage image) {
+                return encodeImageToBase64(image);
+            }
+
+            @Override
+            public String write(String image) {
+                return image;
+            }
+        });
+    }
+
+    /**
+     * Records the location of an image value without reading it.
+     * @param parser The parser, positioned on the image value.
+     * @param file The file being parsed.
+     * @return A reference to the image value, or null if the card has no image.
+     */
+    private static ImageReference readImageReference(JsonParser parser, SharedChannel file) {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return null;
+        }
+        return new JsonImageReference(file, parser.getTokenLocation().getByteOffset());
+    }
+
     /**
      * Decodes an image from Base64 or returns the path if it's a direct URL or file path.
+     * Decoded images are kept in the {@link ImageCache}, so an image that has been decoded before is not decoded again.
      * @param imageData Encoded image data or a path.
      * @return The URI of the image as a string, or null if an error occurs.
      */
-    private String loadImageFromData(String imageData) {
+    private static String loadImageFromData(String imageData) {
         if (imageData == null || imageData.isEmpty()) {
             return null;
         }
 
         // Decode Base64 to an image if not a URL or local file path
-        if (imageData.length() > 100 && !imageData.startsWith("http") && !imageData.startsWith("file:/")) {
+        if (isInlineData(imageData)) {
             try {
-                byte[] imageBytes = Base64.decodeBase64(imageData);
-                BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
-                File tempFile = File.createTempFile("tempImage", ".png");
-                ImageIO.write(image, "png", tempFile);
-                return tempFile.toURI().toString();
+                ImageCache cache = ImageCache.getInstance();
+                String key = ImageCache.keyOf(imageData);
+                String cached = cache.lookup(key);
+                if (cached != null) {
+                    return cached;
+                }
+                return cache.store(key, Base64.decodeBase64(imageData));
             } catch (IOException e) {
                 System.err.println("Error decoding image data: " + e.getMessage());
                 return null;
@@ -81,73 +226,183 @@ public class DeckHandler implements IDeckHandler {
 
     /**
      * Saves a deck to a specified file path.
+     * If the deck was loaded from or last saved to this path, only its changes are appended to the journal.
      * @param deck The deck to save.
      * @param filePath The path to save the deck file.
+     * @throws IOException if the deck cannot be written. The next save will then write the whole deck.
      */
     @Override
-    public void saveDeck(Deck deck, String filePath) {
-        JSONObject deckJson = new JSONObject();
-        deckJson.put("name", deck.getName());
-        JSONArray cardsJson = getObjects(deck, new File(filePath).getParent());
-        deckJson.put("flashcards", cardsJson);
-
-        try (FileWriter file = new FileWriter(filePath)) {
-            file.write(deckJson.toString(4));
+    public void saveDeck(Deck deck, String filePath) throws IOException {
+        try {
+            DeckJournal journal = DeckJournal.forDeck(filePath);
+            long revision = canAppendChanges(deck, filePath, journal);
+            if (revision == 0 && deck.isChangesOnly()) {
+                throw new IOException("The deck file has changed since it was loaded; save again to write the whole deck");
+            }
+            if (revision != 0) {
+                List<DeckChange> changes = deck.takeChanges();
+                if (!changes.isEmpty()) {
+                    journal.append(changes, revision, createWriter());
+                }
+            } else {
+                writeDeck(deck, filePath);
+                journal.delete();
+                deck.markSaved(filePath);
+            }
         } catch (IOException e) {
-            System.err.println("Error saving deck: " + e.getMessage());
+            deck.markUnsaved();
+            throw e;
         }
     }
 
     /**
-     * Encodes images from the flashcards to Base64 and compiles them into a JSON array.
-     * @param deck The deck containing the flashcards.
-     * @param directoryPath The directory path to assist with relative paths, if necessary.
-     * @return A JSONArray containing the JSON representation of flashcards.
+     * {@inheritDoc} The changes are appended to the journal.
      */
-    private static JSONArray getObjects(Deck deck, String directoryPath) {
-        JSONArray cardsJson = new JSONArray();
-        for (Flashcard card : deck.getFlashcards()) {
-            JSONObject cardJson = new JSONObject();
-            cardJson.put("question", card.getQuestion());
-            cardJson.put("answer", card.getAnswer());
-            cardJson.putOpt("hint", card.getHint());
+    @Override
+    public boolean savesChanges() {
+        return true;
+    }
 
-            if (card.getQuestionImage() != null) {
-                cardJson.put("questionImage", encodeImageToBase64(card.getQuestionImage()));
-            }
-            if (card.getAnswerImage() != null) {
-                cardJson.put("answerImage", encodeImageToBase64(card.getAnswerImage()));
-            }
+    /**
+     * Writes the whole deck and drops its journal, if it has one. The deck is left alone if it has unsaved changes or
+     * was not loaded from or saved to the path, since it then may not match what the journal describes.
+     * @param deck The deck as stored at the path.
+     * @param filePath The path of the deck file.
+     * @throws IOException if the deck file cannot be rewritten. The journal is then kept.
+     */
+    @Override
+    public void compact(Deck deck, String filePath) throws IOException {
+        DeckJournal journal = DeckJournal.forDeck(filePath);
+        if (!journal.exists() || deck.hasUnsavedChanges() || deck.getSavedPath() == null || !samePath(deck.getSavedPath(), filePath)) {
+            return;
+        }
+        writeDeck(deck, filePath);
+        journal.delete();
+        deck.markSaved(filePath);
+    }
+
+    /**
+     * Checks whether the changes of a deck can be appended to the journal of a deck file instead of rewriting it.
+     * @return The revision of the deck file the changes apply to, or 0 if the whole deck has to be written.
+     */
+    private long canAppendChanges(Deck deck, String filePath, DeckJournal journal) throws IOException {
+        if (!deck.isTrackingChanges() || deck.getSavedPath() == null || !samePath(deck.getSavedPath(), filePath)) {
+            return 0;
+        }
+        Path deckFile = Paths.get(filePath);
+        if (!Files.exists(deckFile)) {
+            return 0;
+        }
+        long journalSize = journal.size();
+        if (journalSize > MIN_COMPACTION_BYTES && journalSize > Files.size(deckFile) * COMPACTION_RATIO && !deck.isChangesOnly()) {
+            return 0; // fold the journal back into the deck file; a copy of the changes leaves that to compact
+        }
 
-            cardsJson.put(cardJson);
+        long revision;
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(deckFile.toFile())) {
+            revision = JsonDeckReader.readRevision(parser);
         }
-        return cardsJson;
+        if (revision == 0 || (journal.exists() && journal.readRevision() != revision)) {
+            return 0;
+        }
+        return revision;
     }
 
     /**
-     * Encodes an image file to Base64.
-     * @param imagePath The path to the image file.
+     * Writes the whole deck under a new revision. The file is replaced atomically, so images that have not been
+     * read yet can still be read from the previous file.
+     */
+    private void writeDeck(Deck deck, String filePath) throws IOException {
+        long revision = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        AtomicFiles.replace(Paths.get(filePath), file -> {
+            try (JsonGenerator generator = JsonDeckReader.JSON_FACTORY.createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+                generator.useDefaultPrettyPrinter();
+                createWriter().write(generator, deck, revision);
+            }
+        });
+    }
+
+    static boolean samePath(String first, String second) {
+        return Paths.get(first).toAbsolutePath().normalize().equals(Paths.get(second).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Encodes an image to Base64. PNG and JPEG images are stored with their original bytes; other formats are
+     * converted to PNG.
+     * @param image The image in its stored form.
      * @return The Base64 encoded string of the image, or null if the image cannot be processed.
      */
-    private static String encodeImageToBase64(String imagePath) {
+    private static String encodeImageToBase64(EncodedImage image) {
+        byte[] imageBytes = image.getData();
+        if (PASS_THROUGH_FORMATS.contains(image.getFormat())) {
+            return Base64.encodeBase64String(imageBytes);
+        }
         try {
-            BufferedImage image;
-            if (imagePath.startsWith("http:") || imagePath.startsWith("https:")) {
-                URL imageUrl = new URL(imagePath);
-                image = ImageIO.read(imageUrl.openStream());
-            } else if (imagePath.startsWith("file:/")) {
-                image = ImageIO.read(new File(URI.create(imagePath)));
-            } else {
-                return null;
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            if (decoded == null) {
+                throw new IOException("Unsupported image format");
             }
-
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ImageIO.write(image, "png", outputStream);
-            byte[] imageBytes = outputStream.toByteArray();
-            return Base64.encodeBase64String(imageBytes);
+            ImageIO.write(decoded, "png", outputStream);
+            return Base64.encodeBase64String(outputStream.toByteArray());
         } catch (IOException e) {
             System.err.println("Error encoding image: " + e.getMessage());
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks whether an image value holds inline Base64 data rather than a URL or file path.
+     */
+    private static boolean isInlineData(String imageData) {
+        return imageData.length() > 100 && !imageData.startsWith("http") && !imageData.startsWith("file:/");
+    }
+
+    /**
+     * A reference to an image value inside a JSON deck file, resolved by re-reading the value at its byte offset.
+     */
+    private static final class JsonImageReference extends FileImageReference {
+
+        JsonImageReference(SharedChannel file, long offset) {
+            super(file, offset);
+        }
+
+        @Override
+        String read(SharedChannel file, long offset) throws IOException {
+            return loadImageFromData(readValue(file, offset));
+        }
+
+        /**
+         * Decodes inline image data straight from the file, without going through the image cache.
+         * @return The encoded image, or null if the value is a URL or file path.
+         */
+        @Override
+        EncodedImage readEncoded(SharedChannel file, long offset) throws IOException {
+            String imageData = readValue(file, offset);
+            return isInlineData(imageData) ? ImageEncoder.encode(Base64.decodeBase64(imageData)) : null;
+        }
+
+        /**
+         * Hashes inline image data the way the {@link ImageCache} keys it, without decoding it.
+         */
+        @Override
+        String readIdentity(SharedChannel file, long offset) throws IOException {
+            String imageData = readValue(file, offset);
+            return isInlineData(imageData) ? ImageCache.keyOf(imageData) : imageData;
+        }
+
+        @Override
+        FileImageReference copy(SharedChannel file, long offset) {
+            return new JsonImageReference(file, offset);
+        }
+
+        private static String readValue(SharedChannel file, long offset) throws IOException {
+            try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(new ChannelInputStream(file.channel(), offset))) {
+                if (parser.nextToken() != JsonToken.VALUE_STRING) {
+                    throw new IOException("No image data at offset " + offset);
+                }
+                return parser.getText();
+            }
+        }
+    }
+}
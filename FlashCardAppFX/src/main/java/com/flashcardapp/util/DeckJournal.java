@@ -0,0 +1,295 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckChange;
+import com.flashcardapp.model.Flashcard;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only log of the changes made to a JSON deck since its file was last written in full.
+ * <p>
+ * The journal lives next to the deck file and holds one JSON object per line. The first line names the revision of
+ * the deck file the journal applies to, so a journal left behind by an older version of the file is ignored. Each
+ * save appends its changes followed by a commit line; a batch without a commit line, such as one cut short by a
+ * crash, is never applied.
+ */
+final class DeckJournal {
+    private static final String SUFFIX = ".journal";
+
+    private final Path file;
+
+    private DeckJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the journal belonging to a deck file.
+     * @param deckPath The path of the deck file.
+     * @return The journal stored next to the deck file.
+     */
+    static DeckJournal forDeck(String deckPath) {
+        return new DeckJournal(Paths.get(deckPath + SUFFIX));
+    }
+
+    /**
+     * Returns the path of the journal file.
+     */
+    Path path() {
+        return file;
+    }
+
+    /**
+     * Checks whether the journal file exists.
+     */
+    boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Returns the size of the journal file in bytes, or 0 if it does not exist.
+     */
+    long size() throws IOException {
+        return exists() ? Files.size(file) : 0;
+    }
+
+    /**
+     * Opens the journal for reading. Images read from the journal hold it open until they have been resolved.
+     */
+    SharedChannel open() throws IOException {
+        return SharedChannel.open(file);
+    }
+
+    /**
+     * Deletes the journal, typically after its changes have been folded into the deck file.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Reads the revision of the deck file the journal applies to.
+     * @return The revision, or 0 if the journal does not exist or has no header.
+     */
+    long readRevision() throws IOException {
+        if (!exists()) {
+            return 0;
+        }
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(file.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("revision".equals(field)) {
+                    return parser.getValueAsLong();
+                }
+                parser.skipChildren();
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Appends a batch of changes and forces it to disk. A new journal is started with a header naming the revision
+     * of the deck file it applies to.
+     * @param changes The changes to append, in the order they were made.
+     * @param baseRevision The revision of the deck file the changes apply to.
+     * @param cardWriter Writes the content of added and updated flashcards.
+     * @throws IOException if the changes cannot be written.
+     */
+    void append(List<DeckChange> changes, long baseRevision, JsonDeckWriter<?> cardWriter) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            boolean newJournal = channel.size() == 0;
+            try (JsonGenerator generator = JsonDeckReader.JSON_FACTORY.createGenerator(Channels.newOutputStream(channel))) {
+                generator.setRootValueSeparator(null);
+                if (newJournal) {
+                    generator.writeStartObject();
+                    generator.writeStringField("op", "base");
+                    generator.writeNumberField("revision", baseRevision);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+                for (DeckChange change : changes) {
+                    writeChange(generator, change, cardWriter);
+                    generator.writeRaw('\n');
+                }
+                generator.writeStartObject();
+                generator.writeStringField("op", "commit");
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+                generator.flush();
+                channel.force(false);
+            }
+        }
+    }
+
+    private void writeChange(JsonGenerator generator, DeckChange change, JsonDeckWriter<?> cardWriter) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("op", change.getType().name().toLowerCase());
+        switch (change.getType()) {
+            case REMOVE:
+                generator.writeNumberField("index", change.getIndex());
+                break;
+            case UPDATE:
+                generator.writeNumberField("index", change.getIndex());
+                generator.writeFieldName("card");
+                cardWriter.writeFlashcard(generator, change.getFlashcard());
+                break;
+            case ADD:
+                generator.writeFieldName("card");
+                cardWriter.writeFlashcard(generator, change.getFlashcard());
+                break;
+            case RENAME:
+                generator.writeStringField("name", change.getName());
+                break;
+            default:
+                break;
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Returns the time the journal last changed, or 0 if it does not exist.
+     */
+    long lastModified() {
+        return file.toFile().lastModified();
+    }
+
+    /**
+     * Works out the name and number of flashcards of the deck once the committed batches of the journal are applied,
+     * without reading the flashcards in the journal.
+     * @param info The information read from the deck file.
+     * @param baseRevision The revision of the deck file.
+     * @return The deck information after the journal, or the given information if the journal does not apply.
+     * @throws IOException if the journal cannot be read.
+     */
+    DeckInfo replayInfo(DeckInfo info, long baseRevision) throws IOException {
+        DeckInfo committed = info;
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(file.toFile())) {
+            String name = info.getName();
+            int count = info.getFlashcardCount();
+            boolean first = true;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String op = null;
+                long number = 0;
+                String newName = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("op".equals(field)) {
+                        op = parser.getValueAsString();
+                    } else if ("revision".equals(field)) {
+                        number = parser.getValueAsLong();
+                    } else if ("name".equals(field)) {
+                        newName = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (first) {
+                    if (!"base".equals(op) || number != baseRevision) {
+                        return info;
+                    }
+                    first = false;
+                } else if ("commit".equals(op)) {
+                    committed = new DeckInfo(name, info.getPath(), count);
+                } else if ("add".equals(op)) {
+                    count++;
+                } else if ("remove".equals(op)) {
+                    count--;
+                } else if ("clear".equals(op)) {
+                    count = 0;
+                } else if ("rename".equals(op)) {
+                    name = newName;
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // the batches before the incomplete entry still apply
+        }
+        return committed;
+    }
+
+    /**
+     * Applies the committed batches of the journal to a deck that was just read from the deck file.
+     * @param deck The deck read from the deck file.
+     * @param baseRevision The revision of the deck file the deck was read from.
+     * @param channel An open channel on the journal file.
+     * @param cardReader Reads the content of added and updated flashcards.
+     * @return true if the whole journal was applied, false if it was stale or ended in an incomplete batch.
+     * @throws IOException if the journal cannot be read.
+     */
+    boolean replay(Deck deck, long baseRevision, FileChannel channel, JsonDeckReader cardReader) throws IOException {
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(new ChannelInputStream(channel, 0))) {
+            List<Runnable> batch = new ArrayList<>();
+            boolean first = true;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String op = null;
+                long number = 0;
+                String name = null;
+                Flashcard card = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("op".equals(field)) {
+                        op = parser.getValueAsString();
+                    } else if ("index".equals(field) || "revision".equals(field)) {
+                        number = parser.getValueAsLong();
+                    } else if ("name".equals(field)) {
+                        name = parser.getValueAsString();
+                    } else if ("card".equals(field)) {
+                        card = cardReader.readFlashcard(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                if (first) {
+                    if (!"base".equals(op) || number != baseRevision) {
+                        return false;
+                    }
+                    first = false;
+                } else if ("commit".equals(op)) {
+                    batch.forEach(Runnable::run);
+                    batch.clear();
+                } else {
+                    batch.add(toAction(deck, op, (int) number, name, card));
+                }
+            }
+            return batch.isEmpty();
+        } catch (JsonProcessingException e) {
+            System.err.println("Ignoring incomplete deck journal entry: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Runnable toAction(Deck deck, String op, int index, String name, Flashcard card) throws IOException {
+        switch (op) {
+            case "add":
+                return () -> deck.addFlashcard(card);
+            case "remove":
+                return () -> deck.removeFlashcard(index);
+            case "update":
+                return () -> deck.setFlashcard(index, card);
+            case "clear":
+                return deck::clearDeck;
+            case "rename":
+                return () -> deck.setName(name);
+            default:
+                throw new IOException("Unknown deck journal operation: " + op);
+        }
+    }
+}
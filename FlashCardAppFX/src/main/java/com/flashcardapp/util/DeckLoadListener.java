@@ -0,0 +1,28 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Flashcard;
+
+import java.util.List;
+
+/**
+ * Follows a deck while it is being loaded, receiving its flashcards in batches as soon as they have been read.
+ * The deck itself is only handed out once loading has finished; the batches let the cards be used before that.
+ */
+public interface DeckLoadListener {
+
+    /**
+     * Called on the loading thread each time another batch of flashcards has been read, in deck order.
+     * @param flashcards The flashcards read since the previous batch.
+     * @param bytesRead The number of bytes of the deck read so far.
+     * @param totalBytes The total number of bytes to read, or -1 if unknown.
+     */
+    void cardsLoaded(List<Flashcard> flashcards, long bytesRead, long totalBytes);
+
+    /**
+     * Checked between flashcards to stop loading early.
+     * @return true if loading should stop.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
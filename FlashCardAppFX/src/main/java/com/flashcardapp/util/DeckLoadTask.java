@@ -0,0 +1,97 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Loads a deck on a background thread so the application stays responsive while a large deck is read.
+ * <p>
+ * Progress is reported through the task's progress and message as bytes read, cards parsed and cards per second.
+ * Flashcards are handed to a batch handler on the JavaFX application thread as soon as they have been parsed, so they
+ * can be used before the whole deck has been read; the finished deck is the value of the task. Cancelling the task
+ * stops the parser at the next flashcard.
+ * <p>
+ * A spreadsheet is imported into a new deck file in the application's own format, which the finished deck is saved
+ * to, so that the spreadsheet itself is never overwritten.
+ */
+public class DeckLoadTask extends Task<Deck> {
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final String path;
+    private final Consumer<List<Flashcard>> batchHandler;
+    private final ReadOnlyIntegerWrapper loadedCards = new ReadOnlyIntegerWrapper(this, "loadedCards");
+    private int parsedCards; // only touched by the loading thread
+    private long startNanos;
+
+    /**
+     * @param path The path of the deck file to load.
+     * @param batchHandler Receives each batch of parsed flashcards, in order, on the JavaFX application thread.
+     */
+    public DeckLoadTask(String path, Consumer<List<Flashcard>> batchHandler) {
+        this.path = path;
+        this.batchHandler = batchHandler;
+    }
+
+    /**
+     * Returns the path of the deck file being loaded.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * The number of flashcards handed to the batch handler so far. Only changes on the JavaFX application thread,
+     * right after a batch has been handled.
+     */
+    public ReadOnlyIntegerProperty loadedCardsProperty() {
+        return loadedCards.getReadOnlyProperty();
+    }
+
+    @Override
+    protected Deck call() throws IOException {
+        updateMessage("Loading deck...");
+        startNanos = System.nanoTime();
+        DeckLoadListener listener = new DeckLoadListener() {
+            @Override
+            public void cardsLoaded(List<Flashcard> flashcards, long bytesRead, long totalBytes) {
+                parsedCards += flashcards.size();
+                Platform.runLater(() -> {
+                    if (!DeckLoadTask.this.isCancelled()) {
+                        batchHandler.accept(flashcards);
+                        loadedCards.set(loadedCards.get() + flashcards.size());
+                    }
+                });
+                long cardsPerSecond = parsedCards * 1_000_000_000L / Math.max(1, System.nanoTime() - startNanos);
+                if (totalBytes > 0) {
+                    updateProgress(Math.min(bytesRead, totalBytes), totalBytes);
+                    updateMessage(String.format("Loaded %d cards (%.1f of %.1f MB, %d cards/s)", parsedCards,
+                            bytesRead / BYTES_PER_MEGABYTE, totalBytes / BYTES_PER_MEGABYTE, cardsPerSecond));
+                } else {
+                    updateMessage(String.format("Loaded %d cards (%d cards/s)", parsedCards, cardsPerSecond));
+                }
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return DeckLoadTask.this.isCancelled();
+            }
+        };
+        IDeckHandler handler = IDeckHandler.forPath(path);
+        Deck deck = handler instanceof DelimitedTextDeckHandler
+                ? ((DelimitedTextDeckHandler) handler).importDeck(path, DelimitedTextDeckHandler.importPath(path), listener)
+                : handler.loadDeck(path, listener);
+        if (deck == null) {
+            throw new IOException("The deck could not be read");
+        }
+        updateProgress(1, 1);
+        return deck;
+    }
+}
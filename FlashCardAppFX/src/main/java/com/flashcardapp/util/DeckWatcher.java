@@ -0,0 +1,461 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckChange;
+import com.flashcardapp.model.DeckDiff;
+import com.flashcardapp.model.Flashcard;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the file of the open deck for changes made outside the application, such as by scripts editing the deck.
+ * <p>
+ * When the file changes, it is read again and compared with the version the deck was last loaded or saved as, by
+ * flashcard id and a 64-bit fingerprint of each flashcard's content. Images are fingerprinted by where they come
+ * from, such as the hash they are stored under, so checking a changed file does not read them. Only the differences
+ * are passed on, so the open deck and the screens showing it can be updated in place. The application's own saves
+ * are applied to the fingerprints as they are written, so they do not show up as differences.
+ */
+public class DeckWatcher {
+    private static final long SETTLE_MILLIS = 250; // lets a script finish writing before the file is read
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int END_OF_FIELD = 0x10000; // outside the range of a char, so fields cannot run into each other
+    private static final int NO_FIELD = 0x10001;
+
+    private final Consumer<DeckDiff> listener;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deck-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private WatchService watchService;
+    private Path deckFile;
+    private Path journalFile;
+    private String deckName;
+    private Fingerprints fingerprints; // of the version last seen
+    private long lastModified;
+    private ScheduledFuture<?> pendingCheck;
+
+    /**
+     * @param listener Receives the changes found in the watched file, on the watcher's thread.
+     */
+    public DeckWatcher(Consumer<DeckDiff> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching the file a deck was just loaded from or saved to, in place of any file watched before. The
+     * version stored in the file is read and fingerprinted on the watcher's thread; while the same file stays
+     * watched, the application's own saves keep the fingerprints up to date through {@link #deckSaved}.
+     * @param path The path of the deck file.
+     */
+    public synchronized void watch(String path) {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        if (file.equals(deckFile)) {
+            return;
+        }
+        stop();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Error watching deck file: " + e.getMessage());
+            stop();
+            return;
+        }
+        deckFile = file;
+        journalFile = DeckJournal.forDeck(file.toString()).path();
+        fingerprints = null;
+        Thread thread = new Thread(() -> pollEvents(watchService), "deck-watcher-events");
+        thread.setDaemon(true);
+        thread.start();
+        executor.execute(() -> remember(file));
+    }
+
+    /**
+     * Brings the fingerprints of the watched file up to date with a save the application made to it, so the save
+     * does not show up as a change made outside the application. Saves to other files are ignored. Called on the
+     * thread that wrote the deck, see {@link DeckWriter.SaveListener}.
+     * @param path The path the deck was saved to.
+     * @param saved The copy of the deck that was saved.
+     * @param changes The changes that were saved, if only they were written, or null if the whole deck was.
+     */
+    public void deckSaved(String path, Deck saved, List<DeckChange> changes) {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        synchronized (this) {
+            if (!file.equals(deckFile)) {
+                return;
+            }
+        }
+        // fingerprinted here, since the copy lets go of its images once it has been written
+        Fingerprints written = null;
+        List<long[]> changed = null;
+        if (changes == null) {
+            written = fingerprints(saved.getFlashcards());
+        } else {
+            changed = new ArrayList<>(changes.size());
+            for (DeckChange change : changes) {
+                Flashcard flashcard = change.getFlashcard();
+                changed.add(flashcard == null ? null : new long[] {flashcard.getId(), fingerprint(flashcard)});
+            }
+        }
+        String name = saved.getName();
+        Fingerprints whole = written;
+        List<long[]> fingerprinted = changed;
+        executor.execute(() -> {
+            long modified = IDeckHandler.forPath(path).lastModified(path);
+            synchronized (this) {
+                if (!file.equals(deckFile) || whole == null && fingerprints == null) {
+                    return; // the stored version was not read, so the next check has nothing to compare with
+                }
+                if (whole != null) {
+                    fingerprints = whole;
+                } else {
+                    for (int i = 0; i < changes.size(); i++) {
+                        fingerprints.apply(changes.get(i), fingerprinted.get(i));
+                    }
+                }
+                deckName = name;
+                lastModified = modified;
+            }
+        });
+    }
+
+    /**
+     * Checks whether a deck file is the one being watched.
+     * @param path The path of the deck file.
+     * @return true if changes to the file are being watched for.
+     */
+    public synchronized boolean isWatching(String path) {
+        return deckFile != null && deckFile.equals(Paths.get(path).toAbsolutePath().normalize());
+    }
+
+    /**
+     * Stops watching the deck file, if any.
+     */
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing deck watcher: " + e.getMessage());
+            }
+        }
+        if (pendingCheck != null) {
+            pendingCheck.cancel(false);
+        }
+        watchService = null;
+        deckFile = null;
+        journalFile = null;
+        pendingCheck = null;
+    }
+
+    /**
+     * Waits for changes in the directory of the deck file until the watch service is closed.
+     */
+    private void pollEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean deckChanged = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path && isDeckFile(service, (Path) event.context())) {
+                        deckChanged = true;
+                    }
+                }
+                if (deckChanged) {
+                    scheduleCheck(service);
+                }
+                if (!key.reset()) {
+                    return; // the directory is gone
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped watching
+        }
+    }
+
+    private synchronized boolean isDeckFile(WatchService service, Path name) {
+        return service == watchService && (name.equals(deckFile.getFileName()) || name.equals(journalFile.getFileName()));
+    }
+
+    /**
+     * Checks the deck file once it has not changed for a moment.
+     */
+    private synchronized void scheduleCheck(WatchService service) {
+        if (service != watchService) {
+            return;
+        }
+        if (pendingCheck != null) {
+            pendingCheck.cancel(false);
+        }
+        Path file = deckFile;
+        pendingCheck = executor.schedule(() -> check(file), SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks the watched file right away instead of once it has settled, for tests.
+     * @return A future completed once the file has been checked.
+     */
+    synchronized Future<?> checkNow() {
+        Path file = deckFile;
+        return executor.submit(() -> check(file));
+    }
+
+    /**
+     * Reads the version of the deck stored in the file and records it, to compare later versions with.
+     */
+    private void remember(Path file) {
+        String path = file.toString();
+        IDeckHandler handler = IDeckHandler.forPath(path);
+        long modified = handler.lastModified(path);
+        Deck stored;
+        try {
+            stored = handler.loadDeck(path);
+        } catch (IOException e) {
+            System.err.println("Error reading watched deck: " + e.getMessage());
+            return;
+        }
+        if (stored == null) {
+            return;
+        }
+        try {
+            Fingerprints remembered = fingerprints(stored.getFlashcards());
+            synchronized (this) {
+                if (file.equals(deckFile)) {
+                    deckName = stored.getName();
+                    fingerprints = remembered;
+                    lastModified = modified;
+                }
+            }
+        } finally {
+            stored.close();
+        }
+    }
+
+    /**
+     * Reads the deck file and passes on how it differs from the version last seen. The flashcards passed on are
+     * copies, so the deck read can be closed.
+     */
+    private void check(Path file) {
+        String path = file.toString();
+        IDeckHandler handler = IDeckHandler.forPath(path);
+        long modified = handler.lastModified(path);
+        Fingerprints previous;
+        String previousName;
+        synchronized (this) {
+            if (!file.equals(deckFile) || fingerprints == null || modified == lastModified) {
+                return;
+            }
+            previous = fingerprints;
+            previousName = deckName;
+        }
+        Deck stored;
+        try {
+            stored = handler.loadDeck(path);
+        } catch (IOException e) {
+            // possibly caught halfway through being written; the next change is compared with the last version read
+            System.err.println("Error reading changed deck: " + e.getMessage());
+            return;
+        }
+        if (stored == null) {
+            return;
+        }
+        try {
+            compare(file, stored, previous, previousName, modified);
+        } finally {
+            stored.close();
+        }
+    }
+
+    private void compare(Path file, Deck stored, Fingerprints previous, String previousName, long modified) {
+        List<Flashcard> flashcards = stored.getFlashcards();
+        Fingerprints current = new Fingerprints(flashcards.size());
+        List<Flashcard> added = new ArrayList<>();
+        List<Integer> addedIndexes = new ArrayList<>();
+        List<Flashcard> updated = new ArrayList<>();
+        for (int i = 0; i < flashcards.size(); i++) {
+            Flashcard flashcard = flashcards.get(i);
+            long id = flashcard.getId();
+            long fingerprint = fingerprint(flashcard);
+            current.add(id, fingerprint);
+            if (!previous.contains(id)) {
+                added.add(copyOf(flashcard));
+                addedIndexes.add(i);
+            } else if (previous.get(id) != fingerprint) {
+                updated.add(copyOf(flashcard));
+            }
+        }
+        List<Long> removed = new ArrayList<>();
+        previous.slots.forEach((id, slot) -> {
+            if (!current.contains(id)) {
+                removed.add(id);
+            }
+        });
+
+        synchronized (this) {
+            if (!file.equals(deckFile)) {
+                return; // another deck was opened meanwhile
+            }
+            fingerprints = current;
+            deckName = stored.getName();
+            lastModified = modified;
+        }
+        String name = Objects.equals(previousName, stored.getName()) ? null : stored.getName();
+        DeckDiff diff = new DeckDiff(name, added, addedIndexes.stream().mapToInt(Integer::intValue).toArray(),
+                removed.stream().mapToLong(Long::longValue).toArray(), updated, current.storedOrder());
+        if (!diff.isEmpty()) {
+            listener.accept(diff);
+        }
+    }
+
+    /**
+     * Copies a flashcard of the deck read from the file, taking its own references to the images.
+     */
+    private static Flashcard copyOf(Flashcard flashcard) {
+        Flashcard copy = new Flashcard(flashcard.getId(), null, null, null, null, null);
+        copy.copyContentFrom(flashcard);
+        return copy;
+    }
+
+    private static Fingerprints fingerprints(List<Flashcard> flashcards) {
+        Fingerprints fingerprints = new Fingerprints(flashcards.size());
+        for (int i = 0; i < flashcards.size(); i++) {
+            Flashcard flashcard = flashcards.get(i);
+            fingerprints.add(flashcard.getId(), fingerprint(flashcard));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Summarizes the content of a flashcard with a 64-bit FNV-1a hash, so that changed flashcards can be told apart
+     * from unchanged ones. Images are taken by their source, normalized so that an image resolved from the
+     * {@link ImageCache} matches the same image not yet resolved.
+     */
+    private static long fingerprint(Flashcard flashcard) {
+        ImageCache cache = ImageCache.getInstance();
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, flashcard.getQuestion());
+        hash = hash(hash, flashcard.getAnswer());
+        hash = hash(hash, flashcard.getHint());
+        hash = hash(hash, cache.sourceOf(flashcard.getQuestionImageSource()));
+        return hash(hash, cache.sourceOf(flashcard.getAnswerImageSource()));
+    }
+
+    private static long hash(long hash, String field) {
+        if (field == null) {
+            return (hash ^ NO_FIELD) * FNV_PRIME;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            hash = (hash ^ field.charAt(i)) * FNV_PRIME;
+        }
+        return (hash ^ END_OF_FIELD) * FNV_PRIME;
+    }
+
+    /**
+     * The fingerprints of the flashcards of one version of the deck, by flashcard id, along with the order of the
+     * flashcards so that changes saved by position can be applied.
+     */
+    private static final class Fingerprints {
+        final LongIntHashMap slots; // card id to slot in the values
+        long[] values;
+        private long[] order; // card ids in stored order
+        private int size;
+        private int slotCount; // slots of removed flashcards are not reused
+
+        Fingerprints(int capacity) {
+            slots = new LongIntHashMap(capacity);
+            values = new long[Math.max(capacity, 1)];
+            order = new long[Math.max(capacity, 1)];
+        }
+
+        /**
+         * Appends a flashcard to the stored order.
+         */
+        void add(long id, long fingerprint) {
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            order[size++] = id;
+            set(id, fingerprint);
+        }
+
+        boolean contains(long id) {
+            return slots.containsKey(id);
+        }
+
+        long get(long id) {
+            return values[slots.get(id, 0)];
+        }
+
+        long[] storedOrder() {
+            return Arrays.copyOf(order, size);
+        }
+
+        /**
+         * Applies a change the application saved.
+         * @param fingerprinted The id and fingerprint of the flashcard the change names, or null if it names none.
+         */
+        void apply(DeckChange change, long[] fingerprinted) {
+            switch (change.getType()) {
+                case ADD:
+                    add(fingerprinted[0], fingerprinted[1]);
+                    break;
+                case REMOVE:
+                    slots.remove(order[change.getIndex()]);
+                    System.arraycopy(order, change.getIndex() + 1, order, change.getIndex(), size - change.getIndex() - 1);
+                    size--;
+                    break;
+                case UPDATE:
+                    if (order[change.getIndex()] != fingerprinted[0]) {
+                        slots.remove(order[change.getIndex()]); // the flashcard was replaced by another
+                        order[change.getIndex()] = fingerprinted[0];
+                    }
+                    set(fingerprinted[0], fingerprinted[1]);
+                    break;
+                case CLEAR:
+                    slots.clear();
+                    size = 0;
+                    slotCount = 0;
+                    break;
+                default:
+                    break; // a rename does not change any flashcard
+            }
+        }
+
+        /**
+         * Stores a flashcard's fingerprint, taking a new slot if the flashcard has none.
+         */
+        private void set(long id, long fingerprint) {
+            int slot = slots.get(id, -1);
+            if (slot < 0) {
+                slot = slotCount++;
+                if (slot == values.length) {
+                    values = Arrays.copyOf(values, slot * 2);
+                }
+                slots.put(id, slot);
+            }
+            values[slot] = fingerprint; // after the values may have grown
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckChange;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves decks on a dedicated background thread.
+ * <p>
+ * Save requests for the same path are coalesced: while a save for a path is waiting to run, further requests for
+ * that path join it instead of queueing another write, so at most one write per path is running and one is waiting.
+ * The deck handlers replace files atomically, so a crash during a save never leaves a truncated deck behind.
+ */
+public class DeckWriter {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "deck-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, PendingSave> pending = new HashMap<>();
+    private final SaveListener listener;
+
+    /**
+     * Receives every deck the writer has saved, on the writer thread, before the copy that was saved is closed.
+     */
+    @FunctionalInterface
+    public interface SaveListener {
+        /**
+         * @param filePath The path the deck was saved to.
+         * @param saved The copy of the deck that was saved.
+         * @param changes The changes that were saved, if the copy holds only the changes, or null if the whole deck was
+         *                written.
+         */
+        void deckSaved(String filePath, Deck saved, List<DeckChange> changes);
+    }
+
+    /**
+     * Creates a writer that tells no one about the decks it saved.
+     */
+    public DeckWriter() {
+        this(null);
+    }
+
+    /**
+     * @param listener Receives every deck the writer has saved, or null.
+     */
+    public DeckWriter(SaveListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Requests a deck to be saved. If a save for the same path is already waiting, this request joins it.
+     * The deck is copied right away, see {@link Deck#copyForSave(String, Deck, boolean)}, so call this on the thread
+     * that edits the deck. When only its changes need to be saved, only the flashcards they name are copied.
+     * Exporting to a spreadsheet does not change the file the deck is saved to.
+     * @param deck The deck to save.
+     * @param filePath The path to save the deck to. The format is chosen by {@link IDeckHandler#forPath(String)}.
+     * @return A future completed once the deck has been written, or completed exceptionally if the write failed.
+     */
+    public synchronized CompletableFuture<Void> submit(Deck deck, String filePath) {
+        String key = Paths.get(filePath).toAbsolutePath().normalize().toString();
+        PendingSave save = pending.get(key);
+        if (save != null) {
+            Deck superseded = save.deck;
+            save.deck = copy(deck, filePath, superseded);
+            superseded.close();
+            return save.future;
+        }
+
+        save = new PendingSave(copy(deck, filePath, null), filePath);
+        pending.put(key, save);
+        executor.execute(() -> write(key));
+        return save.future;
+    }
+
+    /**
+     * Copies a deck to be written to a path. A deck exported to a format it cannot be opened from again is copied
+     * without being linked to the copy, see {@link Deck#copyForExport()}.
+     */
+    private static Deck copy(Deck deck, String filePath, Deck pending) {
+        IDeckHandler handler = IDeckHandler.forPath(filePath);
+        return handler.storesDeck() ? deck.copyForSave(filePath, pending, handler.savesChanges()) : deck.copyForExport();
+    }
+
+    /**
+     * Writes the latest deck requested for a path.
+     */
+    private void write(String key) {
+        PendingSave save;
+        synchronized (this) {
+            save = pending.remove(key);
+        }
+        try {
+            List<DeckChange> changes = save.deck.isChangesOnly() ? save.deck.getChanges() : null; // the handler takes them
+            IDeckHandler.forPath(save.filePath).saveDeck(save.deck, save.filePath);
+            if (listener != null) {
+                listener.deckSaved(save.filePath, save.deck, changes);
+            }
+            save.future.complete(null);
+        } catch (Exception e) {
+            save.future.completeExceptionally(e);
+        } finally {
+            save.deck.close();
+        }
+    }
+
+    /**
+     * Folds the changes kept outside a deck file back into it, once the saves requested before have been written.
+     * @param deck The deck as stored at the path.
+     * @param filePath The path of the deck file.
+     * @return A future completed once the deck file has been compacted, or completed exceptionally if that failed.
+     */
+    public CompletableFuture<Void> compact(Deck deck, String filePath) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                IDeckHandler.forPath(filePath).compact(deck, filePath);
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Finishes every save that has been requested and stops the writer thread.
+     * @param timeoutMillis The maximum time to wait for the pending saves.
+     * @return true if all saves finished in time.
+     */
+    public boolean shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * A save waiting to run, along with the future shared by every request it absorbed.
+     */
+    private static final class PendingSave {
+        private Deck deck;
+        private final String filePath;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingSave(Deck deck, String filePath) {
+            this.deck = deck;
+            this.filePath = filePath;
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.model.ImageReference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handles loading and saving decks as delimited text: comma-separated (.csv) or tab-separated (.tsv) spreadsheets
+ * with one flashcard per row.
+ * <p>
+ * Columns are matched to flashcard fields by a header row naming them; columns with other names are left out. Without
+ * a header, the columns are taken to be the question, answer, hint, question image and answer image, in that order.
+ * Fields may be quoted as in RFC 4180, so they can hold delimiters, quotes and line breaks.
+ * <p>
+ * The file is streamed in chunks that end at row boundaries. Chunks are parsed in parallel on a pool of worker
+ * threads while the next ones are read, and their rows become flashcards in file order, so only a few chunks are
+ * held in memory at any time. A row may be at most 64 MB long, so a quote that is never closed fails the import
+ * instead of buffering the rest of the file. Rows without an id are given one derived from their question and row,
+ * like decks stored before flashcards had ids, so they keep their review progress as long as the file is unchanged.
+ * <p>
+ * A spreadsheet opened in the application is imported into a deck file of the application's own format, see
+ * {@link #importDeck}, so that saving the deck does not overwrite the spreadsheet.
+ */
+public class DelimitedTextDeckHandler implements IDeckHandler {
+
+    /** File extension used for comma-separated decks. */
+    public static final String CSV_EXTENSION = ".csv";
+
+    /** File extension used for tab-separated decks. */
+    public static final String TSV_EXTENSION = ".tsv";
+
+    private static final int CHUNK_SIZE = 1024 * 1024; // bytes parsed as one unit of work
+    private static final int CHUNKS_PER_WORKER = 2; // chunks in flight per worker thread
+    private static final int MAX_ROW_SIZE = 64 * 1024 * 1024; // bytes; longer rows are taken to be an unclosed quote
+
+    private static final int ID = 0;
+    private static final int QUESTION = 1;
+    private static final int ANSWER = 2;
+    private static final int HINT = 3;
+    private static final int QUESTION_IMAGE = 4;
+    private static final int ANSWER_IMAGE = 5;
+    private static final int[] DEFAULT_COLUMNS = {-1, 0, 1, 2, 3, 4}; // column of each field when there is no header
+    private static final String[] HEADER = {"id", "question", "answer", "hint", "question image", "answer image"};
+    private static final Map<String, Integer> COLUMN_NAMES = Map.ofEntries(
+            Map.entry("id", ID),
+            Map.entry("question", QUESTION), Map.entry("front", QUESTION), Map.entry("term", QUESTION),
+            Map.entry("answer", ANSWER), Map.entry("back", ANSWER), Map.entry("definition", ANSWER),
+            Map.entry("hint", HINT),
+            Map.entry("questionimage", QUESTION_IMAGE), Map.entry("frontimage", QUESTION_IMAGE),
+            Map.entry("answerimage", ANSWER_IMAGE), Map.entry("backimage", ANSWER_IMAGE));
+
+    private static ExecutorService parsers;
+
+    private final char delimiter;
+    private final int maxRowSize;
+
+    /**
+     * Creates a handler for the delimiter belonging to a file's extension: tabs for .tsv files, commas otherwise.
+     * @param path The path of the deck file.
+     */
+    public DelimitedTextDeckHandler(String path) {
+        this(path.toLowerCase(Locale.ROOT).endsWith(TSV_EXTENSION) ? '\t' : ',');
+    }
+
+    /**
+     * Creates a handler for a delimiter.
+     * @param delimiter The character separating the fields of a row.
+     */
+    public DelimitedTextDeckHandler(char delimiter) {
+        this(delimiter, MAX_ROW_SIZE);
+    }
+
+    /**
+     * Creates a handler for a delimiter that rejects rows longer than the given size.
+     * @param delimiter The character separating the fields of a row.
+     * @param maxRowSize The longest row a spreadsheet may have, in bytes.
+     */
+    DelimitedTextDeckHandler(char delimiter, int maxRowSize) {
+        this.delimiter = delimiter;
+        this.maxRowSize = maxRowSize;
+    }
+
+    /**
+     * Receives the flashcards of a spreadsheet, one chunk at a time, in file order.
+     */
+    @FunctionalInterface
+    private interface BatchSink {
+        void accept(List<Flashcard> flashcards) throws IOException;
+    }
+
+    @Override
+    public Deck loadDeck(String path) throws IOException {
+        return loadDeck(path, null);
+    }
+
+    /**
+     * Loads a deck from a spreadsheet, reporting the flashcards of each chunk to a listener once it has been parsed.
+     * The deck is named after the file. It is not marked as saved to the spreadsheet, so that saving it does not
+     * overwrite the spreadsheet with the application's columns.
+     * @param path The path to the spreadsheet.
+     * @param listener The listener to report the flashcards to, or null.
+     * @return The loaded deck.
+     * @throws IOException if the file cannot be read or has no question and answer columns.
+     * @throws InterruptedIOException if the listener cancelled loading.
+     */
+    @Override
+    public Deck loadDeck(String path, DeckLoadListener listener) throws IOException {
+        List<Flashcard> flashcards = new ArrayList<>();
+        read(Paths.get(path), listener, flashcards::addAll);
+        return new Deck(deckName(path), flashcards);
+    }
+
+    /**
+     * Imports a spreadsheet into a deck file. Database decks are written batch by batch while the spreadsheet is
+     * being read, so the flashcards are never all held in memory; other formats are written once the whole
+     * spreadsheet has been read.
+     * @param path The path to the spreadsheet.
+     * @param targetPath The path of the deck file to write, in the format matching its extension.
+     * @param listener The listener to report the flashcards to, or null.
+     * @return The imported deck, saved to the deck file.
+     * @throws IOException if the spreadsheet cannot be read or the deck cannot be written.
+     * @throws InterruptedIOException if the listener cancelled the import. A database deck is then left unchanged.
+     */
+    public Deck importDeck(String path, String targetPath, DeckLoadListener listener) throws IOException {
+        IDeckHandler targetHandler = IDeckHandler.forPath(targetPath);
+        if (!(targetHandler instanceof DatabaseDeckHandler)) {
+            Deck deck = loadDeck(path, listener);
+            targetHandler.saveDeck(deck, targetPath);
+            return deck;
+        }
+        try (DatabaseDeckHandler.CardImport target = new DatabaseDeckHandler.CardImport(targetPath, deckName(path))) {
+            read(Paths.get(path), listener, target::add);
+            target.commit();
+        }
+        return targetHandler.loadDeck(targetPath);
+    }
+
+    /**
+     * Chooses the deck file a spreadsheet opened in the application is imported into: a file in the application's
+     * own format next to the spreadsheet, named after it, that does not exist yet.
+     * @param path The path to the spreadsheet.
+     * @return The path of the deck file to import into.
+     */
+    public static String importPath(String path) {
+        Path spreadsheet = Paths.get(path).toAbsolutePath();
+        String name = deckName(path);
+        Path target = spreadsheet.resolveSibling(name + DeckHandler.EXTENSION);
+        for (int copy = 2; Files.exists(target); copy++) {
+            target = spreadsheet.resolveSibling(name + " (" + copy + ")" + DeckHandler.EXTENSION);
+        }
+        return target.toString();
+    }
+
+    /**
+     * Saves a deck as a spreadsheet with a header row, including the flashcard ids so that the review progress of
+     * the flashcards survives editing the file. Images are written as their path or URL. The deck is not marked as
+     * saved to the spreadsheet, since opening the spreadsheet imports it into a new deck file.
+     * @param deck The deck to save.
+     * @param filePath The path to the spreadsheet.
+     * @throws IOException if the file cannot be written.
+     */
+    @Override
+    public void saveDeck(Deck deck, String filePath) throws IOException {
+        List<Flashcard> cards = deck.snapshotFlashcards();
+        AtomicFiles.replace(Paths.get(filePath), file -> {
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writeRow(out, HEADER);
+                for (Flashcard card : cards) {
+                    writeRow(out, new String[] {
+                            Long.toString(card.getId()),
+                            card.getQuestion(),
+                            card.getAnswer(),
+                            card.getHint(),
+                            card.getQuestionImage(),
+                            card.getAnswerImage()
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc} A spreadsheet is imported into a new deck file when it is opened, so decks are only exported to it.
+     */
+    @Override
+    public boolean storesDeck() {
+        return false;
+    }
+
+    /**
+     * Reads the rows of a spreadsheet in parallel chunks and passes their flashcards on in file order.
+     * @return The number of flashcards read.
+     */
+    private int read(Path file, DeckLoadListener listener, BatchSink sink) throws IOException {
+        long totalBytes = Files.size(file);
+        ExecutorService workers = parsers();
+        int windowSize = Runtime.getRuntime().availableProcessors() * CHUNKS_PER_WORKER;
+        ArrayDeque<Future<List<String[]>>> window = new ArrayDeque<>(windowSize);
+        ArrayDeque<Long> chunkEnds = new ArrayDeque<>(windowSize); // bytes read up to the end of each chunk in flight
+        RowConverter converter = new RowConverter();
+        try (InputStream in = Files.newInputStream(file)) {
+            ChunkReader chunks = new ChunkReader(in, delimiter, maxRowSize);
+            byte[] chunk;
+            while ((chunk = chunks.next()) != null) {
+                if (window.size() >= windowSize) {
+                    convert(window.poll(), chunkEnds.poll(), totalBytes, converter, listener, sink);
+                }
+                byte[] text = chunk;
+                window.add(workers.submit(() -> parseRows(text, delimiter)));
+                chunkEnds.add(chunks.getBytesRead());
+            }
+            while (!window.isEmpty()) {
+                convert(window.poll(), chunkEnds.poll(), totalBytes, converter, listener, sink);
+            }
+        } finally {
+            for (Future<List<String[]>> pending : window) {
+                pending.cancel(false);
+            }
+        }
+        return converter.count;
+    }
+
+    /**
+     * Waits for a parsed chunk and passes its flashcards on.
+     */
+    private static void convert(Future<List<String[]>> parsed, long bytesRead, long totalBytes, RowConverter converter,
+                                DeckLoadListener listener, BatchSink sink) throws IOException {
+        if (listener != null && listener.isCancelled()) {
+            throw new InterruptedIOException("Deck loading was cancelled");
+        }
+        List<Flashcard> flashcards = converter.convert(await(parsed));
+        if (flashcards.isEmpty()) {
+            return;
+        }
+        sink.accept(flashcards);
+        if (listener != null) {
+            listener.cardsLoaded(flashcards, bytesRead, totalBytes);
+        }
+    }
+
+    /**
+     * Splits a chunk into rows of fields. The chunk starts at the start of a row and ends at the end of one.
+     * A quote only starts a quoted field at the start of the field; elsewhere it is kept as it is.
+     */
+    private static List<String[]> parseRows(byte[] chunk, char delimiter) {
+        String text = new String(chunk, StandardCharsets.UTF_8);
+        List<String[]> rows = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean fieldStart = true;
+        boolean inQuotes = false;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < length && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"' && fieldStart) {
+                inQuotes = true;
+                fieldStart = false;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStart = true;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                endRow(rows, fields, field);
+                fieldStart = true;
+            } else {
+                field.append(c);
+                fieldStart = false;
+            }
+        }
+        if (!fields.isEmpty() || field.length() > 0) {
+            endRow(rows, fields, field); // the last row of the file has no line break
+        }
+        return rows;
+    }
+
+    private static void endRow(List<String[]> rows, List<String> fields, StringBuilder field) {
+        fields.add(field.toString());
+        field.setLength(0);
+        if (fields.size() > 1 || !fields.get(0).isEmpty()) {
+            rows.add(fields.toArray(new String[0]));
+        }
+        fields.clear();
+    }
+
+    private void writeRow(Writer out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(delimiter);
+            }
+            String value = fields[i] == null ? "" : fields[i];
+            if (value.indexOf(delimiter) >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write('\n');
+    }
+
+    private static String deckName(String path) {
+        String name = Paths.get(path).getFileName().toString();
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+    /**
+     * Waits for a parsed chunk, unwrapping the failure of its worker.
+     */
+    private static <R> R await(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing the spreadsheet");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Returns the pool parsing chunks, shared by all spreadsheets and sized to the number of processors.
+     */
+    private static synchronized ExecutorService parsers() {
+        if (parsers == null) {
+            AtomicInteger count = new AtomicInteger();
+            parsers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "text-parser-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return parsers;
+    }
+
+    /**
+     * Turns rows into flashcards in file order, taking the column of each field from the header row if the first
+     * row is one. The first row is a header if any of its cells names a field.
+     */
+    private static final class RowConverter {
+        private int[] columns; // column of each field, or -1; null until the first row has been seen
+        private int count; // flashcards converted so far, which is the position of the next one
+
+        List<Flashcard> convert(List<String[]> rows) throws IOException {
+            List<Flashcard> flashcards = new ArrayList<>(rows.size());
+            for (String[] row : rows) {
+                if (columns == null) {
+                    columns = headerColumns(row);
+                    if (columns != null) {
+                        continue;
+                    }
+                    columns = DEFAULT_COLUMNS;
+                }
+                String question = field(row, QUESTION);
+                long id = parseId(field(row, ID));
+                flashcards.add(new Flashcard(
+                        id != 0 ? id : Flashcard.legacyId(question, count),
+                        question,
+                        field(row, ANSWER),
+                        emptyToNull(field(row, HINT)),
+                        imageReference(field(row, QUESTION_IMAGE)),
+                        imageReference(field(row, ANSWER_IMAGE))
+                ));
+                count++;
+            }
+            return flashcards;
+        }
+
+        /**
+         * Matches the cells of a row with the known column names. Columns with other names are left out.
+         * @return The column of each field, or null if no cell of the row names a field, so the row is not a header.
+         * @throws IOException if the row is a header without a question or answer column.
+         */
+        private static int[] headerColumns(String[] row) throws IOException {
+            int[] columns = new int[DEFAULT_COLUMNS.length];
+            Arrays.fill(columns, -1);
+            boolean header = false;
+            List<String> unknown = new ArrayList<>();
+            for (int i = 0; i < row.length; i++) {
+                String name = row[i].replaceAll("[\\s_-]", "").toLowerCase(Locale.ROOT);
+                if (name.isEmpty()) {
+                    continue;
+                }
+                Integer field = COLUMN_NAMES.get(name);
+                if (field == null) {
+                    unknown.add(row[i]);
+                    continue;
+                }
+                columns[field] = i;
+                header = true;
+            }
+            if (!header) {
+                return null;
+            }
+            if (columns[QUESTION] < 0 || columns[ANSWER] < 0) {
+                throw new IOException("The spreadsheet has no question and answer columns");
+            }
+            if (!unknown.isEmpty()) {
+                System.err.println("Ignoring unknown spreadsheet columns: " + String.join(", ", unknown));
+            }
+            return columns;
+        }
+
+        private String field(String[] row, int field) {
+            int column = columns[field];
+            return column >= 0 && column < row.length ? row[column] : "";
+        }
+
+        private static long parseId(String value) {
+            if (value.isEmpty()) {
+                return 0;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        private static String emptyToNull(String value) {
+            return value.isEmpty() ? null : value;
+        }
+
+        private static ImageReference imageReference(String value) {
+            return value.isEmpty() ? null : () -> value;
+        }
+    }
+
+    /**
+     * Reads a spreadsheet in chunks of about {@link #CHUNK_SIZE} bytes, each ending right after a line break that is
+     * not inside a quoted field, so that every chunk can be parsed on its own. A chunk grows past that size only for
+     * a row longer than a chunk, up to the longest row allowed.
+     */
+    private static final class ChunkReader {
+        private final InputStream in;
+        private final char delimiter;
+        private final int maxRowSize;
+        private byte[] buffer;
+        private int length; // bytes in the buffer
+        private long bytesRead; // bytes handed out in chunks so far
+        private boolean started;
+        private boolean endOfFile;
+
+        ChunkReader(InputStream in, char delimiter, int maxRowSize) {
+            this.in = in;
+            this.delimiter = delimiter;
+            this.maxRowSize = maxRowSize;
+            this.buffer = new byte[Math.min(CHUNK_SIZE, maxRowSize)];
+        }
+
+        /**
+         * @return The next chunk, or null at the end of the file.
+         */
+        byte[] next() throws IOException {
+            while (true) {
+                while (!endOfFile && length < buffer.length) {
+                    int read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        endOfFile = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                if (!started) {
+                    started = true;
+                    if (length >= 3 && (buffer[0] & 0xff) == 0xef && (buffer[1] & 0xff) == 0xbb && (buffer[2] & 0xff) == 0xbf) {
+                        take(3); // byte order mark
+                    }
+                }
+                if (length == 0) {
+                    return null;
+                }
+                int end = endOfFile ? length : lastRowEnd();
+                if (end > 0) {
+                    return take(end);
+                }
+                if (buffer.length >= maxRowSize) {
+                    throw new IOException("The row at byte " + bytesRead + " of the spreadsheet is longer than "
+                            + maxRowSize + " bytes; a quote may not be closed");
+                }
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxRowSize)); // a single row longer than a chunk
+            }
+        }
+
+        long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * Removes the first bytes from the buffer.
+         */
+        private byte[] take(int count) {
+            byte[] chunk = Arrays.copyOf(buffer, count);
+            System.arraycopy(buffer, count, buffer, 0, length - count);
+            length -= count;
+            bytesRead += count;
+            return chunk;
+        }
+
+        /**
+         * Follows the quoting rules of {@link #parseRows} from the start of the buffer, which is the start of a row.
+         * Both line feeds and carriage returns end a row, so files with either kind of line ending are split into
+         * chunks; a line feed that follows a carriage return in the next chunk only adds an empty row, which is skipped.
+         * @return The position after the last line break outside quotes, or 0 if there is none.
+         */
+        private int lastRowEnd() {
+            int end = 0;
+            boolean fieldStart = true;
+            boolean inQuotes = false;
+            boolean quoteClosed = false; // a quote right after a closing quote is an escaped quote
+            for (int i = 0; i < length; i++) {
+                byte b = buffer[i];
+                if (inQuotes) {
+                    if (b == '"') {
+                        inQuotes = false;
+                        quoteClosed = true;
+                    }
+                } else if (b == '"') {
+                    inQuotes = fieldStart || quoteClosed;
+                    fieldStart = false;
+                    quoteClosed = false;
+                } else {
+                    fieldStart = b == delimiter || b == '\n' || b == '\r';
+                    quoteClosed = false;
+                    if (b == '\n' || b == '\r') {
+                        end = i + 1;
+                    }
+                }
+            }
+            return end;
+        }
+    }
+}
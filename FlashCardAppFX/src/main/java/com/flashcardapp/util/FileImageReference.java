@@ -0,0 +1,115 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.EncodedImage;
+import com.flashcardapp.model.ImageReference;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+
+/**
+ * A reference to an image at a position in a deck file, read only when the image is needed.
+ * <p>
+ * The reference holds the file open until the image has been resolved or the reference released, so it stays valid
+ * after the file has been replaced by a newer version. Once resolved, it keeps the result, since a flashcard that
+ * took the reference over may resolve it again.
+ */
+abstract class FileImageReference implements ImageReference {
+    private final SharedChannel file;
+    private final long position;
+    private final Cleaner.Cleanable hold;
+    private boolean resolved;
+    private String image;
+    private String identity;
+
+    /**
+     * @param file The file holding the image, held open by the reference.
+     * @param position The position of the image in the file.
+     */
+    FileImageReference(SharedChannel file, long position) {
+        this.file = file;
+        this.position = position;
+        this.hold = file.hold(this);
+    }
+
+    /**
+     * Reads the image from the file and resolves it into a URL that can be displayed.
+     */
+    abstract String read(SharedChannel file, long position) throws IOException;
+
+    /**
+     * Reads the image from the file in its stored form.
+     * @return The encoded image, or null if the file only refers to the image.
+     */
+    abstract EncodedImage readEncoded(SharedChannel file, long position) throws IOException;
+
+    /**
+     * Reads what identifies the image from the file, without reading the image itself where the file allows.
+     * @see ImageReference#identity()
+     */
+    abstract String readIdentity(SharedChannel file, long position) throws IOException;
+
+    /**
+     * Creates another reference to the same image, holding the file on its own.
+     */
+    abstract FileImageReference copy(SharedChannel file, long position);
+
+    @Override
+    public final synchronized String resolve() {
+        if (!resolved) {
+            try {
+                image = read(file, position);
+            } catch (IOException e) {
+                System.err.println("Error reading image data: " + e.getMessage());
+            } finally {
+                resolved = true;
+                hold.clean();
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Reads the image in its stored form, unless it has been resolved, after which it is read from where it was
+     * resolved to.
+     */
+    @Override
+    public final synchronized EncodedImage encode() {
+        if (resolved) {
+            return null;
+        }
+        try {
+            return readEncoded(file, position);
+        } catch (IOException e) {
+            System.err.println("Error reading image data: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the identity of the image once, unless it has been resolved, after which the resolved image stands for it.
+     */
+    @Override
+    public final synchronized String identity() {
+        if (identity == null && !resolved) {
+            try {
+                identity = readIdentity(file, position);
+            } catch (IOException e) {
+                System.err.println("Error reading image data: " + e.getMessage());
+            }
+        }
+        return identity != null ? identity : image;
+    }
+
+    @Override
+    public final synchronized ImageReference share() {
+        return resolved ? this : copy(file, position);
+    }
+
+    @Override
+    public final synchronized void release() {
+        if (!resolved) {
+            resolved = true;
+            hold.clean();
+        }
+    }
+}
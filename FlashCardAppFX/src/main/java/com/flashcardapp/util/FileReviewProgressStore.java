@@ -0,0 +1,265 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.flashcardapp.model.Flashcard;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the review progress of a deck file in files of its own, kept apart from the configuration so that
+ * recording an answer does not rewrite the progress of every other card.
+ * <p>
+ * Progress lives in two files in the application data directory, kept as a {@link SnapshotLog}: a snapshot with the
+ * mastery level of every card that has been reviewed, keyed by card id, and a log that every answer is appended to as
+ * a single line.
+ * <p>
+ * Progress stored before flashcards had ids is keyed by question. On first use it is moved to a third file, and the
+ * progress of each flashcard is moved over to the flashcard's id the first time the flashcard is looked up.
+ */
+public class FileReviewProgressStore implements ReviewProgressStore {
+    private final SnapshotLog files;
+    private final Path legacyFile; // progress keyed by question that has not been moved to card ids yet
+    private LongIntHashMap masteryLevels; // loaded on first use
+    private Map<String, Integer> legacyLevels; // loaded on first use
+
+    /**
+     * Creates a store kept in the given files.
+     * @param snapshotFile The file holding the compacted progress.
+     * @param logFile The file answers are appended to.
+     */
+    public FileReviewProgressStore(Path snapshotFile, Path logFile) {
+        this.files = new SnapshotLog(snapshotFile, logFile, "review progress");
+        this.legacyFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".legacy");
+    }
+
+    /**
+     * Returns the store for a deck file, kept in the progress folder of the application data directory.
+     * @param deckPath The path of the deck file.
+     * @return The progress store of the deck.
+     */
+    public static FileReviewProgressStore forDeck(String deckPath) {
+        return new FileReviewProgressStore(DeckDataFiles.forDeck("progress", deckPath, ".snapshot"),
+                DeckDataFiles.forDeck("progress", deckPath, ".log"));
+    }
+
+    /**
+     * {@inheritDoc} The snapshot and every complete record in the log are read on first use.
+     */
+    @Override
+    public synchronized int getMastery(long cardId, int defaultLevel) {
+        return levels().get(cardId, defaultLevel);
+    }
+
+    /**
+     * {@inheritDoc} Progress keyed by the flashcard's question is recorded under its id and then forgotten.
+     */
+    @Override
+    public synchronized int getMastery(Flashcard flashcard, int defaultLevel) {
+        if (levels().containsKey(flashcard.getId())) {
+            return masteryLevels.get(flashcard.getId(), defaultLevel);
+        }
+        Integer legacyLevel = legacyLevels.remove(flashcard.getQuestion());
+        if (legacyLevel == null) {
+            return defaultLevel;
+        }
+        recordMastery(flashcard.getId(), legacyLevel);
+        return legacyLevel;
+    }
+
+    /**
+     * {@inheritDoc} The record is appended to the log.
+     */
+    @Override
+    public synchronized void recordMastery(long cardId, int masteryLevel) {
+        levels().put(cardId, masteryLevel);
+        try {
+            if (files.append(encodeRecord(cardId, masteryLevel), masteryLevels.size())) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving review progress: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized int countCardsAtLeast(int level) {
+        int[] count = {0};
+        levels().forEach((cardId, mastery) -> {
+            if (mastery >= level) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    @Override
+    public long lastModified() {
+        return files.lastModified();
+    }
+
+    /**
+     * Writes all progress to a new snapshot and empties the log. The progress keyed by question that is left is
+     * written first, since the snapshot replaces the one it may have been read from.
+     * @throws IOException if the snapshot cannot be written. The log is then left as it is.
+     */
+    private void compact() throws IOException {
+        if (legacyLevels.isEmpty()) {
+            Files.deleteIfExists(legacyFile);
+        } else {
+            AtomicFiles.replace(legacyFile, file -> {
+                try (JsonGenerator generator = JsonDeckReader.JSON_FACTORY.createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+                    writeLegacyLevels(generator);
+                }
+            });
+        }
+        files.compact(file -> {
+            try (JsonGenerator generator = JsonDeckReader.JSON_FACTORY.createGenerator(file.toFile(), JsonEncoding.UTF8)) {
+                generator.writeStartArray();
+                masteryLevels.<IOException>forEach((cardId, level) -> {
+                    generator.writeNumber(cardId);
+                    generator.writeNumber(level);
+                });
+                generator.writeEndArray();
+            }
+        });
+    }
+
+    private LongIntHashMap levels() {
+        if (masteryLevels == null) {
+            masteryLevels = new LongIntHashMap();
+            legacyLevels = new HashMap<>();
+            readLegacyLevels(legacyFile);
+            if (files.load(this::readSnapshot, this::readLog)) {
+                try {
+                    // a line cut short would swallow the next record appended after it, and progress keyed by
+                    // question is moved out of the snapshot and the log
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Error saving review progress: " + e.getMessage());
+                }
+            }
+        }
+        return masteryLevels;
+    }
+
+    /**
+     * Reads the snapshot, a flat JSON array of card ids each followed by the card's mastery level.
+     * @return The number of cards read, or -1 if the snapshot still keys progress by question.
+     */
+    private int readSnapshot(Path file) throws IOException {
+        int count = 0;
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(file.toFile())) {
+            JsonToken start = parser.nextToken();
+            if (start == JsonToken.START_OBJECT) {
+                readLegacyLevels(parser);
+                return -1;
+            }
+            if (start != JsonToken.START_ARRAY) {
+                return 0;
+            }
+            while (parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+                long cardId = parser.getLongValue();
+                parser.nextToken();
+                masteryLevels.put(cardId, parser.getIntValue());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void readLegacyLevels(Path file) {
+        try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(file.toFile())) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                readLegacyLevels(parser);
+            }
+        } catch (FileNotFoundException ignored) {
+            // no progress keyed by question is left
+        } catch (IOException e) {
+            System.err.println("Error reading review progress: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads progress keyed by question: a JSON object from each question to the card's mastery level.
+     */
+    private void readLegacyLevels(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String question = parser.getCurrentName();
+            parser.nextToken();
+            legacyLevels.put(question, parser.getIntValue());
+        }
+    }
+
+    private void writeLegacyLevels(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, Integer> entry : legacyLevels.entrySet()) {
+            generator.writeNumberField(entry.getKey(), entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Replays the log, stopping at a line cut short by a crash. Records keyed by question are kept apart.
+     * @return The number of records read, or -1 if a line was cut short or keyed by question.
+     */
+    private int readLog(Path file) throws IOException {
+        int count = 0;
+        boolean complete = true;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try (JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(line)) {
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        return -1;
+                    }
+                    JsonToken key = parser.nextToken();
+                    if (key != JsonToken.VALUE_NUMBER_INT && key != JsonToken.VALUE_STRING) {
+                        return -1;
+                    }
+                    long cardId = key == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : 0;
+                    String question = key == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    if (parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+                        return -1;
+                    }
+                    if (question != null) {
+                        legacyLevels.put(question, parser.getIntValue());
+                        complete = false;
+                    } else {
+                        masteryLevels.put(cardId, parser.getIntValue());
+                        count++;
+                    }
+                } catch (JsonProcessingException e) {
+                    return -1;
+                }
+            }
+        }
+        return complete ? count : -1;
+    }
+
+    /**
+     * Encodes a log record as a line holding a JSON array of the card id and its mastery level.
+     */
+    private static byte[] encodeRecord(long cardId, int masteryLevel) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(40);
+        try (JsonGenerator generator = JsonDeckReader.JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            generator.writeNumber(cardId);
+            generator.writeNumber(masteryLevel);
+            generator.writeEndArray();
+        }
+        out.write('\n');
+        return out.toByteArray();
+    }
+}
@@ -2,6 +2,7 @@ package com.flashcardapp.util;
 
 import com.flashcardapp.model.Deck;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -18,6 +19,19 @@ public interface IDeckHandler {
      */
     Deck loadDeck(String path) throws IOException;
 
+    /**
+     * Loads a deck of flashcards, reporting its flashcards to a listener while it is being read.
+     * Formats that open instantly do not report batches and only return the finished deck.
+     *
+     * @param path the file path from which the deck is to be loaded
+     * @param listener the listener to report progress to and to check for cancellation
+     * @return the loaded Deck object, or null if it could not be loaded
+     * @throws IOException if there is an error reading from the specified path
+     */
+    default Deck loadDeck(String path, DeckLoadListener listener) throws IOException {
+        return loadDeck(path);
+    }
+
     /**
      * Saves a given deck to a specified file path.
      *
@@ -26,4 +40,86 @@ public interface IDeckHandler {
      * @throws IOException if there is an error writing to the specified path
      */
     void saveDeck(Deck deck, String filePath) throws IOException;
+
+    /**
+     * Checks whether the handler can save a deck it loaded or saved before by writing only the deck's changes. Such
+     * a handler is given a copy holding only the changes, see {@link Deck#isChangesOnly()}, when they are known.
+     * Formats that always write the whole deck do not.
+     *
+     * @return true if {@link #saveDeck} accepts a copy holding only the changes
+     */
+    default boolean savesChanges() {
+        return false;
+    }
+
+    /**
+     * Checks whether a deck saved by the handler can be opened again as the same deck. Formats a deck can only be
+     * exported to do not, such as spreadsheets, which are imported into a new deck file when they are opened.
+     *
+     * @return true if the file becomes the deck's file once the deck has been saved to it
+     */
+    default boolean storesDeck() {
+        return true;
+    }
+
+    /**
+     * Folds changes kept outside the deck file back into it, so that the deck file alone holds the whole deck again.
+     * Called once the application is done with a deck. Formats that always write the whole deck have nothing to do.
+     *
+     * @param deck the deck, as loaded from or last saved to the path
+     * @param filePath the file path of the deck
+     * @throws IOException if the deck file cannot be rewritten
+     */
+    default void compact(Deck deck, String filePath) throws IOException {
+    }
+
+    /**
+     * Reads the name and number of flashcards of a deck. Formats that can tell these from the start of the file do
+     * so without reading the flashcards; others load the whole deck.
+     *
+     * @param path the file path of the deck
+     * @return the deck information, without mastery levels
+     * @throws IOException if the deck cannot be read
+     */
+    default DeckInfo readInfo(String path) throws IOException {
+        Deck deck = loadDeck(path);
+        if (deck == null) {
+            throw new IOException("The deck could not be read");
+        }
+        return new DeckInfo(deck.getName(), path, deck.getFlashcardCount());
+    }
+
+    /**
+     * Returns the time the stored deck last changed, including any changes kept outside the deck file itself.
+     *
+     * @param path the file path of the deck
+     * @return the time in milliseconds since the epoch, or 0 if the deck does not exist
+     */
+    default long lastModified(String path) {
+        return new File(path).lastModified();
+    }
+
+    /**
+     * Returns the handler for the deck format matching the file extension of a path.
+     * JSON is used for any extension that does not belong to another format.
+     *
+     * @param path the path of the deck file
+     * @return the handler able to load and save the deck file
+     */
+    static IDeckHandler forPath(String path) {
+        String lowerCasePath = path.toLowerCase();
+        if (lowerCasePath.endsWith(BinaryDeckHandler.EXTENSION)) {
+            return new BinaryDeckHandler();
+        }
+        if (lowerCasePath.endsWith(ZipDeckHandler.EXTENSION)) {
+            return new ZipDeckHandler();
+        }
+        if (lowerCasePath.endsWith(DatabaseDeckHandler.EXTENSION)) {
+            return new DatabaseDeckHandler();
+        }
+        if (lowerCasePath.endsWith(DelimitedTextDeckHandler.CSV_EXTENSION) || lowerCasePath.endsWith(DelimitedTextDeckHandler.TSV_EXTENSION)) {
+            return new DelimitedTextDeckHandler(path);
+        }
+        return new DeckHandler();
+    }
 }
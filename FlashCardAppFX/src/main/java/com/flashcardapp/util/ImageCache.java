@@ -0,0 +1,259 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.FlashcardApp;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent, content-addressed cache of decoded flashcard images.
+ * Images are stored under the application data directory, keyed by a hash of their encoded payload, so loading
+ * the same deck again reuses the decoded files instead of decoding every image a second time.
+ * The cache is capped in size and evicts the least recently used images first.
+ * <p>
+ * Flashcards refer to their resolved images by the URI of the cached file, which may be the only copy left of an
+ * image whose deck file has since been replaced. An image is therefore never evicted while a URI handed out for it is
+ * still reachable; the cache grows past its cap rather than delete such an image.
+ */
+public class ImageCache {
+    private static final long DEFAULT_MAX_MEGABYTES = 256;
+    private static final String EXTENSION = ".img";
+
+    private static ImageCache instance;
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true); // key -> size, in LRU order
+    private final Map<String, List<WeakReference<String>>> handedOut = new HashMap<>(); // key -> URIs given out for it
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache in the given directory, indexing any images already stored there.
+     * @param directory The directory holding the cached images.
+     * @param maxBytes The maximum total size of the cached images, in bytes.
+     */
+    public ImageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        directory.mkdirs();
+        indexExistingEntries();
+    }
+
+    /**
+     * Provides the shared image cache stored in the application data directory.
+     * The size cap is read from the "imageCacheSizeMb" option, if present.
+     * @return The singleton instance of ImageCache.
+     */
+    public static synchronized ImageCache getInstance() {
+        if (instance == null) {
+            long maxMegabytes = ConfigHandler.getInstance().findOption("imageCacheSizeMb", Long.class).orElse(DEFAULT_MAX_MEGABYTES);
+            instance = new ImageCache(new File(FlashcardApp.getDataDirectory(), "image-cache"), maxMegabytes * 1024 * 1024);
+        }
+        return instance;
+    }
+
+    /**
+     * Computes the cache key for an encoded image payload.
+     * @param payload The encoded image payload.
+     * @return The hex encoded SHA-256 hash of the payload.
+     */
+    public static String keyOf(String payload) {
+        return DigestUtils.sha256Hex(payload);
+    }
+
+    /**
+     * Computes the cache key for raw image bytes.
+     * @param bytes The image bytes.
+     * @return The hex encoded SHA-256 hash of the bytes.
+     */
+    public static String keyOf(byte[] bytes) {
+        return DigestUtils.sha256Hex(bytes);
+    }
+
+    /**
+     * Returns the key of an image the cache handed out, so a resolved image can be compared with the identity of an
+     * image that has not been resolved.
+     * @param image The path or URL of an image.
+     * @return The cache key if the image is a file of this cache, or else the image as given.
+     */
+    public String sourceOf(String image) {
+        String prefix = directory.toURI().toString();
+        if (image != null && image.startsWith(prefix) && image.endsWith(EXTENSION)) {
+            return image.substring(prefix.length(), image.length() - EXTENSION.length());
+        }
+        return image;
+    }
+
+    /**
+     * Looks up a cached image and marks it as recently used.
+     * @param key The cache key of the image.
+     * @return The URI of the cached image file, or null if the image is not cached.
+     */
+    public synchronized String lookup(String key) {
+        File file = fileFor(key);
+        if (entries.get(key) == null || !file.exists()) {
+            forget(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        file.setLastModified(System.currentTimeMillis()); // persists the LRU order across restarts
+        return handOut(key, file);
+    }
+
+    /**
+     * Stores image bytes in the cache, evicting the least recently used images if the cache grows too large.
+     * @param key The cache key of the image.
+     * @param imageBytes The image bytes to store.
+     * @return The URI of the cached image file.
+     * @throws IOException if the image cannot be written.
+     */
+    public String store(String key, byte[] imageBytes) throws IOException {
+        File file = fileFor(key);
+        File tempFile = File.createTempFile(key, ".tmp", directory);
+        try {
+            Files.write(tempFile.toPath(), imageBytes);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+
+        synchronized (this) {
+            forget(key);
+            entries.put(key, (long) imageBytes.length);
+            totalBytes += imageBytes.length;
+            String uri = handOut(key, file);
+            evictIfNeeded();
+            return uri;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a cached image.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached image.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the total size of the cached images, in bytes.
+     */
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Returns the size cap of the cache, in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Removes every image from the cache.
+     */
+    public synchronized void clear() {
+        for (String key : entries.keySet()) {
+            fileFor(key).delete();
+        }
+        entries.clear();
+        handedOut.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Builds the in-memory index from the files already in the cache directory, oldest first.
+     */
+    private void indexExistingEntries() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String name = file.getName();
+            entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+            totalBytes += file.length();
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Deletes the least recently used images until the cache fits its size cap, skipping images that are still in use.
+     */
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (isInUse(eldest.getKey())) {
+                continue;
+            }
+            fileFor(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns the URI of a cached image as a new string, remembered weakly, so the cache can tell whether any
+     * flashcard still refers to the image.
+     */
+    private String handOut(String key, File file) {
+        List<WeakReference<String>> uris = handedOut.computeIfAbsent(key, k -> new ArrayList<>());
+        uris.removeIf(uri -> uri.get() == null);
+        String uri = file.toURI().toString();
+        uris.add(new WeakReference<>(uri));
+        return uri;
+    }
+
+    /**
+     * Checks whether a URI handed out for an image is still reachable.
+     */
+    private boolean isInUse(String key) {
+        List<WeakReference<String>> uris = handedOut.get(key);
+        if (uris == null) {
+            return false;
+        }
+        uris.removeIf(uri -> uri.get() == null);
+        if (uris.isEmpty()) {
+            handedOut.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a key from the index without touching the file.
+     */
+    private void forget(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + EXTENSION);
+    }
+}
@@ -0,0 +1,81 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.EncodedImage;
+import com.flashcardapp.model.Flashcard;
+
+import java.io.IOException;
+
+/**
+ * Produces the stored form of flashcard images for deck writers.
+ * <p>
+ * The encoded image is cached on the flashcard until the image is changed, so saving a deck again writes unchanged
+ * images from the cache instead of reading them from their source again.
+ */
+final class ImageEncoder {
+
+    /**
+     * The side of a flashcard an image belongs to.
+     */
+    enum Side {
+        QUESTION,
+        ANSWER
+    }
+
+    private ImageEncoder() {
+    }
+
+    /**
+     * Returns the path or URL of an image on a flashcard.
+     */
+    static String pathOf(Flashcard card, Side side) {
+        return side == Side.QUESTION ? card.getQuestionImage() : card.getAnswerImage();
+    }
+
+    /**
+     * Returns the stored form of an image on a flashcard, reading the image only if it is not cached on the card.
+     * @param card The flashcard.
+     * @param side The side of the flashcard the image is on.
+     * @return The encoded image, or null if the flashcard has no image on that side.
+     * @throws IOException if the image has to be read and cannot be.
+     */
+    static EncodedImage encode(Flashcard card, Side side) throws IOException {
+        EncodedImage cached = side == Side.QUESTION ? card.getEncodedQuestionImage() : card.getEncodedAnswerImage();
+        if (cached != null) {
+            return cached;
+        }
+
+        String imagePath = pathOf(card, side);
+        if (imagePath == null || imagePath.isEmpty()) {
+            return null;
+        }
+        EncodedImage encoded = encode(ImageSources.readBytes(imagePath));
+        if (side == Side.QUESTION) {
+            card.setEncodedQuestionImage(imagePath, encoded);
+        } else {
+            card.setEncodedAnswerImage(imagePath, encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * Returns the stored form of an image on a flashcard, reporting images that cannot be read instead of failing.
+     * @return The encoded image, or null if the flashcard has no image on that side or it cannot be read.
+     */
+    static EncodedImage encodeOrNull(Flashcard card, Side side) {
+        try {
+            return encode(card, side);
+        } catch (IOException e) {
+            System.err.println("Error reading image: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Wraps original image bytes, detecting their format.
+     * @param imageBytes The image bytes, which must not be modified afterwards.
+     * @return The encoded image.
+     */
+    static EncodedImage encode(byte[] imageBytes) {
+        return new EncodedImage(ImageCache.keyOf(imageBytes), ImageSources.extensionOf(imageBytes), imageBytes);
+    }
+}
@@ -0,0 +1,216 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads image work for decks over a shared pool of worker threads.
+ * <p>
+ * Items are processed in parallel, but their results are handed back in the order the items were given, so deck
+ * files come out the same no matter how the work was scheduled. Only a small window of items is in flight at any
+ * time; the next item is not started until the oldest result has been consumed, which keeps the number of images
+ * held in memory bounded even for very large decks.
+ * The number of workers is read from the "imageParallelism" option and defaults to the number of processors.
+ */
+public class ImagePipeline {
+    private static final int WINDOW_PER_WORKER = 2; // items in flight per worker thread
+
+    private static ImagePipeline instance;
+
+    private final ExecutorService workers;
+    private final ExecutorService prefetcher;
+    private final int windowSize;
+    private Future<?> prefetch; // the running prefetch, if any
+    private AtomicBoolean prefetchCancelled; // set to stop the running prefetch between images
+
+    /**
+     * Work done for one item on a worker thread.
+     */
+    interface Task<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    /**
+     * Consumes the results of the work, in item order, on the thread running the pipeline.
+     */
+    interface Sink<R> {
+        void accept(R result) throws IOException;
+    }
+
+    /**
+     * Creates a pipeline with its own worker threads.
+     * @param parallelism The number of worker threads.
+     */
+    public ImagePipeline(int parallelism) {
+        int workerCount = Math.max(1, parallelism);
+        this.windowSize = workerCount * WINDOW_PER_WORKER;
+        this.workers = Executors.newFixedThreadPool(workerCount, daemonThreads("image-worker"));
+        this.prefetcher = Executors.newSingleThreadExecutor(daemonThreads("image-prefetch"));
+    }
+
+    /**
+     * Provides the shared pipeline, sized by the "imageParallelism" option.
+     * @return The singleton instance of ImagePipeline.
+     */
+    public static synchronized ImagePipeline getInstance() {
+        if (instance == null) {
+            int parallelism = ConfigHandler.getInstance().findOption("imageParallelism", Integer.class)
+                    .orElse(Runtime.getRuntime().availableProcessors());
+            instance = new ImagePipeline(parallelism);
+        }
+        return instance;
+    }
+
+    /**
+     * Runs a task for every item on the worker threads and passes the results to a sink in item order.
+     * Must not be called from a worker thread.
+     * @param items The items to process.
+     * @param task The work to do for each item.
+     * @param sink Receives the result of each item, on the calling thread.
+     * @throws IOException if a task or the sink fails. Items that have not started are cancelled; items already
+     * running are left to finish, since interrupting a thread that reads a file channel closes the channel.
+     */
+    <T, R> void run(Iterable<T> items, Task<T, R> task, Sink<R> sink) throws IOException {
+        ArrayDeque<Future<R>> window = new ArrayDeque<>(windowSize);
+        try {
+            for (T item : items) {
+                if (window.size() >= windowSize) {
+                    sink.accept(await(window.poll()));
+                }
+                window.add(workers.submit(() -> task.apply(item)));
+            }
+            while (!window.isEmpty()) {
+                sink.accept(await(window.poll()));
+            }
+        } finally {
+            for (Future<R> pending : window) {
+                pending.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Resolves the images of a deck in the background, in card order, so they are ready by the time the cards are
+     * shown. Prefetching stops once the {@link ImageCache} is full, and any earlier prefetch is cancelled.
+     * @param deck The deck whose images to prefetch.
+     */
+    public synchronized void prefetch(Deck deck) {
+        cancelPrefetch();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        prefetchCancelled = cancelled;
+        prefetch = prefetcher.submit(() -> {
+            ImageCache cache = ImageCache.getInstance();
+            Iterable<Flashcard> remaining = () -> new Iterator<Flashcard>() {
+                private int index; // the cards of a mapped deck are read one at a time, only as far as prefetching goes
+                private Flashcard next;
+
+                @Override
+                public boolean hasNext() {
+                    if (next == null && shouldPrefetch(cache, cancelled)) {
+                        next = flashcardAt(deck, index++);
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Flashcard next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Flashcard card = next;
+                    next = null;
+                    return card;
+                }
+            };
+            try {
+                run(remaining, card -> {
+                    if (shouldPrefetch(cache, cancelled)) {
+                        card.getQuestionImage();
+                    }
+                    if (shouldPrefetch(cache, cancelled)) {
+                        card.getAnswerImage();
+                    }
+                    return null;
+                }, ignored -> { });
+            } catch (IOException e) {
+                System.err.println("Error prefetching images: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Reads one flashcard of a deck that may be edited meanwhile.
+     * @return The flashcard at the index, or null if the deck has no more flashcards.
+     */
+    private static Flashcard flashcardAt(Deck deck, int index) {
+        synchronized (deck) {
+            return index < deck.getFlashcardCount() ? deck.getFlashcard(index) : null;
+        }
+    }
+
+    /**
+     * Checks, before each image, whether prefetching should go on.
+     */
+    private static boolean shouldPrefetch(ImageCache cache, AtomicBoolean cancelled) {
+        return !cancelled.get() && cache.getSizeBytes() < cache.getMaxBytes();
+    }
+
+    /**
+     * Stops the running prefetch, if any, once the images being resolved have been read. The prefetch thread is not
+     * interrupted, since that would close the files the images are read from.
+     */
+    public synchronized void cancelPrefetch() {
+        if (prefetch != null) {
+            prefetchCancelled.set(true);
+            prefetch.cancel(false);
+            prefetch = null;
+            prefetchCancelled = null;
+        }
+    }
+
+    /**
+     * Waits for the result of an item, unwrapping the failure of its task.
+     */
+    private static <R> R await(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for image work");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
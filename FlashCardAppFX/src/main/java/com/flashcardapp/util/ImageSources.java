@@ -0,0 +1,78 @@
+package com.flashcardapp.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+
+/**
+ * Helpers for reading the original bytes of flashcard images.
+ */
+final class ImageSources {
+
+    private ImageSources() {
+    }
+
+    /**
+     * Checks whether an image path is a location that can be read, rather than inline image data.
+     * @param imagePath The image path or URL.
+     * @return true if the path is an http(s), file or jar URL.
+     */
+    static boolean isReadable(String imagePath) {
+        return imagePath.startsWith("http:") || imagePath.startsWith("https:")
+                || imagePath.startsWith("file:/") || imagePath.startsWith("jar:");
+    }
+
+    /**
+     * Reads the bytes of an image exactly as they are stored, without decoding them.
+     * @param imagePath The http(s), file or jar URL of the image.
+     * @return The image bytes.
+     * @throws IOException if the image cannot be read or the path is not a readable location.
+     */
+    static byte[] readBytes(String imagePath) throws IOException {
+        if (imagePath.startsWith("file:/")) {
+            return Files.readAllBytes(new File(URI.create(imagePath)).toPath());
+        }
+        if (!isReadable(imagePath)) {
+            throw new IOException("Unsupported image location: " + imagePath);
+        }
+        try (InputStream in = new URL(imagePath).openStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Determines the file extension of an image from the signature at the start of its bytes.
+     * @param bytes The image bytes.
+     * @return The extension without a dot, or "bin" if the format is not recognized.
+     */
+    static String extensionOf(byte[] bytes) {
+        if (startsWith(bytes, 0x89, 'P', 'N', 'G')) {
+            return "png";
+        }
+        if (startsWith(bytes, 0xFF, 0xD8, 0xFF)) {
+            return "jpg";
+        }
+        if (startsWith(bytes, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (startsWith(bytes, 'B', 'M')) {
+            return "bmp";
+        }
+        return "bin";
+    }
+
+    private static boolean startsWith(byte[] bytes, int... signature) {
+        if (bytes.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((bytes[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
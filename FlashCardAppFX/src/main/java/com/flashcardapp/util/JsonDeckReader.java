@@ -0,0 +1,284 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.model.ImageReference;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a JSON deck document into a Deck, holding only one flashcard's tokens in memory at a time.
+ * The flashcards can be passed on in batches while the rest of the document is still being read.
+ * The way image values become {@link ImageReference}s is left to the deck format being read.
+ */
+final class JsonDeckReader {
+
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int BATCH_SIZE = 200; // flashcards per batch reported to a load listener
+
+    /**
+     * Turns the image value the parser is positioned on into a reference to the image.
+     */
+    interface ImageValueReader {
+        /**
+         * @param parser The parser, positioned on the image value.
+         * @return A reference to the image, or null if the card has no image.
+         * @throws IOException if the value cannot be read.
+         */
+        ImageReference read(JsonParser parser) throws IOException;
+    }
+
+    private final ImageValueReader imageReader;
+    private long revision;
+
+    /**
+     * @param imageReader Reads image values into references.
+     */
+    JsonDeckReader(ImageValueReader imageReader) {
+        this.imageReader = imageReader;
+    }
+
+    /**
+     * Reads a deck document from the parser.
+     * @param parser A parser positioned before the deck object.
+     * @return The deck with all of its flashcards.
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    Deck read(JsonParser parser) throws IOException {
+        return read(parser, null, -1);
+    }
+
+    /**
+     * Reads a deck document from the parser, passing the flashcards to a listener in batches as they are read.
+     * @param parser A parser positioned before the deck object.
+     * @param listener The listener to report the flashcards to, or null.
+     * @param totalBytes The size of the document in bytes, or -1 if unknown.
+     * @return The deck with all of its flashcards.
+     * @throws IOException if the document is malformed or cannot be read.
+     * @throws InterruptedIOException if the listener cancelled loading.
+     */
+    Deck read(JsonParser parser, DeckLoadListener listener, long totalBytes) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Deck file does not contain a JSON object");
+        }
+
+        String name = null;
+        List<Flashcard> flashcards = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("revision".equals(field)) {
+                revision = parser.getValueAsLong();
+            } else if ("flashcards".equals(field)) {
+                readFlashcards(parser, flashcards, listener, totalBytes);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (name == null) {
+            throw new IOException("Deck file is missing a name");
+        }
+        return new Deck(name, flashcards);
+    }
+
+    /**
+     * Returns the revision of the last deck document that was read, or 0 if it had none.
+     * The revision changes every time a deck file is rewritten in full.
+     */
+    long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Reads the revision of a deck document without reading its flashcards.
+     * @param parser A parser positioned before the deck object.
+     * @return The revision, or 0 if the document has no revision before its flashcards.
+     * @throws IOException if the document cannot be read.
+     */
+    static long readRevision(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return 0;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("revision".equals(field)) {
+                return parser.getValueAsLong();
+            }
+            if ("flashcards".equals(field)) {
+                return 0;
+            }
+            parser.skipChildren();
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the name and number of flashcards of a deck document. The flashcards are only counted, by skipping
+     * over them, if the document does not state a valid number before them. The stated number is a hint written by
+     * the last save, which an edit made by hand may have left wrong; loading the deck counts the flashcards for real,
+     * see {@link DeckCatalog#add(String, int)}.
+     * @param parser A parser positioned before the deck object.
+     * @param path The path of the deck file.
+     * @return The deck information, without mastery levels.
+     * @throws IOException if the document is malformed or cannot be read.
+     */
+    static DeckInfo readInfo(JsonParser parser, String path) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Deck file does not contain a JSON object");
+        }
+        String name = null;
+        int flashcardCount = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("flashcardCount".equals(field)) {
+                flashcardCount = parser.getValueAsInt(-1); // anything but a count is ignored
+            } else if ("flashcards".equals(field) && flashcardCount < 0) {
+                flashcardCount = 0;
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    flashcardCount++;
+                }
+            } else {
+                parser.skipChildren();
+            }
+            if (name != null && flashcardCount >= 0) {
+                return new DeckInfo(name, path, flashcardCount);
+            }
+        }
+        throw new IOException("Deck file is missing a name");
+    }
+
+    /**
+     * Reads the flashcards array, reporting the flashcards to the listener every {@value #BATCH_SIZE} flashcards.
+     * A flashcard whose id an earlier flashcard already has, such as one duplicated by editing the file by hand, is
+     * given the id derived from its question and position instead, so the flashcards can be told apart and the same
+     * id is given every time the unchanged file is read. Saving the deck then stores that id.
+     * @param parser The parser, positioned on the start of the flashcards array.
+     * @param flashcards The list to add the flashcards to.
+     * @param listener The listener to report the flashcards to, or null.
+     * @param totalBytes The size of the document in bytes, or -1 if unknown.
+     * @throws IOException if the array is malformed or cannot be read.
+     */
+    private void readFlashcards(JsonParser parser, List<Flashcard> flashcards, DeckLoadListener listener, long totalBytes) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected an array of flashcards");
+        }
+        int reported = flashcards.size();
+        LongIntHashMap ids = new LongIntHashMap();
+        for (Flashcard flashcard : flashcards) {
+            ids.put(flashcard.getId(), 1);
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (listener != null && listener.isCancelled()) {
+                throw new InterruptedIOException("Deck loading was cancelled");
+            }
+            Flashcard flashcard = readFlashcard(parser, flashcards.size(), ids);
+            ids.put(flashcard.getId(), 1);
+            flashcards.add(flashcard);
+            if (listener != null && flashcards.size() - reported == BATCH_SIZE) {
+                listener.cardsLoaded(new ArrayList<>(flashcards.subList(reported, flashcards.size())), parser.getCurrentLocation().getByteOffset(), totalBytes);
+                reported = flashcards.size();
+            }
+        }
+        if (listener != null && flashcards.size() > reported) {
+            listener.cardsLoaded(new ArrayList<>(flashcards.subList(reported, flashcards.size())), parser.getCurrentLocation().getByteOffset(), totalBytes);
+        }
+    }
+
+    /**
+     * Reads a single flashcard object. A flashcard stored without an identifier is given a new one.
+     * @param parser The parser, positioned on the start of the flashcard object.
+     * @return The parsed flashcard.
+     * @throws IOException if the flashcard is malformed or cannot be read.
+     */
+    Flashcard readFlashcard(JsonParser parser) throws IOException {
+        return readFlashcard(parser, -1, null);
+    }
+
+    /**
+     * Reads a single flashcard object.
+     * @param parser The parser, positioned on the start of the flashcard object.
+     * @param position The position of the flashcard in the deck document, used to derive the identifier of a
+     *                 flashcard stored without one, or -1 to give such a flashcard a new identifier.
+     * @param ids The identifiers of the flashcards read before, or null. A flashcard stored with one of them, such as
+     *            a copy made by hand, is given another identifier as if it had been stored without one.
+     * @return The parsed flashcard.
+     * @throws IOException if the flashcard is malformed or cannot be read.
+     */
+    private Flashcard readFlashcard(JsonParser parser, int position, LongIntHashMap ids) throws IOException {
+        long id = 0;
+        String question = null;
+        String answer = null;
+        String hint = "";
+        ImageReference questionImage = null;
+        ImageReference answerImage = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readId(parser);
+                    break;
+                case "question":
+                    question = parser.getValueAsString();
+                    break;
+                case "answer":
+                    answer = parser.getValueAsString();
+                    break;
+                case "hint":
+                    hint = parser.getValueAsString("");
+                    break;
+                case "questionImage":
+                    questionImage = imageReader.read(parser);
+                    break;
+                case "answerImage":
+                    answerImage = imageReader.read(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (question == null || answer == null) {
+            throw new IOException("Flashcard is missing a question or answer");
+        }
+        if (id == 0 || ids != null && ids.containsKey(id)) {
+            id = position >= 0 ? Flashcard.legacyId(question, position) : Flashcard.newId();
+        }
+        while (ids != null && ids.containsKey(id)) {
+            id = Flashcard.newId();
+        }
+        return new Flashcard(id, question, answer, hint, questionImage, answerImage);
+    }
+
+    /**
+     * Reads a flashcard id, which is written as a string so that readers keeping numbers as doubles do not round it,
+     * but was written as a number by earlier versions.
+     * @return The id, or 0 if the value is not an id.
+     */
+    private static long readId(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return parser.getValueAsLong();
+        }
+        try {
+            return Long.parseLong(parser.getText().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
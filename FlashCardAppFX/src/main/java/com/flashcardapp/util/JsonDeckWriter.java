@@ -0,0 +1,152 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.EncodedImage;
+import com.flashcardapp.model.Flashcard;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Streams a Deck out as a JSON deck document, one flashcard at a time.
+ * The way images are stored is left to the deck format being written. Images are read and prepared on the
+ * {@link ImagePipeline} workers while the cards before them are being written.
+ * @param <P> The form an image is prepared into before its value is written.
+ */
+final class JsonDeckWriter<P> {
+
+    /**
+     * Produces the value stored for a flashcard image.
+     * @param <P> The form an image is prepared into before its value is written.
+     */
+    interface ImageValueWriter<P> {
+        /**
+         * Does the work for an image that does not depend on the output, such as encoding it.
+         * Called on image worker threads, so it must be safe to call concurrently.
+         * @param image The image in its stored form.
+         * @return The prepared image, or null to leave the image out.
+         * @throws IOException if the image cannot be prepared.
+         */
+        P prepare(EncodedImage image) throws IOException;
+
+        /**
+         * Called in card order on the thread writing the deck.
+         * @param image The prepared image.
+         * @return The value to store for the image, or null to leave the image out.
+         * @throws IOException if the image cannot be stored.
+         */
+        String write(P image) throws IOException;
+
+        /**
+         * Produces the value stored for an image whose bytes could not be read.
+         * @param imagePath The path or URL of the image.
+         * @return The value to store for the image, or null to leave the image out.
+         */
+        default String writeUnreadable(String imagePath) {
+            return null;
+        }
+    }
+
+    private final ImageValueWriter<P> imageWriter;
+
+    /**
+     * @param imageWriter Produces the stored value of each image.
+     */
+    JsonDeckWriter(ImageValueWriter<P> imageWriter) {
+        this.imageWriter = imageWriter;
+    }
+
+    /**
+     * Writes the deck document.
+     * @param generator The generator to write to.
+     * @param deck The deck to write.
+     * @throws IOException if the deck cannot be written.
+     */
+    void write(JsonGenerator generator, Deck deck) throws IOException {
+        write(generator, deck, 0);
+    }
+
+    /**
+     * Writes the deck document, tagged with a revision that identifies this version of the file. The name and the
+     * number of flashcards come before the flashcards, so they can be read without reading the flashcards.
+     * @param generator The generator to write to.
+     * @param deck The deck to write.
+     * @param revision The revision of the document, or 0 to leave it out.
+     * @throws IOException if the deck cannot be written.
+     */
+    void write(JsonGenerator generator, Deck deck, long revision) throws IOException {
+        generator.writeStartObject();
+        if (revision != 0) {
+            generator.writeNumberField("revision", revision);
+        }
+        generator.writeStringField("name", deck.getName());
+        List<Flashcard> cards = deck.snapshotFlashcards();
+        generator.writeNumberField("flashcardCount", cards.size());
+        generator.writeArrayFieldStart("flashcards");
+        ImagePipeline.getInstance().run(cards, this::prepare, card -> writeFlashcard(generator, card));
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a single flashcard object.
+     * @param generator The generator to write to.
+     * @param card The flashcard to write.
+     * @throws IOException if the flashcard cannot be written.
+     */
+    void writeFlashcard(JsonGenerator generator, Flashcard card) throws IOException {
+        writeFlashcard(generator, prepare(card));
+    }
+
+    private PreparedCard<P> prepare(Flashcard card) throws IOException {
+        return new PreparedCard<>(card, prepareImage(card, ImageEncoder.Side.QUESTION), prepareImage(card, ImageEncoder.Side.ANSWER));
+    }
+
+    private P prepareImage(Flashcard card, ImageEncoder.Side side) throws IOException {
+        EncodedImage image = ImageEncoder.encodeOrNull(card, side);
+        return image == null ? null : imageWriter.prepare(image);
+    }
+
+    private void writeFlashcard(JsonGenerator generator, PreparedCard<P> prepared) throws IOException {
+        Flashcard card = prepared.card;
+        generator.writeStartObject();
+        generator.writeStringField("id", Long.toString(card.getId())); // a string, as 64-bit ids do not fit a double
+        generator.writeStringField("question", card.getQuestion());
+        generator.writeStringField("answer", card.getAnswer());
+        if (card.getHint() != null) {
+            generator.writeStringField("hint", card.getHint());
+        }
+        writeImage(generator, "questionImage", prepared.questionImage, card, ImageEncoder.Side.QUESTION);
+        writeImage(generator, "answerImage", prepared.answerImage, card, ImageEncoder.Side.ANSWER);
+        generator.writeEndObject();
+    }
+
+    private void writeImage(JsonGenerator generator, String field, P image, Flashcard card, ImageEncoder.Side side) throws IOException {
+        String value;
+        if (image != null) {
+            value = imageWriter.write(image);
+        } else {
+            String imagePath = ImageEncoder.pathOf(card, side);
+            value = imagePath == null || imagePath.isEmpty() ? null : imageWriter.writeUnreadable(imagePath);
+        }
+        if (value != null) {
+            generator.writeStringField(field, value);
+        }
+    }
+
+    /**
+     * A flashcard together with its prepared images.
+     */
+    private static final class PreparedCard<P> {
+        final Flashcard card;
+        final P questionImage;
+        final P answerImage;
+
+        PreparedCard(Flashcard card, P questionImage, P answerImage) {
+            this.card = card;
+            this.questionImage = questionImage;
+            this.answerImage = answerImage;
+        }
+    }
+}
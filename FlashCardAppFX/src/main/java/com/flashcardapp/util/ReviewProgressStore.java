@@ -0,0 +1,62 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Flashcard;
+
+/**
+ * Keeps the review progress of a deck between study sessions, keyed by card id.
+ */
+public interface ReviewProgressStore {
+
+    /**
+     * Returns the stored mastery level of a card.
+     * @param cardId The id of the card.
+     * @param defaultLevel The level returned if the card has not been reviewed.
+     * @return The mastery level of the card, or the default level.
+     */
+    int getMastery(long cardId, int defaultLevel);
+
+    /**
+     * Returns the stored mastery level of a flashcard. A store that still holds progress keyed by question, as it was
+     * stored before flashcards had ids, moves the flashcard's progress over to its id.
+     * @param flashcard The flashcard.
+     * @param defaultLevel The level returned if the flashcard has not been reviewed.
+     * @return The mastery level of the flashcard, or the default level.
+     */
+    default int getMastery(Flashcard flashcard, int defaultLevel) {
+        return getMastery(flashcard.getId(), defaultLevel);
+    }
+
+    /**
+     * Records the mastery level of a card after it has been answered.
+     * @param cardId The id of the card.
+     * @param masteryLevel The card's new mastery level.
+     */
+    void recordMastery(long cardId, int masteryLevel);
+
+    /**
+     * Counts the reviewed cards whose mastery level is at least the given level. Counting from level 0 gives the
+     * number of cards that have been reviewed.
+     * @param level The lowest mastery level to count.
+     * @return The number of cards at or above the level.
+     */
+    int countCardsAtLeast(int level);
+
+    /**
+     * Returns the time the stored progress last changed.
+     * @return The time in milliseconds since the epoch, or 0 if no progress has been stored.
+     */
+    long lastModified();
+
+    /**
+     * Returns the progress store of a deck file. Database decks keep their progress inside the deck; other decks
+     * keep it in the application data directory.
+     * @param deckPath The path of the deck file.
+     * @return The progress store of the deck.
+     */
+    static ReviewProgressStore forDeck(String deckPath) {
+        if (deckPath.toLowerCase().endsWith(DatabaseDeckHandler.EXTENSION)) {
+            return new DatabaseDeckHandler.ProgressStore(deckPath);
+        }
+        return FileReviewProgressStore.forDeck(deckPath);
+    }
+}
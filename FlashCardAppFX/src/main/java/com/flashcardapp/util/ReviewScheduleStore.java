@@ -0,0 +1,341 @@
+package com.flashcardapp.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the review schedule of a deck between study sessions: when each card is due next, its interval and its
+ * ease, keyed by card id.
+ * <p>
+ * Cards are indexed by the day they are due, in one bucket per day, so the cards due by a day are found by visiting
+ * only the buckets up to that day. A rescheduled card is added to the bucket of its new day and its entry in the old
+ * bucket is left behind; such entries are recognized by the card no longer being due that day and are dropped
+ * whenever their bucket is visited.
+ * <p>
+ * Like {@link FileReviewProgressStore}, the schedule is stored as a {@link SnapshotLog}: a snapshot of every scheduled
+ * card and a log that each change is appended to as a fixed-size record.
+ */
+public class ReviewScheduleStore {
+    private static final int RECORD_SIZE = 28; // card id, due day, interval, ease, repetitions, last review day
+
+    private final SnapshotLog files; // null if the schedule is only kept in memory
+    private LongIntHashMap slots; // card id to slot in the arrays below; loaded on first use
+    private long[] cardIds = new long[16];
+    private int[] dueDays = new int[16];
+    private int[] intervals = new int[16];
+    private int[] eases = new int[16];
+    private int[] repetitions = new int[16];
+    private int[] lastReviewDays = new int[16];
+    private int size;
+    private final TreeMap<Integer, DayBucket> dueIndex = new TreeMap<>();
+
+    /**
+     * Creates a schedule that is only kept in memory, for decks that have never been stored.
+     */
+    public ReviewScheduleStore() {
+        this.files = null;
+    }
+
+    /**
+     * Creates a schedule kept in the given files.
+     * @param snapshotFile The file holding the compacted schedule.
+     * @param logFile The file changes are appended to.
+     */
+    public ReviewScheduleStore(Path snapshotFile, Path logFile) {
+        this.files = new SnapshotLog(snapshotFile, logFile, "review schedule");
+    }
+
+    /**
+     * Returns the schedule of a deck file, kept in the schedules folder of the application data directory.
+     * @param deckPath The path of the deck file.
+     * @return The schedule of the deck.
+     */
+    public static ReviewScheduleStore forDeck(String deckPath) {
+        return new ReviewScheduleStore(DeckDataFiles.forDeck("schedules", deckPath, ".snapshot"),
+                DeckDataFiles.forDeck("schedules", deckPath, ".log"));
+    }
+
+    /**
+     * Returns the schedule of a card.
+     * @param cardId The id of the card.
+     * @return The schedule, or null if the card has never been reviewed.
+     */
+    public synchronized Schedule get(long cardId) {
+        int slot = slots().get(cardId, -1);
+        if (slot < 0) {
+            return null;
+        }
+        return new Schedule(dueDays[slot], intervals[slot], eases[slot], repetitions[slot], lastReviewDays[slot]);
+    }
+
+    /**
+     * Checks whether a card has been scheduled.
+     * @param cardId The id of the card.
+     * @return true if the card has been reviewed before.
+     */
+    public synchronized boolean contains(long cardId) {
+        return slots().containsKey(cardId);
+    }
+
+    /**
+     * Records the new schedule of a card after it has been answered.
+     * @param cardId The id of the card.
+     * @param schedule The card's new schedule.
+     */
+    public synchronized void put(long cardId, Schedule schedule) {
+        slots();
+        set(cardId, schedule.getDueDay(), schedule.getInterval(), schedule.getEase(), schedule.getRepetitions(), schedule.getLastReviewDay());
+        if (files == null) {
+            return;
+        }
+        try {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            writeRecord(record, slots.get(cardId, -1));
+            if (files.append(record.array(), size)) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving review schedule: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the cards due on or before a day. Only the buckets of those days are visited.
+     * @param day The day, counted in days since the epoch.
+     * @return The ids of the due cards, the longest overdue first.
+     */
+    public synchronized long[] findDue(int day) {
+        slots();
+        long[] due = new long[16];
+        int count = 0;
+        LongIntHashMap seen = new LongIntHashMap();
+        Iterator<Map.Entry<Integer, DayBucket>> buckets = dueIndex.headMap(day, true).entrySet().iterator();
+        while (buckets.hasNext()) {
+            Map.Entry<Integer, DayBucket> entry = buckets.next();
+            DayBucket bucket = entry.getValue();
+            bucket.removeMoved(entry.getKey());
+            if (bucket.size == 0) {
+                buckets.remove();
+                continue;
+            }
+            for (int i = 0; i < bucket.size; i++) {
+                long cardId = bucket.cardIds[i];
+                if (seen.containsKey(cardId)) {
+                    continue; // rescheduled away from this day and back
+                }
+                seen.put(cardId, 1);
+                if (count == due.length) {
+                    due = Arrays.copyOf(due, count * 2);
+                }
+                due[count++] = cardId;
+            }
+        }
+        return Arrays.copyOf(due, count);
+    }
+
+    /**
+     * Returns the number of scheduled cards.
+     * @return The number of cards that have been reviewed.
+     */
+    public synchronized int size() {
+        slots();
+        return size;
+    }
+
+    /**
+     * Stores a schedule in memory and indexes it by its due day.
+     */
+    private void set(long cardId, int dueDay, int interval, int ease, int repetitionCount, int lastReviewDay) {
+        int slot = slots.get(cardId, -1);
+        boolean indexed = false; // already in the bucket of its day
+        if (slot < 0) {
+            if (size == cardIds.length) {
+                int capacity = size * 2;
+                cardIds = Arrays.copyOf(cardIds, capacity);
+                dueDays = Arrays.copyOf(dueDays, capacity);
+                intervals = Arrays.copyOf(intervals, capacity);
+                eases = Arrays.copyOf(eases, capacity);
+                repetitions = Arrays.copyOf(repetitions, capacity);
+                lastReviewDays = Arrays.copyOf(lastReviewDays, capacity);
+            }
+            slot = size++;
+            slots.put(cardId, slot);
+            cardIds[slot] = cardId;
+        } else {
+            indexed = dueDays[slot] == dueDay;
+        }
+        dueDays[slot] = dueDay;
+        intervals[slot] = interval;
+        eases[slot] = ease;
+        repetitions[slot] = repetitionCount;
+        lastReviewDays[slot] = lastReviewDay;
+        if (!indexed) {
+            dueIndex.computeIfAbsent(dueDay, day -> new DayBucket()).add(cardId);
+        }
+    }
+
+    private void writeRecord(ByteBuffer buffer, int slot) {
+        buffer.putLong(cardIds[slot])
+                .putInt(dueDays[slot])
+                .putInt(intervals[slot])
+                .putInt(eases[slot])
+                .putInt(repetitions[slot])
+                .putInt(lastReviewDays[slot]);
+    }
+
+    /**
+     * Writes all schedules to a new snapshot and empties the log.
+     * @throws IOException if the snapshot cannot be written. The log is then left as it is.
+     */
+    private void compact() throws IOException {
+        files.compact(file -> {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                for (int slot = 0; slot < size; slot++) {
+                    record.clear();
+                    writeRecord(record, slot);
+                    out.write(record.array());
+                }
+            }
+        });
+    }
+
+    private LongIntHashMap slots() {
+        if (slots == null) {
+            slots = new LongIntHashMap();
+            if (files != null && files.load(this::readRecords, this::readRecords)) {
+                try {
+                    compact(); // a record cut short would put the next record appended after it out of step
+                } catch (IOException e) {
+                    System.err.println("Error saving review schedule: " + e.getMessage());
+                }
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Reads the records of a file, stopping at a record cut short by a crash.
+     * @return The number of records read, or -1 if the file ended in an incomplete record.
+     */
+    private int readRecords(Path file) throws IOException {
+        int count = 0;
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            byte[] record = new byte[RECORD_SIZE];
+            while (true) {
+                int read = in.readNBytes(record, 0, RECORD_SIZE);
+                if (read == 0) {
+                    return count;
+                }
+                if (read < RECORD_SIZE) {
+                    return -1;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                set(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+                count++;
+            }
+        }
+    }
+
+    /**
+     * The ids of the cards due on one day, including cards that have since moved to another day.
+     */
+    private final class DayBucket {
+        private long[] cardIds = new long[4];
+        private int size;
+
+        void add(long cardId) {
+            if (size == cardIds.length) {
+                cardIds = Arrays.copyOf(cardIds, size * 2);
+            }
+            cardIds[size++] = cardId;
+        }
+
+        /**
+         * Drops the cards that are no longer due on the bucket's day.
+         */
+        void removeMoved(int day) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                long cardId = cardIds[i];
+                if (dueDays[slots.get(cardId, 0)] == day) {
+                    cardIds[kept++] = cardId;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * The schedule of one card.
+     */
+    public static final class Schedule {
+        private final int dueDay;
+        private final int interval;
+        private final int ease;
+        private final int repetitions;
+        private final int lastReviewDay;
+
+        /**
+         * @param dueDay The day the card is due next, counted in days since the epoch.
+         * @param interval The number of days between the last review and the next one.
+         * @param ease The factor the interval grows by on each successful review, in thousandths.
+         * @param repetitions The number of successful reviews in a row.
+         * @param lastReviewDay The day the card was last reviewed, counted in days since the epoch.
+         */
+        public Schedule(int dueDay, int interval, int ease, int repetitions, int lastReviewDay) {
+            this.dueDay = dueDay;
+            this.interval = interval;
+            this.ease = ease;
+            this.repetitions = repetitions;
+            this.lastReviewDay = lastReviewDay;
+        }
+
+        /**
+         * Returns the day the card is due next, counted in days since the epoch.
+         */
+        public int getDueDay() {
+            return dueDay;
+        }
+
+        /**
+         * Returns the number of days between the last review and the next one.
+         */
+        public int getInterval() {
+            return interval;
+        }
+
+        /**
+         * Returns the factor the interval grows by on each successful review, in thousandths.
+         */
+        public int getEase() {
+            return ease;
+        }
+
+        /**
+         * Returns the number of successful reviews in a row.
+         */
+        public int getRepetitions() {
+            return repetitions;
+        }
+
+        /**
+         * Returns the day the card was last reviewed, counted in days since the epoch.
+         */
+        public int getLastReviewDay() {
+            return lastReviewDay;
+        }
+    }
+}
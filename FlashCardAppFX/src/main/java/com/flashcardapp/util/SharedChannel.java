@@ -0,0 +1,76 @@
+package com.flashcardapp.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only file channel shared by the reader of a file and the image references into it, closed once the last of
+ * them has let go.
+ * <p>
+ * Opening the channel takes the first hold, which the reader gives back by closing it once it has finished reading.
+ * Every image reference takes a hold of its own and gives it back once its image has been resolved, or once the
+ * reference has been garbage collected if it is dropped without being resolved. A file without unresolved images is
+ * therefore closed as soon as it has been read.
+ */
+final class SharedChannel implements Closeable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final FileChannel channel;
+    private int holds = 1;
+
+    private SharedChannel(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a file for reading, holding it for the caller.
+     * @param file The file to open.
+     * @return The channel, to be closed by the caller once it has finished reading.
+     * @throws IOException if the file cannot be opened.
+     */
+    static SharedChannel open(Path file) throws IOException {
+        return new SharedChannel(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /**
+     * Returns the underlying channel, which is only open while someone holds it.
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Takes a hold for an object that reads from the channel later. The hold is given back when the returned
+     * cleanable is cleaned, or once the object has been garbage collected.
+     * @param holder The object reading from the channel.
+     * @return The cleanable that gives the hold back; cleaning it more than once has no further effect.
+     */
+    Cleaner.Cleanable hold(Object holder) {
+        synchronized (this) {
+            holds++;
+        }
+        return CLEANER.register(holder, this::release);
+    }
+
+    /**
+     * Gives back the hold taken by opening the channel.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    private synchronized void release() {
+        if (--holds == 0) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.flashcardapp.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The files of a store kept as a snapshot of all of its entries and a log that every change since the snapshot is
+ * appended to as one record, so recording a change does not rewrite the entries that did not change.
+ * <p>
+ * Loading reads the snapshot and replays the log on top of it. Once the log holds more records than the store has
+ * entries, the store folds it into a new snapshot, so the cost of recording a change stays constant on average. The
+ * records themselves are up to the store; {@link FileReviewProgressStore} and {@link ReviewScheduleStore} each have
+ * their own.
+ */
+final class SnapshotLog {
+    private static final int MIN_COMPACTION_RECORDS = 512;
+
+    /**
+     * Reads the records of the snapshot or the log into the store.
+     */
+    @FunctionalInterface
+    interface RecordReader {
+        /**
+         * @param file The file to read.
+         * @return The number of records read, or -1 if the file has to be rewritten, such as when its last record was
+         *         cut short by a crash.
+         * @throws IOException if the file cannot be read.
+         */
+        int read(Path file) throws IOException;
+    }
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final String contents; // what the store holds, for error messages
+    private int logRecords;
+
+    /**
+     * @param snapshotFile The file holding the compacted entries.
+     * @param logFile The file changes are appended to.
+     * @param contents What the store holds, such as "review progress", for error messages.
+     */
+    SnapshotLog(Path snapshotFile, Path logFile, String contents) {
+        this.snapshotFile = snapshotFile;
+        this.logFile = logFile;
+        this.contents = contents;
+    }
+
+    /**
+     * Reads the snapshot and then replays the log.
+     * @param snapshotReader Reads the snapshot.
+     * @param logReader Reads the log.
+     * @return true if the store should be compacted right away, since a record cut short would swallow the next
+     *         record appended after it.
+     */
+    boolean load(RecordReader snapshotReader, RecordReader logReader) {
+        boolean rewrite = read(snapshotFile, snapshotReader) < 0;
+        int records = read(logFile, logReader);
+        logRecords = Math.max(records, 0);
+        return rewrite || records < 0;
+    }
+
+    /**
+     * Appends a record to the log.
+     * @param record The encoded record.
+     * @param entries The number of entries in the store.
+     * @return true if the log has grown large enough for the store to be compacted.
+     * @throws IOException if the record cannot be appended.
+     */
+    boolean append(byte[] record, int entries) throws IOException {
+        Files.createDirectories(logFile.getParent());
+        Files.write(logFile, record, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        logRecords++;
+        return logRecords > MIN_COMPACTION_RECORDS && logRecords > entries;
+    }
+
+    /**
+     * Replaces the snapshot with all entries of the store and empties the log.
+     * @param writer Writes every entry of the store to the new snapshot.
+     * @throws IOException if the snapshot cannot be written. The log is then left as it is.
+     */
+    void compact(AtomicFiles.ContentWriter writer) throws IOException {
+        Files.createDirectories(snapshotFile.getParent());
+        AtomicFiles.replace(snapshotFile, writer);
+        Files.deleteIfExists(logFile);
+        logRecords = 0;
+    }
+
+    /**
+     * Returns the time either file last changed.
+     * @return The time in milliseconds since the epoch, or 0 if neither file exists.
+     */
+    long lastModified() {
+        return Math.max(snapshotFile.toFile().lastModified(), logFile.toFile().lastModified());
+    }
+
+    private int read(Path file, RecordReader reader) {
+        try {
+            return reader.read(file);
+        } catch (NoSuchFileException | FileNotFoundException ignored) {
+            return 0; // nothing has been written yet
+        } catch (IOException e) {
+            System.err.println("Error reading " + contents + ": " + e.getMessage());
+            return 0;
+        }
+    }
+}
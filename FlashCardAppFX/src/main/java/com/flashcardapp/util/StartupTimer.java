@@ -0,0 +1,98 @@
+package com.flashcardapp.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of application startup and logs each one as it ends, together with how long after the JVM was
+ * launched it ended, so the time until the application becomes interactive can be followed from release to release.
+ * Like the application's other diagnostics, the times are written to the standard error stream.
+ */
+public final class StartupTimer {
+    private static final StartupTimer instance = new StartupTimer();
+
+    private final long launchNanos; // the JVM launch, on the System.nanoTime scale
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<>();
+
+    private StartupTimer() {
+        long now = System.nanoTime();
+        long sinceLaunchMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> Math.max(0, System.currentTimeMillis() - start.toEpochMilli()))
+                .orElse(0L); // not every platform reports it, then times are counted from the first use
+        launchNanos = now - TimeUnit.MILLISECONDS.toNanos(sinceLaunchMillis);
+    }
+
+    /**
+     * Provides the singleton instance of StartupTimer.
+     * @return The singleton instance of StartupTimer.
+     */
+    public static StartupTimer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts timing a phase. The phase may end on another thread than it started on.
+     * @param name The name of the phase, used in the log.
+     * @return The running phase.
+     */
+    public Phase begin(String name) {
+        return new Phase(name, System.nanoTime());
+    }
+
+    /**
+     * Logs a point in startup, such as the first frame being shown, and records the time since launch as its
+     * duration.
+     * @param event The name of the event.
+     */
+    public void mark(String event) {
+        long sinceLaunch = millisSinceLaunch(System.nanoTime());
+        record(event, sinceLaunch);
+        System.err.println("Startup: " + event + " after " + sinceLaunch + " ms");
+    }
+
+    /**
+     * Returns the durations recorded so far, in milliseconds, in the order they were recorded.
+     * @return A copy of the recorded phases and events.
+     */
+    public synchronized Map<String, Long> getPhases() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(phaseMillis));
+    }
+
+    private synchronized void record(String name, long millis) {
+        phaseMillis.put(name, millis);
+    }
+
+    private long millisSinceLaunch(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos - launchNanos);
+    }
+
+    /**
+     * A startup phase that is being timed.
+     */
+    public final class Phase {
+        private final String name;
+        private final long startNanos;
+        private boolean ended;
+
+        private Phase(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Ends the phase and logs its duration. Ending a phase again has no effect.
+         */
+        public synchronized void end() {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            long endNanos = System.nanoTime();
+            long millis = TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+            record(name, millis);
+            System.err.println("Startup: " + name + " took " + millis + " ms, done after " + millisSinceLaunch(endNanos) + " ms");
+        }
+    }
+}
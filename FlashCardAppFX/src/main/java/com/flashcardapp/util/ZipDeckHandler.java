@@ -0,0 +1,245 @@
+package com.flashcardapp.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.EncodedImage;
+import com.flashcardapp.model.ImageReference;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Handles loading and saving decks as zip archives.
+ * <p>
+ * The archive holds the deck text in a deck.json entry and every image as a separate, uncompressed entry under
+ * media/, named after the SHA-256 of its bytes. Images are stored exactly as they were provided, so photos keep
+ * their original encoding instead of being converted to base64 PNG, and identical images are only stored once.
+ */
+public class ZipDeckHandler implements IDeckHandler {
+
+    /** File extension used for zip deck archives. */
+    public static final String EXTENSION = ".fcz";
+
+    private static final String DECK_ENTRY = "deck.json";
+    private static final String MEDIA_PREFIX = "media/";
+
+    /**
+     * Loads a deck from a zip archive. Images stay in the archive until they are displayed.
+     * @param path The path to the archive.
+     * @return The loaded deck.
+     * @throws IOException if the archive cannot be read or does not contain a deck.
+     */
+    @Override
+    public Deck loadDeck(String path) throws IOException {
+        return loadDeck(path, null);
+    }
+
+    /**
+     * Loads a deck from a zip archive, reporting the flashcards to a listener as they are read from deck.json.
+     * @param path The path to the archive.
+     * @param listener The listener to report the flashcards to, or null.
+     * @return The loaded deck.
+     * @throws IOException if the archive cannot be read or does not contain a deck.
+     */
+    @Override
+    public Deck loadDeck(String path, DeckLoadListener listener) throws IOException {
+        File archive = new File(path);
+        try (ZipFile zip = new ZipFile(archive)) {
+            ZipEntry deckEntry = zip.getEntry(DECK_ENTRY);
+            if (deckEntry == null) {
+                throw new IOException("Archive does not contain " + DECK_ENTRY);
+            }
+            try (InputStream in = zip.getInputStream(deckEntry);
+                 JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(in)) {
+                Deck deck = new JsonDeckReader(imageParser -> readImageReference(imageParser, archive)).read(parser, listener, deckEntry.getSize());
+                deck.markSaved(path);
+                return deck;
+            }
+        }
+    }
+
+    /**
+     * Reads the name and number of flashcards from the start of deck.json, without reading the flashcards or images.
+     * @param path The path to the archive.
+     * @return The deck information.
+     * @throws IOException if the archive cannot be read or does not contain a deck.
+     */
+    @Override
+    public DeckInfo readInfo(String path) throws IOException {
+        try (ZipFile zip = new ZipFile(path)) {
+            ZipEntry deckEntry = zip.getEntry(DECK_ENTRY);
+            if (deckEntry == null) {
+                throw new IOException("Archive does not contain " + DECK_ENTRY);
+            }
+            try (InputStream in = zip.getInputStream(deckEntry);
+                 JsonParser parser = JsonDeckReader.JSON_FACTORY.createParser(in)) {
+                return JsonDeckReader.readInfo(parser, path);
+            }
+        }
+    }
+
+    /**
+     * Reads an image value, which is either the name of a media entry or an external URL.
+     */
+    private ImageReference readImageReference(JsonParser parser, File archive) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return null;
+        }
+        String value = parser.getText();
+        if (value.startsWith(MEDIA_PREFIX)) {
+            return new MediaReference(archive, value);
+        }
+        return value.isEmpty() ? null : () -> value;
+    }
+
+    /**
+     * Saves a deck as a zip archive. The archive is replaced atomically.
+     * @param deck The deck to save.
+     * @param filePath The path to save the archive to.
+     * @throws IOException if the archive cannot be written.
+     */
+    @Override
+    public void saveDeck(Deck deck, String filePath) throws IOException {
+        Path target = Paths.get(filePath).toAbsolutePath();
+        AtomicFiles.replace(target, file -> {
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                Set<String> writtenMedia = new HashSet<>();
+                File deckStage = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".json").toFile();
+                try {
+                    // deck.json is staged in a file so the media entries can be written while the cards are visited
+                    try (JsonGenerator generator = JsonDeckReader.JSON_FACTORY.createGenerator(deckStage, JsonEncoding.UTF8)) {
+                        generator.useDefaultPrettyPrinter();
+                        new JsonDeckWriter<>(new JsonDeckWriter.ImageValueWriter<EncodedImage>() {
+                            @Override
+                            public EncodedImage prepare(EncodedImage image) {
+                                return image;
+                            }
+
+                            @Override
+                            public String write(EncodedImage image) throws IOException {
+                                return writeMedia(zip, image, writtenMedia);
+                            }
+
+                            @Override
+                            public String writeUnreadable(String imagePath) {
+                                return imagePath; // keep a link to the original location
+                            }
+                        }).write(generator, deck);
+                    }
+                    zip.putNextEntry(new ZipEntry(DECK_ENTRY));
+                    Files.copy(deckStage.toPath(), zip);
+                    zip.closeEntry();
+                } finally {
+                    deckStage.delete();
+                }
+            }
+        });
+        deck.markSaved(filePath);
+    }
+
+    /**
+     * Stores an image as an uncompressed media entry, unless an identical image has already been stored.
+     * @return The value to store for the image in deck.json.
+     */
+    private String writeMedia(ZipOutputStream zip, EncodedImage image, Set<String> writtenMedia) throws IOException {
+        String entryName = MEDIA_PREFIX + image.getHash() + "." + image.getFormat();
+        if (writtenMedia.add(entryName)) {
+            byte[] imageBytes = image.getData();
+            CRC32 crc = new CRC32();
+            crc.update(imageBytes);
+            ZipEntry entry = new ZipEntry(entryName);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(imageBytes.length);
+            entry.setCompressedSize(imageBytes.length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(imageBytes);
+            zip.closeEntry();
+        }
+        return entryName;
+    }
+
+    /**
+     * A reference to a media entry in the archive. The entry name carries the hash of the image, so an image that
+     * is already in the {@link ImageCache} is served without opening the archive.
+     */
+    private static final class MediaReference implements ImageReference {
+        private final File archive;
+        private final String entryName;
+
+        MediaReference(File archive, String entryName) {
+            this.archive = archive;
+            this.entryName = entryName;
+        }
+
+        @Override
+        public String resolve() {
+            String key = key();
+            ImageCache cache = ImageCache.getInstance();
+            String cached = cache.lookup(key);
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                return cache.store(key, readEntry());
+            } catch (IOException e) {
+                System.err.println("Error reading image data: " + e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Reads the entry as it is stored in the archive, so it can be copied to another archive unchanged.
+         */
+        @Override
+        public EncodedImage encode() {
+            try {
+                byte[] imageBytes = readEntry();
+                return new EncodedImage(key(), ImageSources.extensionOf(imageBytes), imageBytes);
+            } catch (IOException e) {
+                System.err.println("Error reading image data: " + e.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        public String identity() {
+            return key();
+        }
+
+        /**
+         * Returns the hash of the image, which names the entry.
+         */
+        private String key() {
+            String fileName = entryName.substring(MEDIA_PREFIX.length());
+            int dot = fileName.indexOf('.');
+            return dot < 0 ? fileName : fileName.substring(0, dot);
+        }
+
+        private byte[] readEntry() throws IOException {
+            try (ZipFile zip = new ZipFile(archive)) {
+                ZipEntry entry = zip.getEntry(entryName);
+                if (entry == null) {
+                    throw new IOException("Missing media entry " + entryName);
+                }
+                try (InputStream in = zip.getInputStream(entry)) {
+                    return in.readAllBytes();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.flashcardapp.simulation;
+
+import java.util.SplittableRandom;
+
+/**
+ * A simulated learner who answers the cards of a deck, for driving study sessions without the user interface.
+ * <p>
+ * Each card has a recall probability that depends on how well the card has been learned and on how long ago it was
+ * last reviewed. A card starts out with a probability between 0.2 and 0.9, standing for its difficulty, and every
+ * review closes part of the gap to 1. Between days the probability decays exponentially with the card's stability,
+ * which starts at one day, grows whenever the card is recalled on a later day than it was last reviewed, and halves
+ * whenever the card is missed. Reviewing a card again on the same day therefore helps it be learned but not
+ * remembered for longer.
+ * <p>
+ * Cards are identified by their index in the deck, and their state is kept in arrays indexed by it, so answering a
+ * card allocates nothing.
+ */
+public class SimulatedLearner {
+    private static final double MIN_INITIAL_RECALL = 0.2;
+    private static final double MAX_INITIAL_RECALL = 0.9;
+    private static final double LEARNING_RATE = 0.3; // share of the gap to 1 closed by recalling a card
+    private static final double FEEDBACK_RATE = 0.15; // share closed by seeing the answer of a missed card
+    private static final double STABILITY_GROWTH = 2.5;
+    private static final int MASTERY_STREAK = 3; // correct answers in a row that count as mastering a card
+
+    private final SplittableRandom random;
+    private final double[] learned; // recall probability right after a review
+    private final double[] stability; // days for the recall probability to fall to about a third
+    private final int[] lastReviewDays; // -1 if never reviewed
+    private final int[] reviews;
+    private final int[] streaks;
+    private final int[] reviewsToMastery; // 0 if not mastered yet
+
+    /**
+     * @param cards The number of cards in the deck.
+     * @param seed The seed of the random numbers deciding the cards' difficulty and each answer.
+     */
+    public SimulatedLearner(int cards, long seed) {
+        random = new SplittableRandom(seed);
+        learned = new double[cards];
+        stability = new double[cards];
+        lastReviewDays = new int[cards];
+        reviews = new int[cards];
+        streaks = new int[cards];
+        reviewsToMastery = new int[cards];
+        for (int card = 0; card < cards; card++) {
+            learned[card] = MIN_INITIAL_RECALL + random.nextDouble() * (MAX_INITIAL_RECALL - MIN_INITIAL_RECALL);
+            stability[card] = 1;
+            lastReviewDays[card] = -1;
+        }
+    }
+
+    /**
+     * Returns the probability of recalling a card.
+     * @param card The index of the card in the deck.
+     * @param day The day, counted from the start of the simulation.
+     * @return The recall probability.
+     */
+    public double recallProbability(int card, int day) {
+        if (lastReviewDays[card] < 0) {
+            return learned[card];
+        }
+        return learned[card] * Math.exp(-(day - lastReviewDays[card]) / stability[card]);
+    }
+
+    /**
+     * Answers a card and learns from the answer.
+     * @param card The index of the card in the deck.
+     * @param day The day, counted from the start of the simulation.
+     * @return true if the card was recalled.
+     */
+    public boolean answer(int card, int day) {
+        boolean recalled = random.nextDouble() < recallProbability(card, day);
+        if (recalled) {
+            learned[card] += (1 - learned[card]) * LEARNING_RATE;
+            if (lastReviewDays[card] >= 0 && day > lastReviewDays[card]) {
+                stability[card] *= STABILITY_GROWTH;
+            }
+            streaks[card]++;
+            if (streaks[card] == MASTERY_STREAK && reviewsToMastery[card] == 0) {
+                reviewsToMastery[card] = reviews[card] + 1;
+            }
+        } else {
+            learned[card] += (1 - learned[card]) * FEEDBACK_RATE;
+            stability[card] = Math.max(1, stability[card] / 2);
+            streaks[card] = 0;
+        }
+        reviews[card]++;
+        lastReviewDays[card] = day;
+        return recalled;
+    }
+
+    /**
+     * Returns the number of cards that have been reviewed at least once.
+     */
+    public int countReviewed() {
+        int count = 0;
+        for (int card = 0; card < reviews.length; card++) {
+            if (reviews[card] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of cards that have been answered correctly {@value #MASTERY_STREAK} times in a row.
+     */
+    public int countMastered() {
+        int count = 0;
+        for (int card = 0; card < reviewsToMastery.length; card++) {
+            if (reviewsToMastery[card] > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean number of reviews the mastered cards took until they were first answered correctly
+     * {@value #MASTERY_STREAK} times in a row.
+     * @return The mean number of reviews, or 0 if no card has been mastered.
+     */
+    public double meanReviewsToMastery() {
+        long total = 0;
+        int count = 0;
+        for (int card = 0; card < reviewsToMastery.length; card++) {
+            if (reviewsToMastery[card] > 0) {
+                total += reviewsToMastery[card];
+                count++;
+            }
+        }
+        return count > 0 ? (double) total / count : 0;
+    }
+
+    /**
+     * Returns the mean recall probability of the reviewed cards on a day.
+     * @param day The day, counted from the start of the simulation.
+     * @return The mean recall probability, or 0 if no card has been reviewed.
+     */
+    public double retention(int day) {
+        double total = 0;
+        int count = 0;
+        for (int card = 0; card < reviews.length; card++) {
+            if (reviews[card] > 0) {
+                total += recallProbability(card, day);
+                count++;
+            }
+        }
+        return count > 0 ? total / count : 0;
+    }
+}
@@ -0,0 +1,268 @@
+package com.flashcardapp.simulation;
+
+import com.flashcardapp.logic.BasicRotationalAlgorithm;
+import com.flashcardapp.logic.IAlgorithm;
+import com.flashcardapp.logic.ScheduledReviewAlgorithm;
+import com.flashcardapp.logic.SpacedRepetitionAlgorithm;
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.LongIntHashMap;
+import com.flashcardapp.util.ReviewProgressStore;
+import com.flashcardapp.util.ReviewScheduleStore;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs study sessions without the user interface, to compare study algorithms on large decks.
+ * <p>
+ * A synthetic deck of the requested size is studied for a number of days, one session a day, by a
+ * {@link SimulatedLearner}. Each session is driven the way the study screen drives it: the current card is answered
+ * unless it has been answered this cycle, then the session moves to the next card. For each algorithm the simulator
+ * reports the responses per second, the memory allocated per response, the reviews cards took until they were
+ * mastered, which is the number of cycles for the algorithms that review each card once a cycle, and the share of
+ * the reviewed cards the learner still recalls the day after the last session.
+ * <p>
+ * Run it with the {@code simulate} Gradle task, passing options such as
+ * {@code --args="--cards 1000000 --algorithms spaced,scheduled"}.
+ */
+public class StudySimulator {
+    private static final List<String> ALGORITHMS = List.of("basic", "spaced", "scheduled");
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    private int cards = 100_000;
+    private int days = 30;
+    private int cycles = 3;
+    private int newCardsPerDay = -1; // -1 to introduce the whole deck over the simulated days
+    private long seed = 1;
+    private List<String> algorithms = ALGORITHMS;
+
+    public static void main(String[] args) {
+        StudySimulator simulator = new StudySimulator();
+        if (!simulator.parseArguments(args)) {
+            printUsage();
+            System.exit(1);
+        }
+        simulator.run();
+    }
+
+    /**
+     * Reads the options of a run.
+     * @return false if an option is unknown or has an invalid value.
+     */
+    private boolean parseArguments(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if ("--help".equals(option)) {
+                    return false;
+                }
+                if (i + 1 == args.length) {
+                    System.err.println("Missing value for " + option);
+                    return false;
+                }
+                String value = args[++i];
+                if ("--cards".equals(option)) {
+                    cards = Integer.parseInt(value);
+                } else if ("--days".equals(option)) {
+                    days = Integer.parseInt(value);
+                } else if ("--cycles".equals(option)) {
+                    cycles = Integer.parseInt(value);
+                } else if ("--new-cards".equals(option)) {
+                    newCardsPerDay = Integer.parseInt(value);
+                } else if ("--seed".equals(option)) {
+                    seed = Long.parseLong(value);
+                } else if ("--algorithms".equals(option)) {
+                    algorithms = Arrays.asList(value.split(","));
+                } else {
+                    System.err.println("Unknown option " + option);
+                    return false;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage());
+            return false;
+        }
+        for (String algorithm : algorithms) {
+            if (!ALGORITHMS.contains(algorithm)) {
+                System.err.println("Unknown algorithm " + algorithm);
+                return false;
+            }
+        }
+        if (cards < 1 || days < 1 || cycles < 1) {
+            System.err.println("The number of cards, days and cycles must be positive");
+            return false;
+        }
+        if (newCardsPerDay < 0) {
+            newCardsPerDay = Math.max(1, (cards + days - 1) / days);
+        }
+        return true;
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: StudySimulator [options]");
+        System.err.println("  --cards <n>           cards in the synthetic deck (default 100000)");
+        System.err.println("  --days <n>            days to study, one session a day (default 30)");
+        System.err.println("  --cycles <n>          cycles per session of the basic and spaced algorithms (default 3)");
+        System.err.println("  --new-cards <n>       new cards per day of the scheduled algorithm (default cards / days)");
+        System.err.println("  --seed <n>            seed of the simulated learner (default 1)");
+        System.err.println("  --algorithms <list>   comma-separated algorithms to compare: basic, spaced, scheduled (default all)");
+    }
+
+    /**
+     * Simulates every requested algorithm with the same deck and learner and prints the results.
+     */
+    private void run() {
+        List<Flashcard> deck = new ArrayList<>(cards);
+        for (int i = 1; i <= cards; i++) {
+            deck.add(new Flashcard(i, "Question " + i, "Answer " + i, null, null, null)); // id i is the learner's card i - 1
+        }
+        System.out.printf("%,d cards, %d days, seed %d%n", cards, days, seed);
+        for (String algorithm : algorithms) {
+            simulate(algorithm, deck);
+        }
+    }
+
+    private void simulate(String algorithm, List<Flashcard> deck) {
+        SimulatedLearner learner = new SimulatedLearner(cards, seed);
+        ReviewProgressStore progress = new MemoryProgressStore();
+        ReviewScheduleStore schedule = new ReviewScheduleStore();
+        long setupNanos = 0;
+        long sessionNanos = 0;
+        boolean measuresAllocation = allocatedBytes() >= 0;
+        long allocatedBytes = 0;
+        long responses = 0;
+        long correct = 0;
+        String name = null;
+        for (int day = 0; day < days; day++) {
+            Clock clock = Clock.fixed(FIRST_DAY.plusDays(day).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+            IAlgorithm session = createAlgorithm(algorithm, progress, schedule, clock);
+            name = describe(session);
+            long start = System.nanoTime();
+            session.initialize(deck);
+            setupNanos += System.nanoTime() - start;
+
+            long allocatedBefore = allocatedBytes();
+            start = System.nanoTime();
+            runSession(session, learner, day);
+            sessionNanos += System.nanoTime() - start;
+            allocatedBytes += allocatedBytes() - allocatedBefore;
+            responses += session.getTotalCorrect() + session.getTotalIncorrect();
+            correct += session.getTotalCorrect();
+        }
+
+        System.out.println();
+        System.out.println(name);
+        System.out.printf("  responses          %,d (%.1f%% correct)%n", responses, percent(correct, responses));
+        System.out.printf("  throughput         %,.0f responses/s%n", sessionNanos > 0 ? responses * 1e9 / sessionNanos : 0);
+        System.out.printf("  session setup      %.1f ms per session%n", setupNanos / 1e6 / days);
+        if (measuresAllocation) {
+            System.out.printf("  allocation         %.1f bytes per response%n", responses > 0 ? (double) allocatedBytes / responses : 0);
+        }
+        System.out.printf("  reviewed           %.1f%% of cards%n", percent(learner.countReviewed(), cards));
+        System.out.printf("  cycles to mastery  %.2f reviews on average, %.1f%% of cards mastered%n",
+                learner.meanReviewsToMastery(), percent(learner.countMastered(), cards));
+        System.out.printf("  retention          %.1f%% recalled on day %d%n", learner.retention(days) * 100, days + 1);
+    }
+
+    /**
+     * Studies the cards of a session until it is complete.
+     */
+    private static void runSession(IAlgorithm session, SimulatedLearner learner, int day) {
+        int idleMoves = 0; // moves past answered cards since the last response
+        while (!session.isSessionComplete()) {
+            Flashcard card = session.getCurrentFlashcard();
+            if (card == null) {
+                return;
+            }
+            if (!session.hasAnsweredThisCycle(card)) {
+                session.recordResponse(card, learner.answer((int) card.getId() - 1, day));
+                idleMoves = 0;
+                if (session.getCurrentFlashcard() != card) {
+                    continue; // a new cycle started at its first card
+                }
+            } else if (++idleMoves > session.getCycleLength()) {
+                System.err.println("Session on day " + day + " stopped making progress");
+                return;
+            }
+            session.moveToNext();
+        }
+    }
+
+    private IAlgorithm createAlgorithm(String algorithm, ReviewProgressStore progress, ReviewScheduleStore schedule, Clock clock) {
+        if ("spaced".equals(algorithm)) {
+            return new SpacedRepetitionAlgorithm(cycles, progress);
+        }
+        if ("scheduled".equals(algorithm)) {
+            return new ScheduledReviewAlgorithm(newCardsPerDay, schedule, progress, clock);
+        }
+        return new BasicRotationalAlgorithm(cycles);
+    }
+
+    private String describe(IAlgorithm session) {
+        if (session instanceof SpacedRepetitionAlgorithm) {
+            return "Spaced Repetition, " + cycles + " cycles per session";
+        }
+        if (session instanceof ScheduledReviewAlgorithm) {
+            return String.format("Scheduled Review, %,d new cards per day", newCardsPerDay);
+        }
+        return "Basic Rotation, " + cycles + " cycles per session";
+    }
+
+    private static double percent(long part, long total) {
+        return total > 0 ? part * 100.0 / total : 0;
+    }
+
+    /**
+     * Returns the number of bytes the current thread has allocated so far.
+     * @return The number of bytes, or -1 if the JVM does not measure allocation.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Keeps the mastery levels of the simulated deck in memory for the length of a run.
+     */
+    private static final class MemoryProgressStore implements ReviewProgressStore {
+        private final LongIntHashMap levels = new LongIntHashMap();
+        private long lastModified;
+
+        @Override
+        public int getMastery(long cardId, int defaultLevel) {
+            return levels.get(cardId, defaultLevel);
+        }
+
+        @Override
+        public void recordMastery(long cardId, int masteryLevel) {
+            levels.put(cardId, masteryLevel);
+            lastModified = System.currentTimeMillis();
+        }
+
+        @Override
+        public int countCardsAtLeast(int level) {
+            int[] count = new int[1];
+            levels.forEach((cardId, masteryLevel) -> {
+                if (masteryLevel >= level) {
+                    count[0]++;
+                }
+            });
+            return count[0];
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.flashcardapp.logic;
+
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.ReviewScheduleStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduledReviewAlgorithmTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+
+    @TempDir
+    Path directory;
+
+    private final ReviewScheduleStore schedule = new ReviewScheduleStore();
+    private final List<Flashcard> deck = cards(5);
+
+    @Test
+    void correctAnswersGrowIntervalBySm2Steps() {
+        answerAll(session(0, 1), true);
+        assertSchedule(deck.get(0), 1, 1, 2500, 1);
+
+        assertEquals(List.of(deck.get(0)), sessionCards(session(1, 0)));
+        answerAll(session(1, 0), true);
+        assertSchedule(deck.get(0), 7, 6, 2500, 2);
+
+        assertTrue(session(6, 0).isSessionComplete());
+        answerAll(session(7, 0), true);
+        assertSchedule(deck.get(0), 22, 15, 2500, 3);
+    }
+
+    @Test
+    void missedCardLosesEaseAndIsRepeatedUntilRecalled() {
+        ScheduledReviewAlgorithm session = session(0, 1);
+        Flashcard card = session.getCurrentFlashcard();
+
+        session.recordResponse(card, false);
+
+        assertFalse(session.isSessionComplete());
+        assertEquals(card, session.getCurrentFlashcard());
+        assertEquals(2, session.getTotalCycles());
+        assertSchedule(card, 1, 1, 2300, 0);
+
+        session.recordResponse(card, true);
+
+        assertTrue(session.isSessionComplete());
+        assertSchedule(card, 1, 1, 2300, 0); // only the first response of the day counts
+    }
+
+    @Test
+    void easeDoesNotFallBelowMinimum() {
+        for (int day = 0; day < 10; day++) {
+            ScheduledReviewAlgorithm session = session(day, 1);
+            session.recordResponse(session.getCurrentFlashcard(), false);
+        }
+
+        assertEquals(1300, schedule.get(deck.get(0).getId()).getEase());
+    }
+
+    @Test
+    void takesLongestOverdueFirstThenLimitedNewCards() {
+        answerAll(session(0, 1), true); // card 1 due on day 1
+        answerAll(session(1, 1), true); // card 1 due on day 7, card 2 due on day 2
+
+        ScheduledReviewAlgorithm session = session(8, 2);
+
+        assertEquals(List.of(deck.get(1), deck.get(0), deck.get(2), deck.get(3)), sessionCards(session));
+    }
+
+    @Test
+    void appendedCardsAreQueuedWhenDueOrNew() {
+        answerAll(session(0, 1), true); // card 1 due on day 1
+        ScheduledReviewAlgorithm session = new ScheduledReviewAlgorithm(1, schedule, null, clock(1));
+        session.initialize(deck.subList(1, 3));
+        assertEquals(List.of(deck.get(1)), sessionCards(session));
+
+        session.appendFlashcards(List.of(deck.get(0), deck.get(3)));
+
+        assertEquals(List.of(deck.get(1), deck.get(0)), sessionCards(session));
+    }
+
+    @Test
+    void removedCardsLeaveSessionAndNewCardsContinueAfterThem() {
+        ScheduledReviewAlgorithm session = session(0, 2);
+        session.removeFlashcards(new long[] {deck.get(0).getId(), deck.get(2).getId()});
+
+        assertEquals(List.of(deck.get(1)), sessionCards(session));
+        answerAll(session, true);
+
+        session.resetSession();
+
+        assertEquals(List.of(deck.get(3), deck.get(4)), sessionCards(session));
+    }
+
+    @Test
+    void storedScheduleSurvivesReloadAndCompaction() {
+        ReviewScheduleStore stored = new ReviewScheduleStore(directory.resolve("schedule.snapshot"), directory.resolve("schedule.log"));
+        List<Flashcard> cards = cards(600);
+        ScheduledReviewAlgorithm first = new ScheduledReviewAlgorithm(cards.size(), stored, null, clock(0));
+        first.initialize(cards);
+        answerAll(first, true);
+        ScheduledReviewAlgorithm second = new ScheduledReviewAlgorithm(0, stored, null, clock(1));
+        second.initialize(cards);
+        second.recordResponse(second.getCurrentFlashcard(), false);
+        answerAll(second, true); // the log now holds more records than there are cards, so it has been compacted
+
+        ReviewScheduleStore reloaded = new ReviewScheduleStore(directory.resolve("schedule.snapshot"), directory.resolve("schedule.log"));
+
+        assertEquals(cards.size(), reloaded.size());
+        assertEquals(2300, reloaded.get(cards.get(0).getId()).getEase());
+        int firstDay = (int) FIRST_DAY.toEpochDay();
+        assertEquals(1, reloaded.findDue(firstDay + 2).length);
+        assertEquals(cards.size(), reloaded.findDue(firstDay + 7).length);
+    }
+
+    private ScheduledReviewAlgorithm session(int day, int newCardsPerDay) {
+        ScheduledReviewAlgorithm session = new ScheduledReviewAlgorithm(newCardsPerDay, schedule, null, clock(day));
+        session.initialize(deck);
+        return session;
+    }
+
+    private void assertSchedule(Flashcard card, int dueDay, int interval, int ease, int repetitions) {
+        ReviewScheduleStore.Schedule cardSchedule = schedule.get(card.getId());
+        int firstDay = (int) FIRST_DAY.toEpochDay();
+        assertEquals(firstDay + dueDay, cardSchedule.getDueDay());
+        assertEquals(interval, cardSchedule.getInterval());
+        assertEquals(ease, cardSchedule.getEase());
+        assertEquals(repetitions, cardSchedule.getRepetitions());
+    }
+
+    private static void answerAll(IAlgorithm session, boolean isCorrect) {
+        while (!session.isSessionComplete()) {
+            session.recordResponse(session.getCurrentFlashcard(), isCorrect);
+            session.moveToNext();
+        }
+        assertNull(session.getCurrentFlashcard());
+    }
+
+    /**
+     * Returns the cards of the current pass, in review order.
+     */
+    private static List<Flashcard> sessionCards(IAlgorithm session) {
+        List<Flashcard> cards = new ArrayList<>();
+        for (int i = 0; i < session.getCycleLength(); i++) {
+            cards.add(session.getCurrentFlashcard());
+            session.moveToNext();
+        }
+        return cards;
+    }
+
+    private static List<Flashcard> cards(int count) {
+        List<Flashcard> cards = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            cards.add(new Flashcard(i, "Question " + i, "Answer " + i, null, null, null));
+        }
+        return cards;
+    }
+
+    private static Clock clock(int day) {
+        return Clock.fixed(FIRST_DAY.plusDays(day).atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,270 @@
+package com.flashcardapp.logic;
+
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.LongIntHashMap;
+import com.flashcardapp.util.ReviewProgressStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The spaced repetition algorithm as it was before cycles were scheduled with a heap: every card is kept in one list
+ * that is sorted again whenever a cycle ends. {@link SpacedRepetitionAlgorithmTest} checks the current algorithm
+ * against it, so it is kept as it was, apart from the methods added to {@link IAlgorithm} since.
+ */
+class SortingSpacedRepetitionAlgorithm implements IAlgorithm {
+    private List<Flashcard> flashcards;
+    // keyed by flashcard id
+    private final LongIntHashMap masteryLevels;
+    private final LongIntHashMap lastReviewed;
+    private final LongIntHashMap answeredThisCycle; // 1 if the card was answered correctly this cycle, 0 if not
+    private int currentReviewIndex;
+    private int totalCyclesCompleted; // Track completed cycles
+
+    private final int maxCycles; // Change from maxReviews to maxCycles
+
+    private int totalCorrect;
+    private int totalIncorrect;
+
+    private final ReviewProgressStore progressStore; // null if progress is not kept between sessions
+
+    /**
+     * Constructs a new instance of the spaced repetition algorithm that continues from, and records to, the stored
+     * progress of a deck.
+     * @param maxCycles the maximum number of cycles to complete in the session.
+     * @param progressStore the store holding the deck's review progress, or null to not keep progress.
+     */
+    SortingSpacedRepetitionAlgorithm(int maxCycles, ReviewProgressStore progressStore) {
+        this.progressStore = progressStore;
+        this.maxCycles = maxCycles;
+        this.flashcards = new ArrayList<>();
+        this.masteryLevels = new LongIntHashMap();
+        this.lastReviewed = new LongIntHashMap();
+        this.answeredThisCycle = new LongIntHashMap();
+        this.totalCyclesCompleted = 0;
+        this.totalCorrect = 0;
+        this.totalIncorrect = 0;
+    }
+    
+    @Override
+    public void initialize(List<Flashcard> flashcards) {
+        this.flashcards = new ArrayList<>();
+        appendFlashcards(flashcards);
+        this.currentReviewIndex = 0;
+        if (progressStore != null) {
+            resetAnsweredStates(); // start with the least mastered cards
+        }
+    }
+
+    @Override
+    public void appendFlashcards(List<Flashcard> flashcards) {
+        this.flashcards.addAll(flashcards);
+        flashcards.forEach(flashcard -> {
+            long id = flashcard.getId();
+            masteryLevels.put(id, progressStore != null ? progressStore.getMastery(id, 0) : 0);
+            lastReviewed.put(id, -1); // Initialize with -1 indicating it has not been reviewed yet
+        });
+    }
+
+    @Override
+    public void removeFlashcards(long[] cardIds) {
+        throw new UnsupportedOperationException("Removing cards came after the sorting algorithm");
+    }
+
+    @Override
+    public void recordResponse(Flashcard flashcard, boolean isCorrect) {
+        long id = flashcard.getId();
+        int newLevel = applyResponse(id, isCorrect);
+        if (newLevel >= 0 && progressStore != null) {
+            progressStore.recordMastery(id, newLevel);
+        }
+    }
+
+    /**
+     * Updates the session with a response.
+     * @return the card's new mastery level, or -1 if the card had already been answered this cycle.
+     */
+    private int applyResponse(long id, boolean isCorrect) {
+        if (answeredThisCycle.containsKey(id)) {
+            return -1; // Ignore additional responses if already answered in this cycle
+        }
+        answeredThisCycle.put(id, isCorrect ? 1 : 0);
+
+        int currentLevel = masteryLevels.get(id, 0);
+        int newLevel;
+        if (isCorrect) {
+            newLevel = currentLevel + 1;
+            totalCorrect++;
+        } else {
+            newLevel = Math.max(0, currentLevel - 1); // Decrease level but not below 0
+            totalIncorrect++;
+        }
+        masteryLevels.put(id, newLevel);
+        lastReviewed.put(id, totalCyclesCompleted); // Update last reviewed cycle
+
+        // Check if all flashcards have been answered in this cycle
+        if (answeredThisCycle.size() == flashcards.size()) {
+            totalCyclesCompleted++;
+            resetAnsweredStates();
+        }
+        return newLevel;
+    }
+
+    @Override
+    public boolean isSessionComplete() {
+        return totalCyclesCompleted >= maxCycles;
+    }
+
+    @Override
+    public boolean isFirstCard() {
+        return answeredThisCycle.isEmpty();
+    }
+
+    @Override
+    public Flashcard getCurrentFlashcard() {
+        return flashcards.get(currentReviewIndex);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (answeredThisCycle.size() == flashcards.size()) {
+            return false; // Do not move to the next flashcard if all have been answered in this cycle
+        }
+        currentReviewIndex = (currentReviewIndex + 1) % flashcards.size();
+        return true;
+    }
+    
+    @Override
+    public boolean moveToPrevious() {
+        if (answeredThisCycle.size() == flashcards.size()) {
+            return false; // Do not move to the previous flashcard if all have been answered in this cycle
+        }
+        if (currentReviewIndex == 0) {
+            currentReviewIndex = flashcards.size() - 1;
+        } else {
+            currentReviewIndex--;
+        }
+        return true;
+    }
+    
+    @Override
+    public int getTotalCorrect() {
+        return totalCorrect;
+    }
+
+    @Override
+    public int getTotalIncorrect() {
+        return totalIncorrect;
+    }
+
+    @Override
+    public int getTotalCycles() {
+        return maxCycles;
+    }
+
+    @Override
+    public int getCycleLength() {
+        return flashcards.size();
+    }
+
+    @Override
+    public int getRemainingResponses() {
+        return flashcards.size() * getTotalCycles() - totalCorrect - totalIncorrect;
+    }
+
+    @Override
+    public boolean hasAnsweredThisCycle(Flashcard flashcard) {
+        return answeredThisCycle.containsKey(flashcard.getId());
+    }
+
+    @Override
+    public String getMasteryLevel(Flashcard card) {
+        return "Level " + masteryLevels.get(card.getId(), 0);
+    }
+
+    @Override
+    public int getMaxCycles() {
+        return maxCycles;
+    }
+
+    @Override
+    public int getCurrentIndex() {
+        return currentReviewIndex;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeInt(currentReviewIndex);
+        out.writeInt(totalCyclesCompleted);
+        out.writeInt(totalCorrect);
+        out.writeInt(totalIncorrect);
+        out.writeInt(flashcards.size());
+        for (Flashcard flashcard : flashcards) { // in review order
+            long id = flashcard.getId();
+            out.writeLong(id);
+            out.writeInt(masteryLevels.get(id, 0));
+            out.writeInt(lastReviewed.get(id, -1));
+            out.writeByte(answeredThisCycle.get(id, -1)); // -1 if not answered this cycle
+        }
+    }
+
+    @Override
+    public void restoreState(DataInput in) throws IOException {
+        currentReviewIndex = in.readInt();
+        totalCyclesCompleted = in.readInt();
+        totalCorrect = in.readInt();
+        totalIncorrect = in.readInt();
+        masteryLevels.clear();
+        lastReviewed.clear();
+        answeredThisCycle.clear();
+        List<Flashcard> ordered = new ArrayList<>(flashcards.size());
+        for (SessionCheckpoint.CardReader cards = new SessionCheckpoint.CardReader(flashcards, in); cards.hasNext(); ) {
+            Flashcard flashcard = flashcards.get(cards.nextIndex());
+            long id = flashcard.getId();
+            masteryLevels.put(id, in.readInt());
+            lastReviewed.put(id, in.readInt());
+            int answered = in.readByte();
+            if (answered >= 0) {
+                answeredThisCycle.put(id, answered);
+            }
+            ordered.add(flashcard);
+        }
+        flashcards = ordered;
+    }
+
+    @Override
+    public void replayResponse(int index, long cardId, boolean isCorrect) throws IOException {
+        SessionCheckpoint.cardAt(flashcards, index, cardId);
+        currentReviewIndex = index;
+        applyResponse(cardId, isCorrect);
+    }
+
+    @Override
+    public void resetSession() {
+        flashcards.clear();
+        masteryLevels.clear();
+        lastReviewed.clear();
+        answeredThisCycle.clear();
+        currentReviewIndex = 0;
+        totalCyclesCompleted = 0;
+        totalCorrect = 0;
+        totalIncorrect = 0;
+    }
+
+    /**
+     * Resets the answered state for all flashcards and sorts them by mastery level and last reviewed time.
+     */
+    public void resetAnsweredStates() {
+        answeredThisCycle.clear(); // Reset answered state for the new cycle
+        flashcards.sort((card1, card2) -> {
+            int levelComparison = Integer.compare(masteryLevels.get(card1.getId(), 0), masteryLevels.get(card2.getId(), 0));
+            if (levelComparison != 0) return levelComparison;
+            return Integer.compare(lastReviewed.get(card1.getId(), -1), lastReviewed.get(card2.getId(), -1));
+        });
+        currentReviewIndex = 0; // Reset the current review index to the first flashcard
+    }
+
+}
\ No newline at end of file
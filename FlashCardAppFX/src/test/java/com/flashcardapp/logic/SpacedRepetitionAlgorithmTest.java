@@ -0,0 +1,150 @@
+package com.flashcardapp.logic;
+
+import com.flashcardapp.model.Flashcard;
+import com.flashcardapp.util.ReviewProgressStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpacedRepetitionAlgorithmTest {
+    private static final int SESSIONS = 400;
+    private static final int MAX_STEPS = 3000;
+
+    @Test
+    void matchesSortingAlgorithmOnRandomSessions() throws IOException {
+        for (int seed = 0; seed < SESSIONS; seed++) {
+            runSession(seed);
+        }
+    }
+
+    /**
+     * Drives the current algorithm and the sorting one it replaced through the same random session, with responses
+     * out of order, navigation, appended cards and checkpoint restores, and checks after every step that both show
+     * the same card and the same state.
+     */
+    private static void runSession(int seed) throws IOException {
+        Random random = new Random(seed);
+        List<Flashcard> cards = cards(1 + random.nextInt(40));
+        int maxCycles = 1 + random.nextInt(5);
+        boolean stored = random.nextBoolean();
+        RandomProgressStore referenceStore = new RandomProgressStore(seed);
+        RandomProgressStore store = new RandomProgressStore(seed);
+
+        IAlgorithm reference = new SortingSpacedRepetitionAlgorithm(maxCycles, stored ? referenceStore : null);
+        IAlgorithm session = new SpacedRepetitionAlgorithm(maxCycles, stored ? store : null);
+        int added = 1 + random.nextInt(cards.size());
+        reference.initialize(cards.subList(0, added));
+        session.initialize(cards.subList(0, added));
+
+        for (int step = 0; step < MAX_STEPS && !reference.isSessionComplete(); step++) {
+            String where = "seed " + seed + ", step " + step;
+            int operation = random.nextInt(12);
+            if (operation < 5) {
+                boolean correct = random.nextInt(3) > 0;
+                reference.recordResponse(reference.getCurrentFlashcard(), correct);
+                session.recordResponse(session.getCurrentFlashcard(), correct);
+            } else if (operation < 6) {
+                Flashcard card = cards.get(random.nextInt(added));
+                boolean correct = random.nextBoolean();
+                reference.recordResponse(card, correct);
+                session.recordResponse(card, correct);
+            } else if (operation < 9) {
+                assertEquals(reference.moveToNext(), session.moveToNext(), where);
+            } else if (operation < 10) {
+                assertEquals(reference.moveToPrevious(), session.moveToPrevious(), where);
+            } else if (added < cards.size()) {
+                int end = Math.min(cards.size(), added + 1 + random.nextInt(3));
+                reference.appendFlashcards(cards.subList(added, end));
+                session.appendFlashcards(cards.subList(added, end));
+                added = end;
+            }
+
+            assertSameState(reference, session, cards.subList(0, added), where);
+            assertEquals(referenceStore.recorded, store.recorded, where);
+            if (step % 97 == 0) {
+                byte[] state = state(session);
+                assertArrayEquals(state(reference), state, where);
+                session = new SpacedRepetitionAlgorithm(maxCycles, stored ? store : null);
+                session.initialize(cards.subList(0, added));
+                session.restoreState(new DataInputStream(new ByteArrayInputStream(state)));
+                assertArrayEquals(state, state(session), where + ", restored");
+            }
+        }
+        assertEquals(reference.isSessionComplete(), session.isSessionComplete(), "seed " + seed);
+    }
+
+    private static void assertSameState(IAlgorithm reference, IAlgorithm session, List<Flashcard> cards, String where) {
+        assertEquals(reference.getCurrentFlashcard().getId(), session.getCurrentFlashcard().getId(), where);
+        assertEquals(reference.getCurrentIndex(), session.getCurrentIndex(), where);
+        assertEquals(reference.isFirstCard(), session.isFirstCard(), where);
+        assertEquals(reference.isSessionComplete(), session.isSessionComplete(), where);
+        assertEquals(reference.getTotalCorrect(), session.getTotalCorrect(), where);
+        assertEquals(reference.getTotalIncorrect(), session.getTotalIncorrect(), where);
+        assertEquals(reference.getCycleLength(), session.getCycleLength(), where);
+        assertEquals(reference.getRemainingResponses(), session.getRemainingResponses(), where);
+        for (Flashcard card : cards) {
+            assertEquals(reference.hasAnsweredThisCycle(card), session.hasAnsweredThisCycle(card), where);
+            assertEquals(reference.getMasteryLevel(card), session.getMasteryLevel(card), where);
+        }
+    }
+
+    private static byte[] state(IAlgorithm algorithm) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        algorithm.writeState(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static List<Flashcard> cards(int count) {
+        List<Flashcard> cards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            cards.add(new Flashcard(i * 7L + 1, "Question " + i, "Answer " + i, "", null, null));
+        }
+        return cards;
+    }
+
+    /**
+     * Gives every card a random stored level, the same for every store made with the same seed, and keeps the levels
+     * recorded in order.
+     */
+    private static final class RandomProgressStore implements ReviewProgressStore {
+        private final Map<Long, Integer> levels = new HashMap<>();
+        private final Random random;
+        private final List<String> recorded = new ArrayList<>();
+
+        RandomProgressStore(long seed) {
+            random = new Random(seed);
+        }
+
+        @Override
+        public int getMastery(long cardId, int defaultLevel) {
+            return levels.computeIfAbsent(cardId, id -> random.nextInt(4));
+        }
+
+        @Override
+        public void recordMastery(long cardId, int masteryLevel) {
+            recorded.add(cardId + ":" + masteryLevel);
+        }
+
+        @Override
+        public int countCardsAtLeast(int level) {
+            return 0;
+        }
+
+        @Override
+        public long lastModified() {
+            return 0;
+        }
+    }
+}
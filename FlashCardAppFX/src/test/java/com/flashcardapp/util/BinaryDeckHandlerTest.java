@@ -0,0 +1,122 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryDeckHandlerTest {
+
+    @TempDir
+    Path directory;
+
+    private final BinaryDeckHandler handler = new BinaryDeckHandler();
+
+    @Test
+    void roundTripsText() throws IOException {
+        Deck deck = new Deck("Binary été 漢字");
+        deck.addFlashcard(new Flashcard("Question", "Answer", "Hint"));
+        deck.addFlashcard(new Flashcard("", "Empty question", null));
+        deck.addFlashcard(new Flashcard("Emoji 😀", "Line\nbreak", ""));
+        String path = save(deck);
+
+        Deck loaded = handler.loadDeck(path);
+        assertEquals(deck.getName(), loaded.getName());
+        assertEquals(deck.getFlashcardCount(), loaded.getFlashcardCount());
+        for (int i = 0; i < deck.getFlashcardCount(); i++) {
+            Flashcard expected = deck.getFlashcard(i);
+            Flashcard actual = loaded.getFlashcard(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getQuestion(), actual.getQuestion());
+            assertEquals(expected.getAnswer(), actual.getAnswer());
+            assertEquals(expected.getHint(), actual.getHint());
+            assertNull(actual.getQuestionImage());
+        }
+        assertEquals(3, handler.readInfo(path).getFlashcardCount());
+        assertEquals(deck.getName(), handler.readInfo(path).getName());
+    }
+
+    @Test
+    void roundTripsEmptyDeck() throws IOException {
+        String path = save(new Deck("Empty"));
+        Deck loaded = handler.loadDeck(path);
+        assertEquals("Empty", loaded.getName());
+        assertEquals(0, loaded.getFlashcardCount());
+    }
+
+    @Test
+    void embedsReadableImagesAndLinksOthers() throws IOException {
+        Path image = directory.resolve("image.png");
+        Files.write(image, TestImages.png());
+        String unreadable = "https://example.invalid/missing.png";
+        Deck deck = new Deck("Images");
+        deck.addFlashcard(new Flashcard("Embedded", "Answer", "", image.toUri().toString(), null));
+        deck.addFlashcard(new Flashcard("Linked", "Answer", "", null, unreadable));
+        String path = save(deck);
+        Files.delete(image); // the binary deck holds its own copy
+
+        Deck loaded = handler.loadDeck(path);
+        String resolved = loaded.getFlashcard(0).getQuestionImage();
+        assertNotNull(resolved);
+        assertArrayEquals(TestImages.png(), ImageSources.readBytes(resolved));
+        assertEquals(unreadable, loaded.getFlashcard(1).getAnswerImage());
+    }
+
+    @Test
+    void imagesOfReadCardsOutliveClosedStore() throws IOException {
+        Path image = directory.resolve("image.png");
+        Files.write(image, TestImages.png());
+        Deck deck = new Deck("Images");
+        deck.addFlashcard(new Flashcard("First", "Answer", "", image.toUri().toString(), null));
+        deck.addFlashcard(new Flashcard("Second", "Answer"));
+        String path = save(deck);
+
+        Deck loaded = handler.loadDeck(path);
+        Flashcard first = loaded.getFlashcard(0);
+        loaded.removeFlashcard(1); // reads every card and closes the store
+
+        assertNotNull(first.getQuestionImage());
+        assertEquals(1, loaded.getFlashcardCount());
+    }
+
+    @Test
+    void keepsCardsAppendedToLazyDeck() throws IOException {
+        Deck deck = new Deck("Deck");
+        deck.addFlashcard(new Flashcard("Stored", "Answer"));
+        String path = save(deck);
+
+        Deck loaded = handler.loadDeck(path);
+        loaded.addFlashcard(new Flashcard("Appended", "Answer"));
+        handler.saveDeck(loaded, path);
+        loaded.close();
+
+        Deck reloaded = handler.loadDeck(path);
+        assertEquals("Stored", reloaded.getFlashcard(0).getQuestion());
+        assertEquals("Appended", reloaded.getFlashcard(1).getQuestion());
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = directory.resolve("deck" + BinaryDeckHandler.EXTENSION);
+        Files.write(path, "{\"name\":\"Not binary, but long enough for a header\"}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> handler.loadDeck(path.toString()));
+        assertThrows(IOException.class, () -> handler.readInfo(path.toString()));
+    }
+
+    private String save(Deck deck) throws IOException {
+        String path = directory.resolve("deck" + BinaryDeckHandler.EXTENSION).toString();
+        handler.saveDeck(deck, path);
+        return path;
+    }
+}
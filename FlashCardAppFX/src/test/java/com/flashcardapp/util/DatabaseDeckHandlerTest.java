@@ -0,0 +1,169 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DatabaseDeckHandlerTest {
+
+    @TempDir
+    Path directory;
+
+    private final DatabaseDeckHandler handler = new DatabaseDeckHandler();
+
+    @Test
+    void roundTripsDeck() throws Exception {
+        Path image = directory.resolve("image.png");
+        Files.write(image, TestImages.png());
+        String unreadable = "https://example.invalid/missing.png";
+        Deck deck = new Deck("Database été");
+        deck.addFlashcard(new Flashcard("Question", "Answer", "Hint"));
+        deck.addFlashcard(new Flashcard("Line\nbreak", "Answer", null));
+        deck.addFlashcard(new Flashcard("Images", "Answer", "", image.toUri().toString(), unreadable));
+        String path = save(deck);
+        Files.delete(image); // the database holds its own copy
+
+        Deck loaded = handler.loadDeck(path);
+        assertEquals(deck.getName(), loaded.getName());
+        assertEquals(ids(deck), ids(loaded));
+        assertEquals(questions(deck), questions(loaded));
+        assertEquals("Hint", loaded.getFlashcard(0).getHint());
+        assertNull(loaded.getFlashcard(1).getHint());
+        assertArrayEquals(TestImages.png(), ImageSources.readBytes(loaded.getFlashcard(2).getQuestionImage()));
+        assertEquals(unreadable, loaded.getFlashcard(2).getAnswerImage());
+        assertEquals(3, handler.readInfo(path).getFlashcardCount());
+        assertEquals(path, loaded.getSavedPath());
+        loaded.close();
+    }
+
+    @Test
+    void savesOnlyChangesWithoutRenumberingCards() throws Exception {
+        Deck deck = new Deck("Deck");
+        for (int i = 0; i < 4; i++) {
+            deck.addFlashcard(new Flashcard("Question " + i, "Answer " + i));
+        }
+        String path = save(deck);
+
+        Deck loaded = handler.loadDeck(path);
+        loaded.removeFlashcard(1);
+        loaded.getFlashcard(1).setAnswer("Edited");
+        loaded.setFlashcard(0, new Flashcard("Replaced", "Answer"));
+        loaded.addFlashcard(new Flashcard("Added", "Answer"));
+        loaded.setName("Renamed");
+        handler.saveDeck(loaded, path);
+
+        assertFalse(loaded.hasUnsavedChanges());
+        assertEquals(List.of(0L, 2L, 3L, 4L), query(path, "SELECT position FROM card ORDER BY position"));
+        Deck reloaded = handler.loadDeck(path);
+        assertEquals("Renamed", reloaded.getName());
+        assertEquals(List.of("Replaced", "Question 2", "Question 3", "Added"), questions(reloaded));
+        assertEquals(ids(loaded), ids(reloaded));
+        assertEquals("Edited", reloaded.getFlashcard(1).getAnswer());
+
+        reloaded.removeFlashcard(3);
+        reloaded.addFlashcard(new Flashcard("Added again", "Answer"));
+        handler.saveDeck(reloaded, path);
+        assertEquals(List.of("Replaced", "Question 2", "Question 3", "Added again"), questions(handler.loadDeck(path)));
+    }
+
+    @Test
+    void storesEachImageOnceAndDropsUnusedOnes() throws Exception {
+        Path image = directory.resolve("image.png");
+        Files.write(image, TestImages.png());
+        Deck deck = new Deck("Images");
+        deck.addFlashcard(new Flashcard("First", "Answer", "", image.toUri().toString(), null));
+        deck.addFlashcard(new Flashcard("Second", "Answer", "", null, image.toUri().toString()));
+        String path = save(deck);
+        assertEquals(List.of(1L), query(path, "SELECT COUNT(*) FROM media"));
+
+        Deck loaded = handler.loadDeck(path);
+        loaded.removeFlashcard(0);
+        handler.saveDeck(loaded, path);
+        assertEquals(List.of(1L), query(path, "SELECT COUNT(*) FROM media"));
+
+        loaded.removeFlashcard(0);
+        handler.saveDeck(loaded, path);
+        assertEquals(List.of(0L), query(path, "SELECT COUNT(*) FROM media"));
+        loaded.close();
+    }
+
+    @Test
+    void progressStoreKeepsMasteryLevelsInDeck() throws Exception {
+        Deck deck = new Deck("Progress");
+        for (int i = 0; i < 4; i++) {
+            deck.addFlashcard(new Flashcard("Question " + i, "Answer " + i));
+        }
+        String path = save(deck);
+        List<Long> ids = ids(deck);
+
+        DatabaseDeckHandler.ProgressStore store = new DatabaseDeckHandler.ProgressStore(path);
+        store.recordMastery(ids.get(0), 1);
+        store.recordMastery(ids.get(1), 2);
+        store.recordMastery(ids.get(2), 1);
+        store.recordMastery(ids.get(0), 2);
+
+        assertEquals(3, store.countCardsAtLeast(0));
+        assertEquals(2, store.countCardsAtLeast(2));
+        long[] atLevelTwo = {ids.get(0), ids.get(1)};
+        Arrays.sort(atLevelTwo);
+        assertArrayEquals(atLevelTwo, store.findCardsAtLevel(2));
+        assertArrayEquals(new long[] {ids.get(2)}, store.findCardsAtLevel(1));
+        assertEquals(List.of(4L), query(path, "SELECT COUNT(*) FROM review"));
+
+        DatabaseDeckHandler.ProgressStore reloaded = new DatabaseDeckHandler.ProgressStore(path);
+        assertEquals(2, reloaded.getMastery(ids.get(0), -1));
+        assertEquals(-1, reloaded.getMastery(ids.get(3), -1));
+
+        handler.saveDeck(deck, path); // saving the whole deck keeps the progress
+        assertEquals(3, reloaded.countCardsAtLeast(0));
+    }
+
+    private String save(Deck deck) throws Exception {
+        String path = directory.resolve("deck" + DatabaseDeckHandler.EXTENSION).toString();
+        handler.saveDeck(deck, path);
+        return path;
+    }
+
+    /**
+     * Reads the numbers in the first column of a query's rows straight from the database.
+     */
+    private static List<Long> query(String path, String sql) throws Exception {
+        List<Long> values = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            while (result.next()) {
+                values.add(result.getLong(1));
+            }
+        }
+        return values;
+    }
+
+    private static List<String> questions(Deck deck) {
+        List<String> questions = new ArrayList<>();
+        deck.getFlashcards().forEach(flashcard -> questions.add(flashcard.getQuestion()));
+        return questions;
+    }
+
+    private static List<Long> ids(Deck deck) {
+        List<Long> ids = new ArrayList<>();
+        deck.getFlashcards().forEach(flashcard -> ids.add(flashcard.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,220 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final DeckHandler handler = new DeckHandler();
+
+    @Test
+    void replaysEveryKindOfChange() throws IOException {
+        String path = saveDeck("Original", 5);
+        Deck deck = handler.loadDeck(path);
+        deck.addFlashcard(new Flashcard("Added", "Added answer"));
+        deck.removeFlashcard(1);
+        deck.getFlashcard(0).setQuestion("Edited");
+        deck.setName("Renamed");
+        handler.saveDeck(deck, path);
+
+        assertTrue(DeckJournal.forDeck(path).exists());
+        Deck loaded = handler.loadDeck(path);
+        assertEquals("Renamed", loaded.getName());
+        assertEquals(questions(deck), questions(loaded));
+        assertEquals(ids(deck), ids(loaded));
+        assertFalse(loaded.hasUnsavedChanges());
+    }
+
+    @Test
+    void replaysBatchesFromSeveralSaves() throws IOException {
+        String path = saveDeck("Deck", 2);
+        Deck deck = handler.loadDeck(path);
+        for (int i = 0; i < 3; i++) {
+            deck.addFlashcard(new Flashcard("Batch " + i, "Answer"));
+            handler.saveDeck(deck, path);
+        }
+        deck.clearDeck();
+        deck.addFlashcard(new Flashcard("After clear", "Answer"));
+        handler.saveDeck(deck, path);
+
+        Deck loaded = handler.loadDeck(path);
+        assertEquals(List.of("After clear"), questions(loaded));
+        assertEquals(1, handler.readInfo(path).getFlashcardCount());
+    }
+
+    @Test
+    void ignoresBatchWithoutCommit() throws IOException {
+        String path = saveDeck("Deck", 3);
+        Deck deck = handler.loadDeck(path);
+        deck.addFlashcard(new Flashcard("Committed", "Answer"));
+        handler.saveDeck(deck, path);
+        Files.write(DeckJournal.forDeck(path).path(), "{\"op\":\"remove\",\"index\":0}\n{\"op\":\"rem".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        Deck loaded = handler.loadDeck(path);
+        assertEquals(questions(deck), questions(loaded));
+        assertTrue(loaded.hasUnsavedChanges(), "the next save has to rewrite the deck file");
+        assertEquals(4, handler.readInfo(path).getFlashcardCount());
+    }
+
+    @Test
+    void ignoresJournalOfAnotherRevision() throws IOException {
+        String path = saveDeck("Deck", 3);
+        Deck deck = handler.loadDeck(path);
+        deck.addFlashcard(new Flashcard("Journalled", "Answer"));
+        handler.saveDeck(deck, path);
+        Path journal = DeckJournal.forDeck(path).path();
+        byte[] journalled = Files.readAllBytes(journal);
+
+        saveDeck("Deck", 3); // writes a new revision and drops the journal
+        Files.write(journal, journalled);
+
+        assertEquals(3, handler.loadDeck(path).getFlashcardCount());
+        assertEquals(3, handler.readInfo(path).getFlashcardCount());
+    }
+
+    @Test
+    void compactionFoldsJournalIntoDeckFile() throws IOException {
+        String path = saveDeck("Deck", 3);
+        Deck deck = handler.loadDeck(path);
+        deck.removeFlashcard(0);
+        deck.addFlashcard(new Flashcard("Added", "Answer"));
+        handler.saveDeck(deck, path);
+
+        handler.compact(deck, path);
+
+        assertFalse(DeckJournal.forDeck(path).exists());
+        assertEquals(questions(deck), questions(handler.loadDeck(path)));
+        assertFalse(deck.hasUnsavedChanges());
+    }
+
+    @Test
+    void compactionLeavesDeckWithUnsavedChangesAlone() throws IOException {
+        String path = saveDeck("Deck", 3);
+        Deck deck = handler.loadDeck(path);
+        deck.addFlashcard(new Flashcard("Saved", "Answer"));
+        handler.saveDeck(deck, path);
+        deck.addFlashcard(new Flashcard("Unsaved", "Answer"));
+
+        handler.compact(deck, path);
+
+        assertTrue(DeckJournal.forDeck(path).exists());
+        assertEquals(4, handler.loadDeck(path).getFlashcardCount());
+    }
+
+    @Test
+    void writerSavesCopyTakenWhenSubmitted() throws IOException {
+        String path = saveDeck("Deck", 3);
+        Deck deck = handler.loadDeck(path);
+        DeckWriter writer = new DeckWriter();
+        deck.getFlashcard(0).setQuestion("Before submit");
+        CompletableFuture<Void> first = writer.submit(deck, path);
+        deck.getFlashcard(1).setQuestion("After submit");
+        deck.addFlashcard(new Flashcard("Added after submit", "Answer"));
+        first.join();
+
+        assertTrue(deck.hasUnsavedChanges(), "changes made after submitting are left for the next save");
+        assertEquals(List.of("Before submit", "Question 1", "Question 2"), questions(handler.loadDeck(path)));
+        writer.submit(deck, path).join();
+        assertTrue(writer.shutdown(1000));
+
+        assertFalse(deck.hasUnsavedChanges());
+        assertEquals(questions(deck), questions(handler.loadDeck(path)));
+    }
+
+    @Test
+    void copyOfTrackedDeckHoldsOnlyChangedFlashcards() throws IOException {
+        String path = saveDeck("Deck", 3);
+        Deck deck = handler.loadDeck(path);
+        deck.getFlashcard(1).setHint("Edited hint");
+
+        Deck copy = deck.copyForSave(path, null, handler.savesChanges());
+        assertTrue(copy.isChangesOnly());
+        assertEquals(0, copy.getFlashcardCount());
+        handler.saveDeck(copy, path);
+        copy.close();
+
+        assertEquals("Edited hint", handler.loadDeck(path).getFlashcard(1).getHint());
+    }
+
+    @Test
+    void replacedCopyOfWholeDeckCarriesOverToNextCopy() throws IOException {
+        String path = directory.resolve("new.json").toString();
+        Deck deck = new Deck("New");
+        deck.addFlashcard(new Flashcard("First", "Answer"));
+        Deck pending = deck.copyForSave(path, null, handler.savesChanges());
+        deck.addFlashcard(new Flashcard("Second", "Answer"));
+        deck.getFlashcard(0).setQuestion("First, edited");
+        deck.setName("Renamed");
+
+        Deck copy = deck.copyForSave(path, pending, handler.savesChanges());
+        pending.close();
+        assertFalse(copy.isChangesOnly());
+        handler.saveDeck(copy, path);
+        copy.close();
+
+        Deck loaded = handler.loadDeck(path);
+        assertEquals("Renamed", loaded.getName());
+        assertEquals(questions(deck), questions(loaded));
+        assertEquals(ids(deck), ids(loaded));
+        assertFalse(deck.hasUnsavedChanges());
+    }
+
+    @Test
+    void imagesAddedThroughJournalResolve() throws IOException {
+        Path image = directory.resolve("image.png");
+        Files.write(image, TestImages.png());
+        String path = saveDeck("Deck", 1);
+        Deck deck = handler.loadDeck(path);
+        deck.addFlashcard(new Flashcard("With image", "Answer", "", image.toUri().toString(), null));
+        handler.saveDeck(deck, path);
+        Files.delete(image); // the journal holds the image itself
+
+        Deck loaded = handler.loadDeck(path);
+        System.gc();
+        String resolved = loaded.getFlashcard(1).getQuestionImage();
+        assertNotNull(resolved);
+        assertEquals(TestImages.png().length, ImageSources.readBytes(resolved).length);
+    }
+
+    private String saveDeck(String name, int cards) throws IOException {
+        Deck deck = new Deck(name);
+        for (int i = 0; i < cards; i++) {
+            deck.addFlashcard(new Flashcard("Question " + i, "Answer " + i, "Hint " + i));
+        }
+        String path = directory.resolve("deck.json").toString();
+        handler.saveDeck(deck, path);
+        return path;
+    }
+
+    private static List<String> questions(Deck deck) {
+        List<String> questions = new ArrayList<>();
+        deck.getFlashcards().forEach(flashcard -> questions.add(flashcard.getQuestion()));
+        return questions;
+    }
+
+    private static List<Long> ids(Deck deck) {
+        List<Long> ids = new ArrayList<>();
+        deck.getFlashcards().forEach(flashcard -> ids.add(flashcard.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,186 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.DeckDiff;
+import com.flashcardapp.model.Flashcard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckWatcherTest {
+
+    @TempDir
+    Path directory;
+
+    private final DeckHandler handler = new DeckHandler();
+    private final List<DeckDiff> diffs = new CopyOnWriteArrayList<>();
+    private final DeckWatcher watcher = new DeckWatcher(diffs::add);
+
+    @AfterEach
+    void stopWatching() {
+        watcher.stop();
+    }
+
+    @Test
+    void reportsAddedRemovedUpdatedAndRenamed() throws Exception {
+        String path = saveDeck(4);
+        watch(path);
+        List<Long> ids = ids(handler.loadDeck(path));
+
+        Deck edited = handler.loadDeck(path);
+        edited.removeFlashcard(0);
+        edited.getFlashcard(0).setAnswer("Edited answer");
+        edited.addFlashcard(new Flashcard("Added", "Answer"));
+        edited.setName("Renamed");
+        editOutside(edited, path);
+
+        assertEquals(1, diffs.size());
+        DeckDiff diff = diffs.get(0);
+        assertEquals("Renamed", diff.getName());
+        assertArrayEquals(new long[] {ids.get(0)}, diff.getRemovedIds());
+        assertEquals(1, diff.getUpdated().size());
+        assertEquals((long) ids.get(1), diff.getUpdated().get(0).getId());
+        assertEquals("Edited answer", diff.getUpdated().get(0).getAnswer());
+        assertEquals(1, diff.getAdded().size());
+        assertEquals("Added", diff.getAdded().get(0).getQuestion());
+        assertEquals(3, diff.getAddedIndex(0));
+    }
+
+    @Test
+    void unchangedContentIsNoChange() throws Exception {
+        String path = saveDeck(3);
+        watch(path);
+
+        editOutside(handler.loadDeck(path), path);
+
+        assertTrue(diffs.isEmpty());
+    }
+
+    @Test
+    void ownSavesAreNoChange() throws Exception {
+        String path = saveDeck(3);
+        Deck deck = handler.loadDeck(path);
+        watch(path);
+        DeckWriter writer = new DeckWriter(watcher::deckSaved);
+
+        deck.getFlashcard(1).setQuestion("Edited");
+        deck.addFlashcard(new Flashcard("Added", "Answer"));
+        deck.removeFlashcard(0);
+        writer.submit(deck, path).join();
+        touch(path);
+        watcher.checkNow().get();
+
+        String copyPath = directory.resolve("copy.json").toString();
+        deck.setName("Copy");
+        writer.submit(deck, copyPath).join(); // written in full, to a file that is not watched yet
+        watch(copyPath);
+        deck.getFlashcard(0).setHint("Edited hint");
+        writer.submit(deck, copyPath).join();
+        touch(copyPath);
+        watcher.checkNow().get();
+        assertTrue(writer.shutdown(1000));
+
+        assertTrue(diffs.isEmpty());
+    }
+
+    @Test
+    void storedChangesApplyInPlace() throws Exception {
+        String path = saveDeck(4);
+        Deck deck = handler.loadDeck(path);
+        Flashcard kept = deck.getFlashcard(1);
+        watch(path);
+
+        Deck edited = handler.loadDeck(path);
+        edited.removeFlashcard(0);
+        edited.getFlashcard(0).setQuestion("Edited");
+        edited.addFlashcard(new Flashcard("Added", "Answer"));
+        edited.setName("Renamed");
+        editOutside(edited, path);
+        DeckDiff applied = deck.applyStoredChanges(diffs.get(0));
+
+        assertEquals("Renamed", deck.getName());
+        assertEquals(questions(edited), questions(deck));
+        assertEquals(ids(edited), ids(deck));
+        assertTrue(kept == deck.getFlashcard(0), "updated flashcards stay the same objects");
+        assertEquals(List.of(kept), applied.getUpdated());
+        assertFalse(deck.hasUnsavedChanges(), "the deck matches the file, so it keeps tracking changes");
+    }
+
+    @Test
+    void pendingLocalChangesStopTracking() throws Exception {
+        String path = saveDeck(3);
+        Deck deck = handler.loadDeck(path);
+        watch(path);
+        deck.addFlashcard(new Flashcard("Local", "Answer"));
+
+        Deck edited = handler.loadDeck(path);
+        edited.getFlashcard(2).setQuestion("Edited outside");
+        editOutside(edited, path);
+        deck.applyStoredChanges(diffs.get(0));
+
+        assertEquals(List.of("Question 0", "Question 1", "Edited outside", "Local"), questions(deck));
+        assertTrue(deck.hasUnsavedChanges(), "the local change refers to the old file, so the next save writes it all");
+        handler.saveDeck(deck, path);
+        assertEquals(questions(deck), questions(handler.loadDeck(path)));
+    }
+
+    private String saveDeck(int cards) throws Exception {
+        Deck deck = new Deck("Deck");
+        for (int i = 0; i < cards; i++) {
+            deck.addFlashcard(new Flashcard("Question " + i, "Answer " + i, "Hint " + i));
+        }
+        String path = directory.resolve("deck.json").toString();
+        handler.saveDeck(deck, path);
+        return path;
+    }
+
+    /**
+     * Watches the deck file, waiting until the stored version has been read.
+     */
+    private void watch(String path) throws Exception {
+        watcher.watch(path);
+        watcher.checkNow().get();
+    }
+
+    /**
+     * Rewrites the deck file as another program would, and checks it.
+     */
+    private void editOutside(Deck edited, String path) throws Exception {
+        new DeckHandler().saveDeck(edited, path);
+        touch(path);
+        watcher.checkNow().get();
+    }
+
+    /**
+     * Moves the modification time on, since a change within the same millisecond would not be noticed.
+     */
+    private static void touch(String path) throws Exception {
+        Path file = Paths.get(path);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+    }
+
+    private static List<String> questions(Deck deck) {
+        List<String> questions = new ArrayList<>();
+        deck.getFlashcards().forEach(flashcard -> questions.add(flashcard.getQuestion()));
+        return questions;
+    }
+
+    private static List<Long> ids(Deck deck) {
+        List<Long> ids = new ArrayList<>();
+        deck.getFlashcards().forEach(flashcard -> ids.add(flashcard.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,144 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Deck;
+import com.flashcardapp.model.Flashcard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelimitedTextDeckHandlerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsQuotedFieldsWithDelimitersQuotesAndLineBreaks() throws IOException {
+        Deck deck = load("cards.csv", "question,answer\n"
+                + "\"a, b\",\"say \"\"hi\"\"\"\n"
+                + "\"two\nlines\",plain\n");
+
+        assertEquals(2, deck.getFlashcardCount());
+        assertEquals("a, b", deck.getFlashcard(0).getQuestion());
+        assertEquals("say \"hi\"", deck.getFlashcard(0).getAnswer());
+        assertEquals("two\nlines", deck.getFlashcard(1).getQuestion());
+    }
+
+    @Test
+    void matchesHeaderColumnsInAnyOrderAndSkipsUnknownOnes() throws IOException {
+        Deck deck = load("cards.csv", "Notes,Back,Front,Hint\nignored,answer,question,hint\n");
+
+        assertEquals(1, deck.getFlashcardCount());
+        Flashcard card = deck.getFlashcard(0);
+        assertEquals("question", card.getQuestion());
+        assertEquals("answer", card.getAnswer());
+        assertEquals("hint", card.getHint());
+    }
+
+    @Test
+    void takesColumnsInOrderWithoutHeader() throws IOException {
+        Deck deck = load("cards.tsv", "question one\tanswer one\n\nquestion two\tanswer two\thint\n");
+
+        assertEquals(2, deck.getFlashcardCount());
+        assertEquals("answer one", deck.getFlashcard(0).getAnswer());
+        assertNull(deck.getFlashcard(0).getHint());
+        assertEquals("hint", deck.getFlashcard(1).getHint());
+    }
+
+    @Test
+    void rejectsHeaderWithoutQuestionColumn() {
+        assertThrows(IOException.class, () -> load("cards.csv", "answer,hint\nanswer,hint\n"));
+    }
+
+    @Test
+    void splitsFilesWithCarriageReturnLineEndings() throws IOException {
+        StringBuilder text = new StringBuilder("question,answer\r");
+        for (int i = 0; i < 20000; i++) {
+            text.append("question ").append(i).append(",answer ").append(i).append('\r');
+        }
+        Path file = write("cards.csv", text.toString());
+
+        Deck deck = new DelimitedTextDeckHandler(',', 64 * 1024).loadDeck(file.toString());
+
+        assertEquals(20000, deck.getFlashcardCount());
+        assertEquals("answer 19999", deck.getFlashcard(19999).getAnswer());
+    }
+
+    @Test
+    void rejectsRowLongerThanLimitInsteadOfBufferingTheFile() throws IOException {
+        StringBuilder text = new StringBuilder("question,answer\n\"unclosed,answer\n");
+        for (int i = 0; i < 10000; i++) {
+            text.append("question ").append(i).append(",answer\n");
+        }
+        Path file = write("cards.csv", text.toString());
+
+        assertThrows(IOException.class, () -> new DelimitedTextDeckHandler(',', 16 * 1024).loadDeck(file.toString()));
+    }
+
+    @Test
+    void keepsIdsAcrossSaveAndLoad() throws IOException {
+        Deck deck = load("cards.csv", "question,answer\nq,a\n");
+        long id = deck.getFlashcard(0).getId();
+        Path saved = directory.resolve("saved.csv");
+        new DelimitedTextDeckHandler(saved.toString()).saveDeck(deck, saved.toString());
+
+        Deck loaded = new DelimitedTextDeckHandler(saved.toString()).loadDeck(saved.toString());
+
+        assertEquals(id, loaded.getFlashcard(0).getId());
+    }
+
+    @Test
+    void importsIntoNewDeckFileWithoutMarkingSpreadsheetSaved() throws IOException {
+        Path file = write("cards.csv", "question,answer\nq,a\n");
+        Files.writeString(directory.resolve("cards.json"), "{}");
+        DelimitedTextDeckHandler handler = new DelimitedTextDeckHandler(file.toString());
+
+        assertNull(handler.loadDeck(file.toString()).getSavedPath());
+        String target = DelimitedTextDeckHandler.importPath(file.toString());
+        assertEquals(directory.resolve("cards (2).json").toAbsolutePath().toString(), target);
+        Deck imported = handler.importDeck(file.toString(), target, null);
+
+        assertEquals(target, imported.getSavedPath());
+        assertTrue(Files.exists(Path.of(target)));
+        assertEquals("q", new DeckHandler().loadDeck(target).getFlashcard(0).getQuestion());
+    }
+
+    @Test
+    void exportingKeepsDeckFileAndUnsavedChanges() throws Exception {
+        String deckPath = directory.resolve("deck.json").toString();
+        Deck deck = new Deck("Deck");
+        deck.addFlashcard(new Flashcard("q", "a"));
+        new DeckHandler().saveDeck(deck, deckPath);
+        deck.addFlashcard(new Flashcard("unsaved", "a"));
+        DeckWriter writer = new DeckWriter();
+
+        String export = directory.resolve("cards.csv").toString();
+        writer.submit(deck, export).join();
+        assertTrue(writer.shutdown(1000));
+
+        assertEquals(deckPath, deck.getSavedPath());
+        assertTrue(deck.hasUnsavedChanges());
+        assertEquals(2, new DelimitedTextDeckHandler(export).loadDeck(export).getFlashcardCount());
+        new DeckHandler().saveDeck(deck, deckPath);
+        assertEquals(2, new DeckHandler().loadDeck(deckPath).getFlashcardCount());
+    }
+
+    private Deck load(String name, String text) throws IOException {
+        Path file = write(name, text);
+        return new DelimitedTextDeckHandler(file.toString()).loadDeck(file.toString());
+    }
+
+    private Path write(String name, String text) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
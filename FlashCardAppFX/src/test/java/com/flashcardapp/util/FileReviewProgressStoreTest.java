@@ -0,0 +1,55 @@
+package com.flashcardapp.util;
+
+import com.flashcardapp.model.Flashcard;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileReviewProgressStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsProgressAcrossReloadAndCompaction() {
+        FileReviewProgressStore store = store();
+        for (int i = 0; i < 2000; i++) {
+            store.recordMastery(i % 10 + 1, i % 5);
+        }
+
+        FileReviewProgressStore reloaded = store();
+
+        assertEquals(4, reloaded.getMastery(5, -1));
+        assertEquals(-1, reloaded.getMastery(11, -1));
+        assertEquals(10, reloaded.countCardsAtLeast(0));
+    }
+
+    @Test
+    void movesProgressKeyedByQuestionToCardIds() throws IOException {
+        write("cards.snapshot", "{\"first\": 3, \"second\": 2}");
+        write("cards.log", "[\"second\", 4]\n[\"third\", 1]\n");
+        Flashcard second = new Flashcard("second", "answer");
+
+        assertEquals(4, store().getMastery(second, 0));
+
+        FileReviewProgressStore reloaded = store();
+        assertEquals(4, reloaded.getMastery(second.getId(), -1));
+        assertEquals(3, reloaded.getMastery(new Flashcard("first", "answer"), 0));
+        assertEquals(1, reloaded.getMastery(new Flashcard("third", "answer"), 0));
+        assertEquals(0, reloaded.getMastery(new Flashcard("first", "answer"), 0)); // moved to the first card's id
+    }
+
+    private FileReviewProgressStore store() {
+        return new FileReviewProgressStore(directory.resolve("cards.snapshot"), directory.resolve("cards.log"));
+    }
+
+    private void write(String name, String text) throws IOException {
+        Files.write(directory.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
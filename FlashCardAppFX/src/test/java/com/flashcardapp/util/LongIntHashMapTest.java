@@ -0,0 +1,99 @@
+package com.flashcardapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongIntHashMapTest {
+
+    @Test
+    void keepsZeroKeyOutsideTable() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(-1, map.get(0, -1));
+
+        map.put(0, 7);
+
+        assertTrue(map.containsKey(0));
+        assertEquals(7, map.get(0, -1));
+        assertEquals(1, map.size());
+        assertTrue(map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void findsKeysAfterRemovalFromMiddleOfProbeRun() {
+        LongIntHashMap map = new LongIntHashMap(4); // a table of 8 slots
+        long[] keys = keysInSameSlot(3, 8);
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+
+        assertTrue(map.remove(keys[0]));
+
+        assertFalse(map.containsKey(keys[0]));
+        assertEquals(1, map.get(keys[1], -1));
+        assertEquals(2, map.get(keys[2], -1));
+        assertFalse(map.remove(keys[0]));
+    }
+
+    @Test
+    void matchesHashMapThroughGrowthAndRemovals() {
+        Random random = new Random(42);
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 100L; // includes 0 and negative keys
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey(), -1));
+        }
+        Map<Long, Integer> visited = new HashMap<>();
+        map.forEach((key, value) -> visited.put(key, value));
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void clearKeepsMapUsable() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (long key = 0; key < 100; key++) {
+            map.put(key, 1);
+        }
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(50));
+        map.put(50, 2);
+        assertEquals(2, map.get(50, -1));
+    }
+
+    /**
+     * Finds keys that hash to the same slot of a table of the given capacity, so they form one probe run.
+     */
+    private static long[] keysInSameSlot(int count, int capacity) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & (capacity - 1)) == 0) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,59 @@
+package com.flashcardapp.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedChannelTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void closesWithoutHolders() throws IOException {
+        SharedChannel file = open();
+        file.close();
+        assertFalse(file.channel().isOpen());
+    }
+
+    @Test
+    void staysOpenUntilLastHolderLetsGo() throws IOException {
+        SharedChannel file = open();
+        Object holder = new Object();
+        Cleaner.Cleanable first = file.hold(holder);
+        Cleaner.Cleanable second = file.hold(holder);
+        file.close();
+        assertTrue(file.channel().isOpen());
+
+        first.clean();
+        first.clean(); // cleaning again must not give back another hold
+        assertTrue(file.channel().isOpen());
+        second.clean();
+        assertFalse(file.channel().isOpen());
+    }
+
+    @Test
+    void closesOnceDroppedHolderIsCollected() throws IOException, InterruptedException {
+        SharedChannel file = open();
+        file.hold(new Object());
+        file.close();
+        for (int i = 0; i < 100 && file.channel().isOpen(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertFalse(file.channel().isOpen());
+    }
+
+    private SharedChannel open() throws IOException {
+        Path path = directory.resolve("file");
+        Files.write(path, new byte[] {1, 2, 3});
+        return SharedChannel.open(path);
+    }
+}
@@ -0,0 +1,33 @@
+package com.flashcardapp.util;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Small images for tests that store and read flashcard images.
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * Returns the bytes of a PNG image that is the same on every call.
+     */
+    static byte[] png() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 16; i++) {
+            image.setRGB(i, i, 0xff00ff);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+}